@@ -1,14 +1,19 @@
 package com.example;
 
 import java.io.FileNotFoundException;
+import java.util.Arrays;
 
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
+import com.example.batch.BatchRunner;
 import com.example.exception.AbortException;
 import com.example.exception.InvalidActionException;
 import com.example.exception.InvalidArgumentException;
+import com.example.logging.LogSetup;
+import com.example.model.ScanOptions;
 import com.example.util.FileUtil;
+import com.example.util.ImportBlockCache;
 import com.example.validation.ArgumentValidator;
 
 public class App {
@@ -16,21 +21,78 @@ public class App {
     private static final Logger LOGGER = Logger.getLogger(App.class.getName());
 
     public static void main(String[] args) {
+        // Console output is written on a background thread
+        LogSetup.install();
         try {
             LOGGER.log(Level.INFO, "Starting application with arguments: {0}", String.join(", ", args));
             ArgumentValidator.validateArguments(args);
 
-            String action = args[0];
+            String[] arguments = ArgumentValidator.getPositionalArguments(args);
+            ScanOptions options = ArgumentValidator.parseOptions(args);
+            if (options.isStructuredLog()) {
+                LogSetup.useStructuredFormat();
+            }
+            String action = arguments[0];
 
             switch (action) {
                 case ArgumentValidator.JSON_ACTION:
-                    FileUtil.checkAndPromptOverwrite(args[2]);
+                    // One or more inputs, the output file comes last
+                    String jsonOutputPath = arguments[arguments.length - 1];
+                    if (!options.isOverwrite()) {
+                        FileUtil.checkAndPromptOverwrite(jsonOutputPath);
+                    }
                     LOGGER.info("Executing JSON action");
-                    FileUtil.createJsonFile(args[1], args[2]);
+                    if (arguments.length == 3) {
+                        FileUtil.createJsonFile(arguments[1], jsonOutputPath, options);
+                    } else {
+                        FileUtil.createJsonFile(Arrays.asList(arguments).subList(1, arguments.length - 1),
+                                jsonOutputPath, options, ImportBlockCache.disabled());
+                    }
+                    break;
+                case ArgumentValidator.STATS_ACTION:
+                    if (!options.isOverwrite()) {
+                        FileUtil.checkAndPromptOverwrite(arguments[2]);
+                    }
+                    LOGGER.info("Executing stats action");
+                    FileUtil.createStatsFile(arguments[1], arguments[2], options);
+                    break;
+                case ArgumentValidator.INDEX_ACTION:
+                    if (!options.isOverwrite()) {
+                        FileUtil.checkAndPromptOverwrite(arguments[2]);
+                    }
+                    LOGGER.info("Executing index action");
+                    FileUtil.createIndexFile(arguments[1], arguments[2], options);
+                    break;
+                case ArgumentValidator.VERIFY_ACTION:
+                    if (!options.isOverwrite()) {
+                        FileUtil.checkAndPromptOverwrite(arguments[2]);
+                    }
+                    LOGGER.info("Executing verify action");
+                    FileUtil.createVerifyFile(arguments[1], arguments[2], options);
+                    break;
+                case ArgumentValidator.QUERY_ACTION:
+                    LOGGER.info("Executing query action");
+                    // One matching template path per line on standard output
+                    FileUtil.queryIndex(arguments[1], arguments[2]).forEach(System.out::println);
                     break;
                 case ArgumentValidator.REPLACE_ACTION:
                     LOGGER.info("Executing replace action");
-                    FileUtil.replaceBlocks(args[1], args[2], args[3]);
+                    FileUtil.replaceBlocks(arguments[1], arguments[2], arguments[3], options);
+                    break;
+                case ArgumentValidator.REWRITE_ACTION:
+                    LOGGER.info("Executing rewrite action");
+                    FileUtil.rewriteBlocks(arguments[1], arguments[2], options);
+                    break;
+                case ArgumentValidator.MERGE_ACTION:
+                    if (!options.isOverwrite()) {
+                        FileUtil.checkAndPromptOverwrite(arguments[1]);
+                    }
+                    LOGGER.info("Executing merge action");
+                    FileUtil.mergeJsonFiles(Arrays.asList(arguments).subList(2, arguments.length), arguments[1]);
+                    break;
+                case ArgumentValidator.BATCH_ACTION:
+                    LOGGER.info("Executing batch action");
+                    BatchRunner.run(arguments[1], ArgumentValidator.getOptionArguments(args));
                     break;
             }
         } catch (InvalidActionException | InvalidArgumentException e) {
@@ -43,6 +105,7 @@ public class App {
             LOGGER.log(Level.SEVERE, "An unexpected error occurred: {0}", e.getMessage());
         } finally {
             LOGGER.log(Level.INFO, "Application finished execution");
+            LogSetup.flush();
         }
     }
 
@@ -0,0 +1,120 @@
+package com.example.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.example.exception.InvalidArgumentException;
+
+/**
+ * The commands of a job file. Each line holds one command with the arguments
+ * of a single run, for example:
+ *
+ * <pre>
+ * # Scan, then move the templates to the new header
+ * json "D:\Templates" "D:\Reports\before.json" --overwrite
+ * replace "D:\Templates" "[import header_v1.odt]" "[import header_v2.odt]"
+ * </pre>
+ *
+ * Arguments are separated by whitespace, double quotes group an argument that
+ * contains spaces. Backslashes have no special meaning, so Windows paths can
+ * be written as they are. Empty lines and lines starting with {@code #} are
+ * ignored.
+ */
+public class BatchJob {
+
+    private static final char QUOTE = '"';
+    private static final String COMMENT_PREFIX = "#";
+
+    private BatchJob() {
+    }
+
+    /**
+     * Reads the commands of a job file.
+     *
+     * @param jobFile The job file, in UTF-8.
+     * @return The commands in file order.
+     * @throws IOException              if the job file cannot be read.
+     * @throws InvalidArgumentException if a line has an unterminated quote.
+     */
+    public static List<Command> parse(Path jobFile) throws IOException, InvalidArgumentException {
+        List<Command> commands = new ArrayList<>();
+        List<String> lines = Files.readAllLines(jobFile, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith(COMMENT_PREFIX)) {
+                continue;
+            }
+            commands.add(new Command(i + 1, tokenize(line, i + 1)));
+        }
+        return commands;
+    }
+
+    /**
+     * Splits a command line into its arguments.
+     *
+     * @param line       The command line.
+     * @param lineNumber The line number, for error messages.
+     * @return The arguments.
+     * @throws InvalidArgumentException if the line has an unterminated quote.
+     */
+    static String[] tokenize(String line, int lineNumber) throws InvalidArgumentException {
+        List<String> arguments = new ArrayList<>();
+        StringBuilder argument = new StringBuilder();
+        boolean inArgument = false;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == QUOTE) {
+                quoted = !quoted;
+                inArgument = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inArgument) {
+                    arguments.add(argument.toString());
+                    argument.setLength(0);
+                    inArgument = false;
+                }
+            } else {
+                argument.append(c);
+                inArgument = true;
+            }
+        }
+        if (quoted) {
+            throw new InvalidArgumentException(String.format("Line %d: unterminated quote", lineNumber));
+        }
+        if (inArgument) {
+            arguments.add(argument.toString());
+        }
+        return arguments.toArray(new String[0]);
+    }
+
+    /**
+     * One command of a job file.
+     */
+    public static final class Command {
+        private final int lineNumber;
+        private final String[] arguments;
+
+        Command(int lineNumber, String[] arguments) {
+            this.lineNumber = lineNumber;
+            this.arguments = arguments;
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        public String[] getArguments() {
+            return arguments.clone();
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" ", Arrays.asList(arguments));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.batch;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.example.exception.AbortException;
+import com.example.exception.InvalidActionException;
+import com.example.exception.InvalidArgumentException;
+import com.example.exception.InvalidFileException;
+import com.example.model.ScanOptions;
+import com.example.util.FileUtil;
+import com.example.util.ImportBlockCache;
+import com.example.validation.ArgumentValidator;
+
+/**
+ * Runs the commands of a job file one after another in this process. The
+ * commands share an {@link ImportBlockCache}, so a template that an earlier
+ * command has read is not parsed again while it is unchanged, and a replace
+ * does not open templates whose cached import blocks it would not change.
+ *
+ * Nothing asks for input: an existing output file is only overwritten with
+ * {@code --overwrite}. Query commands print the matching template paths to
+ * standard output, one per line, as a single query run does. The batch stops
+ * at the first command that fails.
+ */
+public class BatchRunner {
+
+    private static final Logger LOGGER = Logger.getLogger(BatchRunner.class.getName());
+
+    private BatchRunner() {
+    }
+
+    /**
+     * Runs the commands of a job file.
+     *
+     * @param jobFilePath    The job file path.
+     * @param defaultOptions The options of the batch command, applied to every
+     *                       command before the options on its own line.
+     * @throws IOException              if the job file cannot be read.
+     * @throws InvalidActionException   if a command has an unknown action.
+     * @throws InvalidArgumentException if a command is malformed. No command
+     *                                  runs in that case. A path that does not
+     *                                  exist only stops the batch when its
+     *                                  command is reached.
+     * @throws AbortException           if a command failed and the batch
+     *                                  stopped.
+     */
+    public static void run(String jobFilePath, String[] defaultOptions)
+            throws IOException, InvalidActionException, InvalidArgumentException, AbortException {
+        List<BatchJob.Command> commands = BatchJob.parse(Paths.get(jobFilePath));
+
+        // Check the syntax of every command before the first one runs. Paths are
+        // checked just before each command, an earlier command may create them.
+        List<String[]> commandArgs = new ArrayList<>();
+        for (BatchJob.Command command : commands) {
+            String[] args = concat(defaultOptions, command.getArguments());
+            String[] arguments = ArgumentValidator.getPositionalArguments(args);
+            if (arguments.length == 0) {
+                throw new InvalidArgumentException(
+                        String.format("Line %d: missing action", command.getLineNumber()));
+            }
+            switch (arguments[0]) {
+                case ArgumentValidator.JSON_ACTION:
+                case ArgumentValidator.STATS_ACTION:
+                case ArgumentValidator.INDEX_ACTION:
+                case ArgumentValidator.VERIFY_ACTION:
+                case ArgumentValidator.QUERY_ACTION:
+                case ArgumentValidator.REPLACE_ACTION:
+                case ArgumentValidator.REWRITE_ACTION:
+                case ArgumentValidator.MERGE_ACTION:
+                    break;
+                default:
+                    throw new InvalidActionException(String.format("Line %d: action %s cannot run in a batch",
+                            command.getLineNumber(), arguments[0]));
+            }
+            try {
+                ArgumentValidator.validateCommand(args);
+            } catch (InvalidArgumentException e) {
+                throw new InvalidArgumentException(
+                        String.format("Line %d: %s", command.getLineNumber(), e.getMessage()));
+            }
+            commandArgs.add(args);
+        }
+
+        ImportBlockCache cache = new ImportBlockCache();
+        for (int i = 0; i < commands.size(); i++) {
+            BatchJob.Command command = commands.get(i);
+            LOGGER.log(Level.INFO, "Running line {0}: {1}", new Object[] { command.getLineNumber(), command });
+            try {
+                execute(commandArgs.get(i), cache);
+            } catch (InvalidActionException | InvalidArgumentException | InvalidFileException | AbortException
+                    | IOException e) {
+                LOGGER.log(Level.SEVERE, "Line {0} failed: {1}", new Object[] { command.getLineNumber(),
+                        e.getMessage() });
+                throw new AbortException(String.format("Batch stopped at line %d after %d of %d commands.",
+                        command.getLineNumber(), i, commands.size()));
+            }
+        }
+        LOGGER.log(Level.INFO, "Batch finished: commands={0} cacheHits={1} cacheMisses={2}",
+                new Object[] { commands.size(), cache.getHits(), cache.getMisses() });
+    }
+
+    private static void execute(String[] args, ImportBlockCache cache) throws InvalidActionException,
+            InvalidArgumentException, InvalidFileException, AbortException, IOException {
+        ArgumentValidator.validateArguments(args);
+        String[] arguments = ArgumentValidator.getPositionalArguments(args);
+        ScanOptions options = ArgumentValidator.parseOptions(args);
+
+        switch (arguments[0]) {
+            case ArgumentValidator.JSON_ACTION:
+                FileUtil.checkOverwrite(arguments[arguments.length - 1], options.isOverwrite());
+                FileUtil.createJsonFile(Arrays.asList(arguments).subList(1, arguments.length - 1),
+                        arguments[arguments.length - 1], options, cache);
+                break;
+            case ArgumentValidator.STATS_ACTION:
+                FileUtil.checkOverwrite(arguments[2], options.isOverwrite());
+                FileUtil.createStatsFile(arguments[1], arguments[2], options, cache);
+                break;
+            case ArgumentValidator.INDEX_ACTION:
+                FileUtil.checkOverwrite(arguments[2], options.isOverwrite());
+                FileUtil.createIndexFile(arguments[1], arguments[2], options, cache);
+                break;
+            case ArgumentValidator.VERIFY_ACTION:
+                FileUtil.checkOverwrite(arguments[2], options.isOverwrite());
+                FileUtil.createVerifyFile(arguments[1], arguments[2], options);
+                break;
+            case ArgumentValidator.QUERY_ACTION:
+                FileUtil.queryIndex(arguments[1], arguments[2]).forEach(System.out::println);
+                break;
+            case ArgumentValidator.REPLACE_ACTION:
+                FileUtil.replaceBlocks(arguments[1], arguments[2], arguments[3], options, cache);
+                break;
+            case ArgumentValidator.REWRITE_ACTION:
+                FileUtil.rewriteBlocks(arguments[1], arguments[2], options, cache);
+                break;
+            case ArgumentValidator.MERGE_ACTION:
+                FileUtil.checkOverwrite(arguments[1], options.isOverwrite());
+                FileUtil.mergeJsonFiles(Arrays.asList(arguments).subList(2, arguments.length), arguments[1]);
+                break;
+        }
+    }
+
+    private static String[] concat(String[] first, String[] second) {
+        String[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrency limit that adapts to the observed per-task latency using AIMD
+ * (additive increase, multiplicative decrease).
+ *
+ * The limit grows by roughly one slot per window of completed tasks while the
+ * short-term latency stays close to the long-term baseline, and is halved once
+ * per window when latency climbs over the baseline or a task fails.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final double SHORT_SMOOTHING = 0.2;
+    private static final double BASELINE_SMOOTHING = 0.02;
+    private static final long THROUGHPUT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight;
+
+    private double shortLatency;
+    private double baselineLatency;
+    private long completedSinceDecrease;
+
+    private long completed;
+    private long windowStart;
+    private long windowCompleted;
+    private double throughput;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid concurrency bounds: min %d, max %d", minLimit, maxLimit));
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Blocks until a slot is available under the current limit and takes it.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Releases a slot and adjusts the limit with the measured task latency.
+     *
+     * @param latencyNanos The task latency in nanoseconds.
+     * @param failed       true if the task failed.
+     */
+    public synchronized void release(long latencyNanos, boolean failed) {
+        // In-flight count at the time the task completed, including itself
+        int inFlightAtCompletion = inFlight;
+        inFlight--;
+        completed++;
+        completedSinceDecrease++;
+        updateThroughput();
+
+        if (shortLatency == 0) {
+            shortLatency = latencyNanos;
+            baselineLatency = latencyNanos;
+        } else {
+            shortLatency += SHORT_SMOOTHING * (latencyNanos - shortLatency);
+            // The baseline follows improvements immediately and degradations only slowly
+            baselineLatency = Math.min(shortLatency,
+                    baselineLatency + BASELINE_SMOOTHING * (latencyNanos - baselineLatency));
+        }
+
+        if (failed || shortLatency > baselineLatency * LATENCY_TOLERANCE) {
+            // Back off at most once per window so one burst of slow tasks does not
+            // collapse the limit to the minimum
+            if (completedSinceDecrease >= limit) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                completedSinceDecrease = 0;
+            }
+        } else if (inFlightAtCompletion >= (int) limit) {
+            // Only probe for more concurrency when the limit is actually the bottleneck
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+
+        notifyAll();
+    }
+
+    private void updateThroughput() {
+        long now = System.nanoTime();
+        if (windowStart == 0) {
+            windowStart = now;
+        }
+        windowCompleted++;
+        long elapsed = now - windowStart;
+        if (elapsed >= THROUGHPUT_WINDOW_NANOS) {
+            throughput = windowCompleted * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            windowStart = now;
+            windowCompleted = 0;
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Gets the number of tasks completed per second in the last full window.
+     *
+     * @return The throughput in tasks per second.
+     */
+    public synchronized double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Gets the smoothed latency of recently completed tasks.
+     *
+     * @return The latency in milliseconds.
+     */
+    public synchronized double getLatencyMillis() {
+        return shortLatency / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
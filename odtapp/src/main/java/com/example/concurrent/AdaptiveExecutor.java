@@ -0,0 +1,144 @@
+package com.example.concurrent;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executor that runs tasks on a worker pool while keeping the number of
+ * in-flight tasks under an {@link AdaptiveConcurrencyLimiter}.
+ *
+ * Submitting blocks the caller while the limit is reached, so a producer never
+ * runs further ahead than the storage can serve.
+ *
+ * The limit backs off on slow tasks and on failed ones. Tasks that handle the
+ * failure of their file themselves call {@link #reportFailure()}, so a share
+ * that fails fast is not taken for a fast one.
+ */
+public class AdaptiveExecutor implements Executor, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(AdaptiveExecutor.class.getName());
+    private static final int INITIAL_LIMIT = 4;
+    private static final long IDLE_WORKER_TIMEOUT_SECONDS = 30;
+
+    // The outcome of the task running on a worker thread
+    private static final ThreadLocal<boolean[]> TASK_FAILED = new ThreadLocal<>();
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final ThreadPoolExecutor workers;
+    private final Object pendingLock = new Object();
+    private int pending;
+
+    public AdaptiveExecutor(int maxConcurrency) {
+        this(new AdaptiveConcurrencyLimiter(INITIAL_LIMIT, 1, maxConcurrency), maxConcurrency);
+    }
+
+    public AdaptiveExecutor(AdaptiveConcurrencyLimiter limiter, int maxConcurrency) {
+        this.limiter = limiter;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(maxConcurrency, maxConcurrency,
+                IDLE_WORKER_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "odt-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the task once a slot is free under the adaptive limit.
+     *
+     * @param task The task to run.
+     * @throws RejectedExecutionException if interrupted while waiting for a slot.
+     */
+    @Override
+    public void execute(Runnable task) {
+        try {
+            limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a free slot", e);
+        }
+        synchronized (pendingLock) {
+            pending++;
+        }
+        workers.execute(() -> {
+            long start = System.nanoTime();
+            boolean[] failed = new boolean[1];
+            TASK_FAILED.set(failed);
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                failed[0] = true;
+                LOGGER.log(Level.SEVERE, "Task failed: {0}", e.getMessage());
+            } finally {
+                TASK_FAILED.remove();
+                limiter.release(System.nanoTime() - start, failed[0]);
+                synchronized (pendingLock) {
+                    pending--;
+                    pendingLock.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Marks the task running on the current thread as failed, for tasks that
+     * catch the error of their file instead of throwing it. Does nothing outside
+     * the tasks of an adaptive executor.
+     */
+    public static void reportFailure() {
+        boolean[] failed = TASK_FAILED.get();
+        if (failed != null) {
+            failed[0] = true;
+        }
+    }
+
+    /**
+     * Waits until every submitted task has completed.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        synchronized (pendingLock) {
+            while (pending > 0) {
+                pendingLock.wait();
+            }
+        }
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Waits for submitted tasks, stops the workers and logs a run summary.
+     */
+    @Override
+    public void close() {
+        try {
+            awaitCompletion();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Stops the workers without waiting for submitted tasks and logs a run
+     * summary. Tasks already submitted still run, for callers that no longer
+     * need their results.
+     */
+    public void shutdown() {
+        workers.shutdown();
+        LOGGER.log(Level.INFO, String.format(
+                "Adaptive executor finished %d tasks. Final limit: %d, throughput: %.1f files/s, latency: %.1f ms",
+                limiter.getCompleted(), limiter.getLimit(), limiter.getThroughput(), limiter.getLatencyMillis()));
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+import com.example.model.ScanOptions;
+
+/**
+ * Point in time by which a run has to answer. Work checks it cooperatively
+ * before starting and stops early once it has passed; nothing is interrupted.
+ */
+public final class Deadline {
+
+    private static final Deadline NONE = new Deadline(false, 0);
+
+    private final boolean set;
+    private final long deadlineNanos;
+
+    private Deadline(boolean set, long deadlineNanos) {
+        this.set = set;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Gets the deadline of runs without a time budget, which never passes.
+     *
+     * @return The deadline.
+     */
+    public static Deadline none() {
+        return NONE;
+    }
+
+    /**
+     * Starts a time budget.
+     *
+     * @param budgetMillis The budget in milliseconds from now.
+     * @return The deadline.
+     */
+    public static Deadline after(long budgetMillis) {
+        return new Deadline(true, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+    }
+
+    /**
+     * Starts the time budget configured in the scan options.
+     *
+     * @param options The scan options.
+     * @return The deadline, or {@link #none()} without a time budget.
+     */
+    public static Deadline of(ScanOptions options) {
+        return options.getTimeBudgetMillis() > 0 ? after(options.getTimeBudgetMillis()) : none();
+    }
+
+    public boolean isSet() {
+        return set;
+    }
+
+    public boolean isExpired() {
+        return set && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * Gets the time left.
+     *
+     * @return The milliseconds until the deadline, 0 once it has passed and
+     *         {@link Long#MAX_VALUE} without a deadline.
+     */
+    public long remainingMillis() {
+        if (!set) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.concurrent;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.example.exception.FileLockedException;
+import com.example.model.ScanOptions;
+
+/**
+ * Serializes rewrites of the same template, within this process and, with
+ * file locks enabled, across processes.
+ *
+ * Within the process, rewrites take one of a fixed number of lock stripes
+ * chosen by the normalized path, so two threads never rewrite the same file at
+ * once while rewrites of different files rarely contend.
+ *
+ * With file locks, a rewrite also takes an exclusive advisory lock on the
+ * template with {@link FileChannel#tryLock()} and treats a LibreOffice lock
+ * file ({@code .~lock.name#}) next to it as held. The template is copied
+ * through the locked channel to a working copy, which is rewritten and moved
+ * over the template. Just before the move the template's modification time,
+ * size and file key are compared with the values read under the lock, so a
+ * save by a program that ignores advisory locks is not overwritten. A held
+ * lock or a failed comparison is retried with exponential backoff, or the
+ * file is skipped at once.
+ */
+public class TemplateLockManager {
+
+    private static final Logger LOGGER = Logger.getLogger(TemplateLockManager.class.getName());
+
+    private static final int STRIPES = 64;
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 2000;
+    private static final String LIBREOFFICE_LOCK_PREFIX = ".~lock.";
+    private static final String LIBREOFFICE_LOCK_SUFFIX = "#";
+    private static final String WORKING_COPY_PREFIX = ".";
+    private static final String WORKING_COPY_SUFFIX = ".odtapp-tmp";
+
+    private final boolean fileLocks;
+    private final boolean skipLocked;
+    private final int retries;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    /**
+     * @param fileLocks  true to lock templates across processes.
+     * @param skipLocked true to skip a locked or concurrently modified template
+     *                   instead of retrying.
+     * @param retries    The number of retries before a locked template fails.
+     */
+    public TemplateLockManager(boolean fileLocks, boolean skipLocked, int retries) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("Invalid number of lock retries: " + retries);
+        }
+        this.fileLocks = fileLocks;
+        this.skipLocked = skipLocked;
+        this.retries = retries;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Gets a manager that only serializes rewrites within this process and
+     * rewrites templates in place.
+     *
+     * @return The manager.
+     */
+    public static TemplateLockManager inProcess() {
+        return new TemplateLockManager(false, false, 0);
+    }
+
+    /**
+     * Gets the manager configured in the scan options.
+     *
+     * @param options The scan options.
+     * @return The manager.
+     */
+    public static TemplateLockManager of(ScanOptions options) {
+        return options.isLock() ? new TemplateLockManager(true, options.isSkipLocked(), options.getLockRetries())
+                : inProcess();
+    }
+
+    /**
+     * Rewrites a template while holding its locks.
+     *
+     * @param file    The template.
+     * @param rewrite The rewrite, given the template itself or, with file
+     *                locks, a working copy of it.
+     * @return The outcome.
+     * @throws FileLockedException if the template stayed locked or kept being
+     *                             modified through every retry.
+     * @throws InterruptedException if interrupted while waiting to retry.
+     * @throws Exception            if the rewrite fails.
+     */
+    public Outcome rewrite(Path file, Rewrite rewrite) throws FileLockedException, InterruptedException, Exception {
+        ReentrantLock stripe = stripes[Math.floorMod(file.toAbsolutePath().normalize().hashCode(), stripes.length)];
+        long backoffMillis = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 0;; attempt++) {
+            Outcome outcome;
+            stripe.lock();
+            try {
+                outcome = fileLocks ? rewriteLocked(file, rewrite)
+                        : rewrite.apply(file) ? Outcome.REWRITTEN : Outcome.UNCHANGED;
+            } finally {
+                stripe.unlock();
+            }
+            if (outcome != Outcome.LOCKED || skipLocked) {
+                return outcome;
+            }
+            if (attempt >= retries) {
+                throw new FileLockedException(String.format(
+                        "The file %s is locked or being modified by another program, gave up after %d attempts.",
+                        file, attempt + 1));
+            }
+            LOGGER.log(Level.FINE, "File {0} is locked, retrying in {1} ms", new Object[] { file, backoffMillis });
+            Thread.sleep(backoffMillis);
+            backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    private Outcome rewriteLocked(Path file, Rewrite rewrite) throws Exception {
+        // LibreOffice marks an open document with a lock file instead of a file lock
+        Path editorLock = file.resolveSibling(LIBREOFFICE_LOCK_PREFIX + file.getFileName() + LIBREOFFICE_LOCK_SUFFIX);
+        if (Files.exists(editorLock)) {
+            return Outcome.LOCKED;
+        }
+        Object keyBeforeOpen = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                FileLock lock = channel.tryLock()) {
+            if (lock == null) {
+                return Outcome.LOCKED;
+            }
+
+            // The template may have been replaced between reading its key and opening it,
+            // the lock then protects a file that is no longer at the path
+            BasicFileAttributes locked = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!Objects.equals(keyBeforeOpen, locked.fileKey())) {
+                return Outcome.LOCKED;
+            }
+
+            // Copy through the locked channel, on Windows the lock keeps other handles
+            // from reading the file
+            Path workingCopy = file.resolveSibling(WORKING_COPY_PREFIX + file.getFileName() + WORKING_COPY_SUFFIX);
+            try {
+                try (FileChannel copy = FileChannel.open(workingCopy, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    long size = channel.size();
+                    for (long position = 0; position < size;) {
+                        position += channel.transferTo(position, size - position, copy);
+                    }
+                }
+                if (!rewrite.apply(workingCopy)) {
+                    return Outcome.UNCHANGED;
+                }
+
+                // Optimistic check against writers that ignore advisory locks
+                BasicFileAttributes current = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!current.lastModifiedTime().equals(locked.lastModifiedTime()) || current.size() != locked.size()
+                        || !Objects.equals(current.fileKey(), locked.fileKey())) {
+                    LOGGER.log(Level.WARNING, "File {0} was modified during the rewrite, discarding the rewrite",
+                            file);
+                    return Outcome.LOCKED;
+                }
+                Files.move(workingCopy, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return Outcome.REWRITTEN;
+            } finally {
+                Files.deleteIfExists(workingCopy);
+            }
+        }
+    }
+
+    /**
+     * The outcome of a rewrite.
+     */
+    public enum Outcome {
+        REWRITTEN, UNCHANGED,
+        // Skipped because the template was locked or modified concurrently
+        LOCKED
+    }
+
+    /**
+     * Rewrites a template.
+     */
+    @FunctionalInterface
+    public interface Rewrite {
+
+        /**
+         * @param file The file to rewrite.
+         * @return true if the file was changed.
+         * @throws Exception if the rewrite fails.
+         */
+        boolean apply(Path file) throws Exception;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.concurrent;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times out work from a single daemon thread. The work polls its
+ * {@link Watch} in its loops, a volatile read instead of a clock read, and
+ * stops with an error once the watchdog has expired it. Nothing is
+ * interrupted, so pooled threads are never left with a stray interrupt.
+ */
+public final class Watchdog {
+
+    private static final Watch UNLIMITED = new Watch(0);
+
+    private Watchdog() {
+    }
+
+    /**
+     * Starts watching a piece of work.
+     *
+     * @param timeoutMillis The time the work may take, 0 for no limit.
+     * @return The watch, to be closed when the work is done.
+     */
+    public static Watch watch(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return UNLIMITED;
+        }
+        Watch watch = new Watch(timeoutMillis);
+        watch.timer = Timer.INSTANCE.schedule(() -> {
+            watch.expired = true;
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        return watch;
+    }
+
+    /**
+     * The timer thread, only started by the first watch with a timeout.
+     */
+    private static final class Timer {
+        private static final ScheduledThreadPoolExecutor INSTANCE = createTimer();
+
+        private static ScheduledThreadPoolExecutor createTimer() {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+                Thread thread = new Thread(task, "odtapp-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Most watches are closed long before they expire
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+    }
+
+    /**
+     * The timeout of one piece of work.
+     */
+    public static final class Watch implements AutoCloseable {
+        private final long timeoutMillis;
+        private volatile boolean expired;
+        private ScheduledFuture<?> timer;
+
+        private Watch(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        public boolean isExpired() {
+            return expired;
+        }
+
+        public long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        /**
+         * Stops watching the work.
+         */
+        @Override
+        public void close() {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.exception;
+
+public class FileLockedException extends Exception {
+    public FileLockedException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.example.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * Handler that queues log records and publishes them to a target handler on a
+ * background thread, so threads that log never format a message or wait for
+ * console I/O. Records are published in the order they were queued. When the
+ * queue is full, the logging thread waits for space instead of dropping
+ * records.
+ */
+public class AsyncHandler extends Handler {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    private static final int MAX_BATCH = 256;
+
+    private final Handler target;
+    private final BlockingQueue<LogRecord> queue;
+    private final Thread writer;
+    private final Object progress = new Object();
+    private long queued;
+    private long published;
+    private volatile boolean closed;
+
+    /**
+     * @param target   The handler that formats and writes the records.
+     * @param capacity The number of records buffered before logging threads
+     *                 wait.
+     */
+    public AsyncHandler(Handler target, int capacity) {
+        this.target = target;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        setLevel(target.getLevel());
+        this.writer = new Thread(this::publishQueued, "odt-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public Handler getTarget() {
+        return target;
+    }
+
+    @Override
+    public void setFormatter(Formatter formatter) {
+        target.setFormatter(formatter);
+    }
+
+    @Override
+    public Formatter getFormatter() {
+        return target.getFormatter();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+        // The caller is inferred from the stack, which must happen on the logging
+        // thread
+        record.getSourceClassName();
+        if (closed) {
+            target.publish(record);
+            return;
+        }
+        synchronized (progress) {
+            queued++;
+        }
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (progress) {
+                queued--;
+            }
+            target.publish(record);
+        }
+    }
+
+    /**
+     * Waits until every queued record has been published and flushes the target.
+     */
+    @Override
+    public void flush() {
+        synchronized (progress) {
+            while (published < queued && writer.isAlive()) {
+                try {
+                    progress.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        target.flush();
+    }
+
+    /**
+     * Publishes the remaining records and closes the target. Records published
+     * after closing go to the target directly.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Publish what the writer left behind, in order
+        List<LogRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (LogRecord record : remaining) {
+            target.publish(record);
+        }
+        target.close();
+    }
+
+    private void publishQueued() {
+        List<LogRecord> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                if (closed) {
+                    synchronized (progress) {
+                        progress.notifyAll();
+                    }
+                    return;
+                }
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            for (LogRecord record : batch) {
+                try {
+                    target.publish(record);
+                } catch (RuntimeException e) {
+                    reportError("Failed to publish log record", e, ErrorManager.WRITE_FAILURE);
+                }
+            }
+            // Flush once per batch instead of once per record
+            if (queue.isEmpty()) {
+                target.flush();
+            }
+            synchronized (progress) {
+                published += batch.size();
+                progress.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+}
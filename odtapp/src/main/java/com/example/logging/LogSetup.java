@@ -0,0 +1,50 @@
+package com.example.logging;
+
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+/**
+ * Routes the console output of {@code java.util.logging} through an
+ * {@link AsyncHandler}.
+ */
+public class LogSetup {
+
+    private LogSetup() {
+    }
+
+    /**
+     * Wraps the console handlers of the root logger in asynchronous handlers.
+     * Calling it again has no effect.
+     */
+    public static synchronized void install() {
+        Logger root = LogManager.getLogManager().getLogger("");
+        for (Handler handler : root.getHandlers()) {
+            if (handler instanceof ConsoleHandler) {
+                root.removeHandler(handler);
+                root.addHandler(new AsyncHandler(handler, AsyncHandler.DEFAULT_CAPACITY));
+            }
+        }
+    }
+
+    /**
+     * Switches the asynchronous handlers to the {@link StructuredFormatter}.
+     */
+    public static synchronized void useStructuredFormat() {
+        for (Handler handler : LogManager.getLogManager().getLogger("").getHandlers()) {
+            if (handler instanceof AsyncHandler) {
+                handler.setFormatter(new StructuredFormatter());
+            }
+        }
+    }
+
+    /**
+     * Waits until every queued record has been written.
+     */
+    public static void flush() {
+        for (Handler handler : LogManager.getLogManager().getLogger("").getHandlers()) {
+            handler.flush();
+        }
+    }
+}
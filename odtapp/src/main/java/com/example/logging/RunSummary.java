@@ -0,0 +1,83 @@
+package com.example.logging;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts the outcomes of the files processed by one run, so the run logs one
+ * summary line instead of one INFO line per file. Counting is safe from any
+ * number of threads.
+ */
+public class RunSummary {
+
+    public static final String READ = "read";
+    public static final String REPLACED = "replaced";
+    public static final String UNCHANGED = "unchanged";
+    public static final String SKIPPED = "skipped";
+    public static final String LOCKED = "locked";
+    public static final String CACHED = "cached";
+    public static final String DEDUPLICATED = "deduplicated";
+    public static final String FAILED = "failed";
+    public static final String INCOMPLETE = "incomplete";
+
+    private final String action;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, LongAdder> counts = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param action The action of the run, used as the prefix of the summary.
+     */
+    public RunSummary(String action) {
+        this.action = action;
+    }
+
+    /**
+     * Counts one file with the given outcome.
+     *
+     * @param outcome The outcome, for example {@link #REPLACED}.
+     */
+    public void increment(String outcome) {
+        counts.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Gets the number of files with the given outcome.
+     *
+     * @param outcome The outcome.
+     * @return The count.
+     */
+    public long get(String outcome) {
+        LongAdder count = counts.get(outcome);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Gets the number of files counted with any outcome.
+     *
+     * @return The total count.
+     */
+    public long getTotal() {
+        return counts.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * Logs the summary at INFO, with failures raising the level to WARNING.
+     *
+     * @param logger The logger.
+     */
+    public void log(Logger logger) {
+        Level level = get(FAILED) > 0 ? Level.WARNING : Level.INFO;
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        StringBuilder message = new StringBuilder();
+        message.append(action).append(" finished: files=").append(getTotal());
+        counts.forEach((outcome, count) -> message.append(' ').append(outcome).append('=').append(count.sum()));
+        message.append(" elapsedMs=").append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        logger.log(level, message.toString());
+    }
+}
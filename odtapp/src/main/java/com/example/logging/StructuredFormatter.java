@@ -0,0 +1,76 @@
+package com.example.logging;
+
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Formats each record as one line of {@code key=value} pairs (logfmt), which
+ * log shippers can index without parsing free text:
+ *
+ * <pre>
+ * time=2024-05-01T10:15:30.120Z level=INFO logger=com.example.util.FileUtil msg="Replaced 3 files"
+ * </pre>
+ *
+ * The message parameters are only formatted here, on the thread that writes
+ * the record.
+ */
+public class StructuredFormatter extends Formatter {
+
+    @Override
+    public String format(LogRecord record) {
+        StringBuilder line = new StringBuilder(128);
+        append(line, "time", record.getInstant().toString());
+        append(line, "level", record.getLevel().getName());
+        append(line, "logger", record.getLoggerName());
+        append(line, "msg", formatMessage(record));
+        if (record.getThrown() != null) {
+            append(line, "error", record.getThrown().toString());
+        }
+        return line.append(System.lineSeparator()).toString();
+    }
+
+    private static void append(StringBuilder line, String key, String value) {
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(key).append('=');
+        if (value == null) {
+            line.append("\"\"");
+        } else if (needsQuotes(value)) {
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        line.append('\\').append(c);
+                        break;
+                    case '\n':
+                        line.append("\\n");
+                        break;
+                    case '\r':
+                        line.append("\\r");
+                        break;
+                    default:
+                        line.append(c);
+                }
+            }
+            line.append('"');
+        } else {
+            line.append(value);
+        }
+    }
+
+    private static boolean needsQuotes(String value) {
+        if (value.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c <= ' ' || c == '"' || c == '=' || c == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
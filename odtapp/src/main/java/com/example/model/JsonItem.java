@@ -6,6 +6,7 @@ import lombok.RequiredArgsConstructor;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @RequiredArgsConstructor
@@ -18,10 +19,16 @@ public class JsonItem {
 
     private List<String> importBlocks;
 
+    // Values of the extraction rules by section, null without rules or matches
+    private Map<String, List<String>> extracted;
+
     private LinkedList<JsonItem> children;
 
     private String error;
 
+    // True if a time budget ran out before the entry was read, null otherwise
+    private Boolean incomplete;
+
     public static String DIRECTORY_TYPE = "directory";
     public static String FILE_TYPE = "file";
 
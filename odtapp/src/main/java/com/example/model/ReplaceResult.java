@@ -0,0 +1,23 @@
+package com.example.model;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * Outcome of a replace over a file or directory. Paths are listed in walk
+ * order.
+ */
+@Data
+public class ReplaceResult {
+    // Files where at least one import block was rewritten
+    private final List<Path> replacedFiles;
+
+    // Files that were processed without a rewrite
+    private final List<Path> unchangedFiles;
+
+    // Files that could not be processed, with their error message
+    private final Map<Path, String> failedFiles;
+}
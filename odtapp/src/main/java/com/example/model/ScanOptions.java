@@ -0,0 +1,103 @@
+package com.example.model;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class ScanOptions {
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+    public static final List<String> DEFAULT_PARTS = List.of("content.xml", "styles.xml");
+    public static final int DEFAULT_TOP = 20;
+    public static final int DEFAULT_IO_THREADS = 8;
+    public static final int DEFAULT_LOCK_RETRIES = 5;
+    public static final int DEFAULT_READ_AHEAD_MEMORY = 64;
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 256;
+    public static final int DEFAULT_MAX_COMPRESSION_RATIO = 100;
+    public static final int DEFAULT_FILE_TIMEOUT_MILLIS = 60000;
+
+    private boolean adaptive;
+
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+    private List<String> parts = DEFAULT_PARTS;
+
+    private boolean embeddedObjects;
+
+    private boolean streaming;
+
+    // Scan with separate reader, parser and writer stages
+    private boolean pipeline;
+
+    private int ioThreads = DEFAULT_IO_THREADS;
+
+    // Number of files read asynchronously ahead of the parsers, 0 to read on the
+    // reader threads
+    private int readAhead;
+
+    // Megabytes of file data held by the files read ahead
+    private int readAheadMemory = DEFAULT_READ_AHEAD_MEMORY;
+
+    // Milliseconds a json scan may take before it returns what it has read, 0
+    // for no limit
+    private int timeBudgetMillis;
+
+    // Megabytes an XML part of a file may inflate to
+    private int maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+
+    // Bytes an XML part may inflate to per compressed byte
+    private int maxCompressionRatio = DEFAULT_MAX_COMPRESSION_RATIO;
+
+    // Milliseconds reading or parsing one file may take, 0 for no limit
+    private int fileTimeoutMillis = DEFAULT_FILE_TIMEOUT_MILLIS;
+
+    // Skip parsing parts without import fields, which are then not checked for
+    // errors or element limits
+    private boolean skipFieldlessParts;
+
+    // Zero-based index of the shard to scan and the number of shards
+    private int shardIndex;
+
+    private int shardCount = 1;
+
+    private boolean resume;
+
+    // Checkpoint file of a resumable run, null for the default location
+    private String checkpointPath;
+
+    // Rules file of the values a json scan extracts next to the import blocks,
+    // null for import blocks only
+    private String extractRulesPath;
+
+    // Read byte-identical copies of a template once
+    private boolean dedup;
+
+    // Lock templates across processes while replace and rewrite change them
+    private boolean lock;
+
+    // Skip a locked template instead of retrying it
+    private boolean skipLocked;
+
+    private int lockRetries = DEFAULT_LOCK_RETRIES;
+
+    // Overwrite existing output files without asking
+    private boolean overwrite;
+
+    // Log lines as key=value pairs instead of the plain text format
+    private boolean structuredLog;
+
+    // Glob patterns of the files to scan and of the entries to skip
+    private List<String> includes = List.of();
+
+    private List<String> excludes = List.of();
+
+    // Maximum depth below the start directory, its entries are at depth 1
+    private int maxDepth = Integer.MAX_VALUE;
+
+    // Follow symbolic links during walks, entering each directory once per path
+    // from the start
+    private boolean followLinks;
+
+    // Number of most used blocks in the stats report
+    private int top = DEFAULT_TOP;
+}
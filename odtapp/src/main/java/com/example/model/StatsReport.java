@@ -0,0 +1,47 @@
+package com.example.model;
+
+import java.util.List;
+import java.util.Map;
+
+import lombok.Data;
+
+@Data
+public class StatsReport {
+    // Number of ODT files scanned, with and without import blocks, and failed
+    private long templates;
+
+    private long templatesWithBlocks;
+
+    private long failedTemplates;
+
+    // Sum of the number of distinct import blocks of each template
+    private long blockUsages;
+
+    // Exact while the block counts are exact, a HyperLogLog estimate otherwise
+    private long distinctBlocks;
+
+    // false once there were more distinct blocks than counters, the counts may
+    // then exceed the true counts by their error
+    private boolean exact;
+
+    private List<BlockCount> topBlocks;
+
+    // Every counted block by descending count
+    private List<BlockCount> blocks;
+
+    // Relative paths, with / as the separator
+    private List<String> templatesWithoutBlocks;
+
+    // Failed templates per relative directory path, "." for the start directory
+    private Map<String, Long> errorsByDirectory;
+
+    @Data
+    public static class BlockCount {
+        private final String block;
+
+        // Number of templates that use the block
+        private final long count;
+
+        private final long error;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.model;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class VerifyReport {
+    // Number of ODT files checked, passing every check and failing at least one
+    private long templates;
+
+    private long validTemplates;
+
+    private long invalidTemplates;
+
+    // Failed templates by relative path, with / as the separator
+    private List<Failure> failures;
+
+    @Data
+    public static class Failure {
+        private final String path;
+
+        private final List<Problem> problems;
+    }
+
+    @Data
+    public static class Problem {
+        // One of zip, mimetype, crc, xml and read
+        private final String check;
+
+        // The ZIP entry, null for problems of the whole file
+        private final String entry;
+
+        private final String message;
+    }
+}
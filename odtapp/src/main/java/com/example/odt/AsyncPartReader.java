@@ -0,0 +1,426 @@
+package com.example.odt;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the selected parts of an ODT file with an
+ * {@link AsynchronousFileChannel}, so the reads of many files can be in flight
+ * at once on storage with a high latency per request.
+ *
+ * The end of the file is read first to find the central directory, then the
+ * local header and compressed data of each part are read with one request per
+ * part, all parts of a file at the same time. Only the compressed bytes are
+ * kept; {@link Prefetched#inflate()} inflates them later, on whichever thread
+ * parses them.
+ *
+ * Only plain ZIP archives are handled: ZIP64, encrypted entries and methods
+ * other than stored and deflated fail the read, as does any inconsistency in
+ * the headers. Callers fall back to {@link OdtFile#readParts()}, which handles
+ * every archive {@link java.util.zip.ZipFile} does and reports the same errors
+ * as the other scans.
+ */
+public final class AsyncPartReader {
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    // Local extra fields may be longer than the central ones, read a little more to
+    // get the data with the header in one request
+    private static final int LOCAL_EXTRA_SLACK = 256;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int ENCRYPTED_FLAG = 1;
+    private static final long ZIP64_MARKER = 0xffffffffL;
+
+    private AsyncPartReader() {
+    }
+
+    /**
+     * Starts reading the parts of an ODT file.
+     *
+     * @param file  The ODT file.
+     * @param parts The parts to read.
+     * @return The compressed parts that exist in the file, in part order, or a
+     *         failed future if the file cannot be read this way.
+     */
+    public static CompletableFuture<Prefetched> read(Path file, OdtParts parts) {
+        return read(file, parts, ResourceLimits.DEFAULT);
+    }
+
+    /**
+     * Starts reading the parts of an ODT file. Parts whose declared sizes exceed
+     * the limits are not read; the inflated sizes are checked against the
+     * declared ones, so nothing larger gets past.
+     *
+     * @param file   The ODT file.
+     * @param parts  The parts to read.
+     * @param limits The limits of the parts.
+     * @return The compressed parts that exist in the file, in part order, or a
+     *         failed future if the file cannot be read this way.
+     */
+    public static CompletableFuture<Prefetched> read(Path file, OdtParts parts, ResourceLimits limits) {
+        AsynchronousFileChannel channel;
+        long size;
+        try {
+            channel = AsynchronousFileChannel.open(file, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            size = channel.size();
+        } catch (IOException e) {
+            close(channel);
+            return CompletableFuture.failedFuture(e);
+        }
+        return readCentralDirectory(channel, size)
+                .thenCompose(entries -> resolveParts(channel, size, entries, parts, limits)
+                        .thenCompose(names -> readEntries(channel, size, entries, names, limits)))
+                .whenComplete((prefetched, e) -> close(channel));
+    }
+
+    /**
+     * Finds the end of central directory record in the last bytes of the file
+     * and reads the central directory.
+     */
+    private static CompletableFuture<Map<String, Entry>> readCentralDirectory(AsynchronousFileChannel channel,
+            long size) {
+        int tailLength = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_LENGTH);
+        long tailStart = size - tailLength;
+        return read(channel, tailStart, tailLength).thenCompose(unchecked(tail -> {
+            int end = findEndOfCentralDirectory(tail);
+            int count = tail.getShort(end + 10) & 0xffff;
+            long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+            long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+            if (count == 0xffff || directorySize == ZIP64_MARKER || directoryOffset == ZIP64_MARKER) {
+                throw new ZipException("ZIP64 archives are not read ahead");
+            }
+            if (directoryOffset + directorySize > tailStart + end) {
+                throw new ZipException("Invalid central directory offset");
+            }
+
+            // The central directory of a small file is already in the tail
+            if (directoryOffset >= tailStart) {
+                int start = (int) (directoryOffset - tailStart);
+                ByteBuffer directory = slice(tail, start, (int) directorySize);
+                return CompletableFuture.completedFuture(parseCentralDirectory(directory, count));
+            }
+            return read(channel, directoryOffset, (int) directorySize)
+                    .thenApply(unchecked(directory -> parseCentralDirectory(directory, count)));
+        }));
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer tail) throws ZipException {
+        for (int i = tail.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE
+                    && i + END_OF_CENTRAL_DIRECTORY_SIZE + (tail.getShort(i + 20) & 0xffff) <= tail.limit()) {
+                return i;
+            }
+        }
+        throw new ZipException("zip END header not found");
+    }
+
+    private static Map<String, Entry> parseCentralDirectory(ByteBuffer directory, int count) throws ZipException {
+        Map<String, Entry> entries = new HashMap<>();
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_HEADER_SIZE > directory.limit()
+                    || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header");
+            }
+            int nameLength = directory.getShort(position + 28) & 0xffff;
+            int extraLength = directory.getShort(position + 30) & 0xffff;
+            int commentLength = directory.getShort(position + 32) & 0xffff;
+            if (position + CENTRAL_HEADER_SIZE + nameLength > directory.limit()) {
+                throw new ZipException("Invalid central directory header");
+            }
+            byte[] name = new byte[nameLength];
+            directory.position(position + CENTRAL_HEADER_SIZE);
+            directory.get(name);
+            Entry entry = new Entry(directory.getShort(position + 8) & 0xffff,
+                    directory.getShort(position + 10) & 0xffff, directory.getInt(position + 16) & 0xffffffffL,
+                    directory.getInt(position + 20) & 0xffffffffL, directory.getInt(position + 24) & 0xffffffffL,
+                    directory.getInt(position + 42) & 0xffffffffL, nameLength, extraLength);
+            entries.putIfAbsent(new String(name, StandardCharsets.UTF_8), entry);
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * Resolves the part names, reading the manifest first if embedded objects
+     * are selected.
+     */
+    private static CompletableFuture<List<String>> resolveParts(AsynchronousFileChannel channel, long size,
+            Map<String, Entry> entries, OdtParts parts, ResourceLimits limits) {
+        Entry manifest = entries.get(OdtParts.MANIFEST_PATH);
+        if (!parts.isEmbeddedObjects() || manifest == null) {
+            try {
+                return CompletableFuture.completedFuture(parts.resolve(() -> null));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        try {
+            limits.checkEntry(OdtParts.MANIFEST_PATH, manifest.size, manifest.compressedSize);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return readEntry(channel, size, manifest).thenApply(unchecked(data -> {
+            byte[] content = data.inflate();
+            return parts.resolve(() -> new ByteArrayInputStream(content));
+        }));
+    }
+
+    private static CompletableFuture<Prefetched> readEntries(AsynchronousFileChannel channel, long size,
+            Map<String, Entry> entries, List<String> names, ResourceLimits limits) {
+        List<CompletableFuture<CompressedPart>> reads = new ArrayList<>();
+        for (String name : names) {
+            Entry entry = entries.get(name);
+            if (entry == null) {
+                continue;
+            }
+            try {
+                limits.checkEntry(name, entry.size, entry.compressedSize);
+            } catch (IOException e) {
+                reads.add(CompletableFuture.failedFuture(e));
+                continue;
+            }
+            reads.add(readEntry(channel, size, entry));
+        }
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<CompressedPart> compressedParts = new ArrayList<>();
+            for (CompletableFuture<CompressedPart> read : reads) {
+                compressedParts.add(read.join());
+            }
+            return new Prefetched(compressedParts);
+        });
+    }
+
+    /**
+     * Reads the local header and the data of an entry, with a second request
+     * only if the local extra field is longer than expected.
+     */
+    private static CompletableFuture<CompressedPart> readEntry(AsynchronousFileChannel channel, long size,
+            Entry entry) {
+        if ((entry.flags & ENCRYPTED_FLAG) != 0 || (entry.method != STORED && entry.method != DEFLATED)
+                || entry.compressedSize == ZIP64_MARKER || entry.size == ZIP64_MARKER
+                || entry.localOffset == ZIP64_MARKER || entry.size > Integer.MAX_VALUE - 1) {
+            return CompletableFuture.failedFuture(new ZipException("Unsupported entry"));
+        }
+        long length = Math.min(size - entry.localOffset,
+                LOCAL_HEADER_SIZE + entry.nameLength + entry.extraLength + entry.compressedSize + LOCAL_EXTRA_SLACK);
+        if (length < LOCAL_HEADER_SIZE) {
+            return CompletableFuture.failedFuture(new ZipException("Invalid local header offset"));
+        }
+        return read(channel, entry.localOffset, (int) length).thenCompose(unchecked(header -> {
+            if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header");
+            }
+            long dataOffset = LOCAL_HEADER_SIZE + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+            if (dataOffset + entry.compressedSize <= header.limit()) {
+                return CompletableFuture.completedFuture(
+                        new CompressedPart(entry, slice(header, (int) dataOffset, (int) entry.compressedSize)));
+            }
+            return read(channel, entry.localOffset + dataOffset, (int) entry.compressedSize)
+                    .thenApply(data -> new CompressedPart(entry, data));
+        }));
+    }
+
+    /**
+     * Reads a range of the file completely, continuing after short reads.
+     */
+    private static CompletableFuture<ByteBuffer> read(AsynchronousFileChannel channel, long position, int length) {
+        CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        CompletionHandler<Integer, ByteBuffer> handler = new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer read, ByteBuffer target) {
+                if (!target.hasRemaining()) {
+                    target.flip();
+                    result.complete(target);
+                } else if (read < 0) {
+                    result.completeExceptionally(new EOFException("Unexpected end of file"));
+                } else {
+                    startRead(channel, target, position + target.position(), this, result);
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, ByteBuffer target) {
+                result.completeExceptionally(e);
+            }
+        };
+        startRead(channel, buffer, position, handler, result);
+        return result;
+    }
+
+    private static void startRead(AsynchronousFileChannel channel, ByteBuffer buffer, long position,
+            CompletionHandler<Integer, ByteBuffer> handler, CompletableFuture<ByteBuffer> result) {
+        try {
+            channel.read(buffer, position, buffer, handler);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) throws ZipException {
+        if (offset < 0 || offset + length > buffer.limit()) {
+            throw new ZipException("Entry outside of the file");
+        }
+        ByteBuffer copy = buffer.duplicate();
+        copy.position(offset).limit(offset + length);
+        return copy.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void close(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing is written, the reads are complete
+        }
+    }
+
+    private static <T, R> Function<T, R> unchecked(IoFunction<T, R> function) {
+        return value -> {
+            try {
+                return function.apply(value);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface IoFunction<T, R> {
+        R apply(T value) throws IOException;
+    }
+
+    /**
+     * The central directory record of an entry.
+     */
+    private static final class Entry {
+        private final int flags;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localOffset;
+        private final int nameLength;
+        private final int extraLength;
+
+        private Entry(int flags, int method, long crc, long compressedSize, long size, long localOffset,
+                int nameLength, int extraLength) {
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+            this.nameLength = nameLength;
+            this.extraLength = extraLength;
+        }
+    }
+
+    /**
+     * The compressed data of an entry.
+     */
+    private static final class CompressedPart {
+        private final Entry entry;
+        private final ByteBuffer data;
+
+        private CompressedPart(Entry entry, ByteBuffer data) {
+            this.entry = entry;
+            this.data = data;
+        }
+
+        /**
+         * Inflates the data and checks it against the size and CRC-32 of the
+         * central directory.
+         */
+        private byte[] inflate() throws IOException {
+            byte[] content = new byte[(int) entry.size];
+            if (entry.method == STORED) {
+                if (data.remaining() != content.length) {
+                    throw new ZipException("Invalid stored entry size");
+                }
+                data.duplicate().get(content);
+            } else {
+                Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(data.duplicate());
+                    int length = 0;
+                    while (length < content.length && !inflater.finished()) {
+                        int inflated = inflater.inflate(content, length, content.length - length);
+                        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        length += inflated;
+                    }
+                    if (length != content.length) {
+                        throw new ZipException("Invalid deflated entry size");
+                    }
+                } catch (DataFormatException e) {
+                    throw new ZipException(e.getMessage());
+                } finally {
+                    inflater.end();
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if (crc.getValue() != entry.crc) {
+                throw new ZipException("Invalid entry CRC");
+            }
+            return content;
+        }
+    }
+
+    /**
+     * The compressed parts of a file, read ahead.
+     */
+    public static final class Prefetched {
+        private final List<CompressedPart> parts;
+
+        private Prefetched(List<CompressedPart> parts) {
+            this.parts = parts;
+        }
+
+        /**
+         * Inflates the parts.
+         *
+         * @return The content of each part, in part order, like
+         *         {@link OdtFile#readParts()}.
+         * @throws IOException if a part is corrupt.
+         */
+        public List<byte[]> inflate() throws IOException {
+            List<byte[]> contents = new ArrayList<>();
+            for (CompressedPart part : parts) {
+                contents.add(part.inflate());
+            }
+            return contents;
+        }
+    }
+}
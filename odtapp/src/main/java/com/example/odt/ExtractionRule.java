@@ -0,0 +1,162 @@
+package com.example.odt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLStreamReader;
+
+import com.example.exception.InvalidArgumentException;
+
+/**
+ * Rule that extracts a value from the elements of an XML part, written like a
+ * small XPath step:
+ *
+ * <pre>
+ * section = element[predicate]...&#47;capture
+ * </pre>
+ *
+ * The element is a qualified name such as {@code text:user-field-decl}. Each
+ * predicate is {@code [@attribute]}, {@code [@attribute='value']} or
+ * {@code [@attribute!='value']}. The capture is {@code text()} for the text
+ * content of the element or {@code @attribute} for an attribute value. The
+ * values are reported under the section name.
+ */
+public final class ExtractionRule {
+
+    public static final String TEXT_CAPTURE = "text()";
+
+    private static final String NAME = "[A-Za-z_][\\w.-]*(?::[A-Za-z_][\\w.-]*)?";
+    private static final Pattern RULE_PATTERN = Pattern.compile(
+            "([A-Za-z_][\\w-]*)\\s*=\\s*(" + NAME + ")((?:\\[[^\\]]*\\])*)/(text\\(\\)|@" + NAME + ")");
+    private static final Pattern PREDICATE_PATTERN = Pattern
+            .compile("\\[@(" + NAME + ")(?:(!?=)'([^']*)')?\\]");
+
+    private final String section;
+    private final String element;
+    private final List<Predicate> predicates;
+    // Null to capture the text content
+    private final String captureAttribute;
+
+    ExtractionRule(String section, String element, List<Predicate> predicates, String captureAttribute) {
+        this.section = section;
+        this.element = element;
+        this.predicates = List.copyOf(predicates);
+        this.captureAttribute = captureAttribute;
+    }
+
+    /**
+     * Parses a rule.
+     *
+     * @param rule The rule, for example
+     *             {@code variables = text:variable-decl/@text:name}.
+     * @return The rule.
+     * @throws InvalidArgumentException if the rule is malformed.
+     */
+    public static ExtractionRule parse(String rule) throws InvalidArgumentException {
+        Matcher matcher = RULE_PATTERN.matcher(rule.trim());
+        if (!matcher.matches()) {
+            throw new InvalidArgumentException(String.format(
+                    "Invalid extraction rule %s. Expected: <section> = <element>[@<attribute>='<value>']/<capture>",
+                    rule.trim()));
+        }
+        List<Predicate> predicates = new ArrayList<>();
+        Matcher predicate = PREDICATE_PATTERN.matcher(matcher.group(3));
+        int end = 0;
+        while (predicate.find() && predicate.start() == end) {
+            predicates.add(new Predicate(predicate.group(1), predicate.group(3), "!=".equals(predicate.group(2))));
+            end = predicate.end();
+        }
+        if (end != matcher.group(3).length()) {
+            throw new InvalidArgumentException(String.format("Invalid predicate in extraction rule %s.", rule.trim()));
+        }
+        String capture = matcher.group(4);
+        return new ExtractionRule(matcher.group(1), matcher.group(2), predicates,
+                TEXT_CAPTURE.equals(capture) ? null : capture.substring(1));
+    }
+
+    public String getSection() {
+        return section;
+    }
+
+    public String getElement() {
+        return element;
+    }
+
+    boolean capturesText() {
+        return captureAttribute == null;
+    }
+
+    /**
+     * Checks the predicates on the attributes of the current start element.
+     */
+    boolean matches(XMLStreamReader reader) {
+        for (Predicate predicate : predicates) {
+            String value = attribute(reader, predicate.attribute);
+            boolean holds = predicate.value == null ? value != null
+                    : value != null && predicate.value.equals(value) != predicate.negated;
+            if (!holds) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the captured attribute of the current start element.
+     */
+    String capture(XMLStreamReader reader) {
+        return attribute(reader, captureAttribute);
+    }
+
+    /**
+     * Gets an attribute of the current start element by its qualified name, as
+     * written in the document.
+     */
+    private static String attribute(XMLStreamReader reader, String qualifiedName) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = reader.getAttributePrefix(i);
+            String localName = reader.getAttributeLocalName(i);
+            if (prefix == null || prefix.isEmpty() ? qualifiedName.equals(localName)
+                    : qualifiedName.length() == prefix.length() + 1 + localName.length()
+                            && qualifiedName.startsWith(prefix) && qualifiedName.charAt(prefix.length()) == ':'
+                            && qualifiedName.endsWith(localName)) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder rule = new StringBuilder(section).append(" = ").append(element);
+        for (Predicate predicate : predicates) {
+            rule.append(predicate);
+        }
+        return rule.append('/').append(captureAttribute == null ? TEXT_CAPTURE : "@" + captureAttribute)
+                .toString();
+    }
+
+    /**
+     * A condition on an attribute of the element.
+     */
+    static final class Predicate {
+        private final String attribute;
+        // Null if the attribute only has to be present
+        private final String value;
+        private final boolean negated;
+
+        Predicate(String attribute, String value, boolean negated) {
+            this.attribute = attribute;
+            this.value = value;
+            this.negated = negated;
+        }
+
+        @Override
+        public String toString() {
+            return value == null ? "[@" + attribute + "]"
+                    : String.format("[@%s%s'%s']", attribute, negated ? "!=" : "=", value);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.odt;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.example.concurrent.Watchdog;
+import com.example.exception.InvalidArgumentException;
+
+/**
+ * Set of extraction rules compiled into a single matcher.
+ *
+ * The rules are indexed by element name, together with the built-in rule for
+ * import blocks, so each XML part is parsed once with a StAX reader and every
+ * start element costs one map lookup however many rules there are. Text
+ * captures stay open until their element ends and collect the text of all
+ * descendants, like the import blocks of the DOM scan. The values of each
+ * section are distinct and in document order across the parts.
+ *
+ * Instances are safe for concurrent use.
+ */
+public class ExtractionRuleSet {
+
+    private static final String COMMENT_PREFIX = "#";
+    private static final ExtractionRule IMPORT_BLOCKS = new ExtractionRule(null, OdtFile.TEXT_INPUT_ELEMENT,
+            List.of(new ExtractionRule.Predicate(OdtFile.TEXT_DESCRIPTION_ATTRIBUTE,
+                    OdtFile.TEXT_DESCRIPTION_ATTRIBUTE_VALUE_IMPORT, false)),
+            null);
+    private static final int IMPORT_BLOCKS_SLOT = 0;
+
+    /**
+     * The rule set without extraction rules, files are scanned for import
+     * blocks only.
+     */
+    public static final ExtractionRuleSet NONE = new ExtractionRuleSet(Collections.emptyList());
+
+    private final List<ExtractionRule> rules;
+    private final List<String> sections = new ArrayList<>();
+
+    // The rules of each element name with the result slot of each rule, slot 0
+    // holds the import blocks and slot i the section i - 1
+    private final Map<String, List<Matcher>> matchersByElement = new HashMap<>();
+
+    private ExtractionRuleSet(List<ExtractionRule> rules) {
+        this.rules = List.copyOf(rules);
+        addMatcher(IMPORT_BLOCKS, IMPORT_BLOCKS_SLOT);
+        for (ExtractionRule rule : rules) {
+            int section = sections.indexOf(rule.getSection());
+            if (section < 0) {
+                section = sections.size();
+                sections.add(rule.getSection());
+            }
+            addMatcher(rule, section + 1);
+        }
+    }
+
+    private void addMatcher(ExtractionRule rule, int slot) {
+        matchersByElement.computeIfAbsent(rule.getElement(), element -> new ArrayList<>())
+                .add(new Matcher(rule, slot));
+    }
+
+    /**
+     * Compiles the rules into a rule set.
+     *
+     * @param rules The rules.
+     * @return The rule set.
+     */
+    public static ExtractionRuleSet of(List<ExtractionRule> rules) {
+        return new ExtractionRuleSet(rules);
+    }
+
+    /**
+     * Parses a rules file. Each line holds one rule, blank lines and lines
+     * starting with {@code #} are ignored. Several rules may fill the same
+     * section.
+     *
+     * @param rulesFile The rules file.
+     * @return The rule set.
+     * @throws IOException              if an I/O error occurs.
+     * @throws InvalidArgumentException if a rule is malformed.
+     */
+    public static ExtractionRuleSet parse(Path rulesFile) throws IOException, InvalidArgumentException {
+        List<ExtractionRule> rules = new ArrayList<>();
+        List<String> lines = Files.readAllLines(rulesFile);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith(COMMENT_PREFIX)) {
+                continue;
+            }
+            try {
+                rules.add(ExtractionRule.parse(line));
+            } catch (InvalidArgumentException e) {
+                throw new InvalidArgumentException(
+                        String.format("Invalid rule on line %d of %s. %s", i + 1, rulesFile, e.getMessage()));
+            }
+        }
+        if (rules.isEmpty()) {
+            throw new InvalidArgumentException("No rules found in " + rulesFile);
+        }
+        return new ExtractionRuleSet(rules);
+    }
+
+    public List<ExtractionRule> getRules() {
+        return rules;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Extracts the import blocks and the sections of every rule from the parts
+     * of a file in one pass per part.
+     *
+     * @param partContents The content of each part, in part order.
+     * @return The extracted values.
+     * @throws IOException if a part is not well-formed XML.
+     */
+    public Result extract(List<byte[]> partContents) throws IOException {
+        return extract(partContents, ResourceLimits.DEFAULT);
+    }
+
+    /**
+     * Extracts the import blocks and the sections of every rule from the parts
+     * of a file in one pass per part, within the given limits.
+     *
+     * @param partContents The content of each part, in part order.
+     * @param limits       The limits of the parse.
+     * @return The extracted values.
+     * @throws IOException if a part is not well-formed XML or exceeds a limit.
+     */
+    public Result extract(List<byte[]> partContents, ResourceLimits limits) throws IOException {
+        List<List<String>> values = new ArrayList<>();
+        for (int slot = 0; slot <= sections.size(); slot++) {
+            values.add(new ArrayList<>());
+        }
+        try (Watchdog.Watch watch = limits.watch()) {
+            for (byte[] partContent : partContents) {
+                // Without rules only import blocks are extracted, parts without fields may be skipped
+                if (rules.isEmpty() && !limits.needsImportBlockParse(partContent)) {
+                    continue;
+                }
+                try {
+                    extract(partContent, values, limits.newElementCounter(watch));
+                } catch (XMLStreamException e) {
+                    throw new IOException(String.format("Invalid XML part. Error message: %s", e.getMessage()), e);
+                }
+            }
+        }
+
+        Map<String, List<String>> sectionValues = new LinkedHashMap<>();
+        for (int section = 0; section < sections.size(); section++) {
+            List<String> distinct = distinct(values.get(section + 1));
+            if (distinct != null) {
+                sectionValues.put(sections.get(section), distinct);
+            }
+        }
+        return new Result(distinct(values.get(IMPORT_BLOCKS_SLOT)), sectionValues.isEmpty() ? null : sectionValues);
+    }
+
+    private void extract(byte[] partContent, List<List<String>> values, ResourceLimits.ElementCounter counter)
+            throws XMLStreamException, IOException {
+        XMLStreamReader reader = XmlFactories.newStreamReader(new ByteArrayInputStream(partContent));
+        try {
+            // Text captures of the elements that are open, innermost first
+            Deque<TextCapture> captures = new ArrayDeque<>();
+            int depth = 0;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        counter.startElement();
+                        depth++;
+                        List<Matcher> matchers = matchersByElement.get(qualifiedName(reader));
+                        if (matchers != null) {
+                            for (Matcher matcher : matchers) {
+                                if (!matcher.rule.matches(reader)) {
+                                    continue;
+                                }
+                                List<String> slot = values.get(matcher.slot);
+                                if (matcher.rule.capturesText()) {
+                                    // Keep the place of the value in document order until the element ends
+                                    captures.push(new TextCapture(slot, slot.size(), depth));
+                                    slot.add(null);
+                                } else if (matcher.rule.capture(reader) != null) {
+                                    slot.add(matcher.rule.capture(reader));
+                                }
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        for (TextCapture capture : captures) {
+                            capture.text.append(reader.getTextCharacters(), reader.getTextStart(),
+                                    reader.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        while (!captures.isEmpty() && captures.peek().depth == depth) {
+                            TextCapture capture = captures.pop();
+                            capture.values.set(capture.index, capture.text.toString());
+                        }
+                        counter.endElement();
+                        depth--;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String qualifiedName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        return prefix == null || prefix.isEmpty() ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+    }
+
+    private static List<String> distinct(List<String> values) {
+        return values.isEmpty() ? null : new ArrayList<>(new LinkedHashSet<>(values));
+    }
+
+    /**
+     * A rule and the slot its values go to.
+     */
+    private static final class Matcher {
+        private final ExtractionRule rule;
+        private final int slot;
+
+        private Matcher(ExtractionRule rule, int slot) {
+            this.rule = rule;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * The text of an element being captured.
+     */
+    private static final class TextCapture {
+        private final List<String> values;
+        private final int index;
+        private final int depth;
+        private final StringBuilder text = new StringBuilder();
+
+        private TextCapture(List<String> values, int index, int depth) {
+            this.values = values;
+            this.index = index;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * The values extracted from one file.
+     */
+    public static final class Result {
+        private final List<String> importBlocks;
+        private final Map<String, List<String>> sections;
+
+        private Result(List<String> importBlocks, Map<String, List<String>> sections) {
+            this.importBlocks = importBlocks;
+            this.sections = sections;
+        }
+
+        /**
+         * @return The distinct import blocks in document order, or null if there
+         *         are none.
+         */
+        public List<String> getImportBlocks() {
+            return importBlocks;
+        }
+
+        /**
+         * @return The values of each section with values, in rule order, or null
+         *         if no rule matched.
+         */
+        public Map<String, List<String>> getSections() {
+            return sections;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.odt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Byte-level prefilter that tells whether an XML part has to be parsed for
+ * import blocks. Most parts, {@code styles.xml} above all, have no text-input
+ * fields at all and need no parse.
+ *
+ * The filter looks for the names {@code text:text-input} and, after it,
+ * {@code text:description}. XML names cannot be escaped, so a part without
+ * them has no element the parser would report as an import block, whatever
+ * the attribute value looks like. Such a part is still parsed unless its root
+ * element is closed at the very end, so truncated and broken parts keep
+ * failing with the parse error. Parts in an encoding that is not
+ * ASCII-compatible, such as UTF-16, and parts with a DOCTYPE, whose entities
+ * and default attributes could produce the markup, are always parsed.
+ *
+ * A skipped part is not checked for errors or element limits, so the filter
+ * is only used when {@link ResourceLimits#isSkipFieldlessParts()} is set.
+ */
+public final class ImportBlockPrefilter {
+
+    private static final BytePattern ELEMENT = new BytePattern(OdtFile.TEXT_INPUT_ELEMENT);
+    private static final BytePattern ATTRIBUTE = new BytePattern(OdtFile.TEXT_DESCRIPTION_ATTRIBUTE);
+    private static final byte[] DOCTYPE = "<!DOCTYPE".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UTF8_BOM = { (byte) 0xef, (byte) 0xbb, (byte) 0xbf };
+
+    private ImportBlockPrefilter() {
+    }
+
+    /**
+     * Checks if a part has to be parsed for import blocks.
+     *
+     * @param content The inflated content of the part.
+     * @return false only if the part is complete and cannot contain an import
+     *         block.
+     */
+    public static boolean needsParse(byte[] content) {
+        int start = startsWith(content, 0, UTF8_BOM) ? UTF8_BOM.length : 0;
+        if (!isAsciiCompatible(content, start)) {
+            return true;
+        }
+        int root = findRoot(content, start);
+        if (root < 0 || !isRootClosedAtEnd(content, root)) {
+            return true;
+        }
+        int element = ELEMENT.indexOf(content, root);
+        return element >= 0 && ATTRIBUTE.indexOf(content, element + ELEMENT.length()) >= 0;
+    }
+
+    /**
+     * Checks that the document starts like XML in a single-byte compatible
+     * encoding, with a {@code <} or whitespace not followed by a zero byte.
+     */
+    private static boolean isAsciiCompatible(byte[] content, int start) {
+        if (content.length <= start) {
+            return true;
+        }
+        byte first = content[start];
+        boolean markup = first == '<' || isWhitespace(first);
+        return markup && (content.length == start + 1 || content[start + 1] != 0);
+    }
+
+    /**
+     * Skips the prolog, the declaration, comments, processing instructions and
+     * whitespace before the root element.
+     *
+     * @return The index of the root start tag, or -1 if there is a DOCTYPE or
+     *         no root element.
+     */
+    private static int findRoot(byte[] content, int start) {
+        int i = start;
+        while (i < content.length) {
+            byte b = content[i];
+            if (isWhitespace(b)) {
+                i++;
+            } else if (startsWith(content, i, DOCTYPE)) {
+                return -1;
+            } else if (b == '<' && i + 1 < content.length && content[i + 1] == '?') {
+                i = skipPast(content, i + 2, '?', '>');
+            } else if (b == '<' && i + 3 < content.length && content[i + 1] == '!' && content[i + 2] == '-'
+                    && content[i + 3] == '-') {
+                i = skipPast(content, i + 4, '-', '>');
+            } else {
+                return b == '<' ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks that the content ends, but for whitespace, with the end tag of
+     * the root element.
+     */
+    private static boolean isRootClosedAtEnd(byte[] content, int root) {
+        int nameEnd = root + 1;
+        while (nameEnd < content.length && !isNameEnd(content[nameEnd])) {
+            nameEnd++;
+        }
+        int nameLength = nameEnd - root - 1;
+        int end = content.length;
+        while (end > nameEnd && isWhitespace(content[end - 1])) {
+            end--;
+        }
+        if (nameLength == 0 || end <= nameEnd || content[end - 1] != '>') {
+            return false;
+        }
+        int i = end - 2;
+        while (i > nameEnd && isWhitespace(content[i])) {
+            i--;
+        }
+        int tagStart = i - nameLength - 1;
+        if (tagStart <= nameEnd || content[tagStart] != '<' || content[tagStart + 1] != '/') {
+            return false;
+        }
+        for (int j = 0; j < nameLength; j++) {
+            if (content[tagStart + 2 + j] != content[root + 1 + j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return isWhitespace(b) || b == '>' || b == '/';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    /**
+     * Gets the index after the next occurrence of the two bytes, or the length
+     * of the content if there is none.
+     */
+    private static int skipPast(byte[] content, int from, char first, char second) {
+        for (int i = from; i + 1 < content.length; i++) {
+            if (content[i] == first && content[i + 1] == second) {
+                return i + 2;
+            }
+        }
+        return content.length;
+    }
+
+    private static boolean startsWith(byte[] content, int offset, byte[] prefix) {
+        if (content.length - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (content[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An ASCII pattern searched with Boyer-Moore-Horspool, which skips up to
+     * the pattern length per comparison on the text of a part.
+     */
+    private static final class BytePattern {
+        private final byte[] pattern;
+        private final int[] shifts = new int[256];
+
+        private BytePattern(String pattern) {
+            this.pattern = pattern.getBytes(StandardCharsets.US_ASCII);
+            int last = this.pattern.length - 1;
+            Arrays.fill(shifts, this.pattern.length);
+            for (int i = 0; i < last; i++) {
+                shifts[this.pattern[i] & 0xff] = last - i;
+            }
+        }
+
+        private int length() {
+            return pattern.length;
+        }
+
+        /**
+         * Finds the pattern.
+         *
+         * @return The index of the first occurrence at or after from, or -1.
+         */
+        private int indexOf(byte[] content, int from) {
+            int last = pattern.length - 1;
+            for (int i = from; i + last < content.length; i += shifts[content[i + last] & 0xff]) {
+                int j = last;
+                while (content[i + j] == pattern[j]) {
+                    if (j == 0) {
+                        return i;
+                    }
+                    j--;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.odt;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import com.example.rewrite.RewriteRuleSet;
+
+/**
+ * Rewrites import blocks by piping StAX events from the input to the output.
+ * Only the content of one import element is buffered at a time, so memory use
+ * does not depend on the size of the document. The StAX factories are kept per
+ * thread, so rewrites may run on any number of threads.
+ */
+public class ImportBlockStreamRewriter {
+
+    private ImportBlockStreamRewriter() {
+    }
+
+    /**
+     * Copies the XML from the input to the output, rewriting the text of each
+     * import element with the first matching rule.
+     *
+     * @param input  The XML input.
+     * @param output The XML output, written as UTF-8.
+     * @param rules  The rewrite rules.
+     * @return true if at least one import block was rewritten.
+     * @throws XMLStreamException if the XML cannot be read or written.
+     */
+    public static boolean rewrite(InputStream input, OutputStream output, RewriteRuleSet rules)
+            throws XMLStreamException {
+        XMLEventReader reader = XmlFactories.newEventReader(input);
+        XMLEventWriter writer = XmlFactories.newEventWriter(output);
+        boolean found = false;
+        try {
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                writer.add(event);
+                if (event.isStartElement() && isImportElement(event.asStartElement())) {
+                    found |= rewriteElementContent(reader, writer, rules);
+                }
+            }
+            writer.flush();
+        } finally {
+            reader.close();
+            writer.close();
+        }
+        return found;
+    }
+
+    /**
+     * Buffers the content of an import element up to its end element and writes
+     * either the rewritten block or the original content.
+     */
+    private static boolean rewriteElementContent(XMLEventReader reader, XMLEventWriter writer,
+            RewriteRuleSet rules) throws XMLStreamException {
+        List<XMLEvent> content = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        int depth = 0;
+        while (true) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isEndElement() && depth == 0) {
+                // Like setTextContent, a rewritten block replaces the whole element content
+                Optional<String> newBlock = rules.rewrite(text.toString());
+                if (newBlock.isPresent()) {
+                    writer.add(XmlFactories.eventFactory().createCharacters(newBlock.get()));
+                } else {
+                    for (XMLEvent contentEvent : content) {
+                        writer.add(contentEvent);
+                    }
+                }
+                writer.add(event);
+                return newBlock.isPresent();
+            }
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
+            } else if (event.isCharacters()) {
+                text.append(event.asCharacters().getData());
+            }
+            content.add(event);
+        }
+    }
+
+    private static boolean isImportElement(StartElement element) {
+        if (!OdtFile.TEXT_INPUT_ELEMENT.equals(qualifiedName(element.getName()))) {
+            return false;
+        }
+        Iterator<Attribute> attributes = element.getAttributes();
+        while (attributes.hasNext()) {
+            Attribute attribute = attributes.next();
+            if (OdtFile.TEXT_DESCRIPTION_ATTRIBUTE.equals(qualifiedName(attribute.getName()))) {
+                return OdtFile.TEXT_DESCRIPTION_ATTRIBUTE_VALUE_IMPORT.equals(attribute.getValue());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the prefixed name, matching how the DOM code looks up elements by tag
+     * name.
+     */
+    private static String qualifiedName(QName name) {
+        return XMLConstants.DEFAULT_NS_PREFIX.equals(name.getPrefix()) ? name.getLocalPart()
+                : name.getPrefix() + ":" + name.getLocalPart();
+    }
+}
@@ -0,0 +1,361 @@
+package com.example.odt;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import com.example.concurrent.Watchdog;
+import com.example.rewrite.RewriteRuleSet;
+
+/**
+ * A session on one ODT file that opens the archive once for any number of
+ * queries and replacements and writes the changes back in a single write.
+ *
+ * Parts are read the first time a call needs them and kept for the rest of
+ * the session: the import blocks of each part after one SAX pass, and the DOM
+ * of a part once a replacement rewrites a block in it. Queries after a
+ * replacement see the new blocks without reading the file again.
+ * {@link #commit()} writes the modified parts, copies the other entries in
+ * their order to a new archive next to the file and moves it over the file.
+ * Changes that are not committed are discarded by {@link #close()}.
+ *
+ * A session is not safe for concurrent use.
+ */
+public class OdtDocument implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(OdtDocument.class.getName());
+
+    private static final String WORKING_COPY_SUFFIX = ".odtapp-tmp";
+
+    private final Path path;
+    private final OdtParts parts;
+    private final ResourceLimits limits;
+    private ZipFile zipFile;
+    private List<Part> resolvedParts;
+
+    private OdtDocument(Path path, OdtParts parts, ResourceLimits limits, ZipFile zipFile) {
+        this.path = path;
+        this.parts = parts;
+        this.limits = limits;
+        this.zipFile = zipFile;
+    }
+
+    /**
+     * Opens a session on an ODT file with the default parts and limits.
+     *
+     * @param path The ODT file.
+     * @return The session, to be closed when done.
+     * @throws IOException if the file cannot be opened as an ODT file.
+     */
+    public static OdtDocument open(Path path) throws IOException {
+        return open(path, OdtParts.DEFAULT, ResourceLimits.DEFAULT);
+    }
+
+    /**
+     * Opens a session on an ODT file.
+     *
+     * @param path   The ODT file.
+     * @param parts  The XML parts to query and rewrite.
+     * @param limits The limits of each read and parse.
+     * @return The session, to be closed when done.
+     * @throws IOException if the file cannot be opened as an ODT file.
+     */
+    public static OdtDocument open(Path path, OdtParts parts, ResourceLimits limits) throws IOException {
+        return new OdtDocument(path, parts, limits, openZip(path));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the import blocks of the document, including replacements that are
+     * not committed yet.
+     *
+     * @return The distinct import blocks in document order, or an empty Optional
+     *         if there are none.
+     * @throws IOException                  if an I/O error occurs.
+     * @throws ParserConfigurationException if a parser configuration error occurs.
+     * @throws SAXException                 if a SAX error occurs or a limit is
+     *                                      exceeded.
+     */
+    public Optional<List<String>> getImportBlocks() throws IOException, ParserConfigurationException, SAXException {
+        List<String> importBlocks = new ArrayList<>();
+        for (Part part : parts()) {
+            importBlocks.addAll(part.importBlocks());
+        }
+        return importBlocks.isEmpty() ? Optional.empty()
+                : Optional.of(importBlocks.stream().distinct().collect(Collectors.toList()));
+    }
+
+    /**
+     * Checks if the document contains an import block.
+     *
+     * @param searchImportBlock The import block.
+     * @return true if the document contains the block.
+     * @throws IOException                  if an I/O error occurs.
+     * @throws ParserConfigurationException if a parser configuration error occurs.
+     * @throws SAXException                 if a SAX error occurs or a limit is
+     *                                      exceeded.
+     */
+    public boolean containsImportBlock(String searchImportBlock)
+            throws IOException, ParserConfigurationException, SAXException {
+        return getImportBlocks().map(blocks -> blocks.contains(searchImportBlock)).orElse(false);
+    }
+
+    /**
+     * Replaces an import block in the session.
+     *
+     * @param blockToReplace The block to replace.
+     * @param newBlock       The new block.
+     * @return true if a block was replaced.
+     * @throws IOException                  if an I/O error occurs.
+     * @throws ParserConfigurationException if a parser configuration error occurs.
+     * @throws SAXException                 if a SAX error occurs or a limit is
+     *                                      exceeded.
+     */
+    public boolean replaceImportBlocks(String blockToReplace, String newBlock)
+            throws IOException, ParserConfigurationException, SAXException {
+        return replaceImportBlocks(RewriteRuleSet.literal(blockToReplace, newBlock));
+    }
+
+    /**
+     * Rewrites import blocks in the session with the first matching rule. Only
+     * parts with a block that a rule rewrites are loaded into a DOM.
+     *
+     * @param rules The rewrite rules.
+     * @return true if a block was rewritten.
+     * @throws IOException                  if an I/O error occurs.
+     * @throws ParserConfigurationException if a parser configuration error occurs.
+     * @throws SAXException                 if a SAX error occurs or a limit is
+     *                                      exceeded.
+     */
+    public boolean replaceImportBlocks(RewriteRuleSet rules)
+            throws IOException, ParserConfigurationException, SAXException {
+        boolean replaced = false;
+        for (Part part : parts()) {
+            if (rules.rewritesAny(part.importBlocks()) && part.rewrite(rules)) {
+                replaced = true;
+            }
+        }
+        return replaced;
+    }
+
+    /**
+     * Checks if the session has replacements that are not committed.
+     *
+     * @return true if a part was modified since the last commit.
+     */
+    public boolean isModified() {
+        return resolvedParts != null && resolvedParts.stream().anyMatch(part -> part.modified);
+    }
+
+    /**
+     * Writes the replacements to the file. The new archive is written next to
+     * the file and moved over it, so the file is never left half written. The
+     * session stays open on the new content.
+     *
+     * @return true if the file was written, false if there was nothing to
+     *         commit.
+     * @throws IOException          if an I/O error occurs.
+     * @throws TransformerException if a modified part cannot be written.
+     */
+    public boolean commit() throws IOException, TransformerException {
+        ensureOpen();
+        if (!isModified()) {
+            return false;
+        }
+        Map<String, byte[]> modifiedParts = new HashMap<>();
+        for (Part part : resolvedParts) {
+            if (part.modified) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                OdtFile.writeDocument(part.document, out);
+                modifiedParts.put(part.name, out.toByteArray());
+            }
+        }
+
+        Path directory = path.toAbsolutePath().getParent();
+        Path workingCopy = Files.createTempFile(directory, "." + path.getFileName() + "-", WORKING_COPY_SUFFIX);
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(workingCopy));
+                    ZipOutputStream zip = new ZipOutputStream(out);
+                    Watchdog.Watch watch = limits.watch()) {
+                writeEntries(zip, modifiedParts, watch);
+            }
+            zipFile.close();
+            try {
+                Files.move(workingCopy, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // The new archive if the move succeeded, the old one otherwise
+                zipFile = openZip(path);
+            }
+        } finally {
+            Files.deleteIfExists(workingCopy);
+        }
+        for (Part part : resolvedParts) {
+            part.modified = false;
+        }
+        LOGGER.log(Level.FINE, "Committed changes to file: {0}", path);
+        return true;
+    }
+
+    /**
+     * Closes the archive. Changes that are not committed are discarded.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        if (zipFile != null) {
+            zipFile.close();
+            zipFile = null;
+            resolvedParts = null;
+        }
+    }
+
+    /**
+     * Copies the entries of the archive in their order, the mimetype entry
+     * first and stored as ODF requires, with the modified parts replaced.
+     */
+    private void writeEntries(ZipOutputStream zip, Map<String, byte[]> modifiedParts, Watchdog.Watch watch)
+            throws IOException {
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            ZipEntry copy = new ZipEntry(entry.getName());
+            copy.setTime(entry.getTime());
+            byte[] content = modifiedParts.get(entry.getName());
+            if (content != null) {
+                copy.setMethod(ZipEntry.DEFLATED);
+                zip.putNextEntry(copy);
+                zip.write(content);
+            } else {
+                if (entry.getMethod() == ZipEntry.STORED) {
+                    copy.setMethod(ZipEntry.STORED);
+                    copy.setSize(entry.getSize());
+                    copy.setCompressedSize(entry.getSize());
+                    copy.setCrc(entry.getCrc());
+                }
+                zip.putNextEntry(copy);
+                try (InputStream in = openEntry(entry, watch)) {
+                    in.transferTo(zip);
+                }
+            }
+            zip.closeEntry();
+        }
+    }
+
+    private List<Part> parts() throws IOException {
+        ensureOpen();
+        if (resolvedParts == null) {
+            List<Part> resolved = new ArrayList<>();
+            try (Watchdog.Watch watch = limits.watch()) {
+                for (String name : parts.resolve(() -> {
+                    ZipEntry manifest = zipFile.getEntry(OdtParts.MANIFEST_PATH);
+                    return manifest != null ? openEntry(manifest, watch) : null;
+                })) {
+                    if (zipFile.getEntry(name) != null) {
+                        resolved.add(new Part(name));
+                    }
+                }
+            }
+            resolvedParts = resolved;
+        }
+        return resolvedParts;
+    }
+
+    private InputStream openEntry(ZipEntry entry, Watchdog.Watch watch) throws IOException {
+        limits.checkEntry(entry.getName(), entry.getSize(), entry.getCompressedSize());
+        return limits.limit(entry.getName(), zipFile.getInputStream(entry), entry.getCompressedSize(), watch);
+    }
+
+    private void ensureOpen() {
+        if (zipFile == null) {
+            throw new IllegalStateException(String.format("The document %s is closed.", path));
+        }
+    }
+
+    private static ZipFile openZip(Path path) throws IOException {
+        try {
+            return new ZipFile(path.toFile());
+        } catch (ZipException e) {
+            // Handle the case where the file is not a valid ODT (zip) file
+            throw new IOException(String.format(
+                    "Reading error. It might not be a valid ODT file. Error message: %s", e.getMessage()), e);
+        }
+    }
+
+    /**
+     * An XML part of the document, read and parsed on first use.
+     */
+    private final class Part {
+        private final String name;
+        private List<String> importBlocks;
+        // Kept for the DOM only if the part has blocks a replacement may rewrite
+        private byte[] content;
+        // Only built once a replacement rewrites a block of the part
+        private Document document;
+        private boolean modified;
+
+        private Part(String name) {
+            this.name = name;
+        }
+
+        private List<String> importBlocks() throws IOException, ParserConfigurationException, SAXException {
+            if (importBlocks == null) {
+                try (Watchdog.Watch watch = limits.watch()) {
+                    byte[] read = read(watch);
+                    importBlocks = OdtFile.extractImportBlocks(read, limits, watch);
+                    content = importBlocks.isEmpty() ? null : read;
+                }
+            }
+            return importBlocks;
+        }
+
+        private boolean rewrite(RewriteRuleSet rules) throws IOException, ParserConfigurationException, SAXException {
+            if (document == null) {
+                try (Watchdog.Watch watch = limits.watch()) {
+                    byte[] read = content != null ? content : read(watch);
+                    document = XmlFactories.newDocumentBuilder().parse(new ByteArrayInputStream(read));
+                    content = null;
+                }
+            }
+            if (!OdtFile.rewriteImportBlocks(document, rules)) {
+                return false;
+            }
+            modified = true;
+            importBlocks = OdtFile.getImportBlocks(document);
+            return true;
+        }
+
+        private byte[] read(Watchdog.Watch watch) throws IOException {
+            try (InputStream in = openEntry(zipFile.getEntry(name), watch)) {
+                return in.readAllBytes();
+            }
+        }
+    }
+}
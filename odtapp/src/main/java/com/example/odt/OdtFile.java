@@ -3,18 +3,24 @@ package com.example.odt;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
@@ -24,20 +30,38 @@ import java.util.logging.Level;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
+import com.example.concurrent.Watchdog;
+import com.example.rewrite.RewriteRuleSet;
 import com.example.util.FileUtil;
 
 public class OdtFile extends File {
     private static final Logger LOGGER = Logger.getLogger(OdtFile.class.getName());
 
-    private static final List<String> XML_FILES_TO_PROCESS = List.of("content.xml", "styles.xml");
-    private static final String TEXT_DESCRIPTION_ATTRIBUTE = "text:description";
-    private static final String TEXT_DESCRIPTION_ATTRIBUTE_VALUE_IMPORT = "import";
-    private static final String TEXT_INPUT_ELEMENT = "text:text-input";
+    static final String TEXT_DESCRIPTION_ATTRIBUTE = "text:description";
+    static final String TEXT_DESCRIPTION_ATTRIBUTE_VALUE_IMPORT = "import";
+    static final String TEXT_INPUT_ELEMENT = "text:text-input";
+    private static final long PARALLEL_PART_SIZE = 256 * 1024;
+    private static final Executor PART_EXECUTOR = ForkJoinPool.commonPool();
+
+    private final OdtParts parts;
+    private final ResourceLimits limits;
 
     public OdtFile(String path) {
+        this(path, OdtParts.DEFAULT);
+    }
+
+    public OdtFile(String path, OdtParts parts) {
+        this(path, parts, ResourceLimits.DEFAULT);
+    }
+
+    public OdtFile(String path, OdtParts parts, ResourceLimits limits) {
         super(path);
+        this.parts = parts;
+        this.limits = limits;
     }
 
     /**
@@ -52,14 +76,10 @@ public class OdtFile extends File {
         // List to hold the extracted import blocks
         List<String> importBlocks = new ArrayList<>();
 
-        // Retrieve the XML content as a list of strings
-        Optional<List<String>> xmlContentList = getXmlContent();
-
-        // If the XML content is present, process each XML string
-        if (xmlContentList.isPresent()) {
-            for (String xmlContent : xmlContentList.get()) {
-                // Extract import blocks from the XML string and add to the list
-                importBlocks.addAll(extractImportBlocks(xmlContent));
+        // Extract import blocks from each XML part, in part order, and add to the list
+        try (Watchdog.Watch watch = limits.watch()) {
+            for (List<String> partImportBlocks : extractImportBlocksFromParts(watch)) {
+                importBlocks.addAll(partImportBlocks);
             }
         }
 
@@ -69,6 +89,75 @@ public class OdtFile extends File {
                 : Optional.of(importBlocks.stream().distinct().collect(Collectors.toList()));
     }
 
+    /**
+     * Reads and inflates the selected XML parts of the ODT file without parsing
+     * them, the I/O half of {@link #getImportBlocks()}.
+     *
+     * @return The content of each part that exists, in part order.
+     * @throws IOException if an I/O error occurs.
+     */
+    public List<byte[]> readParts() throws IOException {
+        try (ZipFile zipFile = new ZipFile(this); Watchdog.Watch watch = limits.watch()) {
+            List<byte[]> contents = new ArrayList<>();
+            for (String xmlFile : parts.resolve(() -> openEntry(zipFile, OdtParts.MANIFEST_PATH, watch))) {
+                ZipEntry xmlEntry = zipFile.getEntry(xmlFile);
+                if (xmlEntry != null) {
+                    contents.add(readEntry(zipFile, xmlEntry, watch));
+                }
+            }
+            return contents;
+        } catch (ZipException e) {
+            // Handle the case where the file is not a valid ODT (zip) file
+            throw new IOException(String.format(
+                    "Reading error. It might not be a valid ODT file. Error message: %s", e.getMessage()), e);
+        } catch (IOException e) {
+            // Handle general I/O errors
+            throw new IOException(String.format(
+                    "Reading error. Error message: %s", e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Parses import blocks from parts read by {@link #readParts()}, the CPU half
+     * of {@link #getImportBlocks()}.
+     *
+     * @param partContents The content of each part, in part order.
+     * @return The distinct import blocks in document order, or an empty Optional
+     *         if there are none.
+     * @throws IOException                  if an I/O error occurs.
+     * @throws ParserConfigurationException if a parser configuration error occurs.
+     * @throws SAXException                 if a SAX error occurs.
+     */
+    public static Optional<List<String>> parseImportBlocks(List<byte[]> partContents)
+            throws IOException, ParserConfigurationException, SAXException {
+        return parseImportBlocks(partContents, ResourceLimits.DEFAULT);
+    }
+
+    /**
+     * Parses import blocks from parts read by {@link #readParts()} within the
+     * given limits.
+     *
+     * @param partContents The content of each part, in part order.
+     * @param limits       The limits of the parse.
+     * @return The distinct import blocks in document order, or an empty Optional
+     *         if there are none.
+     * @throws IOException                  if an I/O error occurs.
+     * @throws ParserConfigurationException if a parser configuration error occurs.
+     * @throws SAXException                 if a SAX error occurs or a limit is
+     *                                      exceeded.
+     */
+    public static Optional<List<String>> parseImportBlocks(List<byte[]> partContents, ResourceLimits limits)
+            throws IOException, ParserConfigurationException, SAXException {
+        List<String> importBlocks = new ArrayList<>();
+        try (Watchdog.Watch watch = limits.watch()) {
+            for (byte[] partContent : partContents) {
+                importBlocks.addAll(extractImportBlocks(partContent, limits, watch));
+            }
+        }
+        return importBlocks.isEmpty() ? Optional.empty()
+                : Optional.of(importBlocks.stream().distinct().collect(Collectors.toList()));
+    }
+
     public boolean containsImportBlock(String searchImportBlock)
             throws IOException, ParserConfigurationException, SAXException {
         // Check if the import blocks contain the specified block
@@ -78,30 +167,38 @@ public class OdtFile extends File {
     }
 
     /**
-     * Gets xml content from the ODT file.
+     * Extracts import blocks from each selected XML part of the ODT file. Parts
+     * of a large document are inflated and parsed in parallel.
      *
-     * @return A list of xml strings.
-     * @throws IOException if an I/O error occurs.
+     * @return A list of import blocks per part, in part order.
+     * @throws IOException                  if an I/O error occurs.
+     * @throws ParserConfigurationException if a parser configuration error occurs.
+     * @throws SAXException                 if a SAX error occurs.
      */
-    private Optional<List<String>> getXmlContent() throws IOException {
-        // List to hold the XML content extracted from the ODT (zip) file
-        List<String> xmlContent = new ArrayList<>();
-
+    private List<List<String>> extractImportBlocksFromParts(Watchdog.Watch watch)
+            throws IOException, ParserConfigurationException, SAXException {
         // Open the ODT (zip) file using a try-with-resources statement to ensure it is
         // closed automatically
         try (ZipFile zipFile = new ZipFile(this)) {
 
-            // Iterate through the list of XML files to process
-            for (String xmlFile : XML_FILES_TO_PROCESS) {
-
-                // Get the zip entry for the current XML file
+            // Get the zip entries of the parts that exist in this file
+            List<ZipEntry> entries = new ArrayList<>();
+            for (String xmlFile : parts.resolve(() -> openEntry(zipFile, OdtParts.MANIFEST_PATH, watch))) {
                 ZipEntry xmlEntry = zipFile.getEntry(xmlFile);
-
-                // If the entry exists, read its content and add it to the xmlContent list
                 if (xmlEntry != null) {
-                    xmlContent.add(new String(zipFile.getInputStream(xmlEntry).readAllBytes()));
+                    entries.add(xmlEntry);
                 }
             }
+
+            if (isWorthParallelParsing(entries)) {
+                return extractImportBlocksInParallel(zipFile, entries, watch);
+            }
+
+            List<List<String>> importBlocks = new ArrayList<>();
+            for (ZipEntry entry : entries) {
+                importBlocks.add(extractImportBlocks(readEntry(zipFile, entry, watch), limits, watch));
+            }
+            return importBlocks;
         } catch (ZipException e) {
             // Handle the case where the file is not a valid ODT (zip) file
             throw new IOException(String.format(
@@ -111,51 +208,156 @@ public class OdtFile extends File {
             throw new IOException(String.format(
                     "Reading error. Error message: %s", e.getMessage()), e);
         }
+    }
 
-        // Return an Optional containing the list of XML content, or an empty Optional
-        // if the list is empty
-        return xmlContent.isEmpty() ? Optional.empty() : Optional.of(xmlContent);
+    /**
+     * Checks if at least two parts are large enough to pay for parsing them on
+     * separate threads.
+     */
+    private static boolean isWorthParallelParsing(List<ZipEntry> entries) {
+        return entries.stream().filter(entry -> entry.getSize() >= PARALLEL_PART_SIZE).count() >= 2;
+    }
+
+    private List<List<String>> extractImportBlocksInParallel(ZipFile zipFile, List<ZipEntry> entries,
+            Watchdog.Watch watch) throws IOException, ParserConfigurationException, SAXException {
+        List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+        for (ZipEntry entry : entries) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return extractImportBlocks(readEntry(zipFile, entry, watch), limits, watch);
+                } catch (IOException | ParserConfigurationException | SAXException e) {
+                    throw new CompletionException(e);
+                }
+            }, PART_EXECUTOR));
+        }
+
+        List<List<String>> importBlocks = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<String>> future : futures) {
+                importBlocks.add(future.join());
+            }
+        } catch (CompletionException e) {
+            // Let the remaining parts finish before the zip file is closed
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).exceptionally(ex -> null).join();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ParserConfigurationException) {
+                throw (ParserConfigurationException) cause;
+            } else if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            }
+            throw e;
+        }
+        return importBlocks;
+    }
+
+    /**
+     * Reads an entry within the limits, checking the declared sizes first and
+     * counting the inflated bytes.
+     */
+    private byte[] readEntry(ZipFile zipFile, ZipEntry entry, Watchdog.Watch watch) throws IOException {
+        limits.checkEntry(entry.getName(), entry.getSize(), entry.getCompressedSize());
+        try (InputStream inputStream = limits.limit(entry.getName(), zipFile.getInputStream(entry),
+                entry.getCompressedSize(), watch)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private InputStream openEntry(ZipFile zipFile, String name, Watchdog.Watch watch) throws IOException {
+        ZipEntry entry = zipFile.getEntry(name);
+        if (entry == null) {
+            return null;
+        }
+        limits.checkEntry(name, entry.getSize(), entry.getCompressedSize());
+        return limits.limit(name, zipFile.getInputStream(entry), entry.getCompressedSize(), watch);
     }
 
     /**
-     * Gets import blocks from the xml string.
+     * Gets import blocks from the xml content. The content is parsed as a SAX
+     * stream, so the element limits hold while it is parsed and no tree is
+     * built; the blocks are the same as the DOM scan of the text-input elements
+     * finds. Content the {@link ImportBlockPrefilter} rules out is only skipped
+     * if the limits say so.
      *
      * @return A list of import blocks.
-     * @param xmlContent The xml string.
+     * @param xmlContent The xml content.
+     * @param limits     The limits of the parse.
+     * @param watch      The timeout of the parse.
      * @throws IOException                  if an I/O error occurs.
      * @throws ParserConfigurationException if a parser configuration error occurs.
-     * @throws SAXException                 if a SAX error occurs.
+     * @throws SAXException                 if a SAX error occurs or a limit is
+     *                                      exceeded.
      */
-    private List<String> extractImportBlocks(String xmlContent)
+    static List<String> extractImportBlocks(byte[] xmlContent, ResourceLimits limits, Watchdog.Watch watch)
             throws ParserConfigurationException, SAXException, IOException {
-        // List to hold the import blocks extracted from the XML content
-        List<String> importBlocks = new ArrayList<>();
-
-        // Create a DocumentBuilderFactory and DocumentBuilder to parse the XML content
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
+        // Most parts have no text-input fields, on request they are not parsed
+        if (!limits.needsImportBlockParse(xmlContent)) {
+            return Collections.emptyList();
+        }
+        SAXParser parser = XmlFactories.newSaxParser();
+        ImportBlockHandler handler = new ImportBlockHandler(limits.newElementCounter(watch));
+        parser.parse(new ByteArrayInputStream(xmlContent), handler);
+        return handler.importBlocks;
+    }
 
-        // Parse the XML content into a Document object
-        Document doc = builder.parse(new ByteArrayInputStream(xmlContent.getBytes()));
+    /**
+     * Collects the text content of the import text-input elements in document
+     * order, including the text of nested elements.
+     */
+    private static final class ImportBlockHandler extends DefaultHandler {
+        private final ResourceLimits.ElementCounter counter;
+        private final List<String> importBlocks = new ArrayList<>();
+        // Text of the import elements that are open, innermost first, with the place
+        // of each block in document order
+        private final Deque<StringBuilder> openBlocks = new ArrayDeque<>();
+        private final Deque<Integer> openIndexes = new ArrayDeque<>();
+        private final Deque<Integer> openDepths = new ArrayDeque<>();
+        private int depth;
+
+        private ImportBlockHandler(ResourceLimits.ElementCounter counter) {
+            this.counter = counter;
+        }
 
-        // Get all elements with the tag name "text:text-input"
-        NodeList nodeList = doc.getElementsByTagName(TEXT_INPUT_ELEMENT);
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            try {
+                counter.startElement();
+            } catch (IOException e) {
+                throw new SAXException(e.getMessage(), e);
+            }
+            depth++;
+            if (TEXT_INPUT_ELEMENT.equals(qName)
+                    && TEXT_DESCRIPTION_ATTRIBUTE_VALUE_IMPORT.equals(attributes.getValue(TEXT_DESCRIPTION_ATTRIBUTE))) {
+                openBlocks.push(new StringBuilder());
+                openIndexes.push(importBlocks.size());
+                openDepths.push(depth);
+                importBlocks.add(null);
+            }
+        }
 
-        // Iterate through the NodeList
-        for (int i = 0; i < nodeList.getLength(); i++) {
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            for (StringBuilder block : openBlocks) {
+                block.append(ch, start, length);
+            }
+        }
 
-            // Get the current element
-            Element element = (Element) nodeList.item(i);
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            characters(ch, start, length);
+        }
 
-            // Check if the "text:description" attribute equals "import"
-            if (TEXT_DESCRIPTION_ATTRIBUTE_VALUE_IMPORT.equals(element.getAttribute(TEXT_DESCRIPTION_ATTRIBUTE))) {
-                // Add the text content of the element to the importBlocks list
-                importBlocks.add(element.getTextContent());
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (!openDepths.isEmpty() && openDepths.peek() == depth) {
+                openDepths.pop();
+                importBlocks.set(openIndexes.pop(), openBlocks.pop().toString());
             }
+            counter.endElement();
+            depth--;
         }
-
-        // Return the list of import blocks
-        return importBlocks;
     }
 
     /**
@@ -163,6 +365,28 @@ public class OdtFile extends File {
      *
      * @param blockToReplace The block to replace.
      * @param newBlock       The new block.
+     * @return true if a block was replaced.
+     * @throws IOException                  if an I/O error occurs.
+     * @throws ProviderNotFoundException    if a provider supporting the URI scheme
+     *                                      is not installed.
+     * @throws ParserConfigurationException if a parser configuration error occurs.
+     * @throws SAXException                 if a SAX error occurs.
+     * @throws TransformerException         if an unrecoverable error occurs during
+     *                                      the course of the transformation..
+     * @throws SecurityException            In the case of the default provider, and
+     *                                      a security manager is installed, throws
+     *                                      a security exception.
+     */
+    public boolean replaceImportBlocks(String blockToReplace, String newBlock)
+            throws ProviderNotFoundException, SecurityException, IOException, Exception {
+        return replaceImportBlocks(RewriteRuleSet.literal(blockToReplace, newBlock));
+    }
+
+    /**
+     * Rewrites import blocks in the ODT file with the first matching rule.
+     *
+     * @param rules The rewrite rules.
+     * @return true if a block was rewritten.
      * @throws IOException                  if an I/O error occurs.
      * @throws ProviderNotFoundException    if a provider supporting the URI scheme
      *                                      is not installed.
@@ -174,7 +398,32 @@ public class OdtFile extends File {
      *                                      a security manager is installed, throws
      *                                      a security exception.
      */
-    public void replaceImportBlocks(String blockToReplace, String newBlock)
+    public boolean replaceImportBlocks(RewriteRuleSet rules)
+            throws ProviderNotFoundException, SecurityException, IOException, Exception {
+        return replaceImportBlocks(rules, false);
+    }
+
+    /**
+     * Rewrites import blocks in the ODT file with the first matching rule.
+     *
+     * @param rules     The rewrite rules.
+     * @param streaming true to rewrite the XML parts as a stream of StAX events
+     *                  in bounded memory instead of building a DOM.
+     * @return true if a block was rewritten.
+     * @throws IOException                  if an I/O error occurs, or a part
+     *                                      exceeds the resource limits.
+     * @throws ProviderNotFoundException    if a provider supporting the URI scheme
+     *                                      is not installed.
+     * @throws ParserConfigurationException if a parser configuration error occurs.
+     * @throws SAXException                 if a SAX error occurs.
+     * @throws TransformerException         if an unrecoverable error occurs during
+     *                                      the course of the transformation..
+     * @throws XMLStreamException           if a streaming XML error occurs.
+     * @throws SecurityException            In the case of the default provider, and
+     *                                      a security manager is installed, throws
+     *                                      a security exception.
+     */
+    public boolean replaceImportBlocks(RewriteRuleSet rules, boolean streaming)
             throws ProviderNotFoundException, SecurityException, IOException, Exception {
 
         // Check if the file is readable, if not throw an AccessDeniedException
@@ -185,6 +434,10 @@ public class OdtFile extends File {
         Map<String, String> env = new HashMap<>();
         // Set the 'create' environment variable to 'true'
         env.put("create", "true");
+        // In streaming mode keep rewritten entries in temporary files instead of memory
+        if (streaming) {
+            env.put("useTempFile", "true");
+        }
         boolean replacedInFile = false;
 
         // Convert the current file to a Path object
@@ -192,36 +445,95 @@ public class OdtFile extends File {
         // Create a URI for the zip file system
         URI uri = new URI("jar:" + path.toUri());
 
-        // Open a new file system for the zip file and process the XML files
-        try (FileSystem fs = FileSystems.newFileSystem(uri, env)) {
+        // Open a new file system for the zip file and process the XML files, reading
+        // each part within the limits
+        try (FileSystem fs = FileSystems.newFileSystem(uri, env); Watchdog.Watch watch = limits.watch()) {
 
             // Iterate through the list of XML files to process
-            for (String xmlFile : XML_FILES_TO_PROCESS) {
+            for (String xmlFile : parts.resolve(() -> openManifest(fs, watch))) {
 
                 // Get the path for the current XML file within the zip file system
                 Path xmlPath = fs.getPath(xmlFile);
 
                 // Replace the import blocks in the XML file if found
-                if (replaceImportBlocksInXmlFile(xmlPath, blockToReplace, newBlock)) {
+                boolean replaced = streaming ? streamImportBlocksInXmlFile(xmlPath, rules, watch)
+                        : replaceImportBlocksInXmlFile(xmlPath, rules, watch);
+                if (replaced) {
                     replacedInFile = true;
                 }
             }
         }
-        // Log the result of the replacement operation
+        // Log the result of the replacement operation, callers summarize the run at
+        // INFO
         if (replacedInFile) {
-            LOGGER.log(Level.INFO, "Replaced in file: {0}", this.getPath().toString());
+            LOGGER.log(Level.FINE, "Replaced in file: {0}", this.getPath());
         } else {
-            LOGGER.log(Level.INFO, "No blocks to replace in file: {0}", this.getPath().toString());
+            LOGGER.log(Level.FINE, "No blocks to replace in file: {0}", this.getPath());
         }
+        return replacedInFile;
+    }
+
+    /**
+     * Rewrites blocks in an xml file as a stream of StAX events. The output goes
+     * to a temporary file first and is only copied back if a block was rewritten.
+     *
+     * @param xmlPath The path for xml.
+     * @param rules   The rewrite rules.
+     * @param watch   The timeout of the rewrite.
+     * @return true if a block was rewritten.
+     * @throws IOException        if an I/O error occurs or the part exceeds a
+     *                            limit.
+     * @throws XMLStreamException if the XML cannot be read or written.
+     */
+    private boolean streamImportBlocksInXmlFile(Path xmlPath, RewriteRuleSet rules, Watchdog.Watch watch)
+            throws IOException, XMLStreamException {
+        // Check if the file exists at the given path
+        if (!Files.exists(xmlPath)) {
+            return false;
+        }
+
+        Path tempFile = Files.createTempFile("odtapp-", ".xml");
+        try {
+            boolean found;
+            try (InputStream in = openPart(xmlPath, watch);
+                    OutputStream out = Files.newOutputStream(tempFile)) {
+                found = ImportBlockStreamRewriter.rewrite(in, out, rules);
+            }
+
+            // Write the rewritten XML content back only if something changed
+            if (found) {
+                Files.copy(tempFile, xmlPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return found;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private InputStream openManifest(FileSystem fs, Watchdog.Watch watch) throws IOException {
+        Path manifestPath = fs.getPath(OdtParts.MANIFEST_PATH);
+        return Files.exists(manifestPath) ? openPart(manifestPath, watch) : null;
+    }
+
+    /**
+     * Opens a part of the zip file system within the limits, checking the
+     * declared sizes first and counting the inflated bytes.
+     */
+    private InputStream openPart(Path partPath, Watchdog.Watch watch) throws IOException {
+        String name = partPath.toString();
+        long compressedSize = (Long) Files.getAttribute(partPath, "zip:compressedSize");
+        limits.checkEntry(name, (Long) Files.getAttribute(partPath, "zip:size"), compressedSize);
+        return limits.limit(name, Files.newInputStream(partPath), compressedSize, watch);
     }
 
     /**
      * Replaces blocks in xml files within the specified directory.
      *
-     * @param xmlPath        The path for xml.
-     * @param blockToReplace The block to replace.
-     * @param newBlock       The new block.
-     * @throws IOException                  if an I/O error occurs.
+     * @param xmlPath The path for xml.
+     * @param rules   The rewrite rules.
+     * @param watch   The timeout of the rewrite.
+     * @throws IOException                  if an I/O error occurs or the part
+     *                                      exceeds a limit.
      * @throws ParserConfigurationException if a parser configuration error occurs.
      * @throws SAXException                 if a SAX error occurs.
      * @throws TransformerException         if an unrecoverable error occurs during
@@ -231,48 +543,24 @@ public class OdtFile extends File {
      *                                      invoked to check read access to the
      *                                      file.
      */
-    private boolean replaceImportBlocksInXmlFile(Path xmlPath, String blockToReplace, String newBlock)
+    private boolean replaceImportBlocksInXmlFile(Path xmlPath, RewriteRuleSet rules, Watchdog.Watch watch)
             throws IOException, ParserConfigurationException, SAXException, TransformerException, SecurityException {
         // Check if the file exists at the given path
         if (Files.exists(xmlPath)) {
-            // Create a DocumentBuilderFactory and DocumentBuilder to parse the XML file
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
+            // Create a DocumentBuilder to parse the XML file
+            DocumentBuilder builder = XmlFactories.newDocumentBuilder();
 
             // Parse the XML file into a Document object
-            Document doc = builder.parse(Files.newInputStream(xmlPath));
-
-            // Get all elements with the tag name "text:text-input"
-            NodeList nodeList = doc.getElementsByTagName(TEXT_INPUT_ELEMENT);
-            boolean found = false;
-
-            // Iterate through the NodeList
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                // Get the current element
-                Element element = (Element) nodeList.item(i);
-
-                // Check if the "text:description" attribute equals "import" and the text
-                // content matches the block to replace
-                if (TEXT_DESCRIPTION_ATTRIBUTE_VALUE_IMPORT.equals(element.getAttribute(TEXT_DESCRIPTION_ATTRIBUTE))
-                        && element.getTextContent().equals(blockToReplace)) {
-                    // Set the text content of the element to the new block
-                    element.setTextContent(newBlock);
-                    found = true;
-                }
+            Document doc;
+            try (InputStream in = openPart(xmlPath, watch)) {
+                doc = builder.parse(in);
             }
 
             // If the block to replace was found and replaced
-            if (found) {
-                // Create a TransformerFactory and Transformer to write the updated XML content
-                TransformerFactory transformerFactory = TransformerFactory.newInstance();
-                Transformer transformer = transformerFactory.newTransformer();
-                transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-
+            if (rewriteImportBlocks(doc, rules)) {
                 // Write the updated XML content back to the file
                 try (OutputStream os = Files.newOutputStream(xmlPath, StandardOpenOption.TRUNCATE_EXISTING)) {
-                    DOMSource source = new DOMSource(doc);
-                    StreamResult result = new StreamResult(os);
-                    transformer.transform(source, result);
+                    writeDocument(doc, os);
                     os.flush();
                 }
 
@@ -286,4 +574,68 @@ public class OdtFile extends File {
         return false;
     }
 
+    /**
+     * Rewrites the import blocks of a parsed part with the first matching rule.
+     *
+     * @param doc   The part.
+     * @param rules The rewrite rules.
+     * @return true if a block was rewritten.
+     */
+    static boolean rewriteImportBlocks(Document doc, RewriteRuleSet rules) {
+        boolean found = false;
+        for (Element element : importElements(doc)) {
+            // Run the text content through the rules once and set the new block if a
+            // rule matches
+            Optional<String> newBlock = rules.rewrite(element.getTextContent());
+            if (newBlock.isPresent()) {
+                element.setTextContent(newBlock.get());
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the import blocks of a parsed part.
+     *
+     * @param doc The part.
+     * @return The import blocks in document order.
+     */
+    static List<String> getImportBlocks(Document doc) {
+        List<String> importBlocks = new ArrayList<>();
+        for (Element element : importElements(doc)) {
+            importBlocks.add(element.getTextContent());
+        }
+        return importBlocks;
+    }
+
+    /**
+     * Writes a parsed part, indented like every part the replace action writes.
+     *
+     * @param doc The part.
+     * @param out The output.
+     * @throws TransformerException if the part cannot be written.
+     */
+    static void writeDocument(Document doc, OutputStream out) throws TransformerException {
+        Transformer transformer = XmlFactories.newTransformer();
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.transform(new DOMSource(doc), new StreamResult(out));
+    }
+
+    /**
+     * Gets the text-input elements whose "text:description" attribute equals
+     * "import".
+     */
+    private static List<Element> importElements(Document doc) {
+        NodeList nodeList = doc.getElementsByTagName(TEXT_INPUT_ELEMENT);
+        List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < nodeList.getLength(); i++) {
+            Element element = (Element) nodeList.item(i);
+            if (TEXT_DESCRIPTION_ATTRIBUTE_VALUE_IMPORT.equals(element.getAttribute(TEXT_DESCRIPTION_ATTRIBUTE))) {
+                elements.add(element);
+            }
+        }
+        return elements;
+    }
+
 }
@@ -0,0 +1,142 @@
+package com.example.odt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import com.example.model.ScanOptions;
+
+/**
+ * Selection of the XML parts of an ODT file that are searched for import
+ * blocks. Optionally the same parts are also taken from every embedded object
+ * (for example {@code Object 1/content.xml}) listed in the manifest.
+ */
+public class OdtParts {
+
+    public static final List<String> DEFAULT_PART_NAMES = ScanOptions.DEFAULT_PARTS;
+    public static final OdtParts DEFAULT = new OdtParts(DEFAULT_PART_NAMES, false);
+    public static final String MANIFEST_PATH = "META-INF/manifest.xml";
+
+    private static final String FILE_ENTRY_ELEMENT = "manifest:file-entry";
+    private static final String FULL_PATH_ATTRIBUTE = "manifest:full-path";
+    private static final String MEDIA_TYPE_ATTRIBUTE = "manifest:media-type";
+    private static final String OPENDOCUMENT_MEDIA_TYPE_PREFIX = "application/vnd.oasis.opendocument.";
+    private static final String DIRECTORY_SEPARATOR = "/";
+
+    private final List<String> partNames;
+    private final boolean embeddedObjects;
+
+    public OdtParts(List<String> partNames, boolean embeddedObjects) {
+        this.partNames = List.copyOf(partNames);
+        this.embeddedObjects = embeddedObjects;
+    }
+
+    /**
+     * Gets the part selection configured in the scan options.
+     *
+     * @param options The scan options.
+     * @return The part selection.
+     */
+    public static OdtParts of(ScanOptions options) {
+        if (!options.isEmbeddedObjects() && DEFAULT_PART_NAMES.equals(options.getParts())) {
+            return DEFAULT;
+        }
+        return new OdtParts(options.getParts(), options.isEmbeddedObjects());
+    }
+
+    public List<String> getPartNames() {
+        return partNames;
+    }
+
+    public boolean isEmbeddedObjects() {
+        return embeddedObjects;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof OdtParts)) {
+            return false;
+        }
+        OdtParts parts = (OdtParts) other;
+        return embeddedObjects == parts.embeddedObjects && partNames.equals(parts.partNames);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * partNames.hashCode() + Boolean.hashCode(embeddedObjects);
+    }
+
+    /**
+     * Resolves the paths of the parts to process inside the ODT file.
+     *
+     * @param manifest The opener for the manifest, only used when embedded
+     *                 objects are selected. It may return null if the file has
+     *                 no manifest.
+     * @return The part paths, top-level parts first.
+     * @throws IOException if the manifest cannot be read.
+     */
+    public List<String> resolve(ManifestOpener manifest) throws IOException {
+        if (!embeddedObjects) {
+            return partNames;
+        }
+        List<String> parts = new ArrayList<>(partNames);
+        try (InputStream manifestStream = manifest.open()) {
+            if (manifestStream != null) {
+                for (String objectDirectory : readObjectDirectories(manifestStream)) {
+                    for (String partName : partNames) {
+                        parts.add(objectDirectory + partName);
+                    }
+                }
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Reads the directories of embedded ODF objects from the manifest.
+     *
+     * @param manifestStream The manifest content.
+     * @return The object directories, each ending with a slash.
+     * @throws IOException if the manifest cannot be parsed.
+     */
+    static List<String> readObjectDirectories(InputStream manifestStream) throws IOException {
+        List<String> directories = new ArrayList<>();
+        try {
+            Document doc = XmlFactories.newDocumentBuilder().parse(manifestStream);
+            NodeList fileEntries = doc.getElementsByTagName(FILE_ENTRY_ELEMENT);
+            for (int i = 0; i < fileEntries.getLength(); i++) {
+                Element entry = (Element) fileEntries.item(i);
+                String fullPath = entry.getAttribute(FULL_PATH_ATTRIBUTE);
+
+                // Sub-documents are directory entries with an OpenDocument media type, the
+                // root document itself is listed as "/"
+                if (fullPath.endsWith(DIRECTORY_SEPARATOR) && !fullPath.equals(DIRECTORY_SEPARATOR)
+                        && entry.getAttribute(MEDIA_TYPE_ATTRIBUTE).startsWith(OPENDOCUMENT_MEDIA_TYPE_PREFIX)) {
+                    directories.add(fullPath);
+                }
+            }
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException(String.format("Invalid manifest. Error message: %s", e.getMessage()), e);
+        }
+        return directories;
+    }
+
+    /**
+     * Opens the manifest of an ODT file.
+     */
+    @FunctionalInterface
+    public interface ManifestOpener {
+        InputStream open() throws IOException;
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.odt;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.example.model.VerifyReport;
+
+/**
+ * Checks the integrity of an ODT file without extracting import blocks:
+ *
+ * <ul>
+ * <li>zip: the central directory can be read.</li>
+ * <li>mimetype: the first local entry is an uncompressed {@code mimetype}
+ * holding an OpenDocument text media type, as the ODF packaging rules
+ * require.</li>
+ * <li>crc: every entry inflates completely to its recorded size and CRC-32.
+ * {@link CRC32} is a JVM intrinsic backed by the CPU's CRC instructions where
+ * available, so the check costs little more than inflating.</li>
+ * <li>xml: every {@code .xml} entry is well-formed.</li>
+ * </ul>
+ *
+ * Each entry is read once, the XML check runs on the stream the CRC is
+ * computed from.
+ */
+public final class OdtVerifier {
+
+    public static final String ZIP_CHECK = "zip";
+    public static final String MIMETYPE_CHECK = "mimetype";
+    public static final String CRC_CHECK = "crc";
+    public static final String XML_CHECK = "xml";
+    public static final String READ_CHECK = "read";
+
+    private static final String MIMETYPE_ENTRY = "mimetype";
+    private static final String MEDIA_TYPE_PREFIX = "application/vnd.oasis.opendocument.text";
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    // Enough for the first entry name to be reported in full
+    private static final int MAX_NAME_LENGTH = 256;
+    private static final int STORED = 0;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private OdtVerifier() {
+    }
+
+    /**
+     * Runs every check on an ODT file.
+     *
+     * @param file The ODT file.
+     * @return The problems found, empty if the file is intact.
+     */
+    public static List<VerifyReport.Problem> verify(Path file) {
+        List<VerifyReport.Problem> problems = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(file.toFile())) {
+            checkMimetype(file, zipFile, problems);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    checkEntry(zipFile, entry, buffer, problems);
+                }
+            }
+        } catch (IOException e) {
+            // Nothing else can be checked without the central directory
+            problems.add(new VerifyReport.Problem(ZIP_CHECK, null, e.getMessage()));
+        }
+        return problems;
+    }
+
+    /**
+     * Checks the first local file header, which the central directory does not
+     * reveal, and the content of the mimetype entry.
+     */
+    private static void checkMimetype(Path file, ZipFile zipFile, List<VerifyReport.Problem> problems)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + MAX_NAME_LENGTH)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Read until the header is complete or the file ends
+            }
+        }
+        header.flip();
+        if (header.remaining() < LOCAL_HEADER_SIZE || header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            problems.add(new VerifyReport.Problem(MIMETYPE_CHECK, null,
+                    "The file does not start with a ZIP local file header."));
+            return;
+        }
+        byte[] name = new byte[Math.min(header.getShort(26) & 0xffff, header.remaining() - LOCAL_HEADER_SIZE)];
+        header.position(LOCAL_HEADER_SIZE);
+        header.get(name);
+        String firstEntry = new String(name, StandardCharsets.UTF_8);
+        if (!MIMETYPE_ENTRY.equals(firstEntry)) {
+            problems.add(new VerifyReport.Problem(MIMETYPE_CHECK, firstEntry,
+                    "The first entry is not mimetype."));
+            return;
+        }
+        if ((header.getShort(8) & 0xffff) != STORED) {
+            problems.add(new VerifyReport.Problem(MIMETYPE_CHECK, MIMETYPE_ENTRY,
+                    "The mimetype entry is compressed."));
+        }
+
+        ZipEntry entry = zipFile.getEntry(MIMETYPE_ENTRY);
+        if (entry == null) {
+            problems.add(new VerifyReport.Problem(MIMETYPE_CHECK, MIMETYPE_ENTRY,
+                    "The mimetype entry is missing from the central directory."));
+            return;
+        }
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            String mediaType = new String(input.readNBytes(BUFFER_SIZE), StandardCharsets.US_ASCII);
+            if (!mediaType.startsWith(MEDIA_TYPE_PREFIX)) {
+                problems.add(new VerifyReport.Problem(MIMETYPE_CHECK, MIMETYPE_ENTRY,
+                        String.format("Unexpected media type %s.", mediaType)));
+            }
+        } catch (IOException e) {
+            // Reported by the CRC check of the entry
+        }
+    }
+
+    /**
+     * Reads an entry to its end, parsing it on the way if it is XML, and compares
+     * the CRC-32 and size with the central directory.
+     */
+    private static void checkEntry(ZipFile zipFile, ZipEntry entry, byte[] buffer,
+            List<VerifyReport.Problem> problems) {
+        CountingCheckedInputStream input;
+        try {
+            input = new CountingCheckedInputStream(zipFile.getInputStream(entry));
+        } catch (IOException e) {
+            problems.add(new VerifyReport.Problem(READ_CHECK, entry.getName(), e.getMessage()));
+            return;
+        }
+        try (input) {
+            // LibreOffice writes empty configuration parts, only parts with content are XML
+            if (entry.getName().endsWith(".xml") && entry.getSize() != 0) {
+                checkXml(input, entry, problems);
+            }
+            // The parser may stop before the end, or not run at all
+            while (input.read(buffer) >= 0) {
+                // Read to the end for the CRC
+            }
+        } catch (IOException e) {
+            problems.add(new VerifyReport.Problem(READ_CHECK, entry.getName(), e.getMessage()));
+            return;
+        }
+
+        long crc = input.getChecksum().getValue();
+        if (entry.getCrc() != -1 && crc != entry.getCrc()) {
+            problems.add(new VerifyReport.Problem(CRC_CHECK, entry.getName(), String.format(
+                    "CRC-32 is %08x, the central directory records %08x.", crc, entry.getCrc())));
+        } else if (entry.getSize() != -1 && input.count != entry.getSize()) {
+            problems.add(new VerifyReport.Problem(CRC_CHECK, entry.getName(), String.format(
+                    "Size is %d bytes, the central directory records %d.", input.count, entry.getSize())));
+        }
+    }
+
+    private static void checkXml(InputStream input, ZipEntry entry, List<VerifyReport.Problem> problems)
+            throws IOException {
+        try {
+            // The JDK parser closes its input at the end of the document, the rest of
+            // the entry is still to be read for the CRC
+            XMLStreamReader reader = XmlFactories.newStreamReader(new FilterInputStream(input) {
+                @Override
+                public void close() {
+                }
+            });
+            try {
+                while (reader.hasNext()) {
+                    reader.next();
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            // An inflate error surfaces wrapped in the parser exception
+            if (e.getNestedException() instanceof IOException) {
+                throw (IOException) e.getNestedException();
+            }
+            problems.add(new VerifyReport.Problem(XML_CHECK, entry.getName(), e.getMessage()));
+        }
+    }
+
+    /**
+     * Computes the CRC-32 and counts the bytes of an entry as it is read.
+     */
+    private static final class CountingCheckedInputStream extends CheckedInputStream {
+        private long count;
+
+        private CountingCheckedInputStream(InputStream input) {
+            super(input, new CRC32());
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
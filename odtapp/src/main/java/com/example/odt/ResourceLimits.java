@@ -0,0 +1,300 @@
+package com.example.odt;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.example.concurrent.Deadline;
+import com.example.concurrent.Watchdog;
+import com.example.model.ScanOptions;
+
+/**
+ * Limits on what a single ODT file may cost while it is read and parsed, so a
+ * corrupt or hostile file fails on its own instead of exhausting the heap or
+ * holding a worker for minutes.
+ *
+ * Entries are held to a maximum inflated size and, above
+ * {@link #MIN_RATIO_CHECKED_SIZE}, a maximum compression ratio. Both are
+ * counted while the entry inflates, so sizes the archive declares falsely do
+ * not get past them. XML parts are parsed with a cap on element depth and
+ * element count, without external DTDs and with few entity expansions. Each
+ * read and each parse of a file has a wall-clock timeout kept by the
+ * {@link Watchdog}.
+ *
+ * Parts the {@link ImportBlockPrefilter} rules out are only skipped on
+ * request. They are then not checked at all, so a part without import fields
+ * that is malformed inside or exceeds the element limits no longer fails the
+ * file.
+ */
+public final class ResourceLimits {
+
+    public static final int DEFAULT_MAX_ELEMENT_DEPTH = 1000;
+    public static final int DEFAULT_MAX_ELEMENTS = 10_000_000;
+    // ODF parts do not use entities, the limit only has to stop expansion attacks
+    public static final int MAX_ENTITY_EXPANSIONS = 10_000;
+    // Small entries of repeated markup compress very well for good reasons
+    public static final long MIN_RATIO_CHECKED_SIZE = 1024 * 1024;
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    public static final ResourceLimits DEFAULT = of(new ScanOptions());
+
+    private final long maxEntrySize;
+    private final int maxCompressionRatio;
+    private final int maxElementDepth;
+    private final int maxElements;
+    private final long fileTimeoutMillis;
+    private final boolean skipFieldlessParts;
+
+    /**
+     * @param maxEntrySize        The most bytes an entry may inflate to.
+     * @param maxCompressionRatio The most an entry may inflate per compressed
+     *                            byte.
+     * @param maxElementDepth     The deepest element nesting of an XML part.
+     * @param maxElements         The most elements of an XML part.
+     * @param fileTimeoutMillis   The time a read or a parse of a file may take,
+     *                            0 for no limit.
+     */
+    public ResourceLimits(long maxEntrySize, int maxCompressionRatio, int maxElementDepth, int maxElements,
+            long fileTimeoutMillis) {
+        this(maxEntrySize, maxCompressionRatio, maxElementDepth, maxElements, fileTimeoutMillis, false);
+    }
+
+    /**
+     * @param maxEntrySize        The most bytes an entry may inflate to.
+     * @param maxCompressionRatio The most an entry may inflate per compressed
+     *                            byte.
+     * @param maxElementDepth     The deepest element nesting of an XML part.
+     * @param maxElements         The most elements of an XML part.
+     * @param fileTimeoutMillis   The time a read or a parse of a file may take,
+     *                            0 for no limit.
+     * @param skipFieldlessParts  true to skip parsing parts without import
+     *                            fields when only import blocks are read.
+     */
+    public ResourceLimits(long maxEntrySize, int maxCompressionRatio, int maxElementDepth, int maxElements,
+            long fileTimeoutMillis, boolean skipFieldlessParts) {
+        this.maxEntrySize = maxEntrySize;
+        this.maxCompressionRatio = maxCompressionRatio;
+        this.maxElementDepth = maxElementDepth;
+        this.maxElements = maxElements;
+        this.fileTimeoutMillis = fileTimeoutMillis;
+        this.skipFieldlessParts = skipFieldlessParts;
+    }
+
+    /**
+     * Gets the limits configured in the scan options.
+     *
+     * @param options The scan options.
+     * @return The limits.
+     */
+    public static ResourceLimits of(ScanOptions options) {
+        return new ResourceLimits(options.getMaxEntrySize() * MEGABYTE, options.getMaxCompressionRatio(),
+                DEFAULT_MAX_ELEMENT_DEPTH, DEFAULT_MAX_ELEMENTS, options.getFileTimeoutMillis(),
+                options.isSkipFieldlessParts());
+    }
+
+    public long getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    public int getMaxCompressionRatio() {
+        return maxCompressionRatio;
+    }
+
+    public int getMaxElementDepth() {
+        return maxElementDepth;
+    }
+
+    public int getMaxElements() {
+        return maxElements;
+    }
+
+    public long getFileTimeoutMillis() {
+        return fileTimeoutMillis;
+    }
+
+    public boolean isSkipFieldlessParts() {
+        return skipFieldlessParts;
+    }
+
+    /**
+     * Checks if a part has to be parsed when only import blocks are read.
+     *
+     * @param content The inflated content of the part.
+     * @return false only if parts without import fields are skipped and the
+     *         {@link ImportBlockPrefilter} rules the part out.
+     */
+    boolean needsImportBlockParse(byte[] content) {
+        return !skipFieldlessParts || ImportBlockPrefilter.needsParse(content);
+    }
+
+    /**
+     * Gets the limits for a file read before a deadline, whose timeout ends at
+     * the deadline at the latest.
+     *
+     * @param deadline The deadline of the run.
+     * @return The limits, or these limits without a deadline.
+     */
+    public ResourceLimits within(Deadline deadline) {
+        if (!deadline.isSet()) {
+            return this;
+        }
+        // A timeout of 0 has no limit, the watch of a read past the deadline expires at once
+        long remainingMillis = Math.max(1, deadline.remainingMillis());
+        long timeoutMillis = fileTimeoutMillis > 0 ? Math.min(fileTimeoutMillis, remainingMillis) : remainingMillis;
+        return new ResourceLimits(maxEntrySize, maxCompressionRatio, maxElementDepth, maxElements, timeoutMillis,
+                skipFieldlessParts);
+    }
+
+    /**
+     * Starts the timeout of one read or parse of a file.
+     *
+     * @return The watch, to be closed when the work is done.
+     */
+    Watchdog.Watch watch() {
+        return Watchdog.watch(fileTimeoutMillis);
+    }
+
+    /**
+     * Checks the sizes an archive declares for an entry before it is inflated.
+     *
+     * @param name           The entry name.
+     * @param size           The declared inflated size, -1 if unknown.
+     * @param compressedSize The declared compressed size, -1 if unknown.
+     * @throws IOException if the entry would exceed a limit.
+     */
+    void checkEntry(String name, long size, long compressedSize) throws IOException {
+        if (size > maxEntrySize) {
+            throw new IOException(String.format("Entry %s inflates to %d bytes, more than the limit of %d.", name,
+                    size, maxEntrySize));
+        }
+        if (size > MIN_RATIO_CHECKED_SIZE && compressedSize > 0 && size / compressedSize >= maxCompressionRatio) {
+            throw new IOException(String.format("Entry %s has a compression ratio of %d, more than the limit of %d.",
+                    name, size / compressedSize, maxCompressionRatio));
+        }
+    }
+
+    /**
+     * Guards the inflated stream of an entry. Reading fails once the entry
+     * inflates past the size or ratio limit or the watch expires.
+     *
+     * @param name           The entry name.
+     * @param in             The inflated stream.
+     * @param compressedSize The compressed size, -1 if unknown.
+     * @param watch          The timeout of the read.
+     * @return The guarded stream.
+     */
+    InputStream limit(String name, InputStream in, long compressedSize, Watchdog.Watch watch) {
+        long ratioLimit = compressedSize > 0 && compressedSize < Long.MAX_VALUE / maxCompressionRatio
+                ? Math.max(MIN_RATIO_CHECKED_SIZE, compressedSize * maxCompressionRatio)
+                : Long.MAX_VALUE;
+        return new LimitedInputStream(name, in, Math.min(maxEntrySize, ratioLimit), ratioLimit < maxEntrySize,
+                watch);
+    }
+
+    /**
+     * Starts counting the elements of one XML part.
+     *
+     * @param watch The timeout of the parse.
+     * @return The counter.
+     */
+    ElementCounter newElementCounter(Watchdog.Watch watch) {
+        return new ElementCounter(watch);
+    }
+
+    private static IOException timedOut(Watchdog.Watch watch) {
+        return new IOException(String.format("Processing timed out after %d ms.", watch.getTimeoutMillis()));
+    }
+
+    /**
+     * Counts the elements of an XML part as it is parsed.
+     */
+    final class ElementCounter {
+        private final Watchdog.Watch watch;
+        private int depth;
+        private int count;
+
+        private ElementCounter(Watchdog.Watch watch) {
+            this.watch = watch;
+        }
+
+        /**
+         * Counts a start element.
+         *
+         * @throws IOException if the part exceeds a limit or the watch expired.
+         */
+        void startElement() throws IOException {
+            if (++count > maxElements) {
+                throw new IOException(String.format("XML part has more than %d elements.", maxElements));
+            }
+            if (++depth > maxElementDepth) {
+                throw new IOException(String.format("XML part nests elements deeper than %d.", maxElementDepth));
+            }
+            if (watch.isExpired()) {
+                throw timedOut(watch);
+            }
+        }
+
+        void endElement() {
+            depth--;
+        }
+    }
+
+    /**
+     * Stream that stops an entry at its limit.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final String name;
+        private final long limit;
+        private final boolean ratioLimited;
+        private final Watchdog.Watch watch;
+        private long count;
+
+        private LimitedInputStream(String name, InputStream in, long limit, boolean ratioLimited,
+                Watchdog.Watch watch) {
+            super(in);
+            this.name = name;
+            this.limit = limit;
+            this.ratioLimited = ratioLimited;
+            this.watch = watch;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            // Read at most one byte past the limit to detect the overflow
+            int read = super.read(b, off, (int) Math.min(len, limit - count + 1));
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, limit - count + 1));
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long read) throws IOException {
+            count += read;
+            if (count > limit) {
+                throw new IOException(ratioLimited
+                        ? String.format("Entry %s inflates beyond the compression ratio limit.", name)
+                        : String.format("Entry %s inflates to more than the limit of %d bytes.", name, limit));
+            }
+            if (watch.isExpired()) {
+                throw timedOut(watch);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.odt;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+import org.xml.sax.SAXException;
+
+/**
+ * XML factories created on first use. Looking up a JAXP factory goes through
+ * system properties, jaxp.properties and the service loader, so each thread
+ * does it once instead of once per part, and actions that never parse XML
+ * never load the XML stack. Factories are not guaranteed to be thread-safe,
+ * hence one per thread.
+ *
+ * The DOM and SAX parsers do not load external DTDs and stop entity expansion
+ * and element nesting at the {@link ResourceLimits} defaults.
+ */
+final class XmlFactories {
+
+    private static final String LOAD_EXTERNAL_DTD_FEATURE
+            = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+    private static final String ENTITY_EXPANSION_LIMIT_PROPERTY
+            = "http://www.oracle.com/xml/jaxp/properties/entityExpansionLimit";
+    private static final String MAX_ELEMENT_DEPTH_PROPERTY
+            = "http://www.oracle.com/xml/jaxp/properties/maxElementDepth";
+
+    private static final ThreadLocal<DocumentBuilderFactory> DOCUMENT_BUILDER_FACTORY = ThreadLocal
+            .withInitial(XmlFactories::createDocumentBuilderFactory);
+    private static final ThreadLocal<SAXParserFactory> SAX_PARSER_FACTORY = ThreadLocal
+            .withInitial(XmlFactories::createSaxParserFactory);
+    private static final ThreadLocal<TransformerFactory> TRANSFORMER_FACTORY = ThreadLocal
+            .withInitial(TransformerFactory::newInstance);
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = ThreadLocal
+            .withInitial(XmlFactories::createInputFactory);
+    private static final ThreadLocal<XMLOutputFactory> OUTPUT_FACTORY = ThreadLocal
+            .withInitial(XMLOutputFactory::newInstance);
+    private static final ThreadLocal<XMLEventFactory> EVENT_FACTORY = ThreadLocal
+            .withInitial(XMLEventFactory::newInstance);
+
+    private XmlFactories() {
+    }
+
+    /**
+     * Creates a DOM parser.
+     *
+     * @return The document builder.
+     * @throws ParserConfigurationException if the parser cannot be created.
+     */
+    static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        return DOCUMENT_BUILDER_FACTORY.get().newDocumentBuilder();
+    }
+
+    /**
+     * Creates a SAX parser that is not namespace aware, so element and
+     * attribute names are reported as written, like the DOM parser.
+     *
+     * @return The SAX parser.
+     * @throws ParserConfigurationException if the parser cannot be created.
+     * @throws SAXException                 if the limits cannot be set.
+     */
+    static SAXParser newSaxParser() throws ParserConfigurationException, SAXException {
+        SAXParser parser = SAX_PARSER_FACTORY.get().newSAXParser();
+        parser.setProperty(ENTITY_EXPANSION_LIMIT_PROPERTY, String.valueOf(ResourceLimits.MAX_ENTITY_EXPANSIONS));
+        parser.setProperty(MAX_ELEMENT_DEPTH_PROPERTY, String.valueOf(ResourceLimits.DEFAULT_MAX_ELEMENT_DEPTH));
+        return parser;
+    }
+
+    /**
+     * Creates a transformer that copies its source.
+     *
+     * @return The transformer.
+     * @throws TransformerConfigurationException if the transformer cannot be
+     *                                           created.
+     */
+    static Transformer newTransformer() throws TransformerConfigurationException {
+        return TRANSFORMER_FACTORY.get().newTransformer();
+    }
+
+    /**
+     * Creates a StAX event reader that does not resolve external entities.
+     *
+     * @param input The XML input.
+     * @return The event reader.
+     * @throws XMLStreamException if the reader cannot be created.
+     */
+    static XMLEventReader newEventReader(InputStream input) throws XMLStreamException {
+        return INPUT_FACTORY.get().createXMLEventReader(input);
+    }
+
+    /**
+     * Creates a StAX stream reader that does not resolve external entities.
+     *
+     * @param input The XML input.
+     * @return The stream reader.
+     * @throws XMLStreamException if the reader cannot be created.
+     */
+    static XMLStreamReader newStreamReader(InputStream input) throws XMLStreamException {
+        return INPUT_FACTORY.get().createXMLStreamReader(input);
+    }
+
+    /**
+     * Creates a StAX event writer that writes UTF-8.
+     *
+     * @param output The XML output.
+     * @return The event writer.
+     * @throws XMLStreamException if the writer cannot be created.
+     */
+    static XMLEventWriter newEventWriter(OutputStream output) throws XMLStreamException {
+        return OUTPUT_FACTORY.get().createXMLEventWriter(output, StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * Gets the StAX event factory of the current thread.
+     *
+     * @return The event factory.
+     */
+    static XMLEventFactory eventFactory() {
+        return EVENT_FACTORY.get();
+    }
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        try {
+            factory.setFeature(LOAD_EXTERNAL_DTD_FEATURE, false);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+        factory.setAttribute(ENTITY_EXPANSION_LIMIT_PROPERTY, String.valueOf(ResourceLimits.MAX_ENTITY_EXPANSIONS));
+        factory.setAttribute(MAX_ELEMENT_DEPTH_PROPERTY, String.valueOf(ResourceLimits.DEFAULT_MAX_ELEMENT_DEPTH));
+        return factory;
+    }
+
+    private static SAXParserFactory createSaxParserFactory() {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        try {
+            factory.setFeature(LOAD_EXTERNAL_DTD_FEATURE, false);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IllegalStateException(e);
+        }
+        return factory;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // ODF parts never need external entities, do not resolve them
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        return factory;
+    }
+}
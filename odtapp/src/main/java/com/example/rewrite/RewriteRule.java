@@ -0,0 +1,149 @@
+package com.example.rewrite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.exception.InvalidArgumentException;
+import com.example.validation.ArgumentValidator;
+
+/**
+ * Rule that rewrites an import block matching a pattern. In a pattern each
+ * {@code *} matches any sequence of characters, and the {@code *} characters
+ * of the replacement are filled with the matched sequences in order, so
+ * {@code [import hdr_*.odt]} to {@code [import header/*.odt]} renames every
+ * {@code hdr_} block.
+ */
+public class RewriteRule {
+
+    public static final char WILDCARD = '*';
+    private static final String WILDCARD_SAMPLE = "x";
+
+    private final String pattern;
+    private final String replacement;
+    private final boolean literal;
+
+    private RewriteRule(String pattern, String replacement, boolean literal) {
+        this.pattern = pattern;
+        this.replacement = replacement;
+        this.literal = literal;
+    }
+
+    /**
+     * Creates a rule with a wildcard pattern.
+     *
+     * @param pattern     The pattern of blocks to rewrite.
+     * @param replacement The replacement block.
+     * @return The rule.
+     * @throws InvalidArgumentException if the pattern or replacement is not an
+     *                                  import block or the wildcards do not
+     *                                  line up.
+     */
+    public static RewriteRule of(String pattern, String replacement) throws InvalidArgumentException {
+        if (!ArgumentValidator.isValidImportBlock(pattern.replace(String.valueOf(WILDCARD), WILDCARD_SAMPLE))) {
+            throw new InvalidArgumentException("Invalid format of rule pattern: " + pattern);
+        }
+        if (!ArgumentValidator
+                .isValidImportBlock(replacement.replace(String.valueOf(WILDCARD), WILDCARD_SAMPLE))) {
+            throw new InvalidArgumentException("Invalid format of rule replacement: " + replacement);
+        }
+        int replacementWildcards = countWildcards(replacement);
+        if (replacementWildcards != 0 && replacementWildcards != countWildcards(pattern)) {
+            throw new InvalidArgumentException(String.format(
+                    "Replacement %s must contain no wildcards or as many as pattern %s", replacement, pattern));
+        }
+        return new RewriteRule(pattern, replacement, false);
+    }
+
+    /**
+     * Creates a rule that only matches the exact block.
+     *
+     * @param blockToReplace The block to replace.
+     * @param newBlock       The new block.
+     * @return The rule.
+     */
+    public static RewriteRule literal(String blockToReplace, String newBlock) {
+        return new RewriteRule(blockToReplace, newBlock, true);
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public String getReplacement() {
+        return replacement;
+    }
+
+    /**
+     * Gets the number of pattern tokens, each a character or a wildcard.
+     *
+     * @return The pattern length.
+     */
+    int length() {
+        return pattern.length();
+    }
+
+    boolean isWildcard(int index) {
+        return !literal && pattern.charAt(index) == WILDCARD;
+    }
+
+    boolean matches(int index, char c) {
+        return isWildcard(index) || pattern.charAt(index) == c;
+    }
+
+    /**
+     * Builds the replacement for a block this rule is known to match.
+     *
+     * @param block The matching block.
+     * @return The new block.
+     */
+    String apply(String block) {
+        if (literal || replacement.indexOf(WILDCARD) < 0) {
+            return replacement;
+        }
+        List<String> captures = new ArrayList<>();
+        capture(0, block, 0, captures);
+
+        StringBuilder result = new StringBuilder(replacement.length() + block.length());
+        int captureIndex = 0;
+        for (int i = 0; i < replacement.length(); i++) {
+            char c = replacement.charAt(i);
+            if (c == WILDCARD) {
+                result.append(captures.get(captureIndex++));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Matches the block against the pattern, each wildcard taking the shortest
+     * sequence that still lets the rest match.
+     */
+    private boolean capture(int patternIndex, String block, int blockIndex, List<String> captures) {
+        if (patternIndex == pattern.length()) {
+            return blockIndex == block.length();
+        }
+        if (isWildcard(patternIndex)) {
+            for (int end = blockIndex; end <= block.length(); end++) {
+                captures.add(block.substring(blockIndex, end));
+                if (capture(patternIndex + 1, block, end, captures)) {
+                    return true;
+                }
+                captures.remove(captures.size() - 1);
+            }
+            return false;
+        }
+        return blockIndex < block.length() && pattern.charAt(patternIndex) == block.charAt(blockIndex)
+                && capture(patternIndex + 1, block, blockIndex + 1, captures);
+    }
+
+    private static int countWildcards(String value) {
+        return (int) value.chars().filter(c -> c == WILDCARD).count();
+    }
+
+    @Override
+    public String toString() {
+        return pattern + RewriteRuleSet.RULE_SEPARATOR + replacement;
+    }
+}
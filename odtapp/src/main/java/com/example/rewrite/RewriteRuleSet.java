@@ -0,0 +1,239 @@
+package com.example.rewrite;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.example.exception.InvalidArgumentException;
+
+/**
+ * Set of rewrite rules compiled into a single automaton.
+ *
+ * The patterns of all rules form one NFA whose states are the positions in
+ * each pattern. It is determinized lazily: each DFA state is the set of live
+ * pattern positions and its transitions are computed the first time a
+ * character is seen. A block is therefore classified in one pass no matter
+ * how many rules there are, and only the winning rule is matched again to
+ * fill in its wildcards. When several rules match, the first one in the list
+ * wins. At most {@value #MAX_CACHED_STATES} states are cached; states past
+ * that are computed again on every visit and no cached state keeps a
+ * transition to them, so the automaton stays bounded on any input.
+ *
+ * Instances are safe for concurrent use.
+ */
+public class RewriteRuleSet {
+
+    public static final String RULE_SEPARATOR = " => ";
+    private static final String COMMENT_PREFIX = "#";
+    private static final int MAX_CACHED_STATES = 10_000;
+    private static final int NO_RULE = -1;
+
+    private final List<RewriteRule> rules;
+
+    // First NFA position of each rule, the last position of a rule is accepting
+    private final int[] ruleStart;
+    private final int[] ruleOfPosition;
+
+    private final Map<BitSet, State> states = new ConcurrentHashMap<>();
+    private final State startState;
+
+    private RewriteRuleSet(List<RewriteRule> rules) {
+        this.rules = List.copyOf(rules);
+        this.ruleStart = new int[rules.size()];
+        int positions = 0;
+        for (int r = 0; r < rules.size(); r++) {
+            ruleStart[r] = positions;
+            positions += rules.get(r).length() + 1;
+        }
+        this.ruleOfPosition = new int[positions];
+        for (int r = 0; r < rules.size(); r++) {
+            for (int i = 0; i <= rules.get(r).length(); i++) {
+                ruleOfPosition[ruleStart[r] + i] = r;
+            }
+        }
+
+        BitSet start = new BitSet(positions);
+        for (int r = 0; r < rules.size(); r++) {
+            addWithClosure(start, ruleStart[r]);
+        }
+        this.startState = intern(start);
+    }
+
+    /**
+     * Compiles the rules into a rule set.
+     *
+     * @param rules The rules in priority order.
+     * @return The rule set.
+     */
+    public static RewriteRuleSet of(List<RewriteRule> rules) {
+        return new RewriteRuleSet(rules);
+    }
+
+    /**
+     * Creates a rule set that replaces one exact block.
+     *
+     * @param blockToReplace The block to replace.
+     * @param newBlock       The new block.
+     * @return The rule set.
+     */
+    public static RewriteRuleSet literal(String blockToReplace, String newBlock) {
+        return new RewriteRuleSet(Collections.singletonList(RewriteRule.literal(blockToReplace, newBlock)));
+    }
+
+    /**
+     * Parses a rules file. Each line holds {@code pattern => replacement}, blank
+     * lines and lines starting with {@code #} are ignored.
+     *
+     * @param rulesFile The rules file.
+     * @return The rule set.
+     * @throws IOException              if an I/O error occurs.
+     * @throws InvalidArgumentException if a rule is malformed.
+     */
+    public static RewriteRuleSet parse(Path rulesFile) throws IOException, InvalidArgumentException {
+        List<RewriteRule> rules = new ArrayList<>();
+        List<String> lines = Files.readAllLines(rulesFile);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith(COMMENT_PREFIX)) {
+                continue;
+            }
+            int separator = line.indexOf(RULE_SEPARATOR.trim());
+            if (separator < 0) {
+                throw new InvalidArgumentException(String.format(
+                        "Invalid rule on line %d of %s. Expected: <pattern>%s<replacement>", i + 1, rulesFile,
+                        RULE_SEPARATOR));
+            }
+            try {
+                rules.add(RewriteRule.of(line.substring(0, separator).trim(),
+                        line.substring(separator + RULE_SEPARATOR.trim().length()).trim()));
+            } catch (InvalidArgumentException e) {
+                throw new InvalidArgumentException(
+                        String.format("Invalid rule on line %d of %s. %s", i + 1, rulesFile, e.getMessage()));
+            }
+        }
+        if (rules.isEmpty()) {
+            throw new InvalidArgumentException("No rules found in " + rulesFile);
+        }
+        return new RewriteRuleSet(rules);
+    }
+
+    public List<RewriteRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Rewrites the block with the first matching rule.
+     *
+     * @param block The import block.
+     * @return The new block, or an empty Optional if no rule matches.
+     */
+    public Optional<String> rewrite(String block) {
+        State state = startState;
+        for (int i = 0; i < block.length() && !state.isDead(); i++) {
+            state = state.next(block.charAt(i));
+        }
+        return state.acceptedRule == NO_RULE ? Optional.empty()
+                : Optional.of(rules.get(state.acceptedRule).apply(block));
+    }
+
+    /**
+     * Checks if any of the blocks would be rewritten.
+     *
+     * @param blocks The import blocks, or null for none.
+     * @return true if a rule matches at least one block.
+     */
+    public boolean rewritesAny(Collection<String> blocks) {
+        return blocks != null && blocks.stream().anyMatch(block -> rewrite(block).isPresent());
+    }
+
+    private State intern(BitSet positions) {
+        State state = states.get(positions);
+        if (state != null) {
+            return state;
+        }
+        // Stop caching once the automaton grows too large, states are then rebuilt on
+        // demand
+        if (states.size() >= MAX_CACHED_STATES) {
+            return new State(positions, acceptedRule(positions), false);
+        }
+        state = new State(positions, acceptedRule(positions), true);
+        State existing = states.putIfAbsent(positions, state);
+        return existing != null ? existing : state;
+    }
+
+    private int acceptedRule(BitSet positions) {
+        for (int r = 0; r < rules.size(); r++) {
+            if (positions.get(ruleStart[r] + rules.get(r).length())) {
+                return r;
+            }
+        }
+        return NO_RULE;
+    }
+
+    private void addWithClosure(BitSet positions, int position) {
+        positions.set(position);
+        int rule = ruleOfPosition[position];
+        int index = position - ruleStart[rule];
+        // A wildcard may match an empty sequence, so the next position is live too
+        while (index < rules.get(rule).length() && rules.get(rule).isWildcard(index)) {
+            index++;
+            positions.set(ruleStart[rule] + index);
+        }
+    }
+
+    private BitSet step(BitSet positions, char c) {
+        BitSet next = new BitSet(ruleOfPosition.length);
+        for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+            int rule = ruleOfPosition[p];
+            int index = p - ruleStart[rule];
+            RewriteRule rewriteRule = rules.get(rule);
+            if (index == rewriteRule.length()) {
+                continue;
+            }
+            if (rewriteRule.isWildcard(index)) {
+                addWithClosure(next, p);
+            } else if (rewriteRule.matches(index, c)) {
+                addWithClosure(next, p + 1);
+            }
+        }
+        return next;
+    }
+
+    private final class State {
+        private final BitSet positions;
+        private final int acceptedRule;
+        // Only cached states keep transitions, and only to cached states
+        private final boolean cached;
+        private final Map<Character, State> transitions;
+
+        private State(BitSet positions, int acceptedRule, boolean cached) {
+            this.positions = positions;
+            this.acceptedRule = acceptedRule;
+            this.cached = cached;
+            this.transitions = cached ? new ConcurrentHashMap<>() : null;
+        }
+
+        private boolean isDead() {
+            return positions.isEmpty();
+        }
+
+        private State next(char c) {
+            State next = cached ? transitions.get(c) : null;
+            if (next == null) {
+                next = intern(step(positions, c));
+                if (cached && next.cached) {
+                    transitions.put(c, next);
+                }
+            }
+            return next;
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package com.example.service;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.example.concurrent.AdaptiveExecutor;
+import com.example.concurrent.TemplateLockManager;
+import com.example.exception.InvalidFileException;
+import com.example.logging.RunSummary;
+import com.example.model.JsonItem;
+import com.example.model.ReplaceResult;
+import com.example.odt.OdtFile;
+import com.example.odt.OdtParts;
+import com.example.odt.ResourceLimits;
+import com.example.rewrite.RewriteRuleSet;
+import com.example.stats.BlockIndex;
+import com.example.util.ContentDeduplicator;
+import com.example.util.FileUtil;
+import com.example.util.ImportBlockCache;
+import com.example.util.ScanContext;
+import com.example.util.WalkFilter;
+
+/**
+ * Scans and rewrites ODT templates in-process and returns the results as
+ * objects, for applications that embed the tool instead of running the
+ * command line.
+ *
+ * Instances are created with {@link #builder()} and are safe for concurrent
+ * use. Calls that rewrite the same file are serialized, calls on different
+ * files run in parallel. A service that was built without an executor but
+ * with {@link Builder#maxConcurrency(int)} owns its worker threads and must
+ * be closed.
+ */
+public class OdtTemplateService implements AutoCloseable {
+
+    /**
+     * The XML engine that rewrites the parts of a template.
+     */
+    public enum XmlEngine {
+        // Loads each part into a DOM, the same as the replace action
+        DOM,
+        // Pipes StAX events through temporary files, memory use does not grow
+        // with the template size
+        STREAMING
+    }
+
+    private final Executor executor;
+    private final AdaptiveExecutor ownedExecutor;
+    private final OdtParts parts;
+    private final ResourceLimits limits;
+    private final XmlEngine xmlEngine;
+    private final ImportBlockCache cache;
+    private final boolean deduplicate;
+    private final WalkFilter walkFilter;
+    private final TemplateLockManager locks;
+
+    private OdtTemplateService(Builder builder) {
+        if (builder.executor != null) {
+            this.executor = builder.executor;
+            this.ownedExecutor = null;
+        } else if (builder.maxConcurrency > 0) {
+            this.ownedExecutor = new AdaptiveExecutor(builder.maxConcurrency);
+            this.executor = ownedExecutor;
+        } else {
+            this.executor = Runnable::run;
+            this.ownedExecutor = null;
+        }
+        this.parts = builder.parts;
+        this.limits = builder.limits;
+        this.xmlEngine = builder.xmlEngine;
+        this.cache = builder.cache;
+        this.deduplicate = builder.deduplicate;
+        this.walkFilter = builder.walkFilter;
+        this.locks = builder.locks;
+    }
+
+    /**
+     * Starts the configuration of a service. Without further settings the
+     * service reads the default parts on the calling thread, rewrites with the
+     * DOM engine and caches the import blocks of unchanged templates.
+     *
+     * @return The builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Scans a file or directory for import blocks.
+     *
+     * @param fileOrDirectory The ODT file or directory to scan.
+     * @return The tree of directories and ODT files, the same as the json action
+     *         writes, or an empty Optional if there are no ODT files.
+     * @throws FileNotFoundException if the path does not exist.
+     */
+    public Optional<JsonItem> scan(Path fileOrDirectory) throws FileNotFoundException {
+        File directoryOrFile = fileOrDirectory.toFile();
+        if (!directoryOrFile.exists()) {
+            throw new FileNotFoundException(String.format("The specified path %s does not exist.", fileOrDirectory));
+        }
+        List<CompletableFuture<Void>> tasks = Collections.synchronizedList(new ArrayList<>());
+        ScanContext context = new ScanContext();
+        context.setFileExecutor(task -> tasks.add(CompletableFuture.runAsync(task, executor)));
+        context.setParts(parts);
+        context.setLimits(limits);
+        context.setWalkFilter(walkFilter);
+        context.setCache(cache);
+        context.setDeduplicator(deduplicate ? new ContentDeduplicator() : ContentDeduplicator.byFileKey());
+        JsonItem root = FileUtil.generateData(directoryOrFile, context);
+        awaitAll(tasks);
+        return Optional.ofNullable(root);
+    }
+
+    /**
+     * Builds a block index of a file or directory, for set queries over the
+     * import blocks of its templates that take microseconds each.
+     *
+     * @param fileOrDirectory The ODT file or directory to index.
+     * @return The index, empty if there are no ODT files.
+     * @throws FileNotFoundException if the path does not exist.
+     */
+    public BlockIndex index(Path fileOrDirectory) throws FileNotFoundException {
+        File directoryOrFile = fileOrDirectory.toFile();
+        if (!directoryOrFile.exists()) {
+            throw new FileNotFoundException(String.format("The specified path %s does not exist.", fileOrDirectory));
+        }
+        List<CompletableFuture<Void>> tasks = Collections.synchronizedList(new ArrayList<>());
+        ScanContext context = new ScanContext();
+        context.setFileExecutor(task -> tasks.add(CompletableFuture.runAsync(task, executor)));
+        context.setParts(parts);
+        context.setLimits(limits);
+        context.setWalkFilter(walkFilter);
+        context.setSummary(new RunSummary("Index"));
+        context.setCache(cache);
+        BlockIndex.Builder builder = BlockIndex.builder();
+        FileUtil.collectImportBlocks(directoryOrFile, context, builder);
+        awaitAll(tasks);
+        return builder.build();
+    }
+
+    /**
+     * Gets the import blocks of one ODT file.
+     *
+     * @param odtFile The ODT file.
+     * @return The distinct import blocks in document order, or an empty Optional
+     *         if the file has none.
+     * @throws FileNotFoundException if the file does not exist.
+     * @throws InvalidFileException  if the file cannot be read as an ODT file.
+     */
+    public Optional<List<String>> getImportBlocks(Path odtFile) throws FileNotFoundException, InvalidFileException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(odtFile, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(String.format("The specified path %s does not exist.", odtFile));
+        } catch (IOException e) {
+            throw new InvalidFileException(String.format("Failed to read %s. %s", odtFile, e.getMessage()));
+        }
+        Optional<ImportBlockCache.Entry> cached = cache.get(odtFile, attrs, parts);
+        if (cached.isPresent()) {
+            return Optional.ofNullable(cached.get().getImportBlocks());
+        }
+        try {
+            Optional<List<String>> importBlocks = new OdtFile(odtFile.toString(), parts, limits).getImportBlocks();
+            cache.put(odtFile, attrs, parts, importBlocks.orElse(null));
+            return importBlocks;
+        } catch (Exception e) {
+            throw new InvalidFileException(String.format("Failed to read %s. %s", odtFile, e.getMessage()));
+        }
+    }
+
+    /**
+     * Replaces an import block in the ODT files of a file or directory.
+     *
+     * @param fileOrDirectory The ODT file or directory.
+     * @param blockToReplace  The block to replace.
+     * @param newBlock        The new block.
+     * @return The outcome per file.
+     * @throws FileNotFoundException if the path does not exist or contains no
+     *                               ODT file.
+     * @throws InvalidFileException  if the path is a file that is not an ODT
+     *                               file.
+     */
+    public ReplaceResult replace(Path fileOrDirectory, String blockToReplace, String newBlock)
+            throws FileNotFoundException, InvalidFileException {
+        return replace(fileOrDirectory, RewriteRuleSet.literal(blockToReplace, newBlock));
+    }
+
+    /**
+     * Rewrites the import blocks of the ODT files of a file or directory. Files
+     * whose cached import blocks no rule rewrites are not opened.
+     *
+     * @param fileOrDirectory The ODT file or directory.
+     * @param rules           The rewrite rules.
+     * @return The outcome per file.
+     * @throws FileNotFoundException if the path does not exist or contains no
+     *                               ODT file.
+     * @throws InvalidFileException  if the path is a file that is not an ODT
+     *                               file.
+     */
+    public ReplaceResult replace(Path fileOrDirectory, RewriteRuleSet rules)
+            throws FileNotFoundException, InvalidFileException {
+        File directoryOrFile = fileOrDirectory.toFile();
+        if (!directoryOrFile.exists()) {
+            throw new FileNotFoundException(String.format("The specified path %s does not exist.", fileOrDirectory));
+        }
+        if (directoryOrFile.isFile() && !FileUtil.isOdtFile(directoryOrFile)) {
+            throw new InvalidFileException(String.format("The specified file %s is not ODT file.", fileOrDirectory));
+        }
+
+        // Collect the outcome in walk order, whatever order the tasks finish in
+        List<Path> files = new ArrayList<>();
+        List<CompletableFuture<String>> outcomes = new ArrayList<>();
+        Map<Path, String> errors = Collections.synchronizedMap(new LinkedHashMap<>());
+        FileUtil.walkOdtFiles(fileOrDirectory, true, walkFilter, file -> {
+            files.add(file);
+            outcomes.add(CompletableFuture.supplyAsync(() -> replaceInFile(file, rules, errors), executor));
+        });
+        if (files.isEmpty()) {
+            throw new FileNotFoundException(
+                    String.format("The specified path %s does not contains ODT files.", fileOrDirectory));
+        }
+        awaitAll(outcomes);
+
+        List<Path> replaced = new ArrayList<>();
+        List<Path> unchanged = new ArrayList<>();
+        Map<Path, String> failed = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            String outcome = outcomes.get(i).join();
+            if (RunSummary.REPLACED.equals(outcome)) {
+                replaced.add(files.get(i));
+            } else if (RunSummary.UNCHANGED.equals(outcome)) {
+                unchanged.add(files.get(i));
+            } else {
+                failed.put(files.get(i), errors.get(files.get(i)));
+            }
+        }
+        return new ReplaceResult(replaced, unchanged, failed);
+    }
+
+    /**
+     * Stops the worker threads the service created. An executor passed to the
+     * builder is left running.
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.close();
+        }
+    }
+
+    private String replaceInFile(Path file, RewriteRuleSet rules, Map<Path, String> errors) {
+        Optional<ImportBlockCache.Entry> cached = cache.get(file, parts);
+        if (cached.isPresent() && !rules.rewritesAny(cached.get().getImportBlocks())) {
+            return RunSummary.UNCHANGED;
+        }
+        try {
+            TemplateLockManager.Outcome outcome = locks.rewrite(file,
+                    target -> new OdtFile(target.toString(), parts, limits)
+                            .replaceImportBlocks(rules, xmlEngine == XmlEngine.STREAMING));
+            if (outcome == TemplateLockManager.Outcome.LOCKED) {
+                errors.put(file, "The file is locked by another program.");
+                return RunSummary.LOCKED;
+            }
+            return outcome == TemplateLockManager.Outcome.REWRITTEN ? RunSummary.REPLACED : RunSummary.UNCHANGED;
+        } catch (Exception e) {
+            AdaptiveExecutor.reportFailure();
+            errors.put(file, e.getMessage() != null ? e.getMessage() : e.toString());
+            return RunSummary.FAILED;
+        } finally {
+            cache.invalidate(file);
+        }
+    }
+
+    private static void awaitAll(List<? extends CompletableFuture<?>> tasks) {
+        CompletableFuture<?>[] futures;
+        synchronized (tasks) {
+            futures = tasks.toArray(new CompletableFuture<?>[0]);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * Configuration of an {@link OdtTemplateService}.
+     */
+    public static final class Builder {
+        private Executor executor;
+        private int maxConcurrency;
+        private OdtParts parts = OdtParts.DEFAULT;
+        private ResourceLimits limits = ResourceLimits.DEFAULT;
+        private XmlEngine xmlEngine = XmlEngine.DOM;
+        private ImportBlockCache cache = new ImportBlockCache();
+        private boolean deduplicate;
+        private WalkFilter walkFilter = WalkFilter.DEFAULT;
+        private TemplateLockManager locks = TemplateLockManager.inProcess();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the executor that reads and rewrites files. The service does not shut
+         * it down.
+         *
+         * @param executor The executor.
+         * @return This builder.
+         */
+        public Builder executor(Executor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("The executor must not be null");
+            }
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Lets the service read files on its own worker threads, with the number of
+         * files in flight adapted to the storage latency up to the given limit.
+         * Ignored when an executor is set.
+         *
+         * @param maxConcurrency The maximum number of files processed at once.
+         * @return This builder.
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("The maximum concurrency must be positive: " + maxConcurrency);
+            }
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Sets the XML parts read from each template.
+         *
+         * @param parts The part selection.
+         * @return This builder.
+         */
+        public Builder parts(OdtParts parts) {
+            if (parts == null) {
+                throw new IllegalArgumentException("The parts must not be null");
+            }
+            this.parts = parts;
+            return this;
+        }
+
+        /**
+         * Sets the limits on what reading or rewriting a single template may
+         * cost, the same as the json and replace actions set from their options.
+         *
+         * @param limits The resource limits.
+         * @return This builder.
+         */
+        public Builder limits(ResourceLimits limits) {
+            if (limits == null) {
+                throw new IllegalArgumentException("The resource limits must not be null");
+            }
+            this.limits = limits;
+            return this;
+        }
+
+        /**
+         * Sets the XML engine that rewrites templates.
+         *
+         * @param xmlEngine The XML engine.
+         * @return This builder.
+         */
+        public Builder xmlEngine(XmlEngine xmlEngine) {
+            if (xmlEngine == null) {
+                throw new IllegalArgumentException("The XML engine must not be null");
+            }
+            this.xmlEngine = xmlEngine;
+            return this;
+        }
+
+        /**
+         * Sets the cache of import blocks, which may be shared by several services.
+         * Pass {@link ImportBlockCache#disabled()} to read every template on every
+         * call.
+         *
+         * @param cache The cache.
+         * @return This builder.
+         */
+        public Builder cache(ImportBlockCache cache) {
+            if (cache == null) {
+                throw new IllegalArgumentException("The cache must not be null");
+            }
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * Lets each scan read byte-identical copies of a template once and copy
+         * the import blocks to the other paths.
+         *
+         * @param deduplicate true to deduplicate copies.
+         * @return This builder.
+         */
+        public Builder deduplicate(boolean deduplicate) {
+            this.deduplicate = deduplicate;
+            return this;
+        }
+
+        /**
+         * Sets the filter of the entries that scans and rewrites visit below a
+         * directory.
+         *
+         * @param walkFilter The filter.
+         * @return This builder.
+         */
+        public Builder walkFilter(WalkFilter walkFilter) {
+            if (walkFilter == null) {
+                throw new IllegalArgumentException("The walk filter must not be null");
+            }
+            this.walkFilter = walkFilter;
+            return this;
+        }
+
+        /**
+         * Sets how replaces lock templates. By default templates are only locked
+         * against other replaces of this service; a manager with file locks also
+         * keeps other processes from rewriting a template at the same time.
+         *
+         * @param locks The lock manager.
+         * @return This builder.
+         */
+        public Builder locks(TemplateLockManager locks) {
+            if (locks == null) {
+                throw new IllegalArgumentException("The lock manager must not be null");
+            }
+            this.locks = locks;
+            return this;
+        }
+
+        /**
+         * Creates the service.
+         *
+         * @return The service.
+         */
+        public OdtTemplateService build() {
+            return new OdtTemplateService(this);
+        }
+    }
+}
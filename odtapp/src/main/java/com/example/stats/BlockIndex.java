@@ -0,0 +1,281 @@
+package com.example.stats;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import com.example.exception.InvalidArgumentException;
+import com.example.exception.InvalidFileException;
+
+/**
+ * Keeps, for every import block, the set of templates that use it as a bitmap
+ * of template IDs, so set expressions over blocks are answered with a few word
+ * operations per 64 templates instead of a scan.
+ *
+ * Template IDs are the positions of the template paths in name order, so an
+ * index of the same tree always assigns the same IDs. Templates that could not
+ * be read are not part of the index.
+ *
+ * Instances are immutable and safe for concurrent use.
+ */
+public class BlockIndex {
+
+    public static final String FILE_EXTENSION = ".idx";
+
+    private static final int MAGIC = 0x4f444958;
+    private static final int VERSION = 1;
+
+    private final List<String> templates;
+    private final Map<String, BitSet> blocks;
+    private final int failedTemplates;
+    private final BitSet all;
+
+    private BlockIndex(List<String> templates, Map<String, BitSet> blocks, int failedTemplates) {
+        this.templates = templates;
+        this.blocks = blocks;
+        this.failedTemplates = failedTemplates;
+        this.all = new BitSet(templates.size());
+        all.set(0, templates.size());
+    }
+
+    /**
+     * Starts an index that is filled by a scan.
+     *
+     * @return The builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The number of indexed templates.
+     */
+    public int size() {
+        return templates.size();
+    }
+
+    /**
+     * @return The number of templates that could not be read.
+     */
+    public int getFailedTemplates() {
+        return failedTemplates;
+    }
+
+    /**
+     * @return The indexed blocks in name order.
+     */
+    public Set<String> getBlocks() {
+        return Collections.unmodifiableSet(blocks.keySet());
+    }
+
+    /**
+     * Gets the path of a template.
+     *
+     * @param id The template ID.
+     * @return The path relative to the indexed directory.
+     */
+    public String getTemplate(int id) {
+        return templates.get(id);
+    }
+
+    /**
+     * Gets the templates that use a block.
+     *
+     * @param block The import block.
+     * @return A copy of the bitmap of template IDs, empty for an unknown block.
+     */
+    public BitSet templatesWith(String block) {
+        BitSet templateIds = blocks.get(block);
+        return templateIds == null ? new BitSet() : (BitSet) templateIds.clone();
+    }
+
+    /**
+     * Gets every indexed template, the universe NOT is taken against.
+     *
+     * @return A copy of the bitmap of all template IDs.
+     */
+    public BitSet allTemplates() {
+        return (BitSet) all.clone();
+    }
+
+    /**
+     * Parses and evaluates a query.
+     *
+     * @param expression The query, see {@link BlockQuery}.
+     * @return The paths of the matching templates in name order.
+     * @throws InvalidArgumentException if the query is malformed.
+     */
+    public List<String> query(String expression) throws InvalidArgumentException {
+        return paths(BlockQuery.parse(expression).evaluate(this));
+    }
+
+    /**
+     * Gets the paths of a set of templates.
+     *
+     * @param templateIds The bitmap of template IDs.
+     * @return The paths in name order.
+     */
+    public List<String> paths(BitSet templateIds) {
+        List<String> paths = new ArrayList<>(templateIds.cardinality());
+        for (int id = templateIds.nextSetBit(0); id >= 0; id = templateIds.nextSetBit(id + 1)) {
+            paths.add(templates.get(id));
+        }
+        return paths;
+    }
+
+    /**
+     * Writes the index to a file, replacing it atomically.
+     *
+     * @param file The index file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(Path file) throws IOException {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temporaryFile))))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(failedTemplates);
+            output.writeInt(templates.size());
+            for (String template : templates) {
+                writeString(output, template);
+            }
+            output.writeInt(blocks.size());
+            for (Map.Entry<String, BitSet> block : blocks.entrySet()) {
+                writeString(output, block.getKey());
+                long[] words = block.getValue().toLongArray();
+                output.writeInt(words.length);
+                for (long word : words) {
+                    output.writeLong(word);
+                }
+            }
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads an index written by {@link #save(Path)}.
+     *
+     * @param file The index file.
+     * @return The index.
+     * @throws IOException          if the file cannot be read.
+     * @throws InvalidFileException if the file is not an index.
+     */
+    public static BlockIndex load(Path file) throws IOException, InvalidFileException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new InvalidFileException(String.format("The file %s is not a block index.", file));
+            }
+            int failedTemplates = input.readInt();
+            int templateCount = input.readInt();
+            List<String> templates = new ArrayList<>(templateCount);
+            for (int i = 0; i < templateCount; i++) {
+                templates.add(readString(input));
+            }
+            int blockCount = input.readInt();
+            Map<String, BitSet> blocks = new TreeMap<>();
+            for (int i = 0; i < blockCount; i++) {
+                String block = readString(input);
+                long[] words = new long[input.readInt()];
+                for (int j = 0; j < words.length; j++) {
+                    words[j] = input.readLong();
+                }
+                blocks.put(block, BitSet.valueOf(words));
+            }
+            return new BlockIndex(List.copyOf(templates), blocks, failedTemplates);
+        } catch (ZipException | EOFException e) {
+            throw new InvalidFileException(
+                    String.format("The file %s is not a block index. Error message: %s", file, e.getMessage()));
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Collects the templates of a scan. Templates get provisional IDs in the
+     * order they complete, which {@link #build()} renumbers by path.
+     */
+    public static final class Builder implements BlockSink {
+        private final List<String> templates = new ArrayList<>();
+        private final Map<String, BitSet> blocks = new TreeMap<>();
+        private int failedTemplates;
+
+        private Builder() {
+        }
+
+        @Override
+        public synchronized void addTemplate(String relativePath, List<String> importBlocks) {
+            int id = templates.size();
+            templates.add(relativePath);
+            if (importBlocks != null) {
+                for (String importBlock : importBlocks) {
+                    blocks.computeIfAbsent(importBlock, block -> new BitSet()).set(id);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void addError(String relativePath) {
+            failedTemplates++;
+        }
+
+        /**
+         * Creates the index of the templates added so far.
+         *
+         * @return The index.
+         */
+        public synchronized BlockIndex build() {
+            // Renumber the templates in path order
+            Integer[] order = new Integer[templates.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> templates.get(a).compareTo(templates.get(b)));
+            int[] newIds = new int[order.length];
+            List<String> sortedTemplates = new ArrayList<>(order.length);
+            for (int newId = 0; newId < order.length; newId++) {
+                newIds[order[newId]] = newId;
+                sortedTemplates.add(templates.get(order[newId]));
+            }
+            Map<String, BitSet> renumbered = new TreeMap<>();
+            for (Map.Entry<String, BitSet> block : blocks.entrySet()) {
+                BitSet oldIds = block.getValue();
+                BitSet templateIds = new BitSet(order.length);
+                for (int id = oldIds.nextSetBit(0); id >= 0; id = oldIds.nextSetBit(id + 1)) {
+                    templateIds.set(newIds[id]);
+                }
+                renumbered.put(block.getKey(), templateIds);
+            }
+            return new BlockIndex(List.copyOf(sortedTemplates), renumbered, failedTemplates);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.stats;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+import com.example.exception.InvalidArgumentException;
+
+/**
+ * A set expression over import blocks, parsed once and evaluated against a
+ * {@link BlockIndex} as bitmap operations.
+ *
+ * <pre>
+ * expression := term ('OR' term)*
+ * term       := factor ('AND' factor)*
+ * factor     := 'NOT' factor | '(' expression ')' | block
+ *             | ('ANY' | 'ALL') '(' block (',' block)* ')'
+ * block      := '[' ... ']'
+ * </pre>
+ *
+ * A block stands for the templates that use it, for example
+ * {@code [import header_1.odt] AND NOT [import footer_2.odt]}. Keywords are
+ * case-insensitive, NOT is taken against all indexed templates and an unknown
+ * block matches no template.
+ */
+public class BlockQuery {
+
+    private static final String OR = "OR";
+    private static final String AND = "AND";
+    private static final String NOT = "NOT";
+    private static final String ANY = "ANY";
+    private static final String ALL = "ALL";
+
+    private final Node root;
+
+    private BlockQuery(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Parses a query.
+     *
+     * @param expression The query.
+     * @return The parsed query.
+     * @throws InvalidArgumentException if the query is malformed.
+     */
+    public static BlockQuery parse(String expression) throws InvalidArgumentException {
+        Parser parser = new Parser(expression);
+        Node root = parser.expression();
+        if (parser.peek() != null) {
+            throw parser.error("Unexpected " + parser.peek());
+        }
+        return new BlockQuery(root);
+    }
+
+    /**
+     * Evaluates the query.
+     *
+     * @param index The index.
+     * @return The bitmap of the matching template IDs.
+     */
+    public BitSet evaluate(BlockIndex index) {
+        return root.evaluate(index);
+    }
+
+    private interface Node {
+        BitSet evaluate(BlockIndex index);
+    }
+
+    /**
+     * Recursive descent parser over the tokens of the expression. Tokens are
+     * blocks, parentheses, commas and keywords.
+     */
+    private static final class Parser {
+        private final String expression;
+        private final List<String> tokens = new ArrayList<>();
+        private int position;
+
+        private Parser(String expression) throws InvalidArgumentException {
+            this.expression = expression;
+            int i = 0;
+            while (i < expression.length()) {
+                char c = expression.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '[') {
+                    int end = expression.indexOf(']', i);
+                    if (end < 0) {
+                        throw new InvalidArgumentException("Unclosed block in query: " + expression);
+                    }
+                    tokens.add(expression.substring(i, end + 1));
+                    i = end + 1;
+                } else if (c == '(' || c == ')' || c == ',') {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else {
+                    int start = i;
+                    while (i < expression.length() && Character.isLetter(expression.charAt(i))) {
+                        i++;
+                    }
+                    if (start == i) {
+                        throw new InvalidArgumentException(
+                                String.format("Unexpected '%s' in query: %s", c, expression));
+                    }
+                    tokens.add(expression.substring(start, i).toUpperCase(Locale.ROOT));
+                }
+            }
+        }
+
+        private String peek() {
+            return position < tokens.size() ? tokens.get(position) : null;
+        }
+
+        private boolean accept(String token) {
+            if (token.equals(peek())) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) throws InvalidArgumentException {
+            if (!accept(token)) {
+                throw error(String.format("Expected '%s'", token));
+            }
+        }
+
+        private InvalidArgumentException error(String message) {
+            return new InvalidArgumentException(String.format("%s at token %d of query: %s", message,
+                    position + 1, expression));
+        }
+
+        private Node expression() throws InvalidArgumentException {
+            Node left = term();
+            while (accept(OR)) {
+                Node l = left;
+                Node r = term();
+                left = index -> {
+                    BitSet result = l.evaluate(index);
+                    result.or(r.evaluate(index));
+                    return result;
+                };
+            }
+            return left;
+        }
+
+        private Node term() throws InvalidArgumentException {
+            Node left = factor();
+            while (accept(AND)) {
+                // AND NOT is a single andNot, without building the complement
+                boolean negated = accept(NOT);
+                Node l = left;
+                Node r = factor();
+                left = index -> {
+                    BitSet result = l.evaluate(index);
+                    if (negated) {
+                        result.andNot(r.evaluate(index));
+                    } else {
+                        result.and(r.evaluate(index));
+                    }
+                    return result;
+                };
+            }
+            return left;
+        }
+
+        private Node factor() throws InvalidArgumentException {
+            if (accept(NOT)) {
+                Node operand = factor();
+                return index -> {
+                    BitSet result = index.allTemplates();
+                    result.andNot(operand.evaluate(index));
+                    return result;
+                };
+            }
+            if (accept("(")) {
+                Node node = expression();
+                expect(")");
+                return node;
+            }
+            boolean any = ANY.equals(peek());
+            if (any || ALL.equals(peek())) {
+                position++;
+                List<String> blocks = new ArrayList<>();
+                expect("(");
+                do {
+                    blocks.add(block());
+                } while (accept(","));
+                expect(")");
+                return index -> {
+                    BitSet result = any ? new BitSet() : index.allTemplates();
+                    for (String block : blocks) {
+                        if (any) {
+                            result.or(index.templatesWith(block));
+                        } else {
+                            result.and(index.templatesWith(block));
+                        }
+                    }
+                    return result;
+                };
+            }
+            String block = block();
+            return index -> index.templatesWith(block);
+        }
+
+        private String block() throws InvalidArgumentException {
+            String token = peek();
+            if (token == null || !token.startsWith("[")) {
+                throw error("Expected a block");
+            }
+            position++;
+            return token;
+        }
+    }
+}
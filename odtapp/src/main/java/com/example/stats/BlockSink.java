@@ -0,0 +1,36 @@
+package com.example.stats;
+
+import java.util.List;
+
+/**
+ * Receives the import blocks of templates as a scan reads them. Calls may come
+ * from several threads and in any order.
+ */
+public interface BlockSink {
+
+    /**
+     * Adds a template that was read.
+     *
+     * @param relativePath The path of the template relative to the start, with
+     *                     {@code /} as the separator.
+     * @param importBlocks The distinct import blocks of the template, or null.
+     */
+    void addTemplate(String relativePath, List<String> importBlocks);
+
+    /**
+     * Adds a template or entry that could not be read.
+     *
+     * @param relativePath The path relative to the start, with {@code /} as the
+     *                     separator.
+     */
+    void addError(String relativePath);
+
+    /**
+     * Adds a directory that could not be listed.
+     *
+     * @param relativePath The path of the directory relative to the start, empty
+     *                     for the start.
+     */
+    default void addDirectoryError(String relativePath) {
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import com.example.model.StatsReport;
+
+/**
+ * Aggregates the import blocks of templates as they are read, without keeping
+ * the blocks of each template.
+ *
+ * Block counts are kept in a {@link HeavyHitters} sketch with a fixed number of
+ * counters and the distinct blocks in a {@link HyperLogLog}, so memory does not
+ * grow with the number of distinct blocks. While there are no more distinct
+ * blocks than counters every count is exact. Only the paths of templates
+ * without blocks and the error count of each directory are kept in full.
+ *
+ * Instances are safe for concurrent use.
+ */
+public class BlockStatistics implements BlockSink {
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private static final String SEPARATOR = "/";
+    private static final String START_DIRECTORY = ".";
+
+    private final int top;
+    private final HeavyHitters counts;
+    private final HyperLogLog distinct = new HyperLogLog();
+    private final List<String> templatesWithoutBlocks = new ArrayList<>();
+    private final Map<String, Long> errorsByDirectory = new TreeMap<>();
+    private long templates;
+    private long failedTemplates;
+    private long blockUsages;
+
+    /**
+     * @param top      The number of most used blocks to report.
+     * @param capacity The number of blocks counted exactly, at least top.
+     */
+    public BlockStatistics(int top, int capacity) {
+        if (top < 1 || capacity < top) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid top %d for a capacity of %d", top, capacity));
+        }
+        this.top = top;
+        this.counts = new HeavyHitters(capacity);
+    }
+
+    @Override
+    public synchronized void addTemplate(String relativePath, List<String> importBlocks) {
+        templates++;
+        if (importBlocks == null || importBlocks.isEmpty()) {
+            templatesWithoutBlocks.add(relativePath);
+            return;
+        }
+        for (String importBlock : importBlocks) {
+            counts.add(importBlock);
+            distinct.add(importBlock);
+            blockUsages++;
+        }
+    }
+
+    /**
+     * Adds a template or entry that could not be read, counted against its
+     * directory.
+     */
+    @Override
+    public synchronized void addError(String relativePath) {
+        templates++;
+        failedTemplates++;
+        int separator = relativePath.lastIndexOf(SEPARATOR);
+        errorsByDirectory.merge(separator < 0 ? START_DIRECTORY : relativePath.substring(0, separator), 1L,
+                Long::sum);
+    }
+
+    /**
+     * Adds a directory that could not be listed, counted against the directory
+     * itself.
+     */
+    @Override
+    public synchronized void addDirectoryError(String relativePath) {
+        errorsByDirectory.merge(relativePath.isEmpty() ? START_DIRECTORY : relativePath, 1L, Long::sum);
+    }
+
+    /**
+     * Gets the report of the templates added so far.
+     *
+     * @return The report.
+     */
+    public synchronized StatsReport toReport() {
+        StatsReport report = new StatsReport();
+        report.setTemplates(templates);
+        report.setFailedTemplates(failedTemplates);
+        report.setTemplatesWithBlocks(templates - failedTemplates - templatesWithoutBlocks.size());
+        report.setBlockUsages(blockUsages);
+        report.setExact(counts.isExact());
+        report.setDistinctBlocks(counts.isExact() ? counts.size() : distinct.estimate());
+        report.setTopBlocks(toBlockCounts(counts.top(top)));
+        report.setBlocks(toBlockCounts(counts.top(Integer.MAX_VALUE)));
+
+        // Walk order depends on the file system and the executor, sort for a stable
+        // report
+        List<String> withoutBlocks = new ArrayList<>(templatesWithoutBlocks);
+        Collections.sort(withoutBlocks);
+        report.setTemplatesWithoutBlocks(withoutBlocks);
+        report.setErrorsByDirectory(new TreeMap<>(errorsByDirectory));
+        return report;
+    }
+
+    private static List<StatsReport.BlockCount> toBlockCounts(List<HeavyHitters.Counter> counters) {
+        return counters.stream()
+                .map(counter -> new StatsReport.BlockCount(counter.getValue(), counter.getCount(),
+                        counter.getError()))
+                .collect(Collectors.toList());
+    }
+}
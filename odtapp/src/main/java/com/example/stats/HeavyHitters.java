@@ -0,0 +1,132 @@
+package com.example.stats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Counts the most frequent strings of a stream with the Space-Saving
+ * algorithm, keeping at most a fixed number of counters.
+ *
+ * While the stream has no more distinct values than counters, every count is
+ * exact. Once the counters are full, a new value takes over the counter with
+ * the smallest count and inherits that count as its possible overestimate, so
+ * a reported count is never below the true count and at most
+ * {@link Counter#getError()} above it. Every value that occurs more than
+ * {@code total / capacity} times is guaranteed to be tracked.
+ *
+ * Instances are not thread-safe.
+ */
+public class HeavyHitters {
+
+    // Smallest count first, ties by value so the order is total
+    private static final Comparator<Counter> BY_COUNT = Comparator.comparingLong(Counter::getCount)
+            .thenComparing(Counter::getValue);
+
+    private static final Comparator<Counter> BY_DESCENDING_COUNT = Comparator.comparingLong(Counter::getCount)
+            .reversed().thenComparing(Counter::getValue);
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    private final TreeSet<Counter> byCount = new TreeSet<>(BY_COUNT);
+    private boolean evicted;
+
+    /**
+     * @param capacity The maximum number of counters.
+     */
+    public HeavyHitters(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Counts one occurrence of a value.
+     *
+     * @param value The value.
+     */
+    public void add(String value) {
+        Counter counter = counters.get(value);
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter(value, 0, 0);
+            } else {
+                // Replace the smallest counter, its count bounds the missed occurrences
+                Counter smallest = byCount.pollFirst();
+                counters.remove(smallest.value);
+                counter = new Counter(value, smallest.count, smallest.count);
+                evicted = true;
+            }
+            counters.put(value, counter);
+        } else {
+            byCount.remove(counter);
+        }
+        counter.count++;
+        byCount.add(counter);
+    }
+
+    /**
+     * Checks if every count is exact, which holds until a counter is replaced.
+     *
+     * @return true if no counter has been replaced.
+     */
+    public boolean isExact() {
+        return !evicted;
+    }
+
+    /**
+     * Gets the number of tracked values, the number of distinct values while the
+     * counts are exact.
+     *
+     * @return The number of counters in use.
+     */
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * Gets the most frequent values.
+     *
+     * @param limit The maximum number of values.
+     * @return The counters by descending count, ties by value.
+     */
+    public List<Counter> top(int limit) {
+        List<Counter> top = new ArrayList<>(counters.values());
+        top.sort(BY_DESCENDING_COUNT);
+        return top.subList(0, Math.min(limit, top.size()));
+    }
+
+    /**
+     * A tracked value. Its count keeps growing while values are added.
+     */
+    public static final class Counter {
+        private final String value;
+        private long count;
+        private final long error;
+
+        private Counter(String value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return The amount by which the count may exceed the true count.
+         */
+        public long getError() {
+            return error;
+        }
+    }
+}
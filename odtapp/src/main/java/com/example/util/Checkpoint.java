@@ -0,0 +1,339 @@
+package com.example.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.example.exception.InvalidFileException;
+import com.example.model.ScanOptions;
+import com.example.odt.ExtractionRuleSet;
+import com.example.rewrite.RewriteRuleSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Progress file of a json or replace run, so an interrupted run can skip the
+ * files it has already processed.
+ *
+ * The file starts with a header that identifies the run (action, start path,
+ * parts and rules) followed by one compact JSON line per completed ODT file,
+ * holding its path relative to the start path and, for json runs, its import
+ * blocks or error. Lines are appended as files complete. Json runs flush them
+ * every {@value #FLUSH_INTERVAL_RECORDS} records or every few seconds, so a
+ * killed process loses at most the last interval and reads those files again.
+ * Replace and rewrite runs flush every record as soon as it is written, since a
+ * template whose record is lost would be rewritten twice on resume. A torn last
+ * line is dropped on resume.
+ *
+ * Instances are safe for concurrent use.
+ */
+public class Checkpoint implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(Checkpoint.class.getName());
+
+    public static final String FILE_EXTENSION = ".progress";
+
+    private static final String HEADER_PREFIX = "odtapp-checkpoint 1 ";
+    private static final int FLUSH_INTERVAL_RECORDS = 1000;
+    private static final long FLUSH_INTERVAL_NANOS = 5_000_000_000L;
+
+    private final Path file;
+    private final Map<String, Entry> completed;
+    private final BufferedWriter writer;
+    private final boolean flushEachRecord;
+    private int unflushedRecords;
+    private long lastFlushNanos = System.nanoTime();
+    private boolean failed;
+
+    private Checkpoint(Path file, Map<String, Entry> completed, BufferedWriter writer, boolean flushEachRecord) {
+        this.file = file;
+        this.completed = completed;
+        this.writer = writer;
+        this.flushEachRecord = flushEachRecord;
+    }
+
+    /**
+     * Gets a checkpoint that records nothing, for runs without checkpoints.
+     *
+     * @return The checkpoint.
+     */
+    public static Checkpoint disabled() {
+        return new Checkpoint(null, Map.of(), null, false);
+    }
+
+    /**
+     * Opens the checkpoint of a json run, resuming from the file if it exists.
+     *
+     * @param file    The checkpoint file.
+     * @param start   The scanned file or directory.
+     * @param options The scan options.
+     * @return The checkpoint.
+     * @throws IOException          if the checkpoint file cannot be read or
+     *                              written.
+     * @throws InvalidFileException if the checkpoint file belongs to another
+     *                              run.
+     */
+    public static Checkpoint forJson(Path file, Path start, ScanOptions options)
+            throws IOException, InvalidFileException {
+        return forJson(file, start, options, ExtractionRuleSet.NONE);
+    }
+
+    /**
+     * Opens the checkpoint of a json run with extraction rules, resuming from the
+     * file if it exists.
+     *
+     * @param file    The checkpoint file.
+     * @param start   The file or directory being scanned.
+     * @param options The scan options.
+     * @param rules   The extraction rules.
+     * @return The checkpoint.
+     * @throws IOException          if the checkpoint file cannot be read or
+     *                              written.
+     * @throws InvalidFileException if the checkpoint file belongs to another
+     *                              run.
+     */
+    public static Checkpoint forJson(Path file, Path start, ScanOptions options, ExtractionRuleSet rules)
+            throws IOException, InvalidFileException {
+        String run = String.format("json %s parts=%s embedded=%s shard=%d/%d", start.toAbsolutePath().normalize(),
+                options.getParts(), options.isEmbeddedObjects(), options.getShardIndex() + 1,
+                options.getShardCount());
+        return open(file, rules.isEmpty() ? run : run + " extract=" + rules.getRules(), false);
+    }
+
+    /**
+     * Opens the checkpoint of a replace or rewrite run, resuming from the file if
+     * it exists. Every record is flushed as soon as it is written.
+     *
+     * @param file    The checkpoint file.
+     * @param start   The file or directory being rewritten.
+     * @param rules   The rewrite rules.
+     * @param options The scan options.
+     * @return The checkpoint.
+     * @throws IOException          if the checkpoint file cannot be read or
+     *                              written.
+     * @throws InvalidFileException if the checkpoint file belongs to another
+     *                              run.
+     */
+    public static Checkpoint forRewrite(Path file, Path start, RewriteRuleSet rules, ScanOptions options)
+            throws IOException, InvalidFileException {
+        return open(file, String.format("rewrite %s parts=%s embedded=%s rules=%s",
+                start.toAbsolutePath().normalize(), options.getParts(), options.isEmbeddedObjects(),
+                rules.getRules()), true);
+    }
+
+    private static Checkpoint open(Path file, String run, boolean flushEachRecord)
+            throws IOException, InvalidFileException {
+        String header = HEADER_PREFIX + sha256(run);
+        Map<String, Entry> completed = new ConcurrentHashMap<>();
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                if (!header.equals(reader.readLine())) {
+                    throw new InvalidFileException(String.format(
+                            "The checkpoint %s belongs to a different run. Delete it to start over.", file));
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        Entry entry = GsonHolder.GSON.fromJson(line, Entry.class);
+                        if (entry != null && entry.path != null) {
+                            completed.put(entry.path, entry);
+                        }
+                    } catch (JsonSyntaxException e) {
+                        // Only the last line can be torn by a killed process
+                        LOGGER.log(Level.WARNING, String.format("Ignoring incomplete checkpoint record in %s", file));
+                        break;
+                    }
+                }
+            }
+            LOGGER.log(Level.INFO, String.format("Resuming from checkpoint %s with %d completed files", file,
+                    completed.size()));
+        }
+
+        // Rewrite the file without a torn line, so new records start on a line of
+        // their own
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            writer.write(header);
+            writer.newLine();
+            for (Entry entry : completed.values()) {
+                writer.write(GsonHolder.GSON.toJson(entry));
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+        return new Checkpoint(file, completed,
+                Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND), flushEachRecord);
+    }
+
+    /**
+     * Gets the result of a file completed in an earlier run.
+     *
+     * @param relativePath The file path relative to the start path.
+     * @return The entry, or an empty Optional if the file is not completed.
+     */
+    public Optional<Entry> get(String relativePath) {
+        return Optional.ofNullable(completed.get(relativePath));
+    }
+
+    /**
+     * Checks if a file was completed in an earlier run.
+     *
+     * @param relativePath The file path relative to the start path.
+     * @return true if the file is completed.
+     */
+    public boolean isCompleted(String relativePath) {
+        return completed.containsKey(relativePath);
+    }
+
+    /**
+     * Records a completed file of a replace or rewrite run. Call it once the
+     * rewritten template is in place; the record is flushed before it returns.
+     *
+     * @param relativePath The file path relative to the start path.
+     */
+    public void record(String relativePath) {
+        record(relativePath, null, null);
+    }
+
+    /**
+     * Records a completed file of a json run. A failure to write the checkpoint is
+     * logged once and does not stop the run.
+     *
+     * @param relativePath The file path relative to the start path.
+     * @param importBlocks The import blocks of the file, or null.
+     * @param error        The error of the file, or null.
+     */
+    public void record(String relativePath, List<String> importBlocks, String error) {
+        record(relativePath, importBlocks, null, error);
+    }
+
+    /**
+     * Records a completed file of a json run with extraction rules.
+     *
+     * @param relativePath The file path relative to the start path.
+     * @param importBlocks The import blocks of the file, or null.
+     * @param extracted    The values of the extraction rules, or null.
+     * @param error        The error of the file, or null.
+     */
+    public synchronized void record(String relativePath, List<String> importBlocks,
+            Map<String, List<String>> extracted, String error) {
+        if (writer == null || failed) {
+            return;
+        }
+        try {
+            writer.write(GsonHolder.GSON.toJson(new Entry(relativePath, importBlocks, extracted, error)));
+            writer.newLine();
+
+            // Flush periodically, a killed process loses at most one interval. A rewrite
+            // cannot be applied twice, so its records are flushed at once
+            long now = System.nanoTime();
+            if (flushEachRecord || ++unflushedRecords >= FLUSH_INTERVAL_RECORDS
+                    || now - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+                writer.flush();
+                unflushedRecords = 0;
+                lastFlushNanos = now;
+            }
+        } catch (IOException e) {
+            failed = true;
+            LOGGER.log(Level.SEVERE, String.format("Failed to write checkpoint %s. Error message: %s", file,
+                    e.getMessage()));
+        }
+    }
+
+    /**
+     * Closes and deletes the checkpoint after the run has finished successfully.
+     *
+     * @throws IOException if the checkpoint file cannot be deleted.
+     */
+    public void complete() throws IOException {
+        close();
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Flushes and closes the checkpoint, keeping the file for a later resume.
+     *
+     * @throws IOException if the checkpoint file cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates the Gson instance on first use, runs without a checkpoint never
+     * initialize it.
+     */
+    private static final class GsonHolder {
+        private static final Gson GSON = new Gson();
+    }
+
+    /**
+     * A completed file.
+     */
+    public static final class Entry {
+        @SerializedName("p")
+        private final String path;
+
+        @SerializedName("b")
+        private final List<String> importBlocks;
+
+        @SerializedName("x")
+        private final Map<String, List<String>> extracted;
+
+        @SerializedName("e")
+        private final String error;
+
+        private Entry(String path, List<String> importBlocks, Map<String, List<String>> extracted, String error) {
+            this.path = path;
+            this.importBlocks = importBlocks;
+            this.extracted = extracted;
+            this.error = error;
+        }
+
+        public List<String> getImportBlocks() {
+            return importBlocks;
+        }
+
+        public Map<String, List<String>> getExtracted() {
+            return extracted;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Recognizes byte-identical copies of a template during one scan, so each
+ * distinct content is parsed once and its import blocks are copied to every
+ * path with that content.
+ *
+ * A file is fingerprinted from its size and its ZIP central directory: the
+ * name, CRC-32 and sizes of every entry, in order. Opening the central
+ * directory reads a few kilobytes at the end of the file and inflates
+ * nothing. Two files are only treated as copies if all of these match.
+ *
+ * A deduplicator created with {@link #byFileKey()} only recognizes paths that
+ * lead to the same physical file, through symbolic or hard links, by the file
+ * key of their attributes. It opens no file and is used by scans without
+ * content deduplication, so each file is parsed once however many paths reach
+ * it.
+ *
+ * Instances are safe for concurrent use.
+ */
+public class ContentDeduplicator {
+
+    private static final ContentDeduplicator DISABLED = new ContentDeduplicator(false, false);
+
+    private final boolean enabled;
+    private final boolean fileKeys;
+    private final Map<Object, CompletableFuture<Content>> contents = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a deduplicator for one scan.
+     */
+    public ContentDeduplicator() {
+        this(true, false);
+    }
+
+    private ContentDeduplicator(boolean enabled, boolean fileKeys) {
+        this.enabled = enabled;
+        this.fileKeys = fileKeys;
+    }
+
+    /**
+     * Creates a deduplicator for one scan that only recognizes paths of the
+     * same physical file.
+     *
+     * @return The deduplicator.
+     */
+    public static ContentDeduplicator byFileKey() {
+        return new ContentDeduplicator(true, true);
+    }
+
+    /**
+     * Gets a deduplicator that treats every file as distinct.
+     *
+     * @return The deduplicator.
+     */
+    public static ContentDeduplicator disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the key under which a file is claimed: its file key for a
+     * deduplicator of physical files, its fingerprint otherwise.
+     *
+     * @param file  The ODT file.
+     * @param attrs The attributes of the file.
+     * @return The key, or an empty Optional if deduplication is disabled or the
+     *         file cannot be recognized.
+     */
+    public Optional<Object> key(Path file, BasicFileAttributes attrs) {
+        if (fileKeys) {
+            return enabled ? Optional.ofNullable(attrs.fileKey()) : Optional.empty();
+        }
+        return fingerprint(file, attrs.size()).map(fingerprint -> fingerprint);
+    }
+
+    /**
+     * Gets the fingerprint of a file.
+     *
+     * @param file The ODT file.
+     * @param size The size of the file.
+     * @return The fingerprint, or an empty Optional if deduplication is disabled
+     *         or the file is not a readable ZIP file.
+     */
+    public Optional<String> fingerprint(Path file, long size) {
+        if (!enabled || fileKeys) {
+            return Optional.empty();
+        }
+        try (ZipFile zipFile = new ZipFile(file.toFile())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(String.format("%d:%d:%d", entry.getCrc(), entry.getSize(), entry.getCompressedSize())
+                        .getBytes(StandardCharsets.US_ASCII));
+                digest.update((byte) 0);
+            }
+            return Optional.of(size + ":" + Base64.getEncoder().encodeToString(digest.digest()));
+        } catch (IOException e) {
+            // The reader reports the error of a file that is not a valid ODT file
+            return Optional.empty();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Claims a content for the caller, unless another file with the same key
+     * has claimed it first.
+     *
+     * @param key   The fingerprint or key of the file.
+     * @param claim The future the caller completes after reading the file.
+     * @return The claim itself if the caller has to read the file, otherwise the
+     *         future of the first file with this content.
+     */
+    public CompletableFuture<Content> claim(Object key, CompletableFuture<Content> claim) {
+        CompletableFuture<Content> first = contents.putIfAbsent(key, claim);
+        return first == null ? claim : first;
+    }
+
+    /**
+     * The import blocks read from one content.
+     */
+    public static final class Content {
+        private final List<String> importBlocks;
+        private final Map<String, List<String>> extracted;
+        private final String error;
+
+        public Content(List<String> importBlocks, Map<String, List<String>> extracted, String error) {
+            this.importBlocks = importBlocks == null ? null : List.copyOf(importBlocks);
+            this.extracted = extracted;
+            this.error = error;
+        }
+
+        public List<String> getImportBlocks() {
+            return importBlocks;
+        }
+
+        public Map<String, List<String>> getExtracted() {
+            return extracted;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Walks a file tree with {@link DirectoryStream}, reading the
+ * {@link BasicFileAttributes} of every entry exactly once.
+ *
+ * In streaming mode entries are visited in the order the file system returns
+ * them, so no directory listing is ever held in memory. In sorted mode the
+ * entries of each directory are buffered and visited by name, which gives a
+ * deterministic order at the cost of holding one directory listing at a time.
+ * As each listing is read to the end before its first entry is visited, files
+ * that the visitor adds or renames in that directory, such as templates
+ * rewritten through a temporary file, are never listed again. Walks that
+ * modify the files they visit must be sorted.
+ *
+ * A {@link WalkFilter} is applied while walking: rejected directories are never
+ * listed and rejected files never reach the visitor. The start path itself is
+ * always visited.
+ *
+ * Symbolic links below the start are only visited if the filter follows links,
+ * otherwise each one is skipped with a warning.
+ * A followed link to a directory is entered unless that directory is already
+ * on the path from the start, compared by the file key of its attributes or,
+ * on file systems without file keys, by its real path.
+ */
+public class DirectoryWalker {
+
+    private static final Logger LOGGER = Logger.getLogger(DirectoryWalker.class.getName());
+
+    private static final Comparator<Path> BY_NAME = Comparator.comparing(DirectoryWalker::getName);
+
+    private static final String SEPARATOR = "/";
+
+    private final boolean sorted;
+    private final WalkFilter filter;
+
+    public DirectoryWalker(boolean sorted) {
+        this(sorted, WalkFilter.DEFAULT);
+    }
+
+    /**
+     * @param sorted true to visit the entries of each directory by name.
+     * @param filter The filter of the entries to visit.
+     */
+    public DirectoryWalker(boolean sorted, WalkFilter filter) {
+        this.sorted = sorted;
+        this.filter = filter;
+    }
+
+    /**
+     * Callback for the entries found during a walk.
+     */
+    public interface Visitor {
+
+        /**
+         * Called before the entries of a directory are visited.
+         *
+         * @param directory The directory.
+         * @param attrs     The directory attributes.
+         * @return false to skip the entries of the directory.
+         */
+        default boolean preVisitDirectory(Path directory, BasicFileAttributes attrs) {
+            return true;
+        }
+
+        /**
+         * Called for every entry that is not a directory.
+         *
+         * @param file  The file.
+         * @param attrs The file attributes.
+         */
+        void visitFile(Path file, BasicFileAttributes attrs);
+
+        /**
+         * Called when the attributes of an entry cannot be read.
+         *
+         * @param path      The entry.
+         * @param exception The I/O error.
+         */
+        default void visitFileFailed(Path path, IOException exception) {
+        }
+
+        /**
+         * Called when the entries of a directory cannot be listed.
+         *
+         * @param directory The directory.
+         * @param exception The I/O error.
+         */
+        default void visitDirectoryFailed(Path directory, IOException exception) {
+        }
+
+        /**
+         * Called after the entries of a directory have been visited.
+         *
+         * @param directory The directory.
+         */
+        default void postVisitDirectory(Path directory) {
+        }
+    }
+
+    /**
+     * Walks the file tree starting at the given file or directory.
+     *
+     * @param start   The file or directory to start from.
+     * @param visitor The visitor.
+     */
+    public void walk(Path start, Visitor visitor) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(start, BasicFileAttributes.class);
+        } catch (IOException e) {
+            visitor.visitFileFailed(start, e);
+            return;
+        }
+        if (!attrs.isDirectory()) {
+            visitor.visitFile(start, attrs);
+            return;
+        }
+        visitDirectory(start, attrs, "", 0, filter.startScope(start), new HashSet<>(), visitor);
+    }
+
+    /**
+     * Visits a directory and its entries.
+     *
+     * @param ancestors The keys of the directories on the path from the start,
+     *                  only kept while links are followed.
+     */
+    private void visitDirectory(Path path, BasicFileAttributes attrs, String relativePath, int depth,
+            WalkFilter.Scope scope, Set<Object> ancestors, Visitor visitor) {
+        Object key = filter.isFollowLinks() ? directoryKey(path, attrs) : null;
+        if (key != null && !ancestors.add(key)) {
+            LOGGER.log(Level.WARNING, "Skipping {0}, it links to a directory that contains it", path);
+            return;
+        }
+        try {
+            visitEntries(path, attrs, relativePath, depth, scope, ancestors, visitor);
+        } finally {
+            if (key != null) {
+                ancestors.remove(key);
+            }
+        }
+    }
+
+    private void visitEntries(Path path, BasicFileAttributes attrs, String relativePath, int depth,
+            WalkFilter.Scope scope, Set<Object> ancestors, Visitor visitor) {
+        if (visitor.preVisitDirectory(path, attrs)) {
+            List<Path> sortedEntries = sorted ? new ArrayList<>() : null;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                if (sorted) {
+                    // The listing is complete and closed before any entry is visited
+                    entries.forEach(sortedEntries::add);
+                } else {
+                    for (Path entry : entries) {
+                        visitEntry(entry, relativePath, depth + 1, scope, ancestors, visitor);
+                    }
+                }
+            } catch (IOException | SecurityException e) {
+                visitor.visitDirectoryFailed(path,
+                        e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e));
+                sortedEntries = null;
+            }
+            if (sortedEntries != null) {
+                sortedEntries.sort(BY_NAME);
+                for (Path entry : sortedEntries) {
+                    visitEntry(entry, relativePath, depth + 1, scope, ancestors, visitor);
+                }
+            }
+        }
+        visitor.postVisitDirectory(path);
+    }
+
+    /**
+     * Visits an entry of a directory.
+     *
+     * @param entry      The entry.
+     * @param parentPath The path of its directory relative to the start.
+     * @param depth      The depth of the entry, 1 for entries of the start.
+     * @param scope      The ignore patterns of its directory.
+     * @param ancestors  The keys of the directories on the path from the start.
+     * @param visitor    The visitor.
+     */
+    private void visitEntry(Path entry, String parentPath, int depth, WalkFilter.Scope scope,
+            Set<Object> ancestors, Visitor visitor) {
+        BasicFileAttributes attrs;
+        try {
+            // One stat per entry, the directory listing itself carries no attributes
+            attrs = filter.isFollowLinks() ? Files.readAttributes(entry, BasicFileAttributes.class)
+                    : Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            visitor.visitFileFailed(entry, e);
+            return;
+        }
+        if (attrs.isSymbolicLink()) {
+            // Earlier versions followed links, a scan that leaves them out has to say so
+            LOGGER.log(Level.WARNING, "Skipping symbolic link {0}, links are only followed with --follow-links",
+                    entry);
+            return;
+        }
+        String name = getName(entry);
+        String relativePath = parentPath.isEmpty() ? name : parentPath + SEPARATOR + name;
+        if (!attrs.isDirectory()) {
+            if (filter.acceptsFile(scope, relativePath, name, depth)) {
+                visitor.visitFile(entry, attrs);
+            }
+        } else if (filter.acceptsDirectory(scope, relativePath, name, depth)) {
+            // The ignore file of the directory applies to its whole subtree
+            visitDirectory(entry, attrs, relativePath, depth, filter.enter(scope, entry, relativePath), ancestors,
+                    visitor);
+        }
+    }
+
+    /**
+     * Gets the identity of a directory, the same for every path that leads to
+     * it.
+     */
+    private static Object directoryKey(Path directory, BasicFileAttributes attrs) {
+        if (attrs.fileKey() != null) {
+            return attrs.fileKey();
+        }
+        try {
+            return directory.toRealPath();
+        } catch (IOException e) {
+            return directory.toAbsolutePath().normalize();
+        }
+    }
+
+    /**
+     * Gets the file name of the path, or an empty string for a root.
+     *
+     * @param path The path.
+     * @return The file name.
+     */
+    public static String getName(Path path) {
+        Path name = path.getFileName();
+        return name == null ? "" : name.toString();
+    }
+}
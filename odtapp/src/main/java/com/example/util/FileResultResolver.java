@@ -0,0 +1,226 @@
+package com.example.util;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.example.concurrent.AdaptiveExecutor;
+import com.example.concurrent.Deadline;
+import com.example.logging.RunSummary;
+import com.example.model.JsonItem;
+import com.example.odt.ExtractionRuleSet;
+import com.example.odt.OdtFile;
+import com.example.odt.OdtParts;
+import com.example.odt.ResourceLimits;
+
+/**
+ * Resolves the result of each ODT file of a json scan, for the tree scan and
+ * the pipeline alike. A file completed by an interrupted run is taken from the
+ * checkpoint and a file an earlier command of the batch has read from the
+ * cache. Any other file is read, unless the deduplicator has already given
+ * its key to another file, whose result it then takes. {@link #record} counts,
+ * caches and checkpoints what was read or copied.
+ *
+ * The scans only decide on which threads the reads run.
+ */
+final class FileResultResolver {
+
+    private static final Logger LOGGER = Logger.getLogger(FileResultResolver.class.getName());
+
+    private final OdtParts parts;
+    private final ResourceLimits limits;
+    private final Deadline deadline;
+    private final ExtractionRuleSet extractionRules;
+    private final Checkpoint checkpoint;
+    private final RunSummary summary;
+    private final ImportBlockCache cache;
+    private final ContentDeduplicator deduplicator;
+
+    /**
+     * @param context The settings and shared state of the scan.
+     */
+    FileResultResolver(ScanContext context) {
+        this.parts = context.getParts();
+        this.limits = context.getLimits();
+        this.deadline = context.getDeadline();
+        this.extractionRules = context.getExtractionRules();
+        this.checkpoint = context.getCheckpoint();
+        this.summary = context.getSummary();
+        this.cache = context.getCache();
+        this.deduplicator = context.getDeduplicator();
+    }
+
+    /**
+     * Takes the result of a file from the checkpoint or the cache.
+     *
+     * @param file         The ODT file.
+     * @param attrs        The file attributes.
+     * @param relativePath The file path relative to the start path.
+     * @return The result, or an empty Optional if the file has to be read.
+     */
+    Optional<Result> takeCompleted(Path file, BasicFileAttributes attrs, String relativePath) {
+        // Take the result of a file read by an interrupted run from the checkpoint
+        Optional<Checkpoint.Entry> completed = checkpoint.get(relativePath);
+        if (completed.isPresent()) {
+            summary.increment(RunSummary.SKIPPED);
+            return Optional.of(new Result(completed.get().getImportBlocks(), completed.get().getExtracted(),
+                    completed.get().getError(), false));
+        }
+
+        // Take the result of a file an earlier command of the batch has read
+        Optional<ImportBlockCache.Entry> cached = cache.get(file, attrs, parts);
+        if (cached.isPresent()) {
+            summary.increment(RunSummary.CACHED);
+            checkpoint.record(relativePath, cached.get().getImportBlocks(), null);
+            return Optional.of(new Result(cached.get().getImportBlocks(), null, null, false));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Reads a file, or takes the result of the first file with the same key
+     * once it is complete. Errors are not copied, a copy whose original failed
+     * is read itself.
+     *
+     * @param file      The ODT file.
+     * @param attrs     The file attributes.
+     * @param read      Starts the read of the file.
+     * @param readAgain Reads a copy whose original failed, on the thread that
+     *                  completed the original.
+     * @return The result.
+     */
+    CompletableFuture<Result> readOnce(Path file, BasicFileAttributes attrs,
+            Supplier<CompletableFuture<Result>> read, Supplier<Result> readAgain) {
+        Optional<Object> key = deduplicator.key(file, attrs);
+        if (key.isEmpty()) {
+            return read.get();
+        }
+        CompletableFuture<ContentDeduplicator.Content> claim = new CompletableFuture<>();
+        CompletableFuture<ContentDeduplicator.Content> first = deduplicator.claim(key.get(), claim);
+        if (first != claim) {
+            return first.thenApply(content -> content.getError() != null ? readAgain.get()
+                    : new Result(content.getImportBlocks(), content.getExtracted(), null, true));
+        }
+        CompletableFuture<Result> result;
+        try {
+            result = read.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        // Copies wait for the claim, so it is completed whatever the outcome
+        return result.whenComplete((completed, e) -> claim.complete(completed != null
+                ? new ContentDeduplicator.Content(completed.importBlocks, completed.extracted, completed.error)
+                : new ContentDeduplicator.Content(null, null, String.valueOf(e))));
+    }
+
+    /**
+     * Reads the import blocks of an ODT file, and the extracted values if there
+     * are extraction rules. With a deadline the read times out by the deadline.
+     *
+     * @param file The ODT file.
+     * @return The result, with the error if the file cannot be read.
+     */
+    Result read(Path file) {
+        ResourceLimits limits = this.limits.within(deadline);
+        try {
+            OdtFile odtFile = new OdtFile(file.toString(), parts, limits);
+
+            // Extraction rules take the import blocks from the same pass over the parts
+            if (!extractionRules.isEmpty()) {
+                ExtractionRuleSet.Result extraction = extractionRules.extract(odtFile.readParts(), limits);
+                return new Result(extraction.getImportBlocks(), extraction.getSections(), null, false);
+            }
+            return new Result(odtFile.getImportBlocks().orElse(null), null, null, false);
+        } catch (Exception e) {
+            return failed(file, e);
+        }
+    }
+
+    /**
+     * Parses the XML parts of an ODT file that were read already.
+     *
+     * @param file         The ODT file.
+     * @param partContents The inflated XML parts.
+     * @return The result, with the error if a part cannot be parsed.
+     */
+    Result parse(Path file, List<byte[]> partContents) {
+        ResourceLimits limits = this.limits.within(deadline);
+        try {
+            if (!extractionRules.isEmpty()) {
+                ExtractionRuleSet.Result extraction = extractionRules.extract(partContents, limits);
+                return new Result(extraction.getImportBlocks(), extraction.getSections(), null, false);
+            }
+            return new Result(OdtFile.parseImportBlocks(partContents, limits).orElse(null), null, null, false);
+        } catch (Exception e) {
+            return failed(file, e);
+        }
+    }
+
+    /**
+     * Logs the failure of a file.
+     *
+     * @param file The ODT file.
+     * @param e    The error.
+     * @return The result with the error.
+     */
+    Result failed(Path file, Exception e) {
+        AdaptiveExecutor.reportFailure();
+        LOGGER.log(Level.SEVERE, "Failed to process file {0}. {1}", new Object[] { file, e.getMessage() });
+        return new Result(null, null, e.getMessage(), false);
+    }
+
+    /**
+     * Counts the result of a file that was read or copied, caches it unless it
+     * failed and records it in the checkpoint.
+     *
+     * @param file         The ODT file.
+     * @param attrs        The file attributes.
+     * @param relativePath The file path relative to the start path.
+     * @param result       The result.
+     */
+    void record(Path file, BasicFileAttributes attrs, String relativePath, Result result) {
+        if (result.error != null) {
+            summary.increment(RunSummary.FAILED);
+        } else {
+            summary.increment(result.copied ? RunSummary.DEDUPLICATED : RunSummary.READ);
+            cache.put(file, attrs, parts, result.importBlocks);
+        }
+        checkpoint.record(relativePath, result.importBlocks, result.extracted, result.error);
+    }
+
+    /**
+     * The result of one file.
+     */
+    static final class Result {
+        private final List<String> importBlocks;
+        private final Map<String, List<String>> extracted;
+        private final String error;
+        // Taken from another file with the same key
+        private final boolean copied;
+
+        private Result(List<String> importBlocks, Map<String, List<String>> extracted, String error,
+                boolean copied) {
+            this.importBlocks = importBlocks;
+            this.extracted = extracted;
+            this.error = error;
+            this.copied = copied;
+        }
+
+        /**
+         * Fills in the file item.
+         *
+         * @param item The file item.
+         */
+        void applyTo(JsonItem item) {
+            item.setImportBlocks(importBlocks);
+            item.setExtracted(extracted);
+            item.setError(error);
+        }
+    }
+}
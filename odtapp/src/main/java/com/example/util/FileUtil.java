@@ -1,11 +1,30 @@
 package com.example.util;
 
+import com.example.concurrent.AdaptiveExecutor;
+import com.example.concurrent.Deadline;
+import com.example.concurrent.TemplateLockManager;
 import com.example.exception.AbortException;
+import com.example.exception.FileLockedException;
+import com.example.exception.InvalidArgumentException;
 import com.example.exception.InvalidFileException;
+import com.example.logging.RunSummary;
 import com.example.model.JsonItem;
+import com.example.model.ScanOptions;
+import com.example.model.StatsReport;
+import com.example.model.VerifyReport;
+import com.example.odt.ExtractionRuleSet;
 import com.example.odt.OdtFile;
+import com.example.odt.OdtParts;
+import com.example.odt.ResourceLimits;
+import com.example.rewrite.RewriteRuleSet;
+import com.example.stats.BlockIndex;
+import com.example.stats.BlockQuery;
+import com.example.stats.BlockSink;
+import com.example.stats.BlockStatistics;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -16,6 +35,7 @@ import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -24,6 +44,7 @@ public class FileUtil {
 
     private static final Logger LOGGER = Logger.getLogger(FileUtil.class.getName());
     public static final String FILE_EXTENSION_ODT = ".odt";
+    private static final long MEGABYTE = 1024 * 1024;
 
     /**
      * Check if file extension is .odt.
@@ -116,6 +137,22 @@ public class FileUtil {
         }
     }
 
+    /**
+     * Checks if file for path string exists without prompting, for commands that
+     * run unattended.
+     *
+     * @param pathString The file path in string.
+     * @param overwrite  true if an existing file may be overwritten.
+     *
+     * @throws AbortException if the file exists and may not be overwritten.
+     */
+    public static void checkOverwrite(String pathString, boolean overwrite) throws AbortException {
+        if (!overwrite && Files.exists(Paths.get(pathString))) {
+            throw new AbortException(
+                    String.format("File %s already exists. Use --overwrite to overwrite it.", pathString));
+        }
+    }
+
     /**
      * Unzips a zip archive into a target directory.
      *
@@ -190,39 +227,58 @@ public class FileUtil {
         // List to hold the paths of ODT files found in the directory
         List<Path> odtFiles = new ArrayList<>();
 
-        // Convert the directory path string to a Path object
-        Path startPath = Paths.get(directoryPath);
+        // Walk the file tree in name order starting from the specified path
+        walkOdtFiles(Paths.get(directoryPath), true, odtFiles::add);
 
-        try {
-            // Walk the file tree starting from the specified path
-            Files.walkFileTree(startPath, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                    // If the file has an ODT extension, add it to the list
-                    if (file.toString().toLowerCase().endsWith(FILE_EXTENSION_ODT)) {
-                        odtFiles.add(file);
-                    }
-                    return FileVisitResult.CONTINUE;
-                }
+        // Return the list of ODT files
+        return odtFiles;
+    }
+
+    /**
+     * Walks the file tree and passes every .odt file to the consumer as it is
+     * found, without collecting the paths.
+     *
+     * @param startPath The file or directory to start from.
+     * @param sorted    true to visit the entries of each directory by name.
+     * @param consumer  The consumer for ODT file paths.
+     */
+    public static void walkOdtFiles(Path startPath, boolean sorted, Consumer<Path> consumer) {
+        walkOdtFiles(startPath, sorted, WalkFilter.DEFAULT, consumer);
+    }
 
-                @Override
-                public FileVisitResult visitFileFailed(Path file, IOException exception) {
-                    // Log an error message if a file visit fails
-                    LOGGER.log(Level.SEVERE, String.format("Failed to access file: %s Error: %s", file.toString(),
-                            exception.getMessage()));
-                    return FileVisitResult.CONTINUE;
+    /**
+     * Walks the file tree and passes every .odt file the filter accepts to the
+     * consumer as it is found.
+     *
+     * @param startPath The file or directory to start from.
+     * @param sorted    true to visit the entries of each directory by name.
+     * @param filter    The filter of the entries to visit.
+     * @param consumer  The consumer for ODT file paths.
+     */
+    public static void walkOdtFiles(Path startPath, boolean sorted, WalkFilter filter, Consumer<Path> consumer) {
+        new DirectoryWalker(sorted, filter).walk(startPath, new DirectoryWalker.Visitor() {
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {
+                // If the file has an ODT extension, pass it on
+                if (isOdtFile(file.toString())) {
+                    consumer.accept(file);
                 }
-            });
-        } catch (IOException e) {
-            // Log an error message if an I/O exception occurs while walking the file tree
-            LOGGER.log(Level.SEVERE, "Error walking file tree: {0}", e.getMessage());
-        }
+            }
 
-        // Sort the list of ODT files
-        Collections.sort(odtFiles);
+            @Override
+            public void visitFileFailed(Path file, IOException exception) {
+                // Log an error message if a file visit fails
+                LOGGER.log(Level.SEVERE, "Failed to access file: {0} Error: {1}",
+                        new Object[] { file, exception.getMessage() });
+            }
 
-        // Return the list of ODT files
-        return odtFiles;
+            @Override
+            public void visitDirectoryFailed(Path directory, IOException exception) {
+                // Log an error message if a directory cannot be listed
+                LOGGER.log(Level.SEVERE, "Failed to list directory: {0} Error: {1}",
+                        new Object[] { directory, exception.getMessage() });
+            }
+        });
     }
 
     /**
@@ -243,9 +299,8 @@ public class FileUtil {
                         return odtFile.getImportBlocks().orElseGet(ArrayList::new);
                     } catch (Exception e) {
                         // Log an error message if an exception occurs while getting import blocks
-                        LOGGER.log(Level.SEVERE,
-                                String.format("Failed to get import blocks for file: %s Error: %s",
-                                        odtFilePath.toString(), e.getMessage()));
+                        LOGGER.log(Level.SEVERE, "Failed to get import blocks for file: {0} Error: {1}",
+                                new Object[] { odtFilePath, e.getMessage() });
                         // Return an empty list if an error occurs
                         return new ArrayList<String>();
                     }
@@ -263,167 +318,562 @@ public class FileUtil {
      * @return JsonItem.
      */
     public static JsonItem generateData(File fileOrDirectory) {
-        // Create a new JsonItem object for the file or directory, specifying the name
-        // and type
-        JsonItem item = new JsonItem(fileOrDirectory.getName(),
-                fileOrDirectory.isDirectory() ? JsonItem.DIRECTORY_TYPE : JsonItem.FILE_TYPE);
+        return generateData(fileOrDirectory, new ScanContext());
+    }
+
+    /**
+     * Get JsonItem for the ODT files below the file or directory that the scan
+     * context selects, with its cache, checkpoint and deduplicator.
+     *
+     * @param fileOrDirectory The file or directory to process.
+     * @param context         The settings and shared state of the scan.
+     * @return JsonItem, or null if the scan finds no ODT files.
+     */
+    public static JsonItem generateData(File fileOrDirectory, ScanContext context) {
+        // Walk the tree in name order so the output is deterministic, skipping
+        // filtered entries without listing or opening them
+        JsonItemTreeBuilder builder = new JsonItemTreeBuilder(fileOrDirectory.toPath(), context);
+        new DirectoryWalker(true, context.getWalkFilter()).walk(fileOrDirectory.toPath(), builder);
+        builder.finishReads();
+
+        // Return the JsonItem if it is not an empty directory or ODT file, or if it
+        // contains an error
+        return builder.getRoot();
+    }
+
+    /**
+     * Get JsonItem for the ODT files below several files or directories, walked
+     * one after the other with the same scan context.
+     *
+     * @param inputs  The files or directories to process.
+     * @param context The settings and shared state of the scan.
+     * @return The JsonItem of a single input, or an unnamed directory with the
+     *         JsonItem of each input named by its path, or null if the scan finds
+     *         no ODT files.
+     */
+    private static JsonItem generateData(List<File> inputs, ScanContext context) {
+        if (inputs.size() == 1) {
+            return generateData(inputs.get(0), context);
+        }
+        JsonItem root = new JsonItem("", JsonItem.DIRECTORY_TYPE);
+        root.setChildren(new LinkedList<>());
+        for (File input : inputs) {
+            JsonItem item = generateData(input, context);
+            if (item != null) {
+                item.setName(input.getPath());
+                root.getChildren().add(item);
+            }
+        }
+        return root.getChildren().isEmpty() ? null : root;
+    }
+
+    /**
+     * Creates a JSON file representing the directory structure.
+     *
+     * @param directoryOrFilePath The input directory or file path.
+     * @param outputPath          The output JSON file path.
+     * @throws FileNotFoundException if the input path does not exist.
+     * @throws InvalidFileException  if the checkpoint to resume from belongs to
+     *                               another run.
+     */
+    public static void createJsonFile(String directoryOrFilePath, String outputPath)
+            throws FileNotFoundException, InvalidFileException {
+        createJsonFile(directoryOrFilePath, outputPath, new ScanOptions());
+    }
+
+    /**
+     * Creates a JSON file representing the directory structure.
+     *
+     * @param directoryOrFilePath The input directory or file path.
+     * @param outputPath          The output JSON file path.
+     * @param options             The scan options.
+     * @throws FileNotFoundException if the input path does not exist.
+     * @throws InvalidFileException  if the checkpoint to resume from belongs to
+     *                               another run.
+     */
+    public static void createJsonFile(String directoryOrFilePath, String outputPath, ScanOptions options)
+            throws FileNotFoundException, InvalidFileException {
+        createJsonFile(directoryOrFilePath, outputPath, options, ImportBlockCache.disabled());
+    }
+
+    /**
+     * Creates a JSON file representing the directory structure, reusing the
+     * import blocks of unchanged files read by earlier commands.
+     *
+     * @param directoryOrFilePath The input directory or file path.
+     * @param outputPath          The output JSON file path.
+     * @param options             The scan options.
+     * @param cache               The import blocks of files read earlier.
+     * @throws FileNotFoundException if the input path does not exist.
+     * @throws InvalidFileException  if the checkpoint to resume from belongs to
+     *                               another run.
+     */
+    public static void createJsonFile(String directoryOrFilePath, String outputPath, ScanOptions options,
+            ImportBlockCache cache) throws FileNotFoundException, InvalidFileException {
+        createJsonFile(List.of(directoryOrFilePath), outputPath, options, cache);
+    }
+
+    /**
+     * Creates a JSON file representing the directory structure of several
+     * inputs scanned together. The inputs share the worker threads, the
+     * summary and the deduplication of the scan, so a file below two inputs is
+     * read once. With a single input the JSON file is the same as for that
+     * input alone, with several the tree of each input is a child of an unnamed
+     * directory, named by its path.
+     *
+     * @param directoryOrFilePaths The input directory or file paths.
+     * @param outputPath           The output JSON file path.
+     * @param options              The scan options.
+     * @param cache                The import blocks of files read earlier.
+     * @throws FileNotFoundException if an input path does not exist.
+     * @throws InvalidFileException  if the checkpoint to resume from belongs to
+     *                               another run.
+     */
+    public static void createJsonFile(List<String> directoryOrFilePaths, String outputPath, ScanOptions options,
+            ImportBlockCache cache) throws FileNotFoundException, InvalidFileException {
+        // The time budget covers the whole scan
+        Deadline deadline = Deadline.of(options);
+
+        // Create a File object for each specified directory or file path and check
+        // that it exists
+        List<File> inputs = new ArrayList<>();
+        for (String directoryOrFilePath : directoryOrFilePaths) {
+            File input = new File(directoryOrFilePath);
+            if (!input.exists()) {
+                throw new FileNotFoundException(
+                        String.format("The specified path %s does not exist.", directoryOrFilePath));
+            }
+            inputs.add(input);
+        }
+        File directoryOrFile = inputs.get(0);
+        String directoryOrFilePath = String.join(", ", directoryOrFilePaths);
+
+        ExtractionRuleSet extractionRules = loadExtractionRules(options);
+
+        // Generate data from the directory or file, reading ODT files in parallel in
+        // adaptive mode and taking files completed by an interrupted run from the
+        // checkpoint, which holds the files of a single input
+        Shard shard = Shard.of(options);
+        Checkpoint checkpoint = inputs.size() > 1 ? Checkpoint.disabled()
+                : openCheckpoint(options, Paths.get(outputPath + Checkpoint.FILE_EXTENSION),
+                        file -> Checkpoint.forJson(file, directoryOrFile.toPath(), options, extractionRules));
+        ScanContext context = new ScanContext();
+        context.setParts(OdtParts.of(options));
+        context.setLimits(ResourceLimits.of(options));
+        context.setShard(shard);
+        context.setWalkFilter(WalkFilter.of(options));
+        context.setCheckpoint(checkpoint);
+        // The cache only holds import blocks, extracted values need the files read
+        context.setCache(extractionRules.isEmpty() ? cache : ImportBlockCache.disabled());
+        context.setExtractionRules(extractionRules);
+        context.setDeadline(deadline);
+        // Paths that lead to the same file are read once even without content
+        // deduplication
+        context.setDeduplicator(options.isDedup() ? new ContentDeduplicator() : ContentDeduplicator.byFileKey());
+        // A time budget and several inputs need the tree scan, which orders the reads
+        // and seals the tree
+        if (!deadline.isSet() && inputs.size() == 1 && (options.isPipeline() || options.getReadAhead() > 0)) {
+            writeJsonPipeline(directoryOrFile, outputPath, options, context);
+            return;
+        }
+        JsonItem jsonItem;
         try {
-            // Check if the file or directory is readable
-            if (!fileOrDirectory.canRead()) {
-                // If not readable, set an error message in the JsonItem
-                item.setError(String.format("Failed to read %s. It is not readable.", fileOrDirectory.toPath()));
-                LOGGER.log(Level.SEVERE, "Failed to read {0}. It is not readable.",
-                        fileOrDirectory.toPath().toString());
-            } else {
-                // If it is a directory, get data for the directory
-                if (fileOrDirectory.isDirectory()) {
-                    item = getDataForDirectory(fileOrDirectory);
-                } else {
-                    // If it is a file, create an OdtFile object and get data for the file
-                    OdtFile odtFile = new OdtFile(fileOrDirectory.getPath());
-                    item = getDataForFile(odtFile);
+            if (options.isAdaptive() && deadline.isSet()) {
+                // Reads still running at the deadline are not waited for
+                AdaptiveExecutor executor = new AdaptiveExecutor(options.getMaxConcurrency());
+                try {
+                    context.setFileExecutor(executor);
+                    jsonItem = generateData(inputs, context);
+                } finally {
+                    executor.shutdown();
                 }
+            } else if (options.isAdaptive()) {
+                try (AdaptiveExecutor executor = new AdaptiveExecutor(options.getMaxConcurrency())) {
+                    context.setFileExecutor(executor);
+                    jsonItem = generateData(inputs, context);
+                }
+            } else {
+                jsonItem = generateData(inputs, context);
             }
-        } catch (SecurityException e) {
-            // If a SecurityException occurs, set an error message in the JsonItem
-            item.setError(String.format("Access denied. Error message: %s", e.getMessage()));
-            LOGGER.log(Level.SEVERE, String.format("Access denied for %s. Error message: %s",
-                    fileOrDirectory.toPath().toString(), e.getMessage()));
+        } finally {
+            closeCheckpoint(checkpoint);
+        }
+        context.getSummary().log(LOGGER);
 
-        } catch (Exception e) {
-            // If any other exception occurs, set the error message in the JsonItem
-            item.setError(e.getMessage());
-            LOGGER.log(Level.SEVERE,
-                    String.format("Failed to process %s. %s", fileOrDirectory.toPath().toString(), e.getMessage()));
+        // A shard may legitimately be empty, its partial report is written as null
+        if (jsonItem == null && shard.getCount() > 1) {
+            LOGGER.log(Level.INFO, String.format("Shard %d/%d of %s contains no odt file.", shard.getIndex() + 1,
+                    shard.getCount(), directoryOrFilePath));
+        } else if (jsonItem == null) {
+            throw new FileNotFoundException(
+                    String.format("The specified path %s does not contain an odt file.", directoryOrFilePath));
         }
 
-        // Return the JsonItem if it is not an empty directory or ODT file, or if it
-        // contains an error
-        return (item.isDirectoryType() && item.getChildren() != null)
-                || (item.isFileType() && FileUtil.isOdtFile(item.getName()))
-                || item.getError() != null ? item : null;
+        // Create a Gson object with pretty printing enabled
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+        // Convert the JsonItem object to a JSON string
+        String jsonString = gson.toJson(jsonItem);
+
+        // Convert the output path string to a Path object
+        Path jsonOutputPath = Paths.get(outputPath);
+
+        // Write the JSON string to the specified output file
+        try (BufferedWriter writer = Files.newBufferedWriter(jsonOutputPath)) {
+            writer.write(jsonString);
+            LOGGER.log(Level.INFO, "JSON file created successfully at {0}", outputPath.toString());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error writing JSON file: {0}", e.getMessage());
+            return;
+        }
+
+        // The output is complete, a later run starts from scratch
+        deleteCheckpoint(checkpoint);
     }
 
     /**
-     * Get JsonItem for directory.
+     * Loads the extraction rules file of the scan options.
      *
-     * @param directory The directory to process.
-     * @return JsonItem.
+     * @param options The scan options.
+     * @return The extraction rules, or {@link ExtractionRuleSet#NONE} without a
+     *         rules file.
+     * @throws InvalidFileException if the rules file cannot be read or a rule is
+     *                              malformed.
      */
-    private static JsonItem getDataForDirectory(File directory) {
-        // Create a new JsonItem object for the directory, specifying the directory name
-        // and type
-        JsonItem item = new JsonItem(directory.getName(), JsonItem.DIRECTORY_TYPE);
-
-        // Create a LinkedList to hold the contents of the directory
-        LinkedList<JsonItem> folderContents = new LinkedList<>();
-
-        // List the files in the directory
-        File[] files = directory.listFiles();
-
-        // Check if the files array is not null
-        if (files != null) {
-            // Iterate through the files in the directory
-            for (File file : files) {
-                // Generate data for each file and add it to the folderContents list if not null
-                JsonItem childItem = generateData(file);
-                if (childItem != null) {
-                    folderContents.add(childItem);
+    private static ExtractionRuleSet loadExtractionRules(ScanOptions options) throws InvalidFileException {
+        if (options.getExtractRulesPath() == null) {
+            return ExtractionRuleSet.NONE;
+        }
+        try {
+            ExtractionRuleSet rules = ExtractionRuleSet.parse(Paths.get(options.getExtractRulesPath()));
+            LOGGER.log(Level.INFO, "Loaded {0} extraction rules", rules.getRules().size());
+            return rules;
+        } catch (IOException e) {
+            throw new InvalidFileException(String.format("Failed to read extraction rules %s. Error message: %s",
+                    options.getExtractRulesPath(), e.getMessage()));
+        } catch (InvalidArgumentException e) {
+            throw new InvalidFileException(e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the JSON file of a json run with the staged pipeline, which streams
+     * the tree to a temporary file in walk order and moves it into place.
+     *
+     * @param directoryOrFile The input directory or file.
+     * @param outputPath      The output JSON file path.
+     * @param options         The scan options.
+     * @param context         The settings and shared state of the scan.
+     * @throws FileNotFoundException if the input path contains no ODT file.
+     */
+    private static void writeJsonPipeline(File directoryOrFile, String outputPath, ScanOptions options,
+            ScanContext context) throws FileNotFoundException {
+        Checkpoint checkpoint = context.getCheckpoint();
+        Shard shard = context.getShard();
+        Path jsonOutputPath = Paths.get(outputPath);
+        Path temporaryPath = jsonOutputPath.resolveSibling(jsonOutputPath.getFileName() + ".tmp");
+        boolean written;
+        try {
+            // Close the file rather than the JSON writer, which rejects an empty document
+            try (BufferedWriter output = Files.newBufferedWriter(temporaryPath)) {
+                JsonWriter writer = new GsonBuilder().setPrettyPrinting().create().newJsonWriter(output);
+                written = new JsonScanPipeline(directoryOrFile.toPath(), context, options.getIoThreads(),
+                        Runtime.getRuntime().availableProcessors(), options.getReadAhead(),
+                        options.getReadAheadMemory() * MEGABYTE).run(writer);
+
+                // A shard may legitimately be empty, its partial report is written as null
+                if (!written && shard.getCount() > 1) {
+                    writer.nullValue();
                 }
+                writer.flush();
+            } finally {
+                closeCheckpoint(checkpoint);
+            }
+            context.getSummary().log(LOGGER);
+            if (written || shard.getCount() > 1) {
+                Files.move(temporaryPath, jsonOutputPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error writing JSON file: {0}", e.getMessage());
+            return;
+        } finally {
+            try {
+                Files.deleteIfExists(temporaryPath);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to delete {0}", temporaryPath);
             }
-        } else {
-            // If the files array is null, set an error message in the JsonItem
-            item.setError(String.format("Failed to list contents of directory %s. Access denied.", directory.toPath()));
-            // Log an error message indicating the failure to list the directory contents
-            LOGGER.log(Level.SEVERE, "Failed to list contents of directory {0}. Access denied.",
-                    directory.toPath().toString());
         }
 
-        // If the folderContents list is not empty, set it as the children of the
-        // JsonItem
-        if (!folderContents.isEmpty()) {
-            item.setChildren(folderContents);
+        if (!written && shard.getCount() > 1) {
+            LOGGER.log(Level.INFO, String.format("Shard %d/%d of %s contains no odt file.", shard.getIndex() + 1,
+                    shard.getCount(), directoryOrFile));
+        } else if (!written) {
+            throw new FileNotFoundException(
+                    String.format("The specified path %s does not contain an odt file.", directoryOrFile));
         }
+        LOGGER.log(Level.INFO, "JSON file created successfully at {0}", outputPath);
 
-        // Return the JsonItem object
-        return item;
+        // The output is complete, a later run starts from scratch
+        deleteCheckpoint(checkpoint);
     }
 
     /**
-     * Get JsonItem for file.
+     * Creates a JSON file with the import block usage statistics of the ODT files
+     * below a directory.
      *
-     * @param file The file to process.
-     * @return JsonItem.
+     * @param directoryOrFilePath The input directory or file path.
+     * @param outputPath          The output JSON file path.
+     * @param options             The scan options.
+     * @throws FileNotFoundException if the input path does not exist or contains
+     *                               no ODT file.
      */
-    private static JsonItem getDataForFile(File file) {
-        // Create a new JsonItem object for the file, specifying the file name and type
-        JsonItem item = new JsonItem(file.getName(), JsonItem.FILE_TYPE);
+    public static void createStatsFile(String directoryOrFilePath, String outputPath, ScanOptions options)
+            throws FileNotFoundException {
+        createStatsFile(directoryOrFilePath, outputPath, options, ImportBlockCache.disabled());
+    }
 
-        // Check if the file is an ODT file
-        if (FileUtil.isOdtFile(file)) {
-            try {
-                // Create an OdtFile object for the file
-                OdtFile odtFile = new OdtFile(file.getPath());
+    /**
+     * Creates a JSON file with the import block usage statistics of the ODT files
+     * below a directory, reusing the import blocks of unchanged files read by
+     * earlier commands. Each file is added to the statistics as it is read, so
+     * memory use does not grow with the number of templates or distinct blocks.
+     *
+     * @param directoryOrFilePath The input directory or file path.
+     * @param outputPath          The output JSON file path.
+     * @param options             The scan options.
+     * @param cache               The import blocks of files read earlier.
+     * @throws FileNotFoundException if the input path does not exist or contains
+     *                               no ODT file.
+     */
+    public static void createStatsFile(String directoryOrFilePath, String outputPath, ScanOptions options,
+            ImportBlockCache cache) throws FileNotFoundException {
+        BlockStatistics statistics = new BlockStatistics(options.getTop(),
+                Math.max(options.getTop(), BlockStatistics.DEFAULT_CAPACITY));
+        collectImportBlocks(directoryOrFilePath, options, cache, new RunSummary("Stats"), statistics);
 
-                // Get the import blocks from the OdtFile, if any
-                Optional<List<String>> importBlocks = odtFile.getImportBlocks();
+        StatsReport report = statistics.toReport();
+        if (report.getTemplates() == 0) {
+            throw new FileNotFoundException(
+                    String.format("The specified path %s does not contain an odt file.", directoryOrFilePath));
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(outputPath))) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+            LOGGER.log(Level.INFO, "Stats file created successfully at {0}", outputPath);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error writing stats file: {0}", e.getMessage());
+        }
+    }
 
-                // If import blocks are present, set them in the JsonItem
-                importBlocks.ifPresent(item::setImportBlocks);
-            } catch (Exception e) {
-                // If an exception occurs, set the error message in the JsonItem
-                item.setError(e.getMessage());
+    /**
+     * Creates a block index file of the ODT files below a directory, for set
+     * queries over their import blocks.
+     *
+     * @param directoryOrFilePath The input directory or file path.
+     * @param outputPath          The output index file path.
+     * @param options             The scan options.
+     * @throws FileNotFoundException if the input path does not exist or contains
+     *                               no ODT file.
+     * @throws IOException           if the index file cannot be written.
+     */
+    public static void createIndexFile(String directoryOrFilePath, String outputPath, ScanOptions options)
+            throws IOException {
+        createIndexFile(directoryOrFilePath, outputPath, options, ImportBlockCache.disabled());
+    }
 
-                // Log an error message indicating the file processing failure
-                LOGGER.log(Level.SEVERE, String.format("Failed to process file %s. %s", file.toString(),
-                        file.toPath().toString(), e.getMessage()));
-            }
+    /**
+     * Creates a block index file of the ODT files below a directory, reusing the
+     * import blocks of unchanged files read by earlier commands.
+     *
+     * @param directoryOrFilePath The input directory or file path.
+     * @param outputPath          The output index file path.
+     * @param options             The scan options.
+     * @param cache               The import blocks of files read earlier.
+     * @throws FileNotFoundException if the input path does not exist or contains
+     *                               no ODT file.
+     * @throws IOException           if the index file cannot be written.
+     */
+    public static void createIndexFile(String directoryOrFilePath, String outputPath, ScanOptions options,
+            ImportBlockCache cache) throws IOException {
+        BlockIndex.Builder builder = BlockIndex.builder();
+        collectImportBlocks(directoryOrFilePath, options, cache, new RunSummary("Index"), builder);
+        BlockIndex index = builder.build();
+        if (index.size() == 0 && index.getFailedTemplates() == 0) {
+            throw new FileNotFoundException(
+                    String.format("The specified path %s does not contain an odt file.", directoryOrFilePath));
         }
+        index.save(Paths.get(outputPath));
+        LOGGER.log(Level.INFO, "Index of {0} templates and {1} blocks created successfully at {2}",
+                new Object[] { index.size(), index.getBlocks().size(), outputPath });
+    }
 
-        // Return the JsonItem object
-        return item;
+    /**
+     * Gets the templates that match a query of a block index file.
+     *
+     * @param indexPath  The index file path.
+     * @param expression The query, see {@link BlockQuery}.
+     * @return The paths of the matching templates in name order.
+     * @throws IOException              if the index file cannot be read.
+     * @throws InvalidFileException     if the file is not a block index.
+     * @throws InvalidArgumentException if the query is malformed.
+     */
+    public static List<String> queryIndex(String indexPath, String expression)
+            throws IOException, InvalidFileException, InvalidArgumentException {
+        BlockQuery query = BlockQuery.parse(expression);
+        BlockIndex index = BlockIndex.load(Paths.get(indexPath));
+        long startNanos = System.nanoTime();
+        List<String> templates = index.paths(query.evaluate(index));
+        LOGGER.log(Level.INFO, "Query matched {0} of {1} templates in {2} us", new Object[] { templates.size(),
+                index.size(), (System.nanoTime() - startNanos) / 1000 });
+        return templates;
     }
 
     /**
-     * Creates a JSON file representing the directory structure.
+     * Checks the ZIP structure, entry CRCs, mimetype entry and XML parts of the
+     * ODT files below a directory and writes a JSON report of the failures.
+     * Files are always checked in parallel on the adaptive executor, bounded by
+     * the maximum concurrency of the options.
      *
      * @param directoryOrFilePath The input directory or file path.
      * @param outputPath          The output JSON file path.
-     * @throws FileNotFoundException if the input path does not exist.
+     * @param options             The scan options.
+     * @return The report.
+     * @throws FileNotFoundException if the input path does not exist or contains
+     *                               no ODT file.
      */
-    public static void createJsonFile(String directoryOrFilePath, String outputPath) throws FileNotFoundException {
-        // Create a File object for the specified directory or file path
+    public static VerifyReport createVerifyFile(String directoryOrFilePath, String outputPath, ScanOptions options)
+            throws FileNotFoundException {
         File directoryOrFile = new File(directoryOrFilePath);
-
-        // Check if the directory or file exists
         if (!directoryOrFile.exists()) {
             throw new FileNotFoundException(
                     String.format("The specified path %s does not exist.", directoryOrFilePath));
         }
 
-        // Generate data from the directory or file
-        JsonItem jsonItem = generateData(directoryOrFile);
+        ScanContext context = new ScanContext();
+        context.setWalkFilter(WalkFilter.of(options));
+        context.setSummary(new RunSummary("Verify"));
+        IntegrityCollector collector = new IntegrityCollector(directoryOrFile.toPath(), context);
+        try (AdaptiveExecutor executor = new AdaptiveExecutor(options.getMaxConcurrency())) {
+            context.setFileExecutor(executor);
+            new DirectoryWalker(false, context.getWalkFilter()).walk(directoryOrFile.toPath(), collector);
+        }
+        context.getSummary().log(LOGGER);
 
-        if (jsonItem == null) {
+        VerifyReport report = collector.toReport();
+        if (report.getTemplates() == 0) {
             throw new FileNotFoundException(
                     String.format("The specified path %s does not contain an odt file.", directoryOrFilePath));
         }
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(outputPath))) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+            LOGGER.log(Level.INFO, "Verify report created successfully at {0}: {1} of {2} templates are invalid",
+                    new Object[] { outputPath, report.getInvalidTemplates(), report.getTemplates() });
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error writing verify report: {0}", e.getMessage());
+        }
+        return report;
+    }
 
-        // Create a Gson object with pretty printing enabled
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    /**
+     * Walks the ODT files below a directory and adds the import blocks of each
+     * file to the sink as it is read, in parallel in adaptive mode.
+     */
+    private static void collectImportBlocks(String directoryOrFilePath, ScanOptions options,
+            ImportBlockCache cache, RunSummary summary, BlockSink sink) throws FileNotFoundException {
+        File directoryOrFile = new File(directoryOrFilePath);
+        if (!directoryOrFile.exists()) {
+            throw new FileNotFoundException(
+                    String.format("The specified path %s does not exist.", directoryOrFilePath));
+        }
 
-        // Convert the JsonItem object to a JSON string
-        String jsonString = gson.toJson(jsonItem);
+        ScanContext context = new ScanContext();
+        context.setParts(OdtParts.of(options));
+        context.setLimits(ResourceLimits.of(options));
+        context.setWalkFilter(WalkFilter.of(options));
+        context.setSummary(summary);
+        context.setCache(cache);
+        if (options.isAdaptive()) {
+            try (AdaptiveExecutor executor = new AdaptiveExecutor(options.getMaxConcurrency())) {
+                context.setFileExecutor(executor);
+                collectImportBlocks(directoryOrFile, context, sink);
+            }
+        } else {
+            collectImportBlocks(directoryOrFile, context, sink);
+        }
+        summary.log(LOGGER);
+    }
 
-        // Convert the output path string to a Path object
-        Path jsonOutputPath = Paths.get(outputPath);
+    /**
+     * Walks the ODT files below a directory that the scan context selects and
+     * adds the import blocks of each file to the sink as it is read. The sink is
+     * only complete once every task submitted to the file executor has finished.
+     *
+     * @param fileOrDirectory The file or directory to process.
+     * @param context         The settings and shared state of the scan.
+     * @param sink            The sink of the import blocks.
+     */
+    public static void collectImportBlocks(File fileOrDirectory, ScanContext context, BlockSink sink) {
+        ImportBlockCollector collector = new ImportBlockCollector(fileOrDirectory.toPath(), context, sink);
+        new DirectoryWalker(false, context.getWalkFilter()).walk(fileOrDirectory.toPath(), collector);
+    }
 
-        // Write the JSON string to the specified output file
-        try (BufferedWriter writer = Files.newBufferedWriter(jsonOutputPath)) {
-            writer.write(jsonString);
-            LOGGER.log(Level.INFO, "JSON file created successfully at {0}", outputPath.toString());
+    /**
+     * Merges the partial JSON files of a sharded scan into the JSON file a single
+     * scan would have created.
+     *
+     * @param partialPaths The partial JSON file paths.
+     * @param outputPath   The output JSON file path.
+     * @throws FileNotFoundException if a partial file does not exist or no
+     *                               partial file contains an ODT file.
+     * @throws InvalidFileException  if a partial file is not a partial report of
+     *                               the same scan.
+     */
+    public static void mergeJsonFiles(List<String> partialPaths, String outputPath)
+            throws FileNotFoundException, InvalidFileException {
+        for (String partialPath : partialPaths) {
+            if (!Files.isRegularFile(Paths.get(partialPath))) {
+                throw new FileNotFoundException(
+                        String.format("The specified partial report %s does not exist.", partialPath));
+            }
+        }
+
+        // Write to a temporary file first so a failed merge leaves no partial output
+        Path jsonOutputPath = Paths.get(outputPath);
+        Path temporaryPath = jsonOutputPath.resolveSibling(jsonOutputPath.getFileName() + ".tmp");
+        List<JsonReader> readers = new ArrayList<>();
+        boolean merged = false;
+        try {
+            for (String partialPath : partialPaths) {
+                readers.add(new JsonReader(Files.newBufferedReader(Paths.get(partialPath))));
+            }
+            try (JsonWriter writer = new GsonBuilder().setPrettyPrinting().create()
+                    .newJsonWriter(Files.newBufferedWriter(temporaryPath))) {
+                merged = JsonReportMerger.merge(readers, writer);
+            }
+            if (merged) {
+                Files.move(temporaryPath, jsonOutputPath, StandardCopyOption.REPLACE_EXISTING);
+                LOGGER.log(Level.INFO, String.format("Merged %d partial reports into %s", partialPaths.size(),
+                        outputPath));
+            }
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Error writing JSON file: {0}", e.getMessage());
+            LOGGER.log(Level.SEVERE, "Error merging JSON files: {0}", e.getMessage());
+            return;
+        } finally {
+            for (JsonReader reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to close partial report: {0}", e.getMessage());
+                }
+            }
+            try {
+                Files.deleteIfExists(temporaryPath);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to delete {0}", temporaryPath);
+            }
+        }
+
+        if (!merged) {
+            throw new FileNotFoundException("The partial reports do not contain an odt file.");
         }
     }
 
@@ -439,6 +889,114 @@ public class FileUtil {
      */
     public static void replaceBlocks(String directoryOrFilePath, String blockToReplace, String newBlock)
             throws FileNotFoundException, InvalidFileException {
+        replaceBlocks(directoryOrFilePath, blockToReplace, newBlock, new ScanOptions());
+    }
+
+    /**
+     * Replaces blocks in .odt files within the specified directory.
+     *
+     * @param directoryOrFilePath The directory or file path.
+     * @param blockToReplace      The block to replace.
+     * @param newBlock            The new block.
+     * @param options             The scan options.
+     * @throws FileNotFoundException if the specified path does not exist or
+     *                               directory does not contain ODT file.
+     * @throws InvalidFileException  if the specified is not ODT file.
+     */
+    public static void replaceBlocks(String directoryOrFilePath, String blockToReplace, String newBlock,
+            ScanOptions options) throws FileNotFoundException, InvalidFileException {
+        replaceBlocks(directoryOrFilePath, blockToReplace, newBlock, options, ImportBlockCache.disabled());
+    }
+
+    /**
+     * Replaces blocks in .odt files within the specified directory, skipping
+     * unchanged files whose cached import blocks do not contain the block.
+     *
+     * @param directoryOrFilePath The directory or file path.
+     * @param blockToReplace      The block to replace.
+     * @param newBlock            The new block.
+     * @param options             The scan options.
+     * @param cache               The import blocks of files read earlier.
+     * @throws FileNotFoundException if the specified path does not exist or
+     *                               directory does not contain ODT file.
+     * @throws InvalidFileException  if the specified is not ODT file.
+     */
+    public static void replaceBlocks(String directoryOrFilePath, String blockToReplace, String newBlock,
+            ScanOptions options, ImportBlockCache cache) throws FileNotFoundException, InvalidFileException {
+        rewriteBlocks(directoryOrFilePath, RewriteRuleSet.literal(blockToReplace, newBlock), options, cache);
+    }
+
+    /**
+     * Rewrites blocks in .odt files within the specified directory with the rules
+     * of a rules file.
+     *
+     * @param directoryOrFilePath The directory or file path.
+     * @param rulesFilePath       The rules file path.
+     * @param options             The scan options.
+     * @throws FileNotFoundException    if the specified path does not exist or
+     *                                  directory does not contain ODT file.
+     * @throws InvalidFileException     if the specified is not ODT file.
+     * @throws InvalidArgumentException if a rule is malformed.
+     * @throws IOException              if the rules file cannot be read.
+     */
+    public static void rewriteBlocks(String directoryOrFilePath, String rulesFilePath, ScanOptions options)
+            throws FileNotFoundException, InvalidFileException, InvalidArgumentException, IOException {
+        rewriteBlocks(directoryOrFilePath, rulesFilePath, options, ImportBlockCache.disabled());
+    }
+
+    /**
+     * Rewrites blocks in .odt files within the specified directory with the rules
+     * of a rules file, skipping unchanged files whose cached import blocks no
+     * rule rewrites.
+     *
+     * @param directoryOrFilePath The directory or file path.
+     * @param rulesFilePath       The rules file path.
+     * @param options             The scan options.
+     * @param cache               The import blocks of files read earlier.
+     * @throws FileNotFoundException    if the specified path does not exist or
+     *                                  directory does not contain ODT file.
+     * @throws InvalidFileException     if the specified is not ODT file.
+     * @throws InvalidArgumentException if a rule is malformed.
+     * @throws IOException              if the rules file cannot be read.
+     */
+    public static void rewriteBlocks(String directoryOrFilePath, String rulesFilePath, ScanOptions options,
+            ImportBlockCache cache)
+            throws FileNotFoundException, InvalidFileException, InvalidArgumentException, IOException {
+        RewriteRuleSet rules = RewriteRuleSet.parse(Paths.get(rulesFilePath));
+        LOGGER.log(Level.INFO, "Loaded {0} rewrite rules", rules.getRules().size());
+        rewriteBlocks(directoryOrFilePath, rules, options, cache);
+    }
+
+    /**
+     * Rewrites blocks in .odt files within the specified directory.
+     *
+     * @param directoryOrFilePath The directory or file path.
+     * @param rules               The rewrite rules.
+     * @param options             The scan options.
+     * @throws FileNotFoundException if the specified path does not exist or
+     *                               directory does not contain ODT file.
+     * @throws InvalidFileException  if the specified is not ODT file.
+     */
+    public static void rewriteBlocks(String directoryOrFilePath, RewriteRuleSet rules, ScanOptions options)
+            throws FileNotFoundException, InvalidFileException {
+        rewriteBlocks(directoryOrFilePath, rules, options, ImportBlockCache.disabled());
+    }
+
+    /**
+     * Rewrites blocks in .odt files within the specified directory, skipping
+     * unchanged files whose cached import blocks no rule rewrites. Rewritten files
+     * are dropped from the cache.
+     *
+     * @param directoryOrFilePath The directory or file path.
+     * @param rules               The rewrite rules.
+     * @param options             The scan options.
+     * @param cache               The import blocks of files read earlier.
+     * @throws FileNotFoundException if the specified path does not exist or
+     *                               directory does not contain ODT file.
+     * @throws InvalidFileException  if the specified is not ODT file.
+     */
+    public static void rewriteBlocks(String directoryOrFilePath, RewriteRuleSet rules, ScanOptions options,
+            ImportBlockCache cache) throws FileNotFoundException, InvalidFileException {
         // Create a File object for the specified directory or file path
         File directoryOrFile = new File(directoryOrFilePath);
 
@@ -454,48 +1012,202 @@ public class FileUtil {
                     String.format("The specified file %s is not ODT file.", directoryOrFilePath));
         }
 
-        // Get the list of ODT file paths in the specified directory or file
-        List<Path> odtFilesPaths = listOdtFiles(directoryOrFilePath);
+        // Pass the ODT files to the replacement as the walk finds them, replacing in
+        // parallel in adaptive mode and skipping files completed by an interrupted run.
+        // The walk is sorted: each directory is listed in full before its first file is
+        // replaced, so a file renamed into place by the replacement is never listed twice
+        int[] odtFileCount = { 0 };
+        RunSummary summary = new RunSummary("Replace");
+        Path startPath = directoryOrFile.toPath();
+        OdtParts parts = OdtParts.of(options);
+        ResourceLimits limits = ResourceLimits.of(options);
+        WalkFilter filter = WalkFilter.of(options);
+        Checkpoint checkpoint = openCheckpoint(options,
+                startPath.toAbsolutePath().normalize().resolveSibling(
+                        DirectoryWalker.getName(startPath.toAbsolutePath().normalize()) + Checkpoint.FILE_EXTENSION),
+                file -> Checkpoint.forRewrite(file, startPath, rules, options));
+        TemplateLockManager locks = TemplateLockManager.of(options);
+        Consumer<Path> replaceTask = odtFilePath -> {
+            // A file read by an earlier command of the batch is only opened for writing
+            // if one of its import blocks is rewritten
+            Optional<ImportBlockCache.Entry> cached = cache.get(odtFilePath, parts);
+            if (cached.isPresent() && !rules.rewritesAny(cached.get().getImportBlocks())) {
+                summary.increment(RunSummary.UNCHANGED);
+                checkpoint.record(relativePath(startPath, odtFilePath));
+                return;
+            }
+            boolean processed = replaceBlocksInFile(odtFilePath, rules, parts, limits, options.isStreaming(),
+                    locks, summary);
+            cache.invalidate(odtFilePath);
+            if (processed) {
+                checkpoint.record(relativePath(startPath, odtFilePath));
+            }
+        };
+        try {
+            if (options.isAdaptive()) {
+                try (AdaptiveExecutor executor = new AdaptiveExecutor(options.getMaxConcurrency())) {
+                    walkOdtFiles(startPath, true, filter, odtFilePath -> {
+                        odtFileCount[0]++;
+                        if (checkpoint.isCompleted(relativePath(startPath, odtFilePath))) {
+                            summary.increment(RunSummary.SKIPPED);
+                        } else {
+                            executor.execute(() -> replaceTask.accept(odtFilePath));
+                        }
+                    });
+                }
+            } else {
+                walkOdtFiles(startPath, true, filter, odtFilePath -> {
+                    odtFileCount[0]++;
+                    if (checkpoint.isCompleted(relativePath(startPath, odtFilePath))) {
+                        summary.increment(RunSummary.SKIPPED);
+                    } else {
+                        replaceTask.accept(odtFilePath);
+                    }
+                });
+            }
+        } finally {
+            closeCheckpoint(checkpoint);
+        }
 
-        // Check if the list of ODT files is empty
-        if (odtFilesPaths.isEmpty()) {
+        // Check if the walk found no ODT files
+        if (odtFileCount[0] == 0) {
             throw new FileNotFoundException(
                     String.format("The specified path %s does not contains ODT files.", directoryOrFilePath));
         }
 
-        // Iterate through the list of ODT file paths
-        for (Path odtFilePath : odtFilesPaths) {
-            try {
-                // Create an OdtFile object for the current file path
-                OdtFile odtFile = new OdtFile(odtFilePath.toString());
-                // Replace the import blocks in the OdtFile
-                odtFile.replaceImportBlocks(blockToReplace, newBlock);
-            } catch (ProviderNotFoundException e) {
-                // Log an error message if the provider is not found for the file
-                LOGGER.log(Level.SEVERE,
-                        String.format(
-                                "Provider not found for file: %s. It might not be a valid ODT file. Error message: %s",
-                                odtFilePath.toString(), e.getMessage()));
-            } catch (AccessDeniedException | SecurityException e) {
-                // Log an error message if access is denied for the file
-                LOGGER.log(Level.SEVERE,
-                        String.format(
-                                "Access denied for file: %s. Error message: %s",
-                                odtFilePath.toString(), e.getMessage()));
-            } catch (IOException e) {
-                // Log an error message if an I/O exception occurs for the file
-                LOGGER.log(Level.SEVERE,
-                        String.format(
-                                "IOException for file: %s. Error message: %s",
-                                odtFilePath.toString(), e.getMessage()));
-            } catch (Exception e) {
-                // Log a general error message if an exception occurs while processing the file
-                LOGGER.log(Level.SEVERE,
-                        String.format(
-                                "Error processing file: %s. Error message: %s",
-                                odtFilePath.toString(), e.getMessage()));
+        // One summary line instead of a line per file, skipped files were completed by
+        // an earlier run
+        summary.log(LOGGER);
+
+        // Every file has been processed, a later run starts from scratch
+        deleteCheckpoint(checkpoint);
+    }
+
+    /**
+     * Opens the checkpoint of a run with the resume option, or a disabled
+     * checkpoint otherwise. A checkpoint that cannot be opened is logged and the
+     * run continues without it.
+     *
+     * @param options     The scan options.
+     * @param defaultFile The checkpoint file used unless the options name one.
+     * @param opener      The opener of the checkpoint file.
+     * @return The checkpoint.
+     * @throws InvalidFileException if the checkpoint file belongs to another run.
+     */
+    private static Checkpoint openCheckpoint(ScanOptions options, Path defaultFile, CheckpointOpener opener)
+            throws InvalidFileException {
+        if (!options.isResume()) {
+            return Checkpoint.disabled();
+        }
+        Path file = options.getCheckpointPath() != null ? Paths.get(options.getCheckpointPath()) : defaultFile;
+        try {
+            return opener.open(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, String.format("Failed to open checkpoint %s, continuing without it. %s", file,
+                    e.getMessage()));
+            return Checkpoint.disabled();
+        }
+    }
+
+    private static void closeCheckpoint(Checkpoint checkpoint) {
+        try {
+            checkpoint.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to write checkpoint: {0}", e.getMessage());
+        }
+    }
+
+    private static void deleteCheckpoint(Checkpoint checkpoint) {
+        try {
+            checkpoint.complete();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete checkpoint: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the path relative to the start path with {@code /} as the separator,
+     * the same on every platform.
+     *
+     * @param start The start path.
+     * @param path  The path below the start path.
+     * @return The relative path, empty for the start path itself.
+     */
+    public static String relativePath(Path start, Path path) {
+        StringBuilder relativePath = new StringBuilder();
+        for (Path name : start.relativize(path)) {
+            if (relativePath.length() > 0) {
+                relativePath.append('/');
+            }
+            relativePath.append(name);
+        }
+        return relativePath.toString();
+    }
+
+    /**
+     * Replaces blocks in a single .odt file while holding its locks, logging any
+     * failure.
+     *
+     * @param odtFilePath The ODT file path.
+     * @param rules       The rewrite rules.
+     * @param parts       The XML parts to rewrite.
+     * @param limits      The limits on reading each part.
+     * @param streaming   true to rewrite the XML parts as a stream.
+     * @param locks       The locks of the templates.
+     * @param summary     The summary that counts the outcome of the file.
+     * @return true if the file was processed, false if it failed or was skipped
+     *         because it was locked.
+     */
+    private static boolean replaceBlocksInFile(Path odtFilePath, RewriteRuleSet rules, OdtParts parts,
+            ResourceLimits limits, boolean streaming, TemplateLockManager locks, RunSummary summary) {
+        try {
+            // Replace the import blocks in the file, or in a working copy of it when
+            // templates are locked across processes
+            TemplateLockManager.Outcome outcome = locks.rewrite(odtFilePath,
+                    file -> new OdtFile(file.toString(), parts, limits).replaceImportBlocks(rules, streaming));
+            if (outcome == TemplateLockManager.Outcome.LOCKED) {
+                // Not recorded in the checkpoint, a resumed run tries the file again
+                LOGGER.log(Level.WARNING, "Skipped locked file: {0}", odtFilePath);
+                summary.increment(RunSummary.LOCKED);
+                return false;
             }
+            summary.increment(outcome == TemplateLockManager.Outcome.REWRITTEN ? RunSummary.REPLACED
+                    : RunSummary.UNCHANGED);
+            return true;
+        } catch (FileLockedException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.log(Level.SEVERE, "Interrupted while waiting for the lock of file: {0}", odtFilePath);
+        } catch (ProviderNotFoundException e) {
+            // Log an error message if the provider is not found for the file
+            LOGGER.log(Level.SEVERE,
+                    "Provider not found for file: {0}. It might not be a valid ODT file. Error message: {1}",
+                    new Object[] { odtFilePath, e.getMessage() });
+        } catch (AccessDeniedException | SecurityException e) {
+            // Log an error message if access is denied for the file
+            LOGGER.log(Level.SEVERE, "Access denied for file: {0}. Error message: {1}",
+                    new Object[] { odtFilePath, e.getMessage() });
+        } catch (IOException e) {
+            // Log an error message if an I/O exception occurs for the file
+            LOGGER.log(Level.SEVERE, "IOException for file: {0}. Error message: {1}",
+                    new Object[] { odtFilePath, e.getMessage() });
+        } catch (Exception e) {
+            // Log a general error message if an exception occurs while processing the file
+            LOGGER.log(Level.SEVERE, "Error processing file: {0}. Error message: {1}",
+                    new Object[] { odtFilePath, e.getMessage() });
         }
+        AdaptiveExecutor.reportFailure();
+        summary.increment(RunSummary.FAILED);
+        return false;
+    }
+
+    /**
+     * Opens a checkpoint file.
+     */
+    @FunctionalInterface
+    private interface CheckpointOpener {
+        Checkpoint open(Path file) throws IOException, InvalidFileException;
     }
 
 }
@@ -0,0 +1,161 @@
+package com.example.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.odt.OdtParts;
+
+/**
+ * Import blocks of the ODT files read earlier in the same process, so the
+ * commands of a batch parse each template once. An entry is only used while
+ * the file keeps the size and modification time it had when it was read, and
+ * only for the same part selection. Commands that rewrite a file drop its
+ * entry. Failed reads are not kept, they may succeed when retried.
+ *
+ * Instances are safe for concurrent use.
+ */
+public class ImportBlockCache {
+
+    private static final ImportBlockCache DISABLED = new ImportBlockCache(false);
+
+    private final boolean enabled;
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     */
+    public ImportBlockCache() {
+        this(true);
+    }
+
+    private ImportBlockCache(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Gets a cache that keeps nothing, for single commands.
+     *
+     * @return The cache.
+     */
+    public static ImportBlockCache disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Gets the result of an earlier read of the file.
+     *
+     * @param file  The ODT file.
+     * @param attrs The current attributes of the file.
+     * @param parts The XML parts the caller reads.
+     * @return The entry, or an empty Optional if the file was not read with the
+     *         same parts or has changed since.
+     */
+    public Optional<Entry> get(Path file, BasicFileAttributes attrs, OdtParts parts) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Entry entry = entries.get(key(file));
+        if (entry == null || !entry.matches(attrs, parts)) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry);
+    }
+
+    /**
+     * Gets the result of an earlier read of the file, reading its attributes.
+     *
+     * @param file  The ODT file.
+     * @param parts The XML parts the caller reads.
+     * @return The entry, or an empty Optional if the file was not read with the
+     *         same parts, has changed since or cannot be read.
+     */
+    public Optional<Entry> get(Path file, OdtParts parts) {
+        if (!enabled || entries.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return get(file, Files.readAttributes(file, BasicFileAttributes.class), parts);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Keeps the result of reading the file.
+     *
+     * @param file         The ODT file.
+     * @param attrs        The attributes of the file before it was read.
+     * @param parts        The XML parts that were read.
+     * @param importBlocks The import blocks of the file, or null if it has none.
+     */
+    public void put(Path file, BasicFileAttributes attrs, OdtParts parts, List<String> importBlocks) {
+        if (enabled) {
+            entries.put(key(file), new Entry(attrs.size(), attrs.lastModifiedTime(), parts,
+                    importBlocks == null ? null : List.copyOf(importBlocks)));
+        }
+    }
+
+    /**
+     * Drops the entry of a file that has been rewritten.
+     *
+     * @param file The ODT file.
+     */
+    public void invalidate(Path file) {
+        if (enabled) {
+            entries.remove(key(file));
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private static Path key(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    /**
+     * The result of one read of an ODT file.
+     */
+    public static final class Entry {
+        private final long size;
+        private final FileTime lastModifiedTime;
+        private final OdtParts parts;
+        private final List<String> importBlocks;
+
+        private Entry(long size, FileTime lastModifiedTime, OdtParts parts, List<String> importBlocks) {
+            this.size = size;
+            this.lastModifiedTime = lastModifiedTime;
+            this.parts = parts;
+            this.importBlocks = importBlocks;
+        }
+
+        private boolean matches(BasicFileAttributes attrs, OdtParts parts) {
+            return size == attrs.size() && lastModifiedTime.equals(attrs.lastModifiedTime())
+                    && this.parts.equals(parts);
+        }
+
+        /**
+         * @return The import blocks, or null if the file has none.
+         */
+        public List<String> getImportBlocks() {
+            return importBlocks;
+        }
+    }
+}
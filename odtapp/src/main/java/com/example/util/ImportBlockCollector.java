@@ -0,0 +1,103 @@
+package com.example.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.example.concurrent.AdaptiveExecutor;
+import com.example.logging.RunSummary;
+import com.example.odt.OdtFile;
+import com.example.odt.OdtParts;
+import com.example.odt.ResourceLimits;
+import com.example.stats.BlockSink;
+
+/**
+ * Feeds the import blocks of the ODT files found by a directory walk into a
+ * {@link BlockSink} as each file is read. No tree of the scan is built.
+ */
+class ImportBlockCollector implements DirectoryWalker.Visitor {
+
+    private static final Logger LOGGER = Logger.getLogger(ImportBlockCollector.class.getName());
+
+    private final Path start;
+    private final Executor fileExecutor;
+    private final OdtParts parts;
+    private final ResourceLimits limits;
+    private final RunSummary summary;
+    private final ImportBlockCache cache;
+    private final BlockSink sink;
+
+    /**
+     * @param start   The start path of the walk.
+     * @param context The settings and shared state of the scan. Its checkpoint,
+     *                shard and deduplicator are not used.
+     * @param sink    The sink to add each file to.
+     */
+    ImportBlockCollector(Path start, ScanContext context, BlockSink sink) {
+        this.start = start;
+        this.fileExecutor = context.getFileExecutor();
+        this.parts = context.getParts();
+        this.limits = context.getLimits();
+        this.summary = context.getSummary();
+        this.cache = context.getCache();
+        this.sink = sink;
+    }
+
+    @Override
+    public void visitFile(Path file, BasicFileAttributes attrs) {
+        if (!FileUtil.isOdtFile(file.toString())) {
+            return;
+        }
+        String relativePath = relativePath(file);
+
+        // Take the result of a file an earlier command of the batch has read
+        Optional<ImportBlockCache.Entry> cached = cache.get(file, attrs, parts);
+        if (cached.isPresent()) {
+            sink.addTemplate(relativePath, cached.get().getImportBlocks());
+            summary.increment(RunSummary.CACHED);
+            return;
+        }
+
+        fileExecutor.execute(() -> {
+            try {
+                List<String> importBlocks = new OdtFile(file.toString(), parts, limits).getImportBlocks().orElse(null);
+                sink.addTemplate(relativePath, importBlocks);
+                cache.put(file, attrs, parts, importBlocks);
+                summary.increment(RunSummary.READ);
+            } catch (Exception e) {
+                AdaptiveExecutor.reportFailure();
+                sink.addError(relativePath);
+                LOGGER.log(Level.SEVERE, "Failed to process file {0}. {1}", new Object[] { file, e.getMessage() });
+                summary.increment(RunSummary.FAILED);
+            }
+        });
+    }
+
+    @Override
+    public void visitFileFailed(Path path, IOException exception) {
+        sink.addError(relativePath(path));
+        LOGGER.log(Level.SEVERE, "Failed to read {0}. {1}", new Object[] { path, exception.getMessage() });
+        summary.increment(RunSummary.FAILED);
+    }
+
+    @Override
+    public void visitDirectoryFailed(Path directory, IOException exception) {
+        sink.addDirectoryError(FileUtil.relativePath(start, directory));
+        LOGGER.log(Level.SEVERE, "Failed to list contents of directory {0}. {1}",
+                new Object[] { directory, exception.getMessage() });
+    }
+
+    /**
+     * Gets the path relative to the start, or the file name when a single file
+     * is scanned.
+     */
+    private String relativePath(Path file) {
+        String relativePath = FileUtil.relativePath(start, file);
+        return relativePath.isEmpty() ? DirectoryWalker.getName(file) : relativePath;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.example.concurrent.AdaptiveExecutor;
+import com.example.logging.RunSummary;
+import com.example.model.VerifyReport;
+import com.example.odt.OdtVerifier;
+
+/**
+ * Verifies the ODT files found by a directory walk on the file executor and
+ * collects the failures into a {@link VerifyReport}. Only failures are kept,
+ * so memory use depends on the number of broken files, not on the size of the
+ * tree.
+ */
+class IntegrityCollector implements DirectoryWalker.Visitor {
+
+    private static final Logger LOGGER = Logger.getLogger(IntegrityCollector.class.getName());
+
+    private final Path start;
+    private final Executor fileExecutor;
+    private final RunSummary summary;
+    private final List<VerifyReport.Failure> failures = new ArrayList<>();
+    private long templates;
+    private long invalidTemplates;
+
+    /**
+     * @param start   The start path of the walk.
+     * @param context The settings and shared state of the scan. Only its file
+     *                executor and summary are used.
+     */
+    IntegrityCollector(Path start, ScanContext context) {
+        this.start = start;
+        this.fileExecutor = context.getFileExecutor();
+        this.summary = context.getSummary();
+    }
+
+    @Override
+    public void visitFile(Path file, BasicFileAttributes attrs) {
+        if (!FileUtil.isOdtFile(file.toString())) {
+            return;
+        }
+        String relativePath = relativePath(file);
+        fileExecutor.execute(() -> {
+            List<VerifyReport.Problem> problems = OdtVerifier.verify(file);
+            addTemplate(relativePath, problems);
+            if (problems.isEmpty()) {
+                summary.increment(RunSummary.READ);
+            } else {
+                AdaptiveExecutor.reportFailure();
+                LOGGER.log(Level.SEVERE, "Integrity check failed for {0}. {1}",
+                        new Object[] { file, problems.get(0).getMessage() });
+                summary.increment(RunSummary.FAILED);
+            }
+        });
+    }
+
+    @Override
+    public void visitFileFailed(Path path, IOException exception) {
+        addTemplate(relativePath(path), List.of(new VerifyReport.Problem(OdtVerifier.READ_CHECK, null,
+                String.format("Failed to read %s. It is not readable.", path))));
+        LOGGER.log(Level.SEVERE, "Failed to read {0}. {1}", new Object[] { path, exception.getMessage() });
+        summary.increment(RunSummary.FAILED);
+    }
+
+    @Override
+    public void visitDirectoryFailed(Path directory, IOException exception) {
+        // Not a template, but everything below it is unchecked
+        addFailure(new VerifyReport.Failure(FileUtil.relativePath(start, directory),
+                List.of(new VerifyReport.Problem(OdtVerifier.READ_CHECK, null, String
+                        .format("Failed to list contents of directory %s. Access denied.", directory)))));
+        LOGGER.log(Level.SEVERE, "Failed to list contents of directory {0}. {1}",
+                new Object[] { directory, exception.getMessage() });
+    }
+
+    /**
+     * Creates the report. Only complete once every task submitted to the file
+     * executor has finished.
+     *
+     * @return The report, with the failures sorted by path.
+     */
+    synchronized VerifyReport toReport() {
+        List<VerifyReport.Failure> sorted = new ArrayList<>(failures);
+        sorted.sort(Comparator.comparing(VerifyReport.Failure::getPath));
+        VerifyReport report = new VerifyReport();
+        report.setTemplates(templates);
+        report.setValidTemplates(templates - invalidTemplates);
+        report.setInvalidTemplates(invalidTemplates);
+        report.setFailures(sorted);
+        return report;
+    }
+
+    private synchronized void addTemplate(String relativePath, List<VerifyReport.Problem> problems) {
+        templates++;
+        if (!problems.isEmpty()) {
+            invalidTemplates++;
+            failures.add(new VerifyReport.Failure(relativePath, problems));
+        }
+    }
+
+    private synchronized void addFailure(VerifyReport.Failure failure) {
+        failures.add(failure);
+    }
+
+    /**
+     * Gets the path relative to the start, or the file name when a single file
+     * is checked.
+     */
+    private String relativePath(Path file) {
+        String relativePath = FileUtil.relativePath(start, file);
+        return relativePath.isEmpty() ? DirectoryWalker.getName(file) : relativePath;
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.util;
+
+import com.example.concurrent.Deadline;
+import com.example.logging.RunSummary;
+import com.example.model.JsonItem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds the nested JsonItem tree from a directory walk. Non-ODT files and
+ * directories without ODT files are left out unless they carry an error.
+ *
+ * With a deadline, checkpoint and cache hits are taken during the walk and the
+ * files to read are queued until the walk ends, then read shallowest first by
+ * {@link #finishReads()}. Directories not entered and files not read by the
+ * deadline are marked incomplete.
+ */
+class JsonItemTreeBuilder implements DirectoryWalker.Visitor {
+
+    private static final Logger LOGGER = Logger.getLogger(JsonItemTreeBuilder.class.getName());
+
+    private final Executor fileExecutor;
+    private final Path start;
+    private final Shard shard;
+    private final RunSummary summary;
+    private final FileResultResolver resolver;
+    private final Deadline deadline;
+    private final Deque<JsonItem> directories = new ArrayDeque<>();
+    private JsonItem root;
+
+    // Reads queued until the walk ends, with a deadline only
+    private final List<PendingRead> pendingReads = new ArrayList<>();
+
+    // Guards the results of file items, once sealed late results are dropped
+    private final Object resultLock = new Object();
+    private final Set<JsonItem> unfinished = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean sealed;
+
+    /**
+     * @param start   The start path of the walk.
+     * @param context The settings and shared state of the scan. Newly read
+     *                files are recorded in its checkpoint and cache.
+     */
+    JsonItemTreeBuilder(Path start, ScanContext context) {
+        this.fileExecutor = context.getFileExecutor();
+        this.start = start;
+        this.shard = context.getShard();
+        this.summary = context.getSummary();
+        this.resolver = new FileResultResolver(context);
+        this.deadline = context.getDeadline();
+    }
+
+    JsonItem getRoot() {
+        return root;
+    }
+
+    @Override
+    public boolean preVisitDirectory(Path directory, BasicFileAttributes attrs) {
+        JsonItem item = new JsonItem(DirectoryWalker.getName(directory), JsonItem.DIRECTORY_TYPE);
+        item.setChildren(new LinkedList<>());
+        directories.push(item);
+        if (deadline.isExpired()) {
+            // Out of time, the directory is reported without its entries
+            item.setIncomplete(true);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void visitFile(Path file, BasicFileAttributes attrs) {
+        // Only ODT files of this shard are part of the tree
+        if (!FileUtil.isOdtFile(file.toString()) || !shard.contains(start, file)) {
+            return;
+        }
+        JsonItem item = new JsonItem(DirectoryWalker.getName(file), JsonItem.FILE_TYPE);
+        add(item);
+
+        // Take the result of a file from the checkpoint or the cache
+        String relativePath = FileUtil.relativePath(start, file);
+        Optional<FileResultResolver.Result> completed = resolver.takeCompleted(file, attrs, relativePath);
+        if (completed.isPresent()) {
+            completed.get().applyTo(item);
+            return;
+        }
+
+        // Read the file on the executor, the item is filled in when the task completes.
+        // Copies take the result of the first file with the same key once it is complete
+        Runnable task = () -> resolver
+                .readOnce(file, attrs, () -> CompletableFuture.completedFuture(resolver.read(file)),
+                        () -> resolver.read(file))
+                .thenAccept(result -> complete(item, result,
+                        () -> resolver.record(file, attrs, relativePath, result)));
+        if (!deadline.isSet()) {
+            fileExecutor.execute(task);
+            return;
+        }
+
+        // Queue the read, the item stays incomplete unless it is read by the deadline
+        item.setIncomplete(true);
+        synchronized (resultLock) {
+            unfinished.add(item);
+        }
+        pendingReads.add(new PendingRead(relativePath.split("/").length, pendingReads.size(), () -> {
+            if (!deadline.isExpired()) {
+                task.run();
+            }
+        }));
+    }
+
+    /**
+     * Reads the files queued by a walk with a deadline, shallowest first and in
+     * walk order within a depth, and waits for them until the deadline. Files
+     * not read by then stay incomplete and their reads are left to finish in the
+     * background without changing the tree. Does nothing without a deadline.
+     *
+     * The reads are handed to the file executor on a daemon thread, so neither
+     * a read run on the submitting thread nor an executor waiting for a free
+     * slot keeps this method past the deadline.
+     */
+    void finishReads() {
+        if (!deadline.isSet()) {
+            return;
+        }
+        pendingReads.sort(Comparator.comparingInt(PendingRead::getDepth).thenComparingInt(PendingRead::getOrder));
+        List<PendingRead> reads = new ArrayList<>(pendingReads);
+        pendingReads.clear();
+        Thread submitter = new Thread(() -> {
+            try {
+                for (PendingRead read : reads) {
+                    if (deadline.isExpired()) {
+                        break;
+                    }
+                    fileExecutor.execute(read.getTask());
+                }
+            } catch (RejectedExecutionException e) {
+                // The executor was shut down at the deadline, the remaining files stay incomplete
+            }
+        }, "odt-budget-reads");
+        submitter.setDaemon(true);
+        submitter.start();
+
+        synchronized (resultLock) {
+            while (!unfinished.isEmpty() && !deadline.isExpired()) {
+                try {
+                    resultLock.wait(Math.max(1, deadline.remainingMillis()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            sealed = true;
+            for (int i = 0; i < unfinished.size(); i++) {
+                summary.increment(RunSummary.INCOMPLETE);
+            }
+            if (!unfinished.isEmpty()) {
+                LOGGER.log(Level.WARNING, "Time budget exceeded, {0} files were not read", unfinished.size());
+            }
+        }
+    }
+
+    @Override
+    public void visitFileFailed(Path path, IOException exception) {
+        // Entries that cannot be read are kept with an error, by the shard that owns
+        // the path
+        if (!shard.contains(start, path)) {
+            return;
+        }
+        JsonItem item = new JsonItem(DirectoryWalker.getName(path), JsonItem.FILE_TYPE);
+        item.setError(String.format("Failed to read %s. It is not readable.", path));
+        LOGGER.log(Level.SEVERE, "Failed to read {0}. {1}", new Object[] { path, exception.getMessage() });
+        summary.increment(RunSummary.FAILED);
+        add(item);
+    }
+
+    @Override
+    public void visitDirectoryFailed(Path directory, IOException exception) {
+        if (!shard.contains(start, directory)) {
+            return;
+        }
+        JsonItem item = directories.peek();
+        item.setError(String.format("Failed to list contents of directory %s. Access denied.", directory));
+        LOGGER.log(Level.SEVERE, "Failed to list contents of directory {0}. {1}",
+                new Object[] { directory, exception.getMessage() });
+    }
+
+    @Override
+    public void postVisitDirectory(Path directory) {
+        JsonItem item = directories.pop();
+        if (item.getChildren().isEmpty()) {
+            item.setChildren(null);
+        }
+
+        // Keep the directory if it contains ODT files or an error, or was not entered in time
+        if (item.getChildren() != null || item.getError() != null || item.getIncomplete() != null) {
+            add(item);
+        }
+    }
+
+    private void add(JsonItem item) {
+        if (directories.isEmpty()) {
+            root = item;
+        } else {
+            directories.peek().getChildren().add(item);
+        }
+    }
+
+    /**
+     * Fills in a file item from the result of its read and records the outcome,
+     * unless the deadline has sealed the tree.
+     *
+     * @param item   The item in the tree.
+     * @param result The result.
+     * @param record Counts, caches and checkpoints the result.
+     */
+    private void complete(JsonItem item, FileResultResolver.Result result, Runnable record) {
+        synchronized (resultLock) {
+            if (sealed) {
+                return;
+            }
+            result.applyTo(item);
+            item.setIncomplete(null);
+            record.run();
+            unfinished.remove(item);
+            resultLock.notifyAll();
+        }
+    }
+
+    /**
+     * A file read queued until the walk ends.
+     */
+    private static final class PendingRead {
+        private final int depth;
+        private final int order;
+        private final Runnable task;
+
+        private PendingRead(int depth, int order, Runnable task) {
+            this.depth = depth;
+            this.order = order;
+            this.task = task;
+        }
+
+        int getDepth() {
+            return depth;
+        }
+
+        int getOrder() {
+            return order;
+        }
+
+        Runnable getTask() {
+            return task;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.example.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.exception.InvalidFileException;
+import com.example.model.JsonItem;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Merges partial JSON reports of a sharded scan into the report a single scan
+ * would have produced.
+ *
+ * Every report lists the entries of each directory in name order, so the
+ * children of a directory are merged like sorted runs: the reports are read
+ * side by side and only the items on the current path are open at any time.
+ * Directories with the same name are merged recursively, a file may only
+ * appear in one report. A directory is incomplete if it is incomplete in any
+ * report.
+ */
+class JsonReportMerger {
+
+    private static final String NAME_FIELD = "name";
+    private static final String TYPE_FIELD = "type";
+    private static final String IMPORT_BLOCKS_FIELD = "importBlocks";
+    private static final String EXTRACTED_FIELD = "extracted";
+    private static final String CHILDREN_FIELD = "children";
+    private static final String ERROR_FIELD = "error";
+    private static final String INCOMPLETE_FIELD = "incomplete";
+    private static final String SEPARATOR = "/";
+
+    private JsonReportMerger() {
+    }
+
+    /**
+     * Merges the reports into the writer.
+     *
+     * @param reports The readers of the partial reports. A report holding
+     *                {@code null} comes from a shard without ODT files.
+     * @param writer  The writer of the merged report.
+     * @return false if every report is empty and nothing was written.
+     * @throws IOException          if a report cannot be read or written.
+     * @throws InvalidFileException if a report is not a partial report of the
+     *                              same scan.
+     */
+    static boolean merge(List<JsonReader> reports, JsonWriter writer) throws IOException, InvalidFileException {
+        try {
+            List<Header> roots = new ArrayList<>();
+            for (JsonReader report : reports) {
+                if (report.peek() == JsonToken.NULL) {
+                    report.nextNull();
+                } else {
+                    roots.add(readHeader(report));
+                }
+            }
+            if (roots.isEmpty()) {
+                return false;
+            }
+            for (Header root : roots) {
+                if (!root.name.equals(roots.get(0).name) || !root.type.equals(roots.get(0).type)) {
+                    throw new InvalidFileException(String.format(
+                            "The partial reports have different roots: %s and %s", roots.get(0).name, root.name));
+                }
+            }
+            mergeItems(roots, "", writer);
+            for (JsonReader report : reports) {
+                if (report.peek() != JsonToken.END_DOCUMENT) {
+                    throw new InvalidFileException("Unexpected content after the root item " + report.getPath());
+                }
+            }
+            return true;
+        } catch (IllegalStateException | NumberFormatException e) {
+            // Thrown by the reader when a report does not have the JsonItem layout
+            throw new InvalidFileException("Invalid partial report. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Merges items with the same name. Their headers have been read already.
+     */
+    private static void mergeItems(List<Header> items, String parentPath, JsonWriter writer)
+            throws IOException, InvalidFileException {
+        Header first = items.get(0);
+        String path = parentPath.isEmpty() ? first.name : parentPath + SEPARATOR + first.name;
+        for (Header item : items) {
+            if (!item.type.equals(first.type)) {
+                throw new InvalidFileException(String.format("%s is a %s in one partial report and a %s in another",
+                        path, first.type, item.type));
+            }
+        }
+
+        writer.beginObject();
+        writer.name(NAME_FIELD).value(first.name);
+        writer.name(TYPE_FIELD).value(first.type);
+        if (JsonItem.FILE_TYPE.equals(first.type)) {
+            if (items.size() > 1) {
+                throw new InvalidFileException(
+                        String.format("File %s appears in more than one partial report", path));
+            }
+            copyFileFields(first.reader, writer);
+        } else {
+            mergeDirectoryFields(items, path, writer);
+        }
+        writer.endObject();
+    }
+
+    private static void copyFileFields(JsonReader reader, JsonWriter writer) throws IOException {
+        List<String> importBlocks = null;
+        JsonElement extracted = null;
+        String error = null;
+        boolean incomplete = false;
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (IMPORT_BLOCKS_FIELD.equals(field)) {
+                importBlocks = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    importBlocks.add(reader.nextString());
+                }
+                reader.endArray();
+            } else if (EXTRACTED_FIELD.equals(field)) {
+                extracted = JsonParser.parseReader(reader);
+            } else if (ERROR_FIELD.equals(field)) {
+                error = reader.nextString();
+            } else if (INCOMPLETE_FIELD.equals(field)) {
+                incomplete = reader.nextBoolean();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // Same field order as the JsonItem written by Gson
+        if (importBlocks != null) {
+            writer.name(IMPORT_BLOCKS_FIELD).beginArray();
+            for (String importBlock : importBlocks) {
+                writer.value(importBlock);
+            }
+            writer.endArray();
+        }
+        if (extracted != null) {
+            writer.name(EXTRACTED_FIELD);
+            GsonHolder.GSON.toJson(extracted, writer);
+        }
+        if (error != null) {
+            writer.name(ERROR_FIELD).value(error);
+        }
+        if (incomplete) {
+            writer.name(INCOMPLETE_FIELD).value(true);
+        }
+    }
+
+    private static void mergeDirectoryFields(List<Header> directories, String path, JsonWriter writer)
+            throws IOException, InvalidFileException {
+        String error = null;
+        boolean incomplete = false;
+
+        // Move every reader into its children array, fields before it are read as
+        // they come
+        List<Header> heads = new ArrayList<>();
+        for (Header directory : directories) {
+            JsonReader reader = directory.reader;
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (CHILDREN_FIELD.equals(field)) {
+                    reader.beginArray();
+                    if (reader.hasNext()) {
+                        heads.add(readHeader(reader));
+                    } else {
+                        reader.endArray();
+                    }
+                    break;
+                } else if (ERROR_FIELD.equals(field)) {
+                    error = firstNonNull(error, reader.nextString());
+                } else if (INCOMPLETE_FIELD.equals(field)) {
+                    incomplete |= reader.nextBoolean();
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+
+        if (!heads.isEmpty()) {
+            writer.name(CHILDREN_FIELD).beginArray();
+            mergeChildren(heads, path, writer);
+            writer.endArray();
+        }
+
+        // Read the fields after the children array
+        for (Header directory : directories) {
+            JsonReader reader = directory.reader;
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (ERROR_FIELD.equals(field)) {
+                    error = firstNonNull(error, reader.nextString());
+                } else if (INCOMPLETE_FIELD.equals(field)) {
+                    incomplete |= reader.nextBoolean();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        if (error != null) {
+            writer.name(ERROR_FIELD).value(error);
+        }
+        if (incomplete) {
+            writer.name(INCOMPLETE_FIELD).value(true);
+        }
+    }
+
+    /**
+     * Merges the children arrays the readers are in, each positioned after the
+     * header of its next child.
+     */
+    private static void mergeChildren(List<Header> heads, String path, JsonWriter writer)
+            throws IOException, InvalidFileException {
+        while (!heads.isEmpty()) {
+            // Take the smallest name, the same order as the sorted directory walk
+            String name = heads.get(0).name;
+            for (Header head : heads) {
+                if (head.name.compareTo(name) < 0) {
+                    name = head.name;
+                }
+            }
+            List<Header> group = new ArrayList<>();
+            for (Header head : heads) {
+                if (head.name.equals(name)) {
+                    group.add(head);
+                }
+            }
+            mergeItems(group, path, writer);
+
+            // Advance the readers whose item was merged
+            for (Header head : group) {
+                int position = heads.indexOf(head);
+                JsonReader reader = head.reader;
+                if (reader.hasNext()) {
+                    Header next = readHeader(reader);
+                    if (next.name.compareTo(name) <= 0) {
+                        throw new InvalidFileException(String.format(
+                                "The children of %s are not in name order at %s", path, reader.getPath()));
+                    }
+                    heads.set(position, next);
+                } else {
+                    reader.endArray();
+                    heads.remove(position);
+                }
+            }
+        }
+    }
+
+    /**
+     * Begins the next item and reads its name and type, which Gson writes first.
+     */
+    private static Header readHeader(JsonReader reader) throws IOException, InvalidFileException {
+        reader.beginObject();
+        String name = readStringField(reader, NAME_FIELD);
+        String type = readStringField(reader, TYPE_FIELD);
+        return new Header(reader, name, type);
+    }
+
+    private static String readStringField(JsonReader reader, String expected)
+            throws IOException, InvalidFileException {
+        if (!reader.hasNext() || !expected.equals(reader.nextName())) {
+            throw new InvalidFileException(
+                    String.format("Invalid partial report. Expected field '%s' at %s", expected, reader.getPath()));
+        }
+        return reader.nextString();
+    }
+
+    private static String firstNonNull(String current, String value) {
+        return current != null ? current : value;
+    }
+
+    /**
+     * Creates the Gson instance that writes extracted values on first use.
+     */
+    private static final class GsonHolder {
+        private static final Gson GSON = new Gson();
+    }
+
+    /**
+     * An item whose name and type have been read and whose remaining fields are
+     * next in the reader.
+     */
+    private static final class Header {
+        private final JsonReader reader;
+        private final String name;
+        private final String type;
+
+        private Header(JsonReader reader, String name, String type) {
+            this.reader = reader;
+            this.name = name;
+            this.type = type;
+        }
+    }
+}
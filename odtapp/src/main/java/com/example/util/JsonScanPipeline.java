@@ -0,0 +1,469 @@
+package com.example.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.example.logging.RunSummary;
+import com.example.model.JsonItem;
+import com.example.odt.AsyncPartReader;
+import com.example.odt.OdtFile;
+import com.example.odt.OdtParts;
+import com.example.odt.ResourceLimits;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Runs a json scan as a pipeline of stages connected by bounded queues, so
+ * disk reads and XML parsing overlap instead of alternating:
+ *
+ * <ol>
+ * <li>The walker, on the calling thread, lists directories in name order and
+ * hands each ODT file to the readers.</li>
+ * <li>Readers, on an I/O pool, read and inflate the XML parts of a file.</li>
+ * <li>Parsers, on a CPU pool sized to the cores, parse the parts into import
+ * blocks.</li>
+ * <li>The writer, on its own thread, serializes the items in walk order as
+ * soon as every item before them is complete, and drops them.</li>
+ * </ol>
+ *
+ * A full queue blocks the stage that feeds it, so a walker or reader that
+ * outruns the parsers waits instead of buffering. At most
+ * {@value #WINDOW_SIZE} walk events, plus the items in the stage queues, are
+ * held at any time, and the output is the same as the tree json scan writes.
+ *
+ * With read-ahead, files are read with {@link AsyncPartReader} instead of on
+ * the reader pool: the walker, or a reader once the file is fingerprinted for
+ * deduplication, starts the asynchronous reads of up to a given
+ * number of files, whose compressed parts are held until a parser inflates and
+ * parses them. The bytes held are bounded by a budget, charged with the size
+ * of each file in flight. A file the asynchronous reader cannot handle is read
+ * again the usual way on the parser thread.
+ *
+ * Checkpoint, cache and deduplication are resolved by a
+ * {@link FileResultResolver}, as in the tree scan.
+ */
+class JsonScanPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger(JsonScanPipeline.class.getName());
+
+    private static final int STAGE_QUEUE_CAPACITY = 64;
+    private static final int WINDOW_SIZE = 1024;
+    private static final long KILOBYTE = 1024;
+    private static final String NAME_FIELD = "name";
+    private static final String TYPE_FIELD = "type";
+    private static final String CHILDREN_FIELD = "children";
+    private static final String ERROR_FIELD = "error";
+
+    private final Path start;
+    private final OdtParts parts;
+    private final Shard shard;
+    private final WalkFilter walkFilter;
+    private final RunSummary summary;
+    private final ContentDeduplicator deduplicator;
+    private final FileResultResolver resolver;
+    private final ResourceLimits limits;
+    private final int readerThreads;
+    private final int parserThreads;
+    // Null without read-ahead
+    private final Semaphore filesInFlight;
+    private final Semaphore readAheadKilobytes;
+    private final int readAheadBudget;
+
+    private final BlockingQueue<Event> events = new ArrayBlockingQueue<>(WINDOW_SIZE);
+    private ThreadPoolExecutor readers;
+    private ThreadPoolExecutor parsers;
+
+    /**
+     * @param start          The start path of the walk.
+     * @param context        The settings and shared state of the scan. Its file
+     *                       executor is not used, the pipeline has its own pools.
+     * @param readerThreads  The number of threads that read files.
+     * @param parserThreads  The number of threads that parse XML parts.
+     * @param readAhead      The number of files read ahead asynchronously, 0 to
+     *                       read files on the reader pool.
+     * @param readAheadBytes The budget of bytes held by files read ahead.
+     */
+    JsonScanPipeline(Path start, ScanContext context, int readerThreads, int parserThreads, int readAhead,
+            long readAheadBytes) {
+        this.start = start;
+        this.parts = context.getParts();
+        this.shard = context.getShard();
+        this.walkFilter = context.getWalkFilter();
+        this.summary = context.getSummary();
+        this.deduplicator = context.getDeduplicator();
+        this.resolver = new FileResultResolver(context);
+        this.limits = context.getLimits();
+        this.readerThreads = readerThreads;
+        this.parserThreads = parserThreads;
+        this.readAheadBudget = (int) Math.max(1, Math.min(Integer.MAX_VALUE, readAheadBytes / KILOBYTE));
+        this.filesInFlight = readAhead > 0 ? new Semaphore(readAhead) : null;
+        this.readAheadKilobytes = readAhead > 0 ? new Semaphore(readAheadBudget) : null;
+    }
+
+    /**
+     * Scans the start path and writes the JsonItem tree.
+     *
+     * @param writer The writer of the report.
+     * @return false if the scan found no ODT file and nothing was written.
+     * @throws IOException if the report cannot be written.
+     */
+    boolean run(JsonWriter writer) throws IOException {
+        readers = newStagePool("odt-reader", readerThreads);
+        parsers = newStagePool("odt-parser", parserThreads);
+        Serializer serializer = new Serializer(writer);
+        Thread writerThread = new Thread(serializer, "odt-json-writer");
+        writerThread.start();
+        try {
+            new DirectoryWalker(true, walkFilter).walk(start, new Walker());
+            put(Event.END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writerThread.interrupt();
+            throw new IOException("Interrupted while scanning " + start, e);
+        } finally {
+            readers.shutdownNow();
+            parsers.shutdownNow();
+        }
+        if (serializer.failure != null) {
+            throw serializer.failure;
+        }
+        return serializer.written;
+    }
+
+    /**
+     * Creates a pool whose queue blocks the submitting thread when it is full.
+     */
+    private static ThreadPoolExecutor newStagePool(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(STAGE_QUEUE_CAPACITY), task -> {
+                    Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, (task, pool) -> {
+                    try {
+                        pool.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                });
+    }
+
+    private void put(Event event) throws InterruptedException {
+        events.put(event);
+    }
+
+    /**
+     * Starts reading a file on the reader pool, and fills in and records the
+     * item once the result is complete.
+     */
+    private CompletableFuture<JsonItem> read(Path file, BasicFileAttributes attrs, JsonItem item,
+            String relativePath) {
+        CompletableFuture<FileResultResolver.Result> result;
+        if (filesInFlight != null && !deduplicator.isEnabled()) {
+            // Without keys there is nothing to do on a reader thread before the read
+            result = readAhead(file, attrs);
+        } else {
+            // A copy whose original failed is read on the thread that completed the
+            // original, so no pool waits for another
+            result = CompletableFuture.supplyAsync(
+                    () -> resolver.readOnce(file, attrs, () -> readParts(file, attrs), () -> resolver.read(file)),
+                    readers).thenCompose(readOnce -> readOnce);
+        }
+        return result.thenApply(completed -> {
+            resolver.record(file, attrs, relativePath, completed);
+            completed.applyTo(item);
+            return item;
+        });
+    }
+
+    /**
+     * Reads the parts of a file on the current reader thread and hands them to
+     * the parser pool.
+     */
+    private CompletableFuture<FileResultResolver.Result> readParts(Path file, BasicFileAttributes attrs) {
+        if (filesInFlight != null) {
+            return readAhead(file, attrs);
+        }
+        List<byte[]> partContents;
+        try {
+            partContents = new OdtFile(file.toString(), parts, limits).readParts();
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(resolver.failed(file, e));
+        }
+        return CompletableFuture.supplyAsync(() -> resolver.parse(file, partContents), parsers);
+    }
+
+    /**
+     * Starts the asynchronous read of a file once it fits into the read-ahead
+     * limits, and hands the compressed parts to the parser pool.
+     */
+    private CompletableFuture<FileResultResolver.Result> readAhead(Path file, BasicFileAttributes attrs) {
+        // A file larger than the budget is read alone
+        int kilobytes = (int) Math.min(readAheadBudget, (attrs.size() + KILOBYTE - 1) / KILOBYTE);
+        try {
+            filesInFlight.acquire();
+            try {
+                readAheadKilobytes.acquire(kilobytes);
+            } catch (InterruptedException e) {
+                filesInFlight.release();
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            // The walk stops, the item is never written
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        return AsyncPartReader.read(file, parts, limits)
+                .handleAsync((prefetched, e) -> parsePrefetched(file, prefetched, e), parsers)
+                .whenComplete((result, e) -> {
+                    readAheadKilobytes.release(kilobytes);
+                    filesInFlight.release();
+                });
+    }
+
+    private FileResultResolver.Result parsePrefetched(Path file, AsyncPartReader.Prefetched prefetched,
+            Throwable readFailure) {
+        if (readFailure == null) {
+            try {
+                return resolver.parse(file, prefetched.inflate());
+            } catch (IOException e) {
+                readFailure = e;
+            }
+        }
+        // Read the file again the usual way, which also handles unusual archives and
+        // reports errors like the other scans
+        LOGGER.log(Level.FINE, "Reading {0} without read-ahead. {1}", new Object[] { file, readFailure });
+        return resolver.read(file);
+    }
+
+    /**
+     * The first stage: turns the walk into events in walk order, starting the
+     * read of each ODT file as it is found.
+     */
+    private final class Walker implements DirectoryWalker.Visitor {
+
+        @Override
+        public boolean preVisitDirectory(Path directory, BasicFileAttributes attrs) {
+            return enqueue(new Event(Event.Kind.DIRECTORY_START, DirectoryWalker.getName(directory), null));
+        }
+
+        @Override
+        public void visitFile(Path file, BasicFileAttributes attrs) {
+            // Only ODT files of this shard are part of the tree
+            if (!FileUtil.isOdtFile(file.toString()) || !shard.contains(start, file)) {
+                return;
+            }
+            JsonItem item = new JsonItem(DirectoryWalker.getName(file), JsonItem.FILE_TYPE);
+            String relativePath = FileUtil.relativePath(start, file);
+            CompletableFuture<JsonItem> result;
+
+            // Take the result of a file from the checkpoint or the cache
+            Optional<FileResultResolver.Result> completed = resolver.takeCompleted(file, attrs, relativePath);
+            if (completed.isPresent()) {
+                completed.get().applyTo(item);
+                result = CompletableFuture.completedFuture(item);
+            } else {
+                result = read(file, attrs, item, relativePath);
+            }
+            enqueue(new Event(Event.Kind.FILE, null, result));
+        }
+
+        @Override
+        public void visitFileFailed(Path path, IOException exception) {
+            // Entries that cannot be read are kept with an error, by the shard that owns
+            // the path
+            if (!shard.contains(start, path)) {
+                return;
+            }
+            JsonItem item = new JsonItem(DirectoryWalker.getName(path), JsonItem.FILE_TYPE);
+            item.setError(String.format("Failed to read %s. It is not readable.", path));
+            LOGGER.log(Level.SEVERE, "Failed to read {0}. {1}", new Object[] { path, exception.getMessage() });
+            summary.increment(RunSummary.FAILED);
+            enqueue(new Event(Event.Kind.FILE, null, CompletableFuture.completedFuture(item)));
+        }
+
+        @Override
+        public void visitDirectoryFailed(Path directory, IOException exception) {
+            if (!shard.contains(start, directory)) {
+                return;
+            }
+            LOGGER.log(Level.SEVERE, "Failed to list contents of directory {0}. {1}",
+                    new Object[] { directory, exception.getMessage() });
+            enqueue(new Event(Event.Kind.DIRECTORY_ERROR,
+                    String.format("Failed to list contents of directory %s. Access denied.", directory), null));
+        }
+
+        @Override
+        public void postVisitDirectory(Path directory) {
+            enqueue(new Event(Event.Kind.DIRECTORY_END, null, null));
+        }
+
+        /**
+         * Puts an event into the window, waiting while the writer is behind.
+         */
+        private boolean enqueue(Event event) {
+            try {
+                put(event);
+                return true;
+            } catch (InterruptedException e) {
+                // Stop descending, run() reports the interruption
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The last stage: writes the items in walk order. A directory is only
+     * written once it has a child or an error, so directories without ODT files
+     * are left out like in the tree scan, and its fields follow the JsonItem
+     * field order.
+     */
+    private final class Serializer implements Runnable {
+        private final JsonWriter writer;
+        private final Gson gson = new Gson();
+        private final Deque<PendingDirectory> directories = new ArrayDeque<>();
+        private boolean written;
+        private IOException failure;
+
+        private Serializer(JsonWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Event event = events.take();
+                    if (event == Event.END) {
+                        return;
+                    }
+                    if (failure == null) {
+                        try {
+                            write(event);
+                        } catch (IOException e) {
+                            // Keep draining the window so the walker does not block
+                            failure = e;
+                        } catch (CompletionException e) {
+                            // A file whose read or parse threw, the report cannot be completed
+                            failure = new IOException(String.format("Failed to scan %s. %s", start,
+                                    e.getCause()), e.getCause());
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void write(Event event) throws IOException {
+            switch (event.kind) {
+                case DIRECTORY_START:
+                    directories.push(new PendingDirectory(event.text));
+                    break;
+                case FILE:
+                    JsonItem item = event.result.join();
+                    openDirectories();
+                    gson.toJson(item, JsonItem.class, writer);
+                    written = true;
+                    break;
+                case DIRECTORY_ERROR:
+                    directories.peek().error = event.text;
+                    break;
+                case DIRECTORY_END:
+                    PendingDirectory directory = directories.pop();
+                    if (directory.opened) {
+                        writer.endArray();
+                    } else if (directory.error != null) {
+                        openDirectories();
+                        writeHeader(directory.name);
+                    } else {
+                        return;
+                    }
+                    if (directory.error != null) {
+                        writer.name(ERROR_FIELD).value(directory.error);
+                    }
+                    writer.endObject();
+                    written = true;
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected event " + event.kind);
+            }
+        }
+
+        /**
+         * Writes the headers of the pending directories that are not written yet,
+         * outermost first, up to their children arrays.
+         */
+        private void openDirectories() throws IOException {
+            PendingDirectory[] pending = directories.toArray(new PendingDirectory[0]);
+            for (int i = pending.length - 1; i >= 0; i--) {
+                if (!pending[i].opened) {
+                    writeHeader(pending[i].name);
+                    writer.name(CHILDREN_FIELD).beginArray();
+                    pending[i].opened = true;
+                }
+            }
+        }
+
+        private void writeHeader(String name) throws IOException {
+            writer.beginObject();
+            writer.name(NAME_FIELD).value(name);
+            writer.name(TYPE_FIELD).value(JsonItem.DIRECTORY_TYPE);
+        }
+    }
+
+    /**
+     * A directory whose end has not been reached.
+     */
+    private static final class PendingDirectory {
+        private final String name;
+        private boolean opened;
+        private String error;
+
+        private PendingDirectory(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * A step of the walk, in walk order.
+     */
+    private static final class Event {
+        private static final Event END = new Event(Kind.END, null, null);
+
+        private enum Kind {
+            DIRECTORY_START, FILE, DIRECTORY_ERROR, DIRECTORY_END, END
+        }
+
+        private final Kind kind;
+        // The directory name or error
+        private final String text;
+        private final CompletableFuture<JsonItem> result;
+
+        private Event(Kind kind, String text, CompletableFuture<JsonItem> result) {
+            this.kind = kind;
+            this.text = text;
+            this.result = result;
+        }
+    }
+}
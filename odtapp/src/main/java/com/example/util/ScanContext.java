@@ -0,0 +1,53 @@
+package com.example.util;
+
+import java.util.concurrent.Executor;
+
+import com.example.concurrent.Deadline;
+import com.example.logging.RunSummary;
+import com.example.odt.ExtractionRuleSet;
+import com.example.odt.OdtParts;
+import com.example.odt.ResourceLimits;
+
+import lombok.Data;
+
+/**
+ * Settings and shared state of one json scan. The defaults read every ODT file
+ * on the calling thread with nothing cached, checkpointed or deduplicated.
+ */
+@Data
+public class ScanContext {
+
+    // The executor that reads ODT files. The import blocks of file items are
+    // only complete once every task submitted to it has finished.
+    private Executor fileExecutor = Runnable::run;
+
+    // The XML parts to read from each ODT file
+    private OdtParts parts = OdtParts.DEFAULT;
+
+    // The shard of the files and errors to keep
+    private Shard shard = Shard.ALL;
+
+    // The entries the walk enters and visits
+    private WalkFilter walkFilter = WalkFilter.DEFAULT;
+
+    // The files read by an earlier run, newly read files are recorded in it
+    private Checkpoint checkpoint = Checkpoint.disabled();
+
+    // Counts the outcome of each file
+    private RunSummary summary = new RunSummary("Json scan");
+
+    // The import blocks of files read by earlier commands
+    private ImportBlockCache cache = ImportBlockCache.disabled();
+
+    // Reads identical copies of a template once
+    private ContentDeduplicator deduplicator = ContentDeduplicator.disabled();
+
+    // Values extracted from each file next to the import blocks
+    private ExtractionRuleSet extractionRules = ExtractionRuleSet.NONE;
+
+    // What reading and parsing one file may cost before it fails
+    private ResourceLimits limits = ResourceLimits.DEFAULT;
+
+    // Files not read by the deadline are reported as incomplete
+    private Deadline deadline = Deadline.none();
+}
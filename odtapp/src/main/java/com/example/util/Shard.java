@@ -0,0 +1,76 @@
+package com.example.util;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import com.example.model.ScanOptions;
+
+/**
+ * One of N partitions of the ODT files below a start path. Files are assigned
+ * by a CRC32 of their path relative to the start path, with {@code /} as the
+ * separator, so every process and every machine that scans the same tree
+ * agrees on the assignment.
+ */
+public class Shard {
+
+    public static final Shard ALL = new Shard(0, 1);
+
+    private final int index;
+    private final int count;
+
+    /**
+     * @param index The zero-based index of the shard.
+     * @param count The number of shards.
+     */
+    public Shard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException(String.format("Invalid shard %d of %d", index, count));
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * Gets the shard configured in the scan options.
+     *
+     * @param options The scan options.
+     * @return The shard.
+     */
+    public static Shard of(ScanOptions options) {
+        return options.getShardCount() == 1 ? ALL : new Shard(options.getShardIndex(), options.getShardCount());
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Checks if the path belongs to this shard.
+     *
+     * @param start The start path of the scan.
+     * @param path  The path below the start path.
+     * @return true if the path belongs to this shard.
+     */
+    public boolean contains(Path start, Path path) {
+        return count == 1 || indexOf(FileUtil.relativePath(start, path), count) == index;
+    }
+
+    /**
+     * Gets the shard of a relative path.
+     *
+     * @param relativePath The path relative to the start path, with {@code /} as
+     *                     the separator.
+     * @param count        The number of shards.
+     * @return The zero-based shard index.
+     */
+    public static int indexOf(String relativePath, int count) {
+        CRC32 crc = new CRC32();
+        crc.update(relativePath.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % count);
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import com.example.model.ScanOptions;
+
+/**
+ * Decides during a walk which entries are visited, so excluded directories are
+ * never listed and excluded files never opened.
+ *
+ * Patterns are globs: {@code *} and {@code ?} match within one path segment,
+ * {@code **} across segments, {@code [abc]} and {@code {a,b}} as usual. A
+ * pattern without {@code /} matches the name of an entry at any depth, a
+ * pattern with {@code /} matches its path relative to the start directory,
+ * with {@code /} as the separator on every platform.
+ *
+ * <ul>
+ * <li>Include patterns select the files to visit. Without any, every file is
+ * visited. Directories are always entered, they may hold included files.</li>
+ * <li>Exclude patterns skip matching files and whole directories.</li>
+ * <li>The maximum depth counts the entries of the start directory as depth
+ * 1.</li>
+ * <li>A {@value #IGNORE_FILE_NAME} file in any directory lists exclude
+ * patterns for that directory's subtree, one per line, relative to that
+ * directory. Empty lines and lines starting with {@code #} are ignored, a
+ * trailing {@code /} limits a pattern to directories. Negated patterns are not
+ * supported and are skipped.</li>
+ * <li>Symbolic links below the start are skipped unless links are followed.
+ * Followed links to a directory that is already being walked are skipped as
+ * well, so a link cycle ends the walk of that branch.</li>
+ * </ul>
+ */
+public class WalkFilter {
+
+    private static final Logger LOGGER = Logger.getLogger(WalkFilter.class.getName());
+
+    public static final String IGNORE_FILE_NAME = ".odtappignore";
+    public static final WalkFilter DEFAULT = new WalkFilter(List.of(), List.of(), Integer.MAX_VALUE, true, false);
+
+    private static final String SEPARATOR = "/";
+    private static final String COMMENT_PREFIX = "#";
+    private static final String NEGATION_PREFIX = "!";
+    private static final String ANCHOR_PREFIX = "./";
+
+    private final List<Glob> includes;
+    private final List<Glob> excludes;
+    private final int maxDepth;
+    private final boolean ignoreFiles;
+    private final boolean followLinks;
+
+    /**
+     * @param includes    The include patterns, empty to include every file.
+     * @param excludes    The exclude patterns.
+     * @param maxDepth    The maximum depth of visited entries.
+     * @param ignoreFiles true to read {@value #IGNORE_FILE_NAME} files.
+     * @throws IllegalArgumentException if a pattern is malformed or the depth is
+     *                                  not positive.
+     */
+    public WalkFilter(List<String> includes, List<String> excludes, int maxDepth, boolean ignoreFiles) {
+        this(includes, excludes, maxDepth, ignoreFiles, false);
+    }
+
+    /**
+     * @param includes    The include patterns, empty to include every file.
+     * @param excludes    The exclude patterns.
+     * @param maxDepth    The maximum depth of visited entries.
+     * @param ignoreFiles true to read {@value #IGNORE_FILE_NAME} files.
+     * @param followLinks true to follow symbolic links.
+     * @throws IllegalArgumentException if a pattern is malformed or the depth is
+     *                                  not positive.
+     */
+    public WalkFilter(List<String> includes, List<String> excludes, int maxDepth, boolean ignoreFiles,
+            boolean followLinks) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("The maximum depth must be positive: " + maxDepth);
+        }
+        this.includes = compile(includes);
+        this.excludes = compile(excludes);
+        this.maxDepth = maxDepth;
+        this.ignoreFiles = ignoreFiles;
+        this.followLinks = followLinks;
+    }
+
+    /**
+     * Gets the filter configured in the scan options.
+     *
+     * @param options The scan options.
+     * @return The filter.
+     */
+    public static WalkFilter of(ScanOptions options) {
+        if (options.getIncludes().isEmpty() && options.getExcludes().isEmpty()
+                && options.getMaxDepth() == Integer.MAX_VALUE && !options.isFollowLinks()) {
+            return DEFAULT;
+        }
+        return new WalkFilter(options.getIncludes(), options.getExcludes(), options.getMaxDepth(), true,
+                options.isFollowLinks());
+    }
+
+    public boolean isFollowLinks() {
+        return followLinks;
+    }
+
+    /**
+     * Checks if a pattern is a valid glob.
+     *
+     * @param pattern The pattern.
+     * @return true if the pattern can be compiled.
+     */
+    public static boolean isValidPattern(String pattern) {
+        try {
+            new Glob(pattern, false);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the scope of the start directory, with its ignore file.
+     *
+     * @param start The start directory.
+     * @return The scope.
+     */
+    Scope startScope(Path start) {
+        return enter(null, start, "");
+    }
+
+    /**
+     * Gets the scope of a directory the walk enters, adding the patterns of its
+     * ignore file to the scope of its parent.
+     *
+     * @param parent       The scope of the parent directory, or null for the
+     *                     start directory.
+     * @param directory    The directory.
+     * @param relativePath The path of the directory relative to the start.
+     * @return The scope.
+     */
+    Scope enter(Scope parent, Path directory, String relativePath) {
+        if (!ignoreFiles) {
+            return parent;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(directory.resolve(IGNORE_FILE_NAME), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return parent;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read {0}. {1}",
+                    new Object[] { directory.resolve(IGNORE_FILE_NAME), e.getMessage() });
+            return parent;
+        }
+        List<Glob> patterns = new ArrayList<>();
+        for (String line : lines) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith(COMMENT_PREFIX)) {
+                continue;
+            }
+            if (pattern.startsWith(NEGATION_PREFIX)) {
+                LOGGER.log(Level.WARNING, "Negated pattern {0} in {1} is not supported",
+                        new Object[] { pattern, directory.resolve(IGNORE_FILE_NAME) });
+                continue;
+            }
+            boolean directoriesOnly = pattern.endsWith(SEPARATOR);
+            if (directoriesOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            if (pattern.startsWith(SEPARATOR)) {
+                // Anchored to the directory of the ignore file, like a pattern with a
+                // separator in the middle
+                pattern = ANCHOR_PREFIX + pattern.substring(1);
+            }
+            try {
+                patterns.add(new Glob(pattern, directoriesOnly));
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(Level.WARNING, "Invalid pattern {0} in {1}",
+                        new Object[] { line, directory.resolve(IGNORE_FILE_NAME) });
+            }
+        }
+        return patterns.isEmpty() ? parent : new Scope(parent, relativePath, patterns);
+    }
+
+    /**
+     * Checks if the walk enters a directory.
+     *
+     * @param scope        The scope of the parent directory.
+     * @param relativePath The path of the directory relative to the start.
+     * @param name         The name of the directory.
+     * @param depth        The depth of the directory.
+     * @return true to list the directory.
+     */
+    boolean acceptsDirectory(Scope scope, String relativePath, String name, int depth) {
+        // The entries of the directory would be one level deeper
+        return depth < maxDepth && !matchesAny(excludes, relativePath, name, true)
+                && !isIgnored(scope, relativePath, name, true);
+    }
+
+    /**
+     * Checks if the walk visits a file.
+     *
+     * @param scope        The scope of the parent directory.
+     * @param relativePath The path of the file relative to the start.
+     * @param name         The name of the file.
+     * @param depth        The depth of the file.
+     * @return true to visit the file.
+     */
+    boolean acceptsFile(Scope scope, String relativePath, String name, int depth) {
+        return depth <= maxDepth && (includes.isEmpty() || matchesAny(includes, relativePath, name, false))
+                && !matchesAny(excludes, relativePath, name, false) && !isIgnored(scope, relativePath, name, false);
+    }
+
+    private static boolean isIgnored(Scope scope, String relativePath, String name, boolean directory) {
+        for (Scope current = scope; current != null; current = current.parent) {
+            String pathInScope = current.relativePath.isEmpty() ? relativePath
+                    : relativePath.substring(current.relativePath.length() + 1);
+            if (matchesAny(current.patterns, pathInScope, name, directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAny(List<Glob> globs, String relativePath, String name, boolean directory) {
+        for (Glob glob : globs) {
+            if (glob.matches(relativePath, name, directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Glob> compile(List<String> patterns) {
+        List<Glob> globs = new ArrayList<>();
+        for (String pattern : patterns) {
+            globs.add(new Glob(pattern, false));
+        }
+        return List.copyOf(globs);
+    }
+
+    /**
+     * The ignore patterns in effect below a directory.
+     */
+    static final class Scope {
+        private final Scope parent;
+        private final String relativePath;
+        private final List<Glob> patterns;
+
+        private Scope(Scope parent, String relativePath, List<Glob> patterns) {
+            this.parent = parent;
+            this.relativePath = relativePath;
+            this.patterns = patterns;
+        }
+    }
+
+    /**
+     * A glob pattern compiled to a regular expression.
+     */
+    private static final class Glob {
+        private final Pattern pattern;
+        private final boolean nameOnly;
+        private final boolean directoriesOnly;
+
+        private Glob(String glob, boolean directoriesOnly) {
+            String normalized = glob.startsWith(ANCHOR_PREFIX) ? glob.substring(ANCHOR_PREFIX.length()) : glob;
+            if (normalized.isEmpty()) {
+                throw new IllegalArgumentException("Empty pattern");
+            }
+            this.nameOnly = !glob.contains(SEPARATOR);
+            this.directoriesOnly = directoriesOnly;
+            this.pattern = Pattern.compile(toRegex(normalized));
+        }
+
+        private boolean matches(String relativePath, String name, boolean directory) {
+            if (directoriesOnly && !directory) {
+                return false;
+            }
+            return pattern.matcher(nameOnly ? name : relativePath).matches();
+        }
+
+        private static String toRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            boolean inGroup = false;
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                switch (c) {
+                    case '*':
+                        if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                            i++;
+                            if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                                // "**/" also matches no directory at all
+                                i++;
+                                regex.append("(?:.*/)?");
+                            } else {
+                                regex.append(".*");
+                            }
+                        } else {
+                            regex.append("[^/]*");
+                        }
+                        break;
+                    case '?':
+                        regex.append("[^/]");
+                        break;
+                    case '[':
+                        int end = glob.indexOf(']', i + 2);
+                        if (end < 0) {
+                            throw new IllegalArgumentException("Unclosed character class in " + glob);
+                        }
+                        String characters = glob.substring(i + 1, end);
+                        if (characters.startsWith("!")) {
+                            characters = "^" + characters.substring(1);
+                        }
+                        regex.append('[').append(characters.replace("\\", "\\\\")).append(']');
+                        i = end;
+                        break;
+                    case '{':
+                        if (inGroup) {
+                            throw new IllegalArgumentException("Nested group in " + glob);
+                        }
+                        inGroup = true;
+                        regex.append("(?:");
+                        break;
+                    case '}':
+                        if (!inGroup) {
+                            throw new IllegalArgumentException("Unopened group in " + glob);
+                        }
+                        inGroup = false;
+                        regex.append(')');
+                        break;
+                    case ',':
+                        regex.append(inGroup ? "|" : ",");
+                        break;
+                    default:
+                        regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            if (inGroup) {
+                throw new IllegalArgumentException("Unclosed group in " + glob);
+            }
+            return regex.toString();
+        }
+    }
+}
@@ -2,64 +2,502 @@ package com.example.validation;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import com.example.exception.InvalidActionException;
 import com.example.exception.InvalidArgumentException;
+import com.example.model.ScanOptions;
+import com.example.stats.BlockQuery;
 import com.example.util.FileUtil;
+import com.example.util.WalkFilter;
 
 public class ArgumentValidator {
 
     public static final String JSON_ACTION = "json";
     public static final String REPLACE_ACTION = "replace";
+    public static final String REWRITE_ACTION = "rewrite";
+    public static final String MERGE_ACTION = "merge";
+    public static final String BATCH_ACTION = "batch";
+    public static final String STATS_ACTION = "stats";
+    public static final String INDEX_ACTION = "index";
+    public static final String QUERY_ACTION = "query";
+    public static final String VERIFY_ACTION = "verify";
+    public static final String OPTION_PREFIX = "--";
+    public static final String ADAPTIVE_OPTION = "--adaptive";
+    public static final String MAX_CONCURRENCY_OPTION = "--max-concurrency";
+    public static final String PARTS_OPTION = "--parts";
+    public static final String EMBEDDED_OBJECTS_OPTION = "--embedded-objects";
+    public static final String STREAMING_OPTION = "--streaming";
+    public static final String SHARD_OPTION = "--shard";
+    public static final String RESUME_OPTION = "--resume";
+    public static final String CHECKPOINT_OPTION = "--checkpoint";
+    public static final String LOG_FORMAT_OPTION = "--log-format";
+    public static final String OVERWRITE_OPTION = "--overwrite";
+    public static final String DEDUP_OPTION = "--dedup";
+    public static final String INCLUDE_OPTION = "--include";
+    public static final String EXCLUDE_OPTION = "--exclude";
+    public static final String MAX_DEPTH_OPTION = "--max-depth";
+    public static final String FOLLOW_LINKS_OPTION = "--follow-links";
+    public static final String TOP_OPTION = "--top";
+    public static final String PIPELINE_OPTION = "--pipeline";
+    public static final String IO_THREADS_OPTION = "--io-threads";
+    public static final String READ_AHEAD_OPTION = "--read-ahead";
+    public static final String READ_AHEAD_MEMORY_OPTION = "--read-ahead-memory";
+    public static final String EXTRACT_OPTION = "--extract";
+    public static final String TIME_BUDGET_OPTION = "--time-budget";
+    public static final String MAX_ENTRY_SIZE_OPTION = "--max-entry-size";
+    public static final String MAX_COMPRESSION_RATIO_OPTION = "--max-compression-ratio";
+    public static final String FILE_TIMEOUT_OPTION = "--file-timeout";
+    public static final String SKIP_FIELDLESS_PARTS_OPTION = "--skip-fieldless-parts";
+    public static final String LOCK_OPTION = "--lock";
+    public static final String ON_LOCKED_OPTION = "--on-locked";
+    public static final String LOCK_RETRIES_OPTION = "--lock-retries";
+    public static final String RETRY_ON_LOCKED = "retry";
+    public static final String SKIP_ON_LOCKED = "skip";
+    public static final String TEXT_LOG_FORMAT = "text";
+    public static final String STRUCTURED_LOG_FORMAT = "structured";
     private static final Pattern IMPORT_BLOCK_PATTERN = Pattern.compile("\\[import\\s[^\\s]+?\\.odt\\]");
+    private static final Pattern PART_NAME_PATTERN = Pattern.compile("[^/\\s][^\\s]*\\.xml");
+    private static final Pattern SHARD_PATTERN = Pattern.compile("(\\d+)/(\\d+)");
+    private static final Set<String> VALUE_OPTIONS = Set.of(MAX_CONCURRENCY_OPTION, PARTS_OPTION, SHARD_OPTION,
+            CHECKPOINT_OPTION, LOG_FORMAT_OPTION, INCLUDE_OPTION, EXCLUDE_OPTION, MAX_DEPTH_OPTION,
+            TOP_OPTION, IO_THREADS_OPTION, READ_AHEAD_OPTION, READ_AHEAD_MEMORY_OPTION, EXTRACT_OPTION,
+            TIME_BUDGET_OPTION, MAX_ENTRY_SIZE_OPTION, MAX_COMPRESSION_RATIO_OPTION, FILE_TIMEOUT_OPTION,
+            ON_LOCKED_OPTION, LOCK_RETRIES_OPTION);
 
     public static void validateArguments(String[] args) throws InvalidActionException, InvalidArgumentException {
-        if (args.length < 3 || args.length > 4) {
+        String[] arguments = getPositionalArguments(args);
+        if (arguments.length == 2 && BATCH_ACTION.equals(arguments[0])) {
+            if (!FileUtil.isValidPath(arguments[1])) {
+                throw new InvalidArgumentException("Invalid job file path provided: " + arguments[1]);
+            }
+            parseOptions(args);
+            return;
+        }
+        validateArgumentCount(arguments);
+        validatePaths(arguments);
+        validateSyntax(args, arguments);
+    }
+
+    /**
+     * Validates a command without looking at the file system: the action, the
+     * number of arguments, the import blocks, the query and the options. A
+     * batch checks every command this way before the first one runs, as an
+     * earlier command may create the paths of a later one.
+     *
+     * @param args The command line arguments.
+     * @throws InvalidActionException   if the action is unknown.
+     * @throws InvalidArgumentException if the command is malformed.
+     */
+    public static void validateCommand(String[] args) throws InvalidActionException, InvalidArgumentException {
+        String[] arguments = getPositionalArguments(args);
+        validateArgumentCount(arguments);
+        validateSyntax(args, arguments);
+    }
+
+    private static void validateArgumentCount(String[] arguments)
+            throws InvalidActionException, InvalidArgumentException {
+        if (arguments.length < 3
+                || (arguments.length > 4 && !MERGE_ACTION.equals(arguments[0]) && !JSON_ACTION.equals(arguments[0]))) {
             throw new InvalidArgumentException(
-                    "Usage: java App <action> <directory/file path> <additional arguments>");
+                    "Usage: java App <action> <directory/file path> <additional arguments> [options]");
         }
 
-        String action = args[0];
+        String action = arguments[0];
 
         switch (action) {
             case JSON_ACTION:
-                if (args.length != 3) {
+            case MERGE_ACTION:
+                break;
+            case STATS_ACTION:
+            case INDEX_ACTION:
+            case VERIFY_ACTION:
+                if (arguments.length != 3) {
+                    throw new InvalidArgumentException(String.format(
+                            "Usage for %s action: java App %s <input directory/file path> <output file path>",
+                            action, action));
+                }
+                break;
+            case QUERY_ACTION:
+                if (arguments.length != 3) {
+                    throw new InvalidArgumentException(
+                            "Usage for query action: java App query <index file path> <query>");
+                }
+                break;
+            case REPLACE_ACTION:
+                if (arguments.length != 4) {
+                    throw new InvalidArgumentException(
+                            "Usage for replace action: java App replace <directory/file path> <block to replace> <new block>");
+                }
+                break;
+            case REWRITE_ACTION:
+                if (arguments.length != 3) {
                     throw new InvalidArgumentException(
-                            "Usage for json action: java App json <input directory/file path> <output file path>");
+                            "Usage for rewrite action: java App rewrite <directory/file path> <rules file path>");
                 }
-                if (!FileUtil.isValidPath(args[1])) {
-                    throw new InvalidArgumentException("Invalid path provided: " + args[1]);
+                break;
+            case BATCH_ACTION:
+                throw new InvalidArgumentException("Usage for batch action: java App batch <job file path>");
+            default:
+                throw new InvalidActionException("Unknown action: " + action);
+        }
+    }
+
+    private static void validatePaths(String[] arguments) throws InvalidArgumentException {
+        switch (arguments[0]) {
+            case JSON_ACTION:
+                // One or more inputs, the output file comes last
+                for (int i = 1; i < arguments.length - 1; i++) {
+                    if (!FileUtil.isValidPath(arguments[i])) {
+                        throw new InvalidArgumentException("Invalid path provided: " + arguments[i]);
+                    }
                 }
-                Path path = Paths.get(args[2]);
+                Path path = Paths.get(arguments[arguments.length - 1]);
                 Path parentPath = path.getParent();
                 if (!FileUtil.isValidPath(parentPath)) {
                     throw new InvalidArgumentException("The directory does not exist: " + parentPath);
                 }
                 break;
+            case STATS_ACTION:
+            case INDEX_ACTION:
+            case VERIFY_ACTION:
+                if (!FileUtil.isValidPath(arguments[1])) {
+                    throw new InvalidArgumentException("Invalid path provided: " + arguments[1]);
+                }
+                Path statsPath = Paths.get(arguments[2]);
+                if (!FileUtil.isValidPath(statsPath.getParent())) {
+                    throw new InvalidArgumentException("The directory does not exist: " + statsPath.getParent());
+                }
+                break;
+            case QUERY_ACTION:
+                if (!FileUtil.isValidPath(arguments[1])) {
+                    throw new InvalidArgumentException("Invalid index file path provided: " + arguments[1]);
+                }
+                break;
             case REPLACE_ACTION:
-                if (args.length != 4) {
-                    throw new InvalidArgumentException(
-                            "Usage for replace action: java App replace <directory/file path> <block to replace> <new block>");
+                if (!FileUtil.isValidPath(arguments[1])) {
+                    throw new InvalidArgumentException("Invalid path provided: " + arguments[1]);
+                }
+                break;
+            case REWRITE_ACTION:
+                if (!FileUtil.isValidPath(arguments[1])) {
+                    throw new InvalidArgumentException("Invalid path provided: " + arguments[1]);
                 }
-                if (!FileUtil.isValidPath(args[1])) {
-                    throw new InvalidArgumentException("Invalid path provided: " + args[1]);
+                if (!FileUtil.isValidPath(arguments[2])) {
+                    throw new InvalidArgumentException("Invalid rules file path provided: " + arguments[2]);
                 }
-                if (!isValidImportBlock(args[2])) {
+                break;
+            case MERGE_ACTION:
+                Path outputPath = Paths.get(arguments[1]);
+                if (!FileUtil.isValidPath(outputPath.getParent())) {
+                    throw new InvalidArgumentException("The directory does not exist: " + outputPath.getParent());
+                }
+                for (int i = 2; i < arguments.length; i++) {
+                    if (!FileUtil.isValidPath(arguments[i])) {
+                        throw new InvalidArgumentException("Invalid partial report path provided: " + arguments[i]);
+                    }
+                }
+                break;
+        }
+    }
+
+    private static void validateSyntax(String[] args, String[] arguments) throws InvalidArgumentException {
+        switch (arguments[0]) {
+            case JSON_ACTION:
+                if (arguments.length > 3 && parseOptions(args).isResume()) {
+                    throw new InvalidArgumentException(
+                            String.format("The %s option takes a single input path.", RESUME_OPTION));
+                }
+                break;
+            case QUERY_ACTION:
+                BlockQuery.parse(arguments[2]);
+                break;
+            case REPLACE_ACTION:
+                if (!isValidImportBlock(arguments[2])) {
                     throw new InvalidArgumentException(String.format(
                             "Invalid format of 'block to replace'. Must match pattern: %s", IMPORT_BLOCK_PATTERN));
                 }
-                if (!isValidImportBlock(args[3])) {
+                if (!isValidImportBlock(arguments[3])) {
                     throw new InvalidArgumentException(String.format(
                             "Invalid format of 'new block'. Must match pattern: %s", IMPORT_BLOCK_PATTERN));
                 }
                 break;
             default:
-                throw new InvalidActionException("Unknown action: " + action);
+                break;
         }
+
+        // Parse the options to reject unknown or malformed ones before any work starts
+        parseOptions(args);
     }
 
     public static boolean isValidImportBlock(String block) {
         return IMPORT_BLOCK_PATTERN.matcher(block).matches();
     }
 
+    /**
+     * Gets the arguments that are not options or option values.
+     *
+     * @param args The command line arguments.
+     * @return The positional arguments in their original order.
+     */
+    public static String[] getPositionalArguments(String[] args) {
+        List<String> arguments = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith(OPTION_PREFIX)) {
+                arguments.add(args[i]);
+            } else if (VALUE_OPTIONS.contains(args[i])) {
+                // The value follows as a separate argument, skip it
+                i++;
+            }
+        }
+        return arguments.toArray(new String[0]);
+    }
+
+    /**
+     * Gets the options and option values, the arguments that
+     * {@link #getPositionalArguments(String[])} leaves out.
+     *
+     * @param args The command line arguments.
+     * @return The options in their original order.
+     */
+    public static String[] getOptionArguments(String[] args) {
+        List<String> options = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith(OPTION_PREFIX)) {
+                options.add(args[i]);
+                if (VALUE_OPTIONS.contains(args[i]) && i + 1 < args.length) {
+                    options.add(args[++i]);
+                }
+            }
+        }
+        return options.toArray(new String[0]);
+    }
+
+    /**
+     * Parses the options from the command line arguments. Options take the form
+     * {@code --name}, {@code --name=value} or {@code --name value}.
+     *
+     * @param args The command line arguments.
+     * @return The parsed options.
+     * @throws InvalidArgumentException if an option is unknown or has an invalid
+     *                                  value.
+     */
+    public static ScanOptions parseOptions(String[] args) throws InvalidArgumentException {
+        ScanOptions options = new ScanOptions();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith(OPTION_PREFIX)) {
+                continue;
+            }
+            String name = args[i];
+            String value = null;
+            int separator = name.indexOf('=');
+            if (separator >= 0) {
+                value = name.substring(separator + 1);
+                name = name.substring(0, separator);
+            } else if (VALUE_OPTIONS.contains(name)) {
+                if (i + 1 >= args.length) {
+                    throw new InvalidArgumentException("Missing value for option: " + name);
+                }
+                value = args[++i];
+            }
+
+            switch (name) {
+                case ADAPTIVE_OPTION:
+                    options.setAdaptive(true);
+                    break;
+                case MAX_CONCURRENCY_OPTION:
+                    options.setMaxConcurrency(parsePositiveInt(name, value));
+                    break;
+                case PARTS_OPTION:
+                    options.setParts(parsePartNames(name, value));
+                    break;
+                case EMBEDDED_OBJECTS_OPTION:
+                    options.setEmbeddedObjects(true);
+                    break;
+                case STREAMING_OPTION:
+                    options.setStreaming(true);
+                    break;
+                case SHARD_OPTION:
+                    parseShard(name, value, options);
+                    break;
+                case RESUME_OPTION:
+                    options.setResume(true);
+                    break;
+                case CHECKPOINT_OPTION:
+                    if (value.isEmpty()) {
+                        throw new InvalidArgumentException("Missing value for option: " + name);
+                    }
+                    options.setCheckpointPath(value);
+                    break;
+                case DEDUP_OPTION:
+                    options.setDedup(true);
+                    break;
+                case SKIP_FIELDLESS_PARTS_OPTION:
+                    options.setSkipFieldlessParts(true);
+                    break;
+                case FOLLOW_LINKS_OPTION:
+                    options.setFollowLinks(true);
+                    break;
+                case OVERWRITE_OPTION:
+                    options.setOverwrite(true);
+                    break;
+                case LOG_FORMAT_OPTION:
+                    options.setStructuredLog(parseLogFormat(name, value));
+                    break;
+                case INCLUDE_OPTION:
+                    // Repeatable, patterns may contain commas inside braces
+                    options.setIncludes(append(options.getIncludes(), parsePattern(name, value)));
+                    break;
+                case EXCLUDE_OPTION:
+                    options.setExcludes(append(options.getExcludes(), parsePattern(name, value)));
+                    break;
+                case MAX_DEPTH_OPTION:
+                    options.setMaxDepth(parsePositiveInt(name, value));
+                    break;
+                case TOP_OPTION:
+                    options.setTop(parsePositiveInt(name, value));
+                    break;
+                case PIPELINE_OPTION:
+                    options.setPipeline(true);
+                    break;
+                case IO_THREADS_OPTION:
+                    options.setIoThreads(parsePositiveInt(name, value));
+                    break;
+                case READ_AHEAD_OPTION:
+                    options.setReadAhead(parsePositiveInt(name, value));
+                    break;
+                case READ_AHEAD_MEMORY_OPTION:
+                    options.setReadAheadMemory(parsePositiveInt(name, value));
+                    break;
+                case EXTRACT_OPTION:
+                    if (!FileUtil.isValidPath(value)) {
+                        throw new InvalidArgumentException("Invalid extraction rules file path provided: " + value);
+                    }
+                    options.setExtractRulesPath(value);
+                    break;
+                case TIME_BUDGET_OPTION:
+                    options.setTimeBudgetMillis(parsePositiveInt(name, value));
+                    break;
+                case MAX_ENTRY_SIZE_OPTION:
+                    options.setMaxEntrySize(parsePositiveInt(name, value));
+                    break;
+                case MAX_COMPRESSION_RATIO_OPTION:
+                    options.setMaxCompressionRatio(parsePositiveInt(name, value));
+                    break;
+                case FILE_TIMEOUT_OPTION:
+                    options.setFileTimeoutMillis(parseNonNegativeInt(name, value));
+                    break;
+                case LOCK_OPTION:
+                    options.setLock(true);
+                    break;
+                case ON_LOCKED_OPTION:
+                    options.setSkipLocked(parseOnLocked(name, value));
+                    break;
+                case LOCK_RETRIES_OPTION:
+                    options.setLockRetries(parseNonNegativeInt(name, value));
+                    break;
+                default:
+                    throw new InvalidArgumentException("Unknown option: " + name);
+            }
+        }
+        return options;
+    }
+
+    private static List<String> parsePartNames(String name, String value) throws InvalidArgumentException {
+        List<String> partNames = new ArrayList<>();
+        for (String partName : value.split(",")) {
+            if (!PART_NAME_PATTERN.matcher(partName.trim()).matches()) {
+                throw new InvalidArgumentException(
+                        String.format("Option %s must be a comma separated list of XML part names: %s", name, value));
+            }
+            partNames.add(partName.trim());
+        }
+        return List.copyOf(partNames);
+    }
+
+    private static void parseShard(String name, String value, ScanOptions options)
+            throws InvalidArgumentException {
+        Matcher matcher = SHARD_PATTERN.matcher(value);
+        if (matcher.matches()) {
+            try {
+                // Shards are numbered from 1 on the command line
+                int index = Integer.parseInt(matcher.group(1));
+                int count = Integer.parseInt(matcher.group(2));
+                if (index >= 1 && index <= count) {
+                    options.setShardIndex(index - 1);
+                    options.setShardCount(count);
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+        }
+        throw new InvalidArgumentException(
+                String.format("Option %s must be i/N with 1 <= i <= N: %s", name, value));
+    }
+
+    private static String parsePattern(String name, String value) throws InvalidArgumentException {
+        if (!WalkFilter.isValidPattern(value)) {
+            throw new InvalidArgumentException(String.format("Option %s must be a glob pattern: %s", name, value));
+        }
+        return value;
+    }
+
+    private static List<String> append(List<String> values, String value) {
+        List<String> appended = new ArrayList<>(values);
+        appended.add(value);
+        return List.copyOf(appended);
+    }
+
+    private static boolean parseLogFormat(String name, String value) throws InvalidArgumentException {
+        if (TEXT_LOG_FORMAT.equals(value)) {
+            return false;
+        }
+        if (STRUCTURED_LOG_FORMAT.equals(value)) {
+            return true;
+        }
+        throw new InvalidArgumentException(String.format("Option %s must be %s or %s: %s", name, TEXT_LOG_FORMAT,
+                STRUCTURED_LOG_FORMAT, value));
+    }
+
+    private static boolean parseOnLocked(String name, String value) throws InvalidArgumentException {
+        if (RETRY_ON_LOCKED.equals(value)) {
+            return false;
+        }
+        if (SKIP_ON_LOCKED.equals(value)) {
+            return true;
+        }
+        throw new InvalidArgumentException(String.format("Option %s must be %s or %s: %s", name, RETRY_ON_LOCKED,
+                SKIP_ON_LOCKED, value));
+    }
+
+    private static int parseNonNegativeInt(String name, String value) throws InvalidArgumentException {
+        try {
+            int number = Integer.parseInt(value);
+            if (number < 0) {
+                throw new InvalidArgumentException(
+                        String.format("Option %s must not be negative: %s", name, value));
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new InvalidArgumentException(String.format("Option %s must be a number: %s", name, value));
+        }
+    }
+
+    private static int parsePositiveInt(String name, String value) throws InvalidArgumentException {
+        try {
+            int number = Integer.parseInt(value);
+            if (number < 1) {
+                throw new InvalidArgumentException(
+                        String.format("Option %s must be a positive number: %s", name, value));
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new InvalidArgumentException(String.format("Option %s must be a number: %s", name, value));
+        }
+    }
+
 }
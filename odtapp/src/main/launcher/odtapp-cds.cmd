@@ -0,0 +1,6 @@
+@echo off
+rem Regenerates the class data sharing archive of odtapp. The archive records the
+rem absolute class path it was created with, so run this after copying the
+rem distribution to another directory.
+set DIST_DIR=%~dp0..
+"%DIST_DIR%\runtime\bin\java" -Xshare:dump -XX:SharedClassListFile="%DIST_DIR%\lib\odtapp.classlist" -XX:SharedArchiveFile="%DIST_DIR%\lib\odtapp.jsa" -cp "%DIST_DIR%\lib\${project.build.finalName}.jar;%DIST_DIR%\lib\gson-${gson.version}.jar"
@@ -0,0 +1,5 @@
+@echo off
+rem Starts odtapp with the bundled runtime and its class data sharing archive.
+rem Falls back to normal class loading if the archive cannot be used.
+set DIST_DIR=%~dp0..
+"%DIST_DIR%\runtime\bin\java" -Xshare:auto -XX:SharedArchiveFile="%DIST_DIR%\lib\odtapp.jsa" -cp "%DIST_DIR%\lib\${project.build.finalName}.jar;%DIST_DIR%\lib\gson-${gson.version}.jar" com.example.App %*
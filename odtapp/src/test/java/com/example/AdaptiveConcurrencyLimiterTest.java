@@ -0,0 +1,109 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.concurrent.AdaptiveConcurrencyLimiter;
+import com.example.concurrent.AdaptiveExecutor;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+    @Test
+    public void testLimitGrowsWhileLatencyIsStable() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 16);
+        for (int i = 0; i < 50; i++) {
+            saturateAndRelease(limiter, FAST);
+        }
+        assertTrue(limiter.getLimit() > 2, "The limit should grow while latency stays at the baseline");
+    }
+
+    @Test
+    public void testLimitShrinksWhenLatencyRises() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 16);
+        for (int i = 0; i < 10; i++) {
+            saturateAndRelease(limiter, FAST);
+        }
+        int limitBefore = limiter.getLimit();
+        for (int i = 0; i < 10; i++) {
+            saturateAndRelease(limiter, SLOW);
+        }
+        assertTrue(limiter.getLimit() < limitBefore, "The limit should back off when latency rises");
+    }
+
+    @Test
+    public void testLimitStaysWithinBounds() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 2, 4);
+        for (int i = 0; i < 100; i++) {
+            saturateAndRelease(limiter, FAST);
+        }
+        assertEquals(4, limiter.getLimit());
+        for (int i = 0; i < 10; i++) {
+            saturateAndRelease(limiter, SLOW);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testInvalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(1, 0, 4));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(1, 4, 2));
+    }
+
+    @Test
+    public void testExecutorRunsAllTasksWithinLimit() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        try (AdaptiveExecutor executor = new AdaptiveExecutor(3)) {
+            for (int i = 0; i < 30; i++) {
+                executor.execute(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.incrementAndGet();
+                });
+            }
+        }
+        assertEquals(30, done.get(), "Closing the executor should wait for every task");
+        assertTrue(maxRunning.get() <= 3, "No more tasks than the maximum concurrency should run at once");
+    }
+
+    @Test
+    public void testReportedFailuresBackOff() {
+        // Outside a task there is nothing to mark
+        AdaptiveExecutor.reportFailure();
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 16);
+        try (AdaptiveExecutor executor = new AdaptiveExecutor(limiter, 16)) {
+            for (int i = 0; i < 16; i++) {
+                // A task that handles the error of its file itself
+                executor.execute(AdaptiveExecutor::reportFailure);
+            }
+        }
+        assertTrue(limiter.getLimit() < 8, "The limit should back off on reported failures");
+    }
+
+    private static void saturateAndRelease(AdaptiveConcurrencyLimiter limiter, long latencyNanos)
+            throws InterruptedException {
+        int slots = limiter.getLimit();
+        for (int i = 0; i < slots; i++) {
+            limiter.acquire();
+        }
+        for (int i = 0; i < slots; i++) {
+            limiter.release(latencyNanos, false);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mockStatic;
@@ -11,7 +12,9 @@ import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.nio.file.Paths;
+import java.util.List;
 
+import com.example.model.ScanOptions;
 import com.example.util.FileUtil;
 import com.example.validation.ArgumentValidator;
 
@@ -26,7 +29,21 @@ public class AppTest {
             fileUtilMock.when(() -> FileUtil.isValidPath(eq(Paths.get("jsonPath/output.json").getParent())))
                     .thenReturn(true);
             App.main(args);
-            fileUtilMock.verify(() -> FileUtil.createJsonFile("inputPath", "jsonPath/output.json"));
+            fileUtilMock.verify(() -> FileUtil.createJsonFile("inputPath", "jsonPath/output.json",
+                    new ScanOptions()));
+        }
+    }
+
+    @Test
+    public void testJsonActionWithSeveralInputs() throws Exception {
+        try (MockedStatic<FileUtil> fileUtilMock = mockStatic(FileUtil.class)) {
+            String[] args = { ArgumentValidator.JSON_ACTION, "inputA", "inputB", "jsonPath/output.json" };
+            fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
+            fileUtilMock.when(() -> FileUtil.isValidPath(eq(Paths.get("jsonPath/output.json").getParent())))
+                    .thenReturn(true);
+            App.main(args);
+            fileUtilMock.verify(() -> FileUtil.createJsonFile(eq(List.of("inputA", "inputB")),
+                    eq("jsonPath/output.json"), eq(new ScanOptions()), any()));
         }
     }
 
@@ -38,7 +55,47 @@ public class AppTest {
             fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
             App.main(args);
             fileUtilMock.verify(() -> FileUtil.replaceBlocks("directoryOrFilePath", "[import block_1.odt]",
-                    "[import block_1_new.odt]"));
+                    "[import block_1_new.odt]", new ScanOptions()));
+        }
+    }
+
+    @Test
+    public void testReplaceActionWithAdaptiveOption() throws Exception {
+        try (MockedStatic<FileUtil> fileUtilMock = mockStatic(FileUtil.class)) {
+            String[] args = { ArgumentValidator.REPLACE_ACTION, "directoryOrFilePath", "[import block_1.odt]",
+                    "[import block_1_new.odt]", ArgumentValidator.ADAPTIVE_OPTION,
+                    ArgumentValidator.MAX_CONCURRENCY_OPTION, "16" };
+            fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
+            App.main(args);
+            ScanOptions options = new ScanOptions();
+            options.setAdaptive(true);
+            options.setMaxConcurrency(16);
+            fileUtilMock.verify(() -> FileUtil.replaceBlocks("directoryOrFilePath", "[import block_1.odt]",
+                    "[import block_1_new.odt]", options));
+        }
+    }
+
+    @Test
+    public void testRewriteActionSuccess() throws Exception {
+        try (MockedStatic<FileUtil> fileUtilMock = mockStatic(FileUtil.class)) {
+            String[] args = { ArgumentValidator.REWRITE_ACTION, "directoryOrFilePath", "rules.txt" };
+            fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
+            App.main(args);
+            fileUtilMock.verify(() -> FileUtil.rewriteBlocks("directoryOrFilePath", "rules.txt", new ScanOptions()));
+        }
+    }
+
+    @Test
+    public void testMergeActionSuccess() throws Exception {
+        try (MockedStatic<FileUtil> fileUtilMock = mockStatic(FileUtil.class)) {
+            String[] args = { ArgumentValidator.MERGE_ACTION, "jsonPath/output.json", "shard1.json", "shard2.json",
+                    "shard3.json" };
+            fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
+            fileUtilMock.when(() -> FileUtil.isValidPath(eq(Paths.get("jsonPath/output.json").getParent())))
+                    .thenReturn(true);
+            App.main(args);
+            fileUtilMock.verify(() -> FileUtil.mergeJsonFiles(List.of("shard1.json", "shard2.json", "shard3.json"),
+                    "jsonPath/output.json"));
         }
     }
 
@@ -49,8 +106,8 @@ public class AppTest {
                     "[import block_1_new.odt]" };
             fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
             App.main(args);
-            fileUtilMock.verify(() -> FileUtil.replaceBlocks("directoryOrFilePath", "[import block_1.odt]",
-                    "[import block_1_new.odt]"), never());
+            fileUtilMock.verify(() -> FileUtil.replaceBlocks(eq("directoryOrFilePath"), eq("[import block_1.odt]"),
+                    eq("[import block_1_new.odt]"), any()), never());
         }
     }
 
@@ -61,8 +118,8 @@ public class AppTest {
                     "[import block_1_new.odt]" };
             fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
             App.main(args);
-            fileUtilMock.verify(() -> FileUtil.replaceBlocks("directoryOrFilePath", "[block_1.odt]",
-                    "[import block_1_new.odt]"), never());
+            fileUtilMock.verify(() -> FileUtil.replaceBlocks(eq("directoryOrFilePath"), eq("[block_1.odt]"),
+                    eq("[import block_1_new.odt]"), any()), never());
         }
     }
 
@@ -73,8 +130,8 @@ public class AppTest {
                     "[block_1_new.odt]" };
             fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
             App.main(args);
-            fileUtilMock.verify(() -> FileUtil.replaceBlocks("directoryOrFilePath", "[import block_1.odt]",
-                    "[block_1_new.odt]"), never());
+            fileUtilMock.verify(() -> FileUtil.replaceBlocks(eq("directoryOrFilePath"), eq("[import block_1.odt]"),
+                    eq("[block_1_new.odt]"), any()), never());
         }
     }
 
@@ -84,8 +141,8 @@ public class AppTest {
             String[] args = { ArgumentValidator.REPLACE_ACTION, "directoryOrFilePath", "[import block_1.odt]" };
             fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
             App.main(args);
-            fileUtilMock.verify(() -> FileUtil.replaceBlocks("directoryOrFilePath", "[import block_1.odt]",
-                    null), never());
+            fileUtilMock.verify(() -> FileUtil.replaceBlocks(eq("directoryOrFilePath"), eq("[import block_1.odt]"),
+                    eq(null), any()), never());
         }
     }
 
@@ -95,7 +152,8 @@ public class AppTest {
             String[] args = { ArgumentValidator.JSON_ACTION, "directoryOrFilePath" };
             fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
             App.main(args);
-            fileUtilMock.verify(() -> FileUtil.createJsonFile("directoryOrFilePath", null), never());
+            fileUtilMock.verify(() -> FileUtil.createJsonFile(eq("directoryOrFilePath"), eq(null),
+                    any()), never());
         }
     }
 
@@ -105,8 +163,8 @@ public class AppTest {
             String[] args = { ArgumentValidator.REPLACE_ACTION, "directoryOrFilePath", "[import block_1.odt]",
                     "[import block_1_new.odt]" };
             App.main(args);
-            fileUtilMock.verify(() -> FileUtil.replaceBlocks("directoryOrFilePath", "[import block_1.odt]",
-                    "[import block_1_new.odt]"), never());
+            fileUtilMock.verify(() -> FileUtil.replaceBlocks(eq("directoryOrFilePath"), eq("[import block_1.odt]"),
+                    eq("[import block_1_new.odt]"), any()), never());
         }
     }
 
@@ -117,7 +175,8 @@ public class AppTest {
             fileUtilMock.when(() -> FileUtil.isValidPath(eq(Paths.get("jsonPath/output.json").getParent())))
                     .thenReturn(true);
             App.main(args);
-            fileUtilMock.verify(() -> FileUtil.createJsonFile(null, "jsonPath/output.json"), never());
+            fileUtilMock.verify(() -> FileUtil.createJsonFile(eq(null), eq("jsonPath/output.json"),
+                    any()), never());
         }
     }
 
@@ -127,7 +186,8 @@ public class AppTest {
             String[] args = { ArgumentValidator.JSON_ACTION, "directoryOrFilePath", "jsonPath/output.json" };
             fileUtilMock.when(() -> FileUtil.isValidPath("directoryOrFilePath")).thenReturn(true);
             App.main(args);
-            fileUtilMock.verify(() -> FileUtil.createJsonFile("directoryOrFilePath", null), never());
+            fileUtilMock.verify(() -> FileUtil.createJsonFile(eq("directoryOrFilePath"), eq(null),
+                    any()), never());
         }
     }
 
@@ -1,8 +1,15 @@
 package com.example;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -10,10 +17,12 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mockStatic;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.MockedStatic;
 
 import com.example.exception.InvalidActionException;
 import com.example.exception.InvalidArgumentException;
+import com.example.model.ScanOptions;
 import com.example.util.FileUtil;
 import com.example.validation.ArgumentValidator;
 
@@ -77,8 +86,8 @@ public class ArgumentValidatorTest {
     }
 
     @Test
-    public void testValidateArgumentsInvalidExtraArgumentsForJasonAction() {
-        String[] args = { ArgumentValidator.JSON_ACTION, DIRECTORY_PATH, "extra1", "extra2", "extra3" };
+    public void testValidateArgumentsInvalidExtraArgumentsForStatsAction() {
+        String[] args = { ArgumentValidator.STATS_ACTION, DIRECTORY_PATH, "extra1", "extra2", "extra3" };
         try (MockedStatic<FileUtil> utilities = mockStatic(FileUtil.class)) {
             utilities.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
             Exception exception = assertThrows(InvalidArgumentException.class, () -> {
@@ -90,15 +99,26 @@ public class ArgumentValidatorTest {
     }
 
     @Test
-    public void testValidateArgumentsInvalidNumberArgumentsForJsonAction() {
-        String[] args = { ArgumentValidator.JSON_ACTION, DIRECTORY_PATH, OUTPUT_JSON, "extra" };
+    public void testValidateArgumentsSeveralInputsForJsonAction() throws Exception {
+        // The output file comes after every input
+        String[] args = { ArgumentValidator.JSON_ACTION, DIRECTORY_PATH, "otherDirectoryPath", "third",
+                OUTPUT_JSON };
         try (MockedStatic<FileUtil> utilities = mockStatic(FileUtil.class)) {
             utilities.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
-            Exception exception = assertThrows(InvalidArgumentException.class, () -> {
-                ArgumentValidator.validateArguments(args);
-            });
-            assertTrue(exception.getMessage().contains("Usage for json action"),
-                    "Expected exception for invalid number of arguments for json action");
+            utilities.when(() -> FileUtil.isValidPath(eq(Paths.get(OUTPUT_JSON).getParent()))).thenReturn(true);
+            ArgumentValidator.validateArguments(args);
+
+            utilities.when(() -> FileUtil.isValidPath("third")).thenReturn(false);
+            Exception exception = assertThrows(InvalidArgumentException.class,
+                    () -> ArgumentValidator.validateArguments(args));
+            assertTrue(exception.getMessage().contains("third"), exception.getMessage());
+
+            // A checkpoint holds the files of one input
+            utilities.when(() -> FileUtil.isValidPath("third")).thenReturn(true);
+            String[] resume = { ArgumentValidator.JSON_ACTION, DIRECTORY_PATH, "third", OUTPUT_JSON, "--resume" };
+            exception = assertThrows(InvalidArgumentException.class,
+                    () -> ArgumentValidator.validateArguments(resume));
+            assertTrue(exception.getMessage().contains("single input path"), exception.getMessage());
         }
     }
 
@@ -203,4 +223,279 @@ public class ArgumentValidatorTest {
                 "Expected exception for invalid path");
 
     }
+
+    @Test
+    public void testParseOptions() throws Exception {
+        String[] args = { ArgumentValidator.JSON_ACTION, DIRECTORY_PATH, OUTPUT_JSON,
+                ArgumentValidator.ADAPTIVE_OPTION, ArgumentValidator.MAX_CONCURRENCY_OPTION + "=8" };
+        ScanOptions options = ArgumentValidator.parseOptions(args);
+        assertTrue(options.isAdaptive());
+        assertEquals(8, options.getMaxConcurrency());
+        assertFalse(options.isStreaming());
+        assertTrue(ArgumentValidator.parseOptions(new String[] { ArgumentValidator.REPLACE_ACTION,
+                ArgumentValidator.STREAMING_OPTION }).isStreaming());
+        assertArrayEquals(new String[] { ArgumentValidator.JSON_ACTION, DIRECTORY_PATH, OUTPUT_JSON },
+                ArgumentValidator.getPositionalArguments(args));
+    }
+
+    @Test
+    public void testPositionalArgumentsSkipOptionValues() {
+        String[] args = { ArgumentValidator.JSON_ACTION, ArgumentValidator.MAX_CONCURRENCY_OPTION, "8",
+                DIRECTORY_PATH, OUTPUT_JSON };
+        assertArrayEquals(new String[] { ArgumentValidator.JSON_ACTION, DIRECTORY_PATH, OUTPUT_JSON },
+                ArgumentValidator.getPositionalArguments(args));
+    }
+
+    @Test
+    public void testValidateArgumentsUnknownOption() {
+        String[] args = { ArgumentValidator.JSON_ACTION, DIRECTORY_PATH, OUTPUT_JSON, "--unknown" };
+        try (MockedStatic<FileUtil> utilities = mockStatic(FileUtil.class)) {
+            utilities.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
+            utilities.when(() -> FileUtil.isValidPath(eq(Paths.get(OUTPUT_JSON).getParent())))
+                    .thenReturn(true);
+            Exception exception = assertThrows(InvalidArgumentException.class, () -> {
+                ArgumentValidator.validateArguments(args);
+            });
+            assertTrue(exception.getMessage().contains("Unknown option: --unknown"),
+                    "Expected exception for unknown option");
+        }
+    }
+
+    @Test
+    public void testParseOptionsInvalidMaxConcurrency() {
+        assertThrows(InvalidArgumentException.class, () -> {
+            ArgumentValidator.parseOptions(new String[] { ArgumentValidator.MAX_CONCURRENCY_OPTION + "=0" });
+        });
+        assertThrows(InvalidArgumentException.class, () -> {
+            ArgumentValidator.parseOptions(new String[] { ArgumentValidator.MAX_CONCURRENCY_OPTION + "=many" });
+        });
+        assertThrows(InvalidArgumentException.class, () -> {
+            ArgumentValidator.parseOptions(new String[] { ArgumentValidator.MAX_CONCURRENCY_OPTION });
+        });
+    }
+
+    @Test
+    public void testValidateArgumentsInvalidRulesFileRewriteAction() {
+        String[] args = { ArgumentValidator.REWRITE_ACTION, DIRECTORY_PATH, "rules.txt" };
+        try (MockedStatic<FileUtil> utilities = mockStatic(FileUtil.class)) {
+            utilities.when(() -> FileUtil.isValidPath(DIRECTORY_PATH)).thenReturn(true);
+            Exception exception = assertThrows(InvalidArgumentException.class, () -> {
+                ArgumentValidator.validateArguments(args);
+            });
+            assertTrue(exception.getMessage().contains("Invalid rules file path provided: rules.txt"),
+                    "Expected exception for missing rules file");
+        }
+    }
+
+    @Test
+    public void testValidateArgumentsInvalidNumberArgumentsForRewriteAction() {
+        String[] args = { ArgumentValidator.REWRITE_ACTION, DIRECTORY_PATH, "rules.txt", "extra" };
+        try (MockedStatic<FileUtil> utilities = mockStatic(FileUtil.class)) {
+            utilities.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
+            Exception exception = assertThrows(InvalidArgumentException.class, () -> {
+                ArgumentValidator.validateArguments(args);
+            });
+            assertTrue(exception.getMessage().contains("Usage for rewrite action"),
+                    "Expected exception for invalid number of arguments for rewrite action");
+        }
+    }
+
+    @Test
+    public void testParseShardOption() throws Exception {
+        ScanOptions options = ArgumentValidator.parseOptions(new String[] { ArgumentValidator.JSON_ACTION,
+                DIRECTORY_PATH, OUTPUT_JSON, ArgumentValidator.SHARD_OPTION, "2/3" });
+        assertEquals(1, options.getShardIndex());
+        assertEquals(3, options.getShardCount());
+        assertArrayEquals(new String[] { ArgumentValidator.JSON_ACTION, DIRECTORY_PATH, OUTPUT_JSON },
+                ArgumentValidator.getPositionalArguments(new String[] { ArgumentValidator.JSON_ACTION,
+                        DIRECTORY_PATH, OUTPUT_JSON, ArgumentValidator.SHARD_OPTION, "2/3" }));
+    }
+
+    @Test
+    public void testParseInvalidShardOption() {
+        for (String shard : new String[] { "0/3", "4/3", "1/0", "1", "a/b" }) {
+            String[] args = { ArgumentValidator.SHARD_OPTION + "=" + shard };
+            Exception exception = assertThrows(InvalidArgumentException.class,
+                    () -> ArgumentValidator.parseOptions(args));
+            assertTrue(exception.getMessage().contains("must be i/N"), "Expected exception for shard " + shard);
+        }
+    }
+
+    @Test
+    public void testValidateArgumentsMergeAction() {
+        String[] args = { ArgumentValidator.MERGE_ACTION, OUTPUT_JSON, "shard1.json", "shard2.json", "shard3.json" };
+        try (MockedStatic<FileUtil> utilities = mockStatic(FileUtil.class)) {
+            utilities.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
+            utilities.when(() -> FileUtil.isValidPath(eq(Paths.get(OUTPUT_JSON).getParent()))).thenReturn(true);
+            assertDoesNotThrow(() -> ArgumentValidator.validateArguments(args));
+        }
+    }
+
+    @Test
+    public void testValidateArgumentsInvalidPartialReportForMergeAction() {
+        String[] args = { ArgumentValidator.MERGE_ACTION, OUTPUT_JSON, "shard1.json", "missing.json" };
+        try (MockedStatic<FileUtil> utilities = mockStatic(FileUtil.class)) {
+            utilities.when(() -> FileUtil.isValidPath("shard1.json")).thenReturn(true);
+            utilities.when(() -> FileUtil.isValidPath(eq(Paths.get(OUTPUT_JSON).getParent()))).thenReturn(true);
+            Exception exception = assertThrows(InvalidArgumentException.class, () -> {
+                ArgumentValidator.validateArguments(args);
+            });
+            assertTrue(exception.getMessage().contains("Invalid partial report path provided: missing.json"));
+        }
+    }
+
+    @Test
+    public void testParseResumeOptions() throws Exception {
+        String[] args = { ArgumentValidator.REPLACE_ACTION, DIRECTORY_PATH, "[import a.odt]", "[import b.odt]",
+                ArgumentValidator.RESUME_OPTION, ArgumentValidator.CHECKPOINT_OPTION, "replace.progress" };
+        ScanOptions options = ArgumentValidator.parseOptions(args);
+        assertTrue(options.isResume());
+        assertEquals("replace.progress", options.getCheckpointPath());
+        assertEquals(4, ArgumentValidator.getPositionalArguments(args).length);
+        assertFalse(new ScanOptions().isResume());
+    }
+
+    @Test
+    public void testParseLogFormatOption() throws Exception {
+        String[] args = { ArgumentValidator.JSON_ACTION, DIRECTORY_PATH, "output.json",
+                ArgumentValidator.LOG_FORMAT_OPTION, ArgumentValidator.STRUCTURED_LOG_FORMAT };
+        assertTrue(ArgumentValidator.parseOptions(args).isStructuredLog());
+        assertEquals(3, ArgumentValidator.getPositionalArguments(args).length);
+        assertFalse(ArgumentValidator.parseOptions(new String[] { "--log-format=text" }).isStructuredLog());
+        assertThrows(InvalidArgumentException.class,
+                () -> ArgumentValidator.parseOptions(new String[] { "--log-format=xml" }));
+    }
+
+    @Test
+    public void testValidateArgumentsBatchAction() {
+        try (MockedStatic<FileUtil> fileUtilMock = mockStatic(FileUtil.class)) {
+            fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
+            String[] args = { ArgumentValidator.BATCH_ACTION, "jobs.txt", ArgumentValidator.OVERWRITE_OPTION,
+                    ArgumentValidator.PARTS_OPTION, "content.xml" };
+
+            assertDoesNotThrow(() -> ArgumentValidator.validateArguments(args));
+            assertArrayEquals(new String[] { ArgumentValidator.OVERWRITE_OPTION, ArgumentValidator.PARTS_OPTION,
+                    "content.xml" }, ArgumentValidator.getOptionArguments(args));
+            assertThrows(InvalidArgumentException.class, () -> ArgumentValidator
+                    .validateArguments(new String[] { ArgumentValidator.BATCH_ACTION, "jobs.txt", "extra" }));
+        }
+    }
+
+    @Test
+    public void testValidateArgumentsStatsAction() {
+        try (MockedStatic<FileUtil> fileUtilMock = mockStatic(FileUtil.class)) {
+            fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
+            fileUtilMock.when(() -> FileUtil.isValidPath(eq(Paths.get("out/stats.json").getParent())))
+                    .thenReturn(true);
+
+            assertDoesNotThrow(() -> ArgumentValidator.validateArguments(
+                    new String[] { ArgumentValidator.STATS_ACTION, "templates", "out/stats.json", "--top=5" }));
+            assertThrows(InvalidArgumentException.class, () -> ArgumentValidator
+                    .validateArguments(new String[] { ArgumentValidator.STATS_ACTION, "templates" }));
+            assertThrows(InvalidArgumentException.class, () -> ArgumentValidator.validateArguments(
+                    new String[] { ArgumentValidator.STATS_ACTION, "templates", "out/stats.json", "--top=0" }));
+        }
+    }
+
+    @Test
+    public void testValidateArgumentsQueryAction() {
+        try (MockedStatic<FileUtil> fileUtilMock = mockStatic(FileUtil.class)) {
+            fileUtilMock.when(() -> FileUtil.isValidPath(anyString())).thenReturn(true);
+
+            assertDoesNotThrow(() -> ArgumentValidator.validateArguments(new String[] {
+                    ArgumentValidator.QUERY_ACTION, "templates.idx", "[import a.odt] AND NOT [import b.odt]" }));
+            assertThrows(InvalidArgumentException.class, () -> ArgumentValidator.validateArguments(
+                    new String[] { ArgumentValidator.QUERY_ACTION, "templates.idx", "[import a.odt] AND" }));
+        }
+    }
+
+    @Test
+    public void testParseOverwriteOption() throws Exception {
+        assertTrue(ArgumentValidator.parseOptions(new String[] { ArgumentValidator.OVERWRITE_OPTION }).isOverwrite());
+        assertFalse(new ScanOptions().isOverwrite());
+    }
+
+    @Test
+    public void testParseWalkFilterOptions() throws Exception {
+        ScanOptions options = ArgumentValidator.parseOptions(new String[] { "--include=**/*.{odt,ott}",
+                "--include", "reports/**", "--exclude=archive", "--max-depth", "3" });
+        assertEquals(List.of("**/*.{odt,ott}", "reports/**"), options.getIncludes());
+        assertEquals(List.of("archive"), options.getExcludes());
+        assertEquals(3, options.getMaxDepth());
+        assertFalse(options.isFollowLinks());
+        assertTrue(ArgumentValidator.parseOptions(new String[] { "--follow-links" }).isFollowLinks());
+        assertThrows(InvalidArgumentException.class,
+                () -> ArgumentValidator.parseOptions(new String[] { "--exclude={a,b" }));
+        assertThrows(InvalidArgumentException.class,
+                () -> ArgumentValidator.parseOptions(new String[] { "--max-depth=0" }));
+    }
+
+    @Test
+    public void testParseLockOptions() throws Exception {
+        ScanOptions options = ArgumentValidator.parseOptions(new String[] { "--lock", "--on-locked=skip",
+                "--lock-retries", "0" });
+        assertTrue(options.isLock());
+        assertTrue(options.isSkipLocked());
+        assertEquals(0, options.getLockRetries());
+        assertFalse(ArgumentValidator.parseOptions(new String[] { "--on-locked=retry" }).isSkipLocked());
+        assertThrows(InvalidArgumentException.class,
+                () -> ArgumentValidator.parseOptions(new String[] { "--on-locked=wait" }));
+        assertThrows(InvalidArgumentException.class,
+                () -> ArgumentValidator.parseOptions(new String[] { "--lock-retries=-1" }));
+    }
+
+    @Test
+    public void testParsePipelineOptions() throws Exception {
+        ScanOptions options = ArgumentValidator.parseOptions(new String[] { "--pipeline", "--io-threads", "4" });
+        assertTrue(options.isPipeline());
+        assertEquals(4, options.getIoThreads());
+        assertEquals(ScanOptions.DEFAULT_IO_THREADS, new ScanOptions().getIoThreads());
+        assertThrows(InvalidArgumentException.class,
+                () -> ArgumentValidator.parseOptions(new String[] { "--io-threads=0" }));
+    }
+
+    @Test
+    public void testParseExtractOption(@TempDir Path directory) throws Exception {
+        Path rulesFile = Files.writeString(directory.resolve("extract.rules"),
+                "fields = text:user-field-decl/@text:name");
+        assertEquals(rulesFile.toString(),
+                ArgumentValidator.parseOptions(new String[] { "--extract=" + rulesFile }).getExtractRulesPath());
+        assertNull(new ScanOptions().getExtractRulesPath());
+        assertThrows(InvalidArgumentException.class, () -> ArgumentValidator
+                .parseOptions(new String[] { "--extract", directory.resolve("missing.rules").toString() }));
+    }
+
+    @Test
+    public void testParseReadAheadOptions() throws Exception {
+        ScanOptions options = ArgumentValidator.parseOptions(
+                new String[] { "--read-ahead=16", "--read-ahead-memory", "8" });
+        assertEquals(16, options.getReadAhead());
+        assertEquals(8, options.getReadAheadMemory());
+        assertEquals(0, new ScanOptions().getReadAhead());
+        assertEquals(ScanOptions.DEFAULT_READ_AHEAD_MEMORY, new ScanOptions().getReadAheadMemory());
+        assertThrows(InvalidArgumentException.class,
+                () -> ArgumentValidator.parseOptions(new String[] { "--read-ahead=0" }));
+    }
+
+    @Test
+    public void testParseResourceLimitOptions() throws Exception {
+        ScanOptions options = ArgumentValidator.parseOptions(new String[] { "--max-entry-size=32",
+                "--max-compression-ratio", "500", "--file-timeout=0" });
+        assertEquals(32, options.getMaxEntrySize());
+        assertEquals(500, options.getMaxCompressionRatio());
+        assertEquals(0, options.getFileTimeoutMillis());
+        assertEquals(ScanOptions.DEFAULT_FILE_TIMEOUT_MILLIS, new ScanOptions().getFileTimeoutMillis());
+        assertFalse(options.isSkipFieldlessParts());
+        assertTrue(ArgumentValidator.parseOptions(new String[] { "--skip-fieldless-parts" }).isSkipFieldlessParts());
+        assertThrows(InvalidArgumentException.class,
+                () -> ArgumentValidator.parseOptions(new String[] { "--max-compression-ratio=0" }));
+    }
+
+    @Test
+    public void testParseTimeBudgetOption() throws Exception {
+        assertEquals(2000, ArgumentValidator.parseOptions(new String[] { "--time-budget=2000" }).getTimeBudgetMillis());
+        assertEquals(0, new ScanOptions().getTimeBudgetMillis());
+        assertThrows(InvalidArgumentException.class,
+                () -> ArgumentValidator.parseOptions(new String[] { "--time-budget=-1" }));
+    }
 }
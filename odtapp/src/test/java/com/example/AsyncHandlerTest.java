@@ -0,0 +1,96 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.logging.AsyncHandler;
+
+public class AsyncHandlerTest {
+
+    @Test
+    public void testFlushPublishesEveryRecordInOrder() {
+        RecordingHandler target = new RecordingHandler();
+        AsyncHandler handler = new AsyncHandler(target, 4);
+        try {
+            // More records than the queue holds, so the logging thread has to wait
+            for (int i = 0; i < 100; i++) {
+                handler.publish(new LogRecord(Level.INFO, "record " + i));
+            }
+            handler.flush();
+
+            assertEquals(100, target.records.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals("record " + i, target.records.get(i).getMessage());
+            }
+            assertTrue(target.flushed);
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    public void testRecordsBelowTheLevelAreNotQueued() {
+        RecordingHandler target = new RecordingHandler();
+        target.setLevel(Level.WARNING);
+        AsyncHandler handler = new AsyncHandler(target, AsyncHandler.DEFAULT_CAPACITY);
+        try {
+            handler.publish(new LogRecord(Level.FINE, "fine"));
+            handler.publish(new LogRecord(Level.INFO, "info"));
+            handler.publish(new LogRecord(Level.SEVERE, "severe"));
+            handler.flush();
+
+            assertEquals(1, target.records.size());
+            assertEquals("severe", target.records.get(0).getMessage());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    public void testCloseClosesTheTargetAfterPublishingQueuedRecords() {
+        RecordingHandler target = new RecordingHandler();
+        AsyncHandler handler = new AsyncHandler(target, AsyncHandler.DEFAULT_CAPACITY);
+        for (int i = 0; i < 10; i++) {
+            handler.publish(new LogRecord(Level.INFO, "record " + i));
+        }
+        handler.close();
+        handler.publish(new LogRecord(Level.INFO, "after close"));
+
+        assertEquals(11, target.records.size());
+        assertEquals("after close", target.records.get(10).getMessage());
+        assertTrue(target.closed);
+    }
+
+    /**
+     * Keeps the published records in memory.
+     */
+    private static class RecordingHandler extends Handler {
+        private final List<LogRecord> records = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean flushed;
+        private volatile boolean closed;
+
+        @Override
+        public void publish(LogRecord record) {
+            records.add(record);
+        }
+
+        @Override
+        public void flush() {
+            flushed = true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
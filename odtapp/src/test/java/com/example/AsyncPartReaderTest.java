@@ -0,0 +1,72 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.odt.AsyncPartReader;
+import com.example.odt.OdtFile;
+import com.example.odt.OdtParts;
+
+public class AsyncPartReaderTest {
+
+    private static final String MANIFEST = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<manifest:manifest xmlns:manifest=\"urn:oasis:names:tc:opendocument:xmlns:manifest:1.0\">"
+            + "<manifest:file-entry manifest:full-path=\"/\""
+            + " manifest:media-type=\"application/vnd.oasis.opendocument.text\"/>"
+            + "<manifest:file-entry manifest:full-path=\"Object 1/\""
+            + " manifest:media-type=\"application/vnd.oasis.opendocument.text\"/>"
+            + "</manifest:manifest>";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testReadsSamePartsAsZipFile() throws Exception {
+        Path odt = tempDir.resolve("document.odt");
+        try (OutputStream out = Files.newOutputStream(odt); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.setComment("A comment before the central directory end");
+            OdtFixtures.putEntry(zip, "mimetype", "application/vnd.oasis.opendocument.text", true);
+            OdtFixtures.putEntry(zip, "content.xml", "<content>[import block_1.odt]</content>".repeat(100), false);
+            OdtFixtures.putEntry(zip, "styles.xml", "<styles/>", true);
+            OdtFixtures.putEntry(zip, OdtParts.MANIFEST_PATH, MANIFEST, false);
+            OdtFixtures.putEntry(zip, "Object 1/content.xml", "<content>[import block_2.odt]</content>", false);
+        }
+
+        for (boolean embeddedObjects : new boolean[] { false, true }) {
+            OdtParts parts = new OdtParts(OdtParts.DEFAULT_PART_NAMES, embeddedObjects);
+            List<byte[]> expected = new OdtFile(odt.toString(), parts).readParts();
+            List<byte[]> contents = AsyncPartReader.read(odt, parts).join().inflate();
+
+            assertEquals(embeddedObjects ? 3 : 2, contents.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), contents.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidFileFailsRead() throws Exception {
+        Path empty = Files.createFile(tempDir.resolve("empty.odt"));
+        assertThrows(CompletionException.class, () -> AsyncPartReader.read(empty, OdtParts.DEFAULT).join());
+
+        Path truncated = tempDir.resolve("truncated.odt");
+        try (OutputStream out = Files.newOutputStream(truncated); ZipOutputStream zip = new ZipOutputStream(out)) {
+            OdtFixtures.putEntry(zip, "content.xml", "<content/>", false);
+        }
+        byte[] bytes = Files.readAllBytes(truncated);
+        Files.write(truncated, Arrays.copyOfRange(bytes, 10, bytes.length));
+        assertThrows(CompletionException.class, () -> AsyncPartReader.read(truncated, OdtParts.DEFAULT).join());
+    }
+}
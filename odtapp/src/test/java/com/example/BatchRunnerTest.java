@@ -0,0 +1,197 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.batch.BatchJob;
+import com.example.batch.BatchRunner;
+import com.example.exception.AbortException;
+import com.example.exception.InvalidArgumentException;
+import com.example.util.FileUtil;
+
+public class BatchRunnerTest {
+
+    private static final String TEST_TEMPLATES_ZIP = "src/test/resources/test_templates.zip";
+    private static final String[] NO_OPTIONS = {};
+
+    @Test
+    public void testParseJobFile(@TempDir Path directory) throws Exception {
+        Path jobFile = writeJob(directory,
+                "# comment",
+                "",
+                "  json \"D:\\My Templates\" D:\\out.json --adaptive  ",
+                "replace dir \"[import a.odt]\" \"[import b.odt]\"");
+
+        List<BatchJob.Command> commands = BatchJob.parse(jobFile);
+
+        assertEquals(2, commands.size());
+        assertEquals(3, commands.get(0).getLineNumber());
+        assertArrayEquals(new String[] { "json", "D:\\My Templates", "D:\\out.json", "--adaptive" },
+                commands.get(0).getArguments());
+        assertArrayEquals(new String[] { "replace", "dir", "[import a.odt]", "[import b.odt]" },
+                commands.get(1).getArguments());
+    }
+
+    @Test
+    public void testParseRejectsUnterminatedQuote(@TempDir Path directory) throws Exception {
+        Path jobFile = writeJob(directory, "json dir out.json", "json \"dir out.json");
+
+        Exception exception = assertThrows(InvalidArgumentException.class, () -> BatchJob.parse(jobFile));
+        assertTrue(exception.getMessage().startsWith("Line 2:"), exception.getMessage());
+    }
+
+    @Test
+    public void testCommandsSeeTheChangesOfEarlierCommands(@TempDir Path directory) throws Exception {
+        Path templates = directory.resolve("templates");
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), templates);
+        Path before = directory.resolve("before.json");
+        Path after = directory.resolve("after.json");
+        Path jobFile = writeJob(directory,
+                "json " + quote(templates) + " " + quote(before),
+                "json " + quote(templates) + " " + quote(after),
+                "replace " + quote(templates) + " \"[import block_1.odt]\" \"[import block_1_batch.odt]\"",
+                "json " + quote(templates) + " " + quote(after) + " --overwrite");
+
+        BatchRunner.run(jobFile.toString(), NO_OPTIONS);
+
+        String beforeJson = Files.readString(before);
+        String afterJson = Files.readString(after);
+        assertTrue(beforeJson.contains("[import block_1.odt]"));
+        assertFalse(afterJson.contains("[import block_1.odt]"));
+        assertTrue(afterJson.contains("[import block_1_batch.odt]"));
+
+        // The report of the last command matches a scan in a fresh process
+        Path single = directory.resolve("single.json");
+        FileUtil.createJsonFile(templates.toString(), single.toString());
+        assertEquals(Files.readString(single), afterJson);
+    }
+
+    @Test
+    public void testQueryCommandsPrintMatchingTemplates(@TempDir Path directory) throws Exception {
+        Path templates = directory.resolve("templates");
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), templates);
+        Path before = directory.resolve("before.idx");
+        Path after = directory.resolve("after.idx");
+        Path jobFile = writeJob(directory,
+                "index " + quote(templates) + " " + quote(before),
+                "query " + quote(before) + " \"[import block_1.odt]\"",
+                "replace " + quote(templates) + " \"[import block_1.odt]\" \"[import block_1_batch.odt]\"",
+                "index " + quote(templates) + " " + quote(after),
+                "query " + quote(after) + " \"[import block_1_batch.odt] AND NOT [import block_1.odt]\"");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        try {
+            BatchRunner.run(jobFile.toString(), NO_OPTIONS);
+        } finally {
+            System.setOut(stdout);
+        }
+
+        // Both queries match the templates that used the replaced block
+        List<String> matches = FileUtil.queryIndex(after.toString(), "[import block_1_batch.odt]");
+        assertFalse(matches.isEmpty());
+        List<String> expected = new ArrayList<>(matches);
+        expected.addAll(matches);
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8).lines().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testMalformedQueryStopsBatchBeforeAnyCommandRuns(@TempDir Path directory) throws Exception {
+        Path templates = directory.resolve("templates");
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), templates);
+        Path index = directory.resolve("templates.idx");
+        Path jobFile = writeJob(directory,
+                "index " + quote(templates) + " " + quote(index),
+                "query " + quote(index) + " \"[import block_1.odt] AND\"");
+
+        Exception exception = assertThrows(InvalidArgumentException.class,
+                () -> BatchRunner.run(jobFile.toString(), NO_OPTIONS));
+        assertTrue(exception.getMessage().startsWith("Line 2:"), exception.getMessage());
+        assertFalse(Files.exists(index));
+    }
+
+    @Test
+    public void testExistingOutputStopsBatchWithoutOverwrite(@TempDir Path directory) throws Exception {
+        Path templates = directory.resolve("templates");
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), templates);
+        Path existing = Files.writeString(directory.resolve("existing.json"), "keep");
+        Path next = directory.resolve("next.json");
+        Path jobFile = writeJob(directory,
+                "json " + quote(templates) + " " + quote(existing),
+                "json " + quote(templates) + " " + quote(next));
+
+        assertThrows(AbortException.class, () -> BatchRunner.run(jobFile.toString(), NO_OPTIONS));
+        assertEquals("keep", Files.readString(existing));
+        assertFalse(Files.exists(next), "Commands after the failed one should not run");
+
+        // The option of the batch command applies to every command
+        BatchRunner.run(jobFile.toString(), new String[] { "--overwrite" });
+        assertTrue(Files.readString(existing).contains("template_"));
+        assertTrue(Files.exists(next));
+    }
+
+    @Test
+    public void testMalformedCommandStopsBatchBeforeAnyCommandRuns(@TempDir Path directory) throws Exception {
+        Path templates = directory.resolve("templates");
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), templates);
+        Path output = directory.resolve("output.json");
+        Path jobFile = writeJob(directory,
+                "json " + quote(templates) + " " + quote(output),
+                "json " + quote(templates) + " " + quote(output) + " --bogus");
+
+        Exception exception = assertThrows(InvalidArgumentException.class,
+                () -> BatchRunner.run(jobFile.toString(), NO_OPTIONS));
+        assertTrue(exception.getMessage().startsWith("Line 2:"), exception.getMessage());
+        assertFalse(Files.exists(output));
+    }
+
+    @Test
+    public void testMalformedReplaceStopsBatchBeforeAnyCommandRuns(@TempDir Path directory) throws Exception {
+        Path templates = directory.resolve("templates");
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), templates);
+        Path output = directory.resolve("output.json");
+        Path missingBlockJob = writeJob(directory,
+                "json " + quote(templates) + " " + quote(output),
+                "replace " + quote(templates) + " \"[import block_1.odt]\"");
+
+        Exception exception = assertThrows(InvalidArgumentException.class,
+                () -> BatchRunner.run(missingBlockJob.toString(), NO_OPTIONS));
+        assertTrue(exception.getMessage().startsWith("Line 2: Usage for replace action"), exception.getMessage());
+        assertFalse(Files.exists(output));
+
+        Path badBlockJob = writeJob(directory,
+                "json " + quote(templates) + " " + quote(output),
+                "replace " + quote(templates) + " \"[block.odt]\" \"[import block_2.odt]\"");
+
+        exception = assertThrows(InvalidArgumentException.class,
+                () -> BatchRunner.run(badBlockJob.toString(), NO_OPTIONS));
+        assertTrue(exception.getMessage().startsWith("Line 2: Invalid format of 'block to replace'"),
+                exception.getMessage());
+        assertFalse(Files.exists(output));
+    }
+
+    private static Path writeJob(Path directory, String... lines) throws Exception {
+        return Files.write(directory.resolve("job.txt"), List.of(lines));
+    }
+
+    private static String quote(Path path) {
+        return "\"" + path + "\"";
+    }
+}
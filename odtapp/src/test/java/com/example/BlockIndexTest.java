@@ -0,0 +1,86 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.exception.InvalidArgumentException;
+import com.example.exception.InvalidFileException;
+import com.example.stats.BlockIndex;
+
+public class BlockIndexTest {
+
+    private static final String HEADER_1 = "[import header_1.odt]";
+    private static final String HEADER_2 = "[import header_2.odt]";
+    private static final String FOOTER_1 = "[import footer_1.odt]";
+    private static final String FOOTER_2 = "[import footer_2.odt]";
+
+    private BlockIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        // Added out of name order, as parallel reads complete
+        BlockIndex.Builder builder = BlockIndex.builder();
+        builder.addTemplate("d.odt", null);
+        builder.addTemplate("b.odt", List.of(HEADER_1, FOOTER_2));
+        builder.addError("broken.odt");
+        builder.addTemplate("a.odt", List.of(HEADER_1, FOOTER_1));
+        builder.addTemplate("c/c.odt", List.of(HEADER_2, FOOTER_1));
+        index = builder.build();
+    }
+
+    @Test
+    public void testTemplatesAreNumberedByPath() {
+        assertEquals(4, index.size());
+        assertEquals(1, index.getFailedTemplates());
+        assertEquals("a.odt", index.getTemplate(0));
+        assertEquals("d.odt", index.getTemplate(3));
+        assertEquals(List.of("a.odt", "b.odt"), index.paths(index.templatesWith(HEADER_1)));
+    }
+
+    @Test
+    public void testQueries() throws Exception {
+        assertEquals(List.of("a.odt"), index.query(HEADER_1 + " AND NOT " + FOOTER_2));
+        assertEquals(List.of("a.odt", "b.odt", "c/c.odt"), index.query("any(" + HEADER_1 + ", " + HEADER_2 + ")"));
+        assertEquals(List.of("a.odt"), index.query("ALL(" + HEADER_1 + "," + FOOTER_1 + ")"));
+        assertEquals(List.of("c/c.odt", "d.odt"), index.query("NOT " + HEADER_1));
+        assertEquals(List.of("b.odt", "c/c.odt"),
+                index.query("(" + HEADER_2 + " OR " + FOOTER_2 + ") and not [import unknown.odt]"));
+        assertEquals(List.of(), index.query("[import unknown.odt]"));
+    }
+
+    @Test
+    public void testMalformedQueriesAreRejected() {
+        assertThrows(InvalidArgumentException.class, () -> index.query(HEADER_1 + " AND"));
+        assertThrows(InvalidArgumentException.class, () -> index.query("(" + HEADER_1));
+        assertThrows(InvalidArgumentException.class, () -> index.query("[import header_1.odt"));
+        assertThrows(InvalidArgumentException.class, () -> index.query(HEADER_1 + " " + HEADER_2));
+        assertThrows(InvalidArgumentException.class, () -> index.query("header_1.odt"));
+    }
+
+    @Test
+    public void testSavedIndexLoadsWithTheSameContent(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("templates" + BlockIndex.FILE_EXTENSION);
+        index.save(file);
+        BlockIndex loaded = BlockIndex.load(file);
+
+        assertEquals(index.size(), loaded.size());
+        assertEquals(index.getFailedTemplates(), loaded.getFailedTemplates());
+        assertEquals(index.getBlocks(), loaded.getBlocks());
+        for (String block : index.getBlocks()) {
+            assertEquals(index.templatesWith(block), loaded.templatesWith(block));
+        }
+        assertEquals(index.query("NOT " + FOOTER_1), loaded.query("NOT " + FOOTER_1));
+
+        Path notAnIndex = directory.resolve("not_an_index" + BlockIndex.FILE_EXTENSION);
+        Files.writeString(notAnIndex, "[import header_1.odt]");
+        assertThrows(InvalidFileException.class, () -> BlockIndex.load(notAnIndex));
+    }
+}
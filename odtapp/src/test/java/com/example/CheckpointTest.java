@@ -0,0 +1,111 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.exception.InvalidFileException;
+import com.example.model.ScanOptions;
+import com.example.rewrite.RewriteRuleSet;
+import com.example.util.Checkpoint;
+
+public class CheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testResumeReadsRecordedFiles() throws Exception {
+        Path file = directory.resolve("scan.progress");
+        Path start = directory.resolve("templates");
+        try (Checkpoint checkpoint = Checkpoint.forJson(file, start, new ScanOptions())) {
+            checkpoint.record("a/template_1.odt", List.of("[import block_1.odt]"), null);
+            checkpoint.record("b/template_2.odt", null, "Reading error.");
+        }
+
+        try (Checkpoint checkpoint = Checkpoint.forJson(file, start, new ScanOptions())) {
+            assertEquals(List.of("[import block_1.odt]"), checkpoint.get("a/template_1.odt").get().getImportBlocks());
+            assertNull(checkpoint.get("a/template_1.odt").get().getError());
+            assertEquals("Reading error.", checkpoint.get("b/template_2.odt").get().getError());
+            assertFalse(checkpoint.isCompleted("c/template_3.odt"));
+        }
+    }
+
+    @Test
+    public void testTornLastRecordIsIgnored() throws Exception {
+        Path file = directory.resolve("replace.progress");
+        Path start = directory.resolve("templates");
+        RewriteRuleSet rules = RewriteRuleSet.literal("[import block_1.odt]", "[import block_2.odt]");
+        try (Checkpoint checkpoint = Checkpoint.forRewrite(file, start, rules, new ScanOptions())) {
+            checkpoint.record("template_1.odt");
+        }
+        // Simulate a process killed while writing a record
+        Files.write(file, "{\"p\":\"templ".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (Checkpoint checkpoint = Checkpoint.forRewrite(file, start, rules, new ScanOptions())) {
+            assertTrue(checkpoint.isCompleted("template_1.odt"));
+            checkpoint.record("template_2.odt");
+        }
+        try (Checkpoint checkpoint = Checkpoint.forRewrite(file, start, rules, new ScanOptions())) {
+            assertTrue(checkpoint.isCompleted("template_1.odt"));
+            assertTrue(checkpoint.isCompleted("template_2.odt"));
+        }
+    }
+
+    @Test
+    public void testRewriteRecordsAreFlushedAtOnce() throws Exception {
+        Path file = directory.resolve("replace.progress");
+        Path start = directory.resolve("templates");
+        RewriteRuleSet rules = RewriteRuleSet.literal("[import block_1.odt]", "[import block_2.odt]");
+        try (Checkpoint checkpoint = Checkpoint.forRewrite(file, start, rules, new ScanOptions())) {
+            checkpoint.record("template_1.odt");
+            // A process killed now has already written the record
+            try (Checkpoint copy = Checkpoint.forRewrite(Files.copy(file, directory.resolve("killed.progress")),
+                    start, rules, new ScanOptions())) {
+                assertTrue(copy.isCompleted("template_1.odt"));
+            }
+        }
+
+        Path scanFile = directory.resolve("scan.progress");
+        try (Checkpoint checkpoint = Checkpoint.forJson(scanFile, start, new ScanOptions())) {
+            checkpoint.record("template_1.odt", List.of("[import block_1.odt]"), null);
+            // Scan records are flushed in batches
+            assertEquals(1, Files.readAllLines(scanFile).size());
+        }
+    }
+
+    @Test
+    public void testCheckpointOfAnotherRunIsRejected() throws Exception {
+        Path file = directory.resolve("replace.progress");
+        Path start = directory.resolve("templates");
+        try (Checkpoint checkpoint = Checkpoint.forRewrite(file, start,
+                RewriteRuleSet.literal("[import block_1.odt]", "[import block_2.odt]"), new ScanOptions())) {
+            checkpoint.record("template_1.odt");
+        }
+
+        Exception exception = assertThrows(InvalidFileException.class, () -> Checkpoint.forRewrite(file, start,
+                RewriteRuleSet.literal("[import block_1.odt]", "[import block_3.odt]"), new ScanOptions()));
+        assertTrue(exception.getMessage().contains("belongs to a different run"));
+    }
+
+    @Test
+    public void testCompleteDeletesCheckpoint() throws Exception {
+        Path file = directory.resolve("scan.progress");
+        Checkpoint checkpoint = Checkpoint.forJson(file, directory, new ScanOptions());
+        checkpoint.record("template_1.odt", List.of(), null);
+        assertTrue(Files.exists(file));
+        checkpoint.complete();
+        assertFalse(Files.exists(file));
+    }
+}
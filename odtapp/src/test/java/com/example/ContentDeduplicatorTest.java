@@ -0,0 +1,60 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.util.ContentDeduplicator;
+import com.example.util.FileUtil;
+
+public class ContentDeduplicatorTest {
+
+    private static final String TEST_TEMPLATES_ZIP = "src/test/resources/test_templates.zip";
+
+    @Test
+    public void testCopiesHaveTheSameFingerprint(@TempDir Path directory) throws Exception {
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), directory);
+        List<Path> templates = FileUtil.listOdtFiles(directory.toString());
+        Path original = templates.stream().filter(path -> path.toString().endsWith("template_bb02.odt"))
+                .findFirst().get();
+        Path copy = Files.copy(original, directory.resolve("copy.odt"));
+        Path other = templates.stream().filter(path -> !path.equals(original) && !path.equals(copy))
+                .filter(path -> !FileUtil.getImportBlocks(path).equals(FileUtil.getImportBlocks(original)))
+                .findFirst().get();
+        ContentDeduplicator deduplicator = new ContentDeduplicator();
+
+        String fingerprint = deduplicator.fingerprint(original, Files.size(original)).get();
+
+        assertEquals(fingerprint, deduplicator.fingerprint(copy, Files.size(copy)).get());
+        assertNotEquals(fingerprint, deduplicator.fingerprint(other, Files.size(other)).get());
+        assertFalse(ContentDeduplicator.disabled().fingerprint(original, Files.size(original)).isPresent());
+    }
+
+    @Test
+    public void testFileThatIsNotAZipHasNoFingerprint(@TempDir Path directory) throws Exception {
+        Path file = Files.writeString(directory.resolve("broken.odt"), "not a zip");
+
+        assertFalse(new ContentDeduplicator().fingerprint(file, Files.size(file)).isPresent());
+    }
+
+    @Test
+    public void testFirstClaimWins() {
+        ContentDeduplicator deduplicator = new ContentDeduplicator();
+        CompletableFuture<ContentDeduplicator.Content> first = new CompletableFuture<>();
+        CompletableFuture<ContentDeduplicator.Content> second = new CompletableFuture<>();
+
+        assertSame(first, deduplicator.claim("a", first));
+        assertSame(first, deduplicator.claim("a", second));
+        assertSame(second, deduplicator.claim("b", second));
+    }
+}
@@ -0,0 +1,222 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.util.DirectoryWalker;
+import com.example.util.WalkFilter;
+
+public class DirectoryWalkerTest {
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        Files.createDirectories(root.resolve("b/sub"));
+        Files.createDirectories(root.resolve("a"));
+        Files.createDirectories(root.resolve("skipped"));
+        Files.createFile(root.resolve("c.odt"));
+        Files.createFile(root.resolve("a/a1.odt"));
+        Files.createFile(root.resolve("b/sub/b1.txt"));
+        Files.createFile(root.resolve("skipped/s1.odt"));
+    }
+
+    @Test
+    public void testSortedWalkVisitsEntriesByName() {
+        List<String> events = new ArrayList<>();
+        new DirectoryWalker(true).walk(root, recordingVisitor(events));
+        assertEquals(List.of("pre ", "pre a", "file a1.odt", "post a", "pre b", "pre sub", "file b1.txt",
+                "post sub", "post b", "file c.odt", "pre skipped", "post skipped", "post "), events);
+    }
+
+    @Test
+    public void testSortedWalkDoesNotListFilesAddedWhileVisiting() {
+        List<String> events = new ArrayList<>();
+        DirectoryWalker.Visitor recorder = recordingVisitor(events);
+        // Every visited file is replaced the way a rewrite does it, through a new file renamed into place
+        new DirectoryWalker(true).walk(root, new DirectoryWalker.Visitor() {
+            @Override
+            public boolean preVisitDirectory(Path directory, BasicFileAttributes attrs) {
+                return recorder.preVisitDirectory(directory, attrs);
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {
+                recorder.visitFile(file, attrs);
+                try {
+                    Path workingCopy = file.resolveSibling("z_" + DirectoryWalker.getName(file) + ".tmp");
+                    Files.createFile(workingCopy);
+                    Files.move(workingCopy, file, StandardCopyOption.REPLACE_EXISTING);
+                    Files.createFile(file.resolveSibling("zz_" + DirectoryWalker.getName(file)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void postVisitDirectory(Path directory) {
+                recorder.postVisitDirectory(directory);
+            }
+        });
+        assertEquals(List.of("pre ", "pre a", "file a1.odt", "post a", "pre b", "pre sub", "file b1.txt",
+                "post sub", "post b", "file c.odt", "pre skipped", "post skipped", "post "), events);
+    }
+
+    @Test
+    public void testStreamingWalkVisitsEveryFile() {
+        List<String> events = new ArrayList<>();
+        new DirectoryWalker(false).walk(root, recordingVisitor(events));
+        assertTrue(events.contains("file a1.odt"));
+        assertTrue(events.contains("file b1.txt"));
+        assertTrue(events.contains("file c.odt"));
+        assertTrue(events.stream().noneMatch(event -> event.equals("file s1.odt")),
+                "Entries of skipped directories should not be visited");
+    }
+
+    @Test
+    public void testWalkOfSingleFile() {
+        List<String> events = new ArrayList<>();
+        new DirectoryWalker(true).walk(root.resolve("c.odt"), recordingVisitor(events));
+        assertEquals(List.of("file c.odt"), events);
+    }
+
+    @Test
+    public void testWalkOfMissingPathReportsFailure() {
+        List<String> events = new ArrayList<>();
+        new DirectoryWalker(true).walk(root.resolve("missing"), recordingVisitor(events));
+        assertEquals(List.of("failed missing"), events);
+    }
+
+    @Test
+    public void testExcludedDirectoryIsNotListed() {
+        List<String> events = new ArrayList<>();
+        WalkFilter filter = new WalkFilter(List.of(), List.of("b", "*.txt"), Integer.MAX_VALUE, false);
+        new DirectoryWalker(true, filter).walk(root, recordingVisitor(events));
+        assertEquals(List.of("pre ", "pre a", "file a1.odt", "post a", "file c.odt", "pre skipped",
+                "post skipped", "post "), events);
+    }
+
+    @Test
+    public void testIncludePatternsSelectFiles() {
+        List<String> events = new ArrayList<>();
+        WalkFilter filter = new WalkFilter(List.of("a/*.odt", "**/*.{txt,doc}"), List.of(), Integer.MAX_VALUE,
+                false);
+        new DirectoryWalker(true, filter).walk(root, recordingVisitor(events));
+        assertEquals(List.of("pre ", "pre a", "file a1.odt", "post a", "pre b", "pre sub", "file b1.txt",
+                "post sub", "post b", "pre skipped", "post skipped", "post "), events);
+    }
+
+    @Test
+    public void testMaxDepthStopsDescent() {
+        List<String> events = new ArrayList<>();
+        WalkFilter filter = new WalkFilter(List.of(), List.of(), 2, false);
+        new DirectoryWalker(true, filter).walk(root, recordingVisitor(events));
+        assertEquals(List.of("pre ", "pre a", "file a1.odt", "post a", "pre b", "post b", "file c.odt",
+                "pre skipped", "post skipped", "post "), events);
+    }
+
+    @Test
+    public void testIgnoreFilesApplyToTheirSubtree() throws IOException {
+        Files.writeString(root.resolve(WalkFilter.IGNORE_FILE_NAME), "# drafts\n/c.odt\nsub/\n");
+        Files.writeString(root.resolve("a").resolve(WalkFilter.IGNORE_FILE_NAME), "a1.*\n!kept.odt\n");
+        Files.createFile(root.resolve("a/a2.odt"));
+        Files.createFile(root.resolve("a/c.odt"));
+        List<String> events = new ArrayList<>();
+        new DirectoryWalker(true).walk(root, recordingVisitor(events));
+        assertEquals(List.of("pre ", "file .odtappignore", "pre a", "file .odtappignore", "file a2.odt",
+                "file c.odt", "post a", "pre b", "post b", "pre skipped", "post skipped", "post "), events);
+    }
+
+    @Test
+    public void testLinksAreFollowedOnlyOnRequest() throws IOException {
+        Files.createSymbolicLink(root.resolve("c_link.odt"), root.resolve("c.odt"));
+        Files.createSymbolicLink(root.resolve("link_a"), root.resolve("a"));
+        // A link back to the root would make the walk endless
+        Files.createSymbolicLink(root.resolve("b/up"), root);
+
+        List<String> events = new ArrayList<>();
+        List<LogRecord> warnings = new ArrayList<>();
+        Logger logger = Logger.getLogger(DirectoryWalker.class.getName());
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel() == Level.WARNING) {
+                    warnings.add(record);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        logger.addHandler(handler);
+        try {
+            new DirectoryWalker(true).walk(root, recordingVisitor(events));
+        } finally {
+            logger.removeHandler(handler);
+        }
+        assertEquals(List.of("pre ", "pre a", "file a1.odt", "post a", "pre b", "pre sub", "file b1.txt",
+                "post sub", "post b", "file c.odt", "pre skipped", "post skipped", "post "), events);
+        // Skipped links are reported, so a scan does not shrink unnoticed
+        List<Object> skippedLinks = new ArrayList<>();
+        for (LogRecord warning : warnings) {
+            skippedLinks.add(warning.getParameters()[0]);
+        }
+        assertEquals(List.of(root.resolve("b/up"), root.resolve("c_link.odt"), root.resolve("link_a")),
+                skippedLinks);
+
+        events.clear();
+        WalkFilter filter = new WalkFilter(List.of(), List.of(), Integer.MAX_VALUE, false, true);
+        new DirectoryWalker(true, filter).walk(root, recordingVisitor(events));
+        assertEquals(List.of("pre ", "pre a", "file a1.odt", "post a", "pre b", "pre sub", "file b1.txt",
+                "post sub", "post b", "file c.odt", "file c_link.odt", "pre link_a", "file a1.odt",
+                "post link_a", "pre skipped", "post skipped", "post "), events);
+    }
+
+    private DirectoryWalker.Visitor recordingVisitor(List<String> events) {
+        return new DirectoryWalker.Visitor() {
+            @Override
+            public boolean preVisitDirectory(Path directory, BasicFileAttributes attrs) {
+                events.add("pre " + (directory.equals(root) ? "" : DirectoryWalker.getName(directory)));
+                return !DirectoryWalker.getName(directory).equals("skipped");
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {
+                events.add("file " + DirectoryWalker.getName(file));
+            }
+
+            @Override
+            public void visitFileFailed(Path path, IOException exception) {
+                events.add("failed " + DirectoryWalker.getName(path));
+            }
+
+            @Override
+            public void postVisitDirectory(Path directory) {
+                events.add("post " + (directory.equals(root) ? "" : DirectoryWalker.getName(directory)));
+            }
+        };
+    }
+}
@@ -0,0 +1,97 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.exception.InvalidArgumentException;
+import com.example.odt.ExtractionRule;
+import com.example.odt.ExtractionRuleSet;
+import com.example.odt.OdtFile;
+
+public class ExtractionRuleSetTest {
+
+    private static final String CONTENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<office:document-content xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\""
+            + " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\""
+            + " xmlns:xlink=\"http://www.w3.org/1999/xlink\"><office:body><office:text>"
+            + "<text:user-field-decls><text:user-field-decl text:name=\"customer\"/>"
+            + "<text:user-field-decl text:name=\"date\"/></text:user-field-decls>"
+            + "<text:p><text:text-input text:description=\"import\">[import <text:span>block_1.odt</text:span>]"
+            + "</text:text-input><text:text-input text:description=\"note\">Check &amp; sign</text:text-input>"
+            + "<text:text-input>no description</text:text-input></text:p>"
+            + "<text:section><text:section-source xlink:href=\"../common/footer.odt\"/></text:section>"
+            + "<text:p><text:text-input text:description=\"import\">[import block_1.odt]</text:text-input>"
+            + "<text:user-field-get text:name=\"customer\"/></text:p>"
+            + "</office:text></office:body></office:document-content>";
+    private static final String STYLES = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<office:document-styles xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\""
+            + " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\"><office:master-styles>"
+            + "<text:p><text:text-input text:description=\"import\">[import header_1.odt]</text:text-input>"
+            + "<text:user-field-get text:name=\"page\"/></text:p>"
+            + "</office:master-styles></office:document-styles>";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testExtractsEverySectionInOnePass() throws Exception {
+        ExtractionRuleSet rules = ExtractionRuleSet.of(List.of(
+                ExtractionRule.parse("fields = text:user-field-decl/@text:name"),
+                ExtractionRule.parse("inputs = text:text-input[@text:description][@text:description!='import']/text()"),
+                ExtractionRule.parse("sectionLinks = text:section-source/@xlink:href"),
+                ExtractionRule.parse("fields = text:user-field-get/@text:name"),
+                ExtractionRule.parse("unused = text:variable-decl/@text:name")));
+        List<byte[]> parts = List.of(CONTENT.getBytes(StandardCharsets.UTF_8),
+                STYLES.getBytes(StandardCharsets.UTF_8));
+        ExtractionRuleSet.Result result = rules.extract(parts);
+
+        // The import blocks are the same as the DOM scan finds
+        assertEquals(OdtFile.parseImportBlocks(parts).get(), result.getImportBlocks());
+        assertEquals(List.of("[import block_1.odt]", "[import header_1.odt]"), result.getImportBlocks());
+        assertEquals(Map.of("fields", List.of("customer", "date", "page"), "inputs", List.of("Check & sign"),
+                "sectionLinks", List.of("../common/footer.odt")), result.getSections());
+        assertEquals(List.of("fields", "inputs", "sectionLinks"), List.copyOf(result.getSections().keySet()));
+    }
+
+    @Test
+    public void testNoMatchesAreNull() throws Exception {
+        ExtractionRuleSet.Result result = ExtractionRuleSet
+                .of(List.of(ExtractionRule.parse("variables = text:variable-decl/@text:name")))
+                .extract(List.of("<empty/>".getBytes(StandardCharsets.UTF_8)));
+        assertNull(result.getImportBlocks());
+        assertNull(result.getSections());
+        assertThrows(IOException.class, () -> ExtractionRuleSet.NONE
+                .extract(List.of("<unclosed>".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testParseRulesFile() throws Exception {
+        Path rulesFile = tempDir.resolve("extract.rules");
+        Files.writeString(rulesFile, "# Fields\n\nfields = text:user-field-decl/@text:name\n"
+                + "inputs = text:text-input[@text:description='note']/text()\n");
+        ExtractionRuleSet rules = ExtractionRuleSet.parse(rulesFile);
+        assertEquals(2, rules.getRules().size());
+        assertEquals("inputs = text:text-input[@text:description='note']/text()",
+                rules.getRules().get(1).toString());
+
+        Files.writeString(rulesFile, "fields = text:user-field-decl/@text:name\nfields text:user-field-decl\n");
+        InvalidArgumentException e = assertThrows(InvalidArgumentException.class,
+                () -> ExtractionRuleSet.parse(rulesFile));
+        assertTrue(e.getMessage().startsWith("Invalid rule on line 2"));
+        assertThrows(InvalidArgumentException.class,
+                () -> ExtractionRule.parse("inputs = text:text-input[text:description]/text()"));
+        assertThrows(InvalidArgumentException.class, () -> ExtractionRule.parse("inputs = text:text-input"));
+    }
+}
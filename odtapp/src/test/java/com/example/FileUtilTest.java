@@ -3,11 +3,11 @@ package com.example;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyInt;
-import static org.mockito.ArgumentMatchers.anySet;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
@@ -16,26 +16,50 @@ import static org.mockito.Mockito.when;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.MockedStatic;
 
+import com.example.concurrent.Deadline;
 import com.example.exception.AbortException;
 import com.example.exception.InvalidFileException;
+import com.example.logging.RunSummary;
 import com.example.model.JsonItem;
+import com.example.model.ScanOptions;
+import com.example.model.StatsReport;
+import com.example.model.VerifyReport;
+import com.example.odt.OdtParts;
+import com.example.odt.OdtVerifier;
+import com.example.rewrite.RewriteRuleSet;
+import com.example.util.Checkpoint;
+import com.example.util.ContentDeduplicator;
 import com.example.util.FileUtil;
+import com.example.util.ImportBlockCache;
 import com.example.util.JsonUtil;
+import com.example.util.ScanContext;
+import com.example.util.WalkFilter;
+import com.google.gson.Gson;
 
 public class FileUtilTest {
 
@@ -130,24 +154,26 @@ public class FileUtilTest {
     @Test
     public void testListOdtFilesVisitFileFailed() throws IOException {
         Path startPath = Paths.get("testDir");
-        Path failedFilePath = startPath.resolve("failedFile.odt");
 
         // Mock the static methods of Files class
         try (MockedStatic<Files> filesMock = mockStatic(Files.class)) {
 
-            // Mock the behavior of Files.walkFileTree to simulate visitFileFailed
-            filesMock.when(() -> Files.walkFileTree(eq(startPath), anySet(), anyInt(), any()))
-                    .thenAnswer(invocation -> {
-                        SimpleFileVisitor<Path> visitor = invocation.getArgument(3);
-                        visitor.visitFileFailed(failedFilePath, new IOException("Simulated failure"));
-                        return null;
-                    });
+            // Mock the behavior of Files.readAttributes to simulate a failed visit
+            filesMock.when(() -> Files.readAttributes(eq(startPath), eq(BasicFileAttributes.class)))
+                    .thenThrow(new IOException("Simulated failure"));
             List<Path> result = FileUtil.listOdtFiles(startPath.toString());
             assertEquals(Collections.emptyList(), result,
                     "Verify that the result is empty, as no .odt files should be added");
         }
     }
 
+    @Test
+    public void testListOdtFilesInNameOrder() {
+        List<Path> odtFiles = FileUtil.listOdtFiles(TEST_DIRECTORY);
+        assertEquals(List.of(Path.of(SUBDIR1, TEST_FILE1_ODT), Path.of(SUBSUBDIR1, TEST_FILE3_ODT),
+                Path.of(TEST_DIRECTORY, TEST_FILE5_ODT)), odtFiles);
+    }
+
     @Test
     public void testGenerateDataForDirectory() {
         JsonItem jsonItem = FileUtil.generateData(new File(TEST_DIRECTORY));
@@ -223,6 +249,531 @@ public class FileUtilTest {
         assertTrue(JsonUtil.areJsonFilesEqual(referenceJson, outputJson), "The JSON files should be equal");
     }
 
+    @Test
+    public void testMergeShardedJsonFilesForTestTemplates(@TempDir Path outputDirectory) throws Exception {
+        Path singleRunJson = outputDirectory.resolve("single.json");
+        FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, singleRunJson.toString());
+
+        // Scan the same tree in three shards and merge the partial reports
+        List<String> partialJsons = new ArrayList<>();
+        for (int shard = 0; shard < 3; shard++) {
+            ScanOptions options = new ScanOptions();
+            options.setShardIndex(shard);
+            options.setShardCount(3);
+            Path partialJson = outputDirectory.resolve("shard" + shard + ".json");
+            FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, partialJson.toString(), options);
+            partialJsons.add(partialJson.toString());
+        }
+        Path mergedJson = outputDirectory.resolve("merged.json");
+        FileUtil.mergeJsonFiles(partialJsons, mergedJson.toString());
+
+        assertEquals(Files.readString(singleRunJson), Files.readString(mergedJson),
+                "The merged report should be identical to the report of a single scan");
+    }
+
+    @Test
+    public void testMergeShardedJsonFilesKeepsExtractedAndIncompleteFields(@TempDir Path outputDirectory)
+            throws Exception {
+        Path rulesFile = Files.writeString(outputDirectory.resolve("extract.rules"),
+                "styles = style:style[@style:family='paragraph']/@style:name\n");
+        ScanOptions singleOptions = new ScanOptions();
+        singleOptions.setExtractRulesPath(rulesFile.toString());
+        Path singleRunJson = outputDirectory.resolve("single.json");
+        FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, singleRunJson.toString(), singleOptions);
+
+        List<String> partialJsons = new ArrayList<>();
+        for (int shard = 0; shard < 2; shard++) {
+            ScanOptions options = new ScanOptions();
+            options.setExtractRulesPath(rulesFile.toString());
+            options.setShardIndex(shard);
+            options.setShardCount(2);
+            Path partialJson = outputDirectory.resolve("shard" + shard + ".json");
+            FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, partialJson.toString(), options);
+            partialJsons.add(partialJson.toString());
+        }
+        Path mergedJson = outputDirectory.resolve("merged.json");
+        FileUtil.mergeJsonFiles(partialJsons, mergedJson.toString());
+        assertTrue(Files.readString(mergedJson).contains("\"extracted\""));
+        assertEquals(Files.readString(singleRunJson), Files.readString(mergedJson));
+
+        // Files and directories a time budget left unread stay incomplete
+        Path first = Files.writeString(outputDirectory.resolve("budget0.json"),
+                "{\"name\":\"t\",\"type\":\"directory\",\"children\":["
+                        + "{\"name\":\"a.odt\",\"type\":\"file\",\"incomplete\":true},"
+                        + "{\"name\":\"sub\",\"type\":\"directory\",\"incomplete\":true}]}");
+        Path second = Files.writeString(outputDirectory.resolve("budget1.json"),
+                "{\"name\":\"t\",\"type\":\"directory\",\"children\":["
+                        + "{\"name\":\"b.odt\",\"type\":\"file\",\"importBlocks\":[\"[import block_1.odt]\"]},"
+                        + "{\"name\":\"sub\",\"type\":\"directory\",\"children\":["
+                        + "{\"name\":\"c.odt\",\"type\":\"file\"}]}]}");
+        Path budgetJson = outputDirectory.resolve("budget.json");
+        FileUtil.mergeJsonFiles(List.of(first.toString(), second.toString()), budgetJson.toString());
+        JsonItem merged = new Gson().fromJson(Files.readString(budgetJson), JsonItem.class);
+        assertEquals(Boolean.TRUE, merged.getChildren().get(0).getIncomplete());
+        assertNull(merged.getChildren().get(1).getIncomplete());
+        assertEquals(Boolean.TRUE, merged.getChildren().get(2).getIncomplete());
+        assertEquals("c.odt", merged.getChildren().get(2).getChildren().get(0).getName());
+    }
+
+    @Test
+    public void testMergeJsonFilesRejectsOverlappingReports(@TempDir Path outputDirectory) throws Exception {
+        Path json = outputDirectory.resolve("full.json");
+        FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, json.toString());
+
+        Exception exception = assertThrows(InvalidFileException.class, () -> FileUtil
+                .mergeJsonFiles(List.of(json.toString(), json.toString()), outputDirectory.resolve("merged.json")
+                        .toString()));
+        assertTrue(exception.getMessage().contains("appears in more than one partial report"));
+        assertFalse(Files.exists(outputDirectory.resolve("merged.json")));
+    }
+
+    @Test
+    public void testStatsMatchJsonScan(@TempDir Path outputDirectory) throws Exception {
+        Path statsFile = outputDirectory.resolve("stats.json");
+        ScanOptions options = new ScanOptions();
+        options.setTop(3);
+        FileUtil.createStatsFile(TEST_TEMPLATES_DIRECTORY, statsFile.toString(), options);
+        StatsReport report = new Gson().fromJson(Files.readString(statsFile), StatsReport.class);
+
+        // Count the same figures from the nested report
+        Map<String, Long> counts = new HashMap<>();
+        long[] templates = new long[3];
+        countBlocks(FileUtil.generateData(new File(TEST_TEMPLATES_DIRECTORY)), counts, templates);
+
+        assertTrue(report.isExact());
+        assertEquals(templates[0], report.getTemplates());
+        assertEquals(templates[1], report.getTemplatesWithoutBlocks().size());
+        assertEquals(templates[2], report.getFailedTemplates());
+        assertEquals(counts.size(), report.getDistinctBlocks());
+        assertEquals(counts.values().stream().mapToLong(Long::longValue).sum(), report.getBlockUsages());
+        assertEquals(counts.size(), report.getBlocks().size());
+        for (StatsReport.BlockCount blockCount : report.getBlocks()) {
+            assertEquals(counts.get(blockCount.getBlock()), blockCount.getCount());
+        }
+        assertEquals(report.getBlocks().subList(0, 3), report.getTopBlocks());
+        assertEquals(templates[2], report.getErrorsByDirectory().values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void testPipelineWritesSameJsonAsTreeScan(@TempDir Path outputDirectory) throws Exception {
+        Path treeFile = outputDirectory.resolve("tree.json");
+        Path pipelineFile = outputDirectory.resolve("pipeline.json");
+        FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, treeFile.toString());
+        ScanOptions options = new ScanOptions();
+        options.setPipeline(true);
+        options.setIoThreads(2);
+        options.setDedup(true);
+        FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, pipelineFile.toString(), options);
+
+        assertEquals(Files.readString(treeFile), Files.readString(pipelineFile));
+        assertFalse(Files.exists(outputDirectory.resolve("pipeline.json.tmp")));
+    }
+
+    @Test
+    public void testPipelineFailsWithoutPartialJsonWhenAFileThrows(@TempDir Path outputDirectory)
+            throws Exception {
+        // Recording a result runs on the parser thread, which the exception escapes
+        ImportBlockCache failingCache = new ImportBlockCache() {
+            @Override
+            public void put(Path file, BasicFileAttributes attrs, OdtParts parts, List<String> importBlocks) {
+                throw new IllegalStateException("Simulated failure");
+            }
+        };
+        for (int readAhead : new int[] { 0, 4 }) {
+            Path jsonFile = outputDirectory.resolve("pipeline" + readAhead + ".json");
+            ScanOptions options = new ScanOptions();
+            options.setPipeline(true);
+            options.setReadAhead(readAhead);
+            assertTimeoutPreemptively(Duration.ofSeconds(60), () -> FileUtil
+                    .createJsonFile(TEST_TEMPLATES_DIRECTORY, jsonFile.toString(), options, failingCache));
+
+            assertFalse(Files.exists(jsonFile), "A truncated report must not be written");
+            assertFalse(Files.exists(outputDirectory.resolve(jsonFile.getFileName() + ".tmp")));
+        }
+    }
+
+    @Test
+    public void testReadAheadWritesSameJsonAsTreeScan(@TempDir Path outputDirectory) throws Exception {
+        Path treeFile = outputDirectory.resolve("tree.json");
+        Path readAheadFile = outputDirectory.resolve("read-ahead.json");
+        ScanOptions options = new ScanOptions();
+        options.setReadAhead(4);
+        options.setReadAheadMemory(1);
+        options.setEmbeddedObjects(true);
+        FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, readAheadFile.toString(), options);
+        ScanOptions treeOptions = new ScanOptions();
+        treeOptions.setEmbeddedObjects(true);
+        FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, treeFile.toString(), treeOptions);
+
+        assertEquals(Files.readString(treeFile), Files.readString(readAheadFile));
+    }
+
+    @Test
+    public void testTimeBudgetReadsShallowFilesFirst() {
+        // The executor only gets to run three reads before the deadline
+        List<Runnable> dropped = Collections.synchronizedList(new ArrayList<>());
+        int[] started = new int[1];
+        ScanContext context = new ScanContext();
+        context.setDeadline(Deadline.after(200));
+        context.setFileExecutor(task -> {
+            if (started[0]++ < 3) {
+                task.run();
+            } else {
+                dropped.add(task);
+            }
+        });
+        JsonItem root = FileUtil.generateData(new File(TEST_TEMPLATES_DIRECTORY), context);
+
+        List<JsonItem> files = new ArrayList<>();
+        collectFiles(root, files);
+        List<String> read = new ArrayList<>();
+        for (JsonItem file : files) {
+            if (file.getIncomplete() == null) {
+                read.add(file.getName());
+            } else {
+                assertNull(file.getImportBlocks(), file.getName());
+            }
+        }
+        assertEquals(List.of("block_1.odt", "block_1a.odt", "block_2.odt"), read);
+        assertEquals(files.size() - 3, context.getSummary().get(RunSummary.INCOMPLETE));
+
+        // Reads finishing after the deadline leave the tree unchanged
+        dropped.forEach(Runnable::run);
+        for (JsonItem file : files) {
+            assertEquals(!read.contains(file.getName()), file.getIncomplete() != null, file.getName());
+        }
+    }
+
+    @Test
+    public void testTimeBudgetIsKeptWhileReadsBlock() throws Exception {
+        // The executor blocks like one waiting for a free slot, or a read of a slow file
+        CountDownLatch release = new CountDownLatch(1);
+        ScanContext context = new ScanContext();
+        context.setDeadline(Deadline.after(200));
+        context.setFileExecutor(task -> {
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            task.run();
+        });
+        long start = System.nanoTime();
+        JsonItem root = FileUtil.generateData(new File(TEST_TEMPLATES_DIRECTORY), context);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis < 10_000, "Took " + elapsedMillis + " ms");
+
+        List<JsonItem> files = new ArrayList<>();
+        collectFiles(root, files);
+        for (JsonItem file : files) {
+            assertEquals(Boolean.TRUE, file.getIncomplete(), file.getName());
+        }
+        assertEquals(files.size(), context.getSummary().get(RunSummary.INCOMPLETE));
+
+        // The read released after the deadline leaves the tree unchanged
+        release.countDown();
+        Thread.sleep(200);
+        for (JsonItem file : files) {
+            assertEquals(Boolean.TRUE, file.getIncomplete(), file.getName());
+            assertNull(file.getImportBlocks(), file.getName());
+        }
+    }
+
+    @Test
+    public void testTimeBudgetWritesIncompleteJson(@TempDir Path outputDirectory) throws Exception {
+        Path treeFile = outputDirectory.resolve("tree.json");
+        Path budgetFile = outputDirectory.resolve("budget.json");
+        FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, treeFile.toString());
+        ScanOptions options = new ScanOptions();
+        options.setAdaptive(true);
+        options.setTimeBudgetMillis(60000);
+        FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, budgetFile.toString(), options);
+        assertEquals(Files.readString(treeFile), Files.readString(budgetFile));
+
+        // A directory the walk does not enter in time is reported incomplete
+        ScanContext context = new ScanContext();
+        context.setDeadline(Deadline.after(0));
+        JsonItem root = FileUtil.generateData(new File(TEST_TEMPLATES_DIRECTORY), context);
+        assertEquals(Boolean.TRUE, root.getIncomplete());
+        assertNull(root.getChildren());
+    }
+
+    @Test
+    public void testResourceLimitsFailOnlyOffendingFile(@TempDir Path directory) throws Exception {
+        Files.copy(Paths.get(TEST_TEMPLATES_DIRECTORY, "block_1.odt"), directory.resolve("block_1.odt"));
+        OdtFixtures.createOdt(directory.resolve("bomb.odt"), "<content>" + " ".repeat(4 * 1024 * 1024) + "</content>");
+        Path jsonFile = directory.resolve("out.json");
+        ScanOptions options = new ScanOptions();
+        options.setAdaptive(true);
+        options.setMaxEntrySize(1);
+        FileUtil.createJsonFile(directory.toString(), jsonFile.toString(), options);
+
+        JsonItem root = new Gson().fromJson(Files.readString(jsonFile), JsonItem.class);
+        assertEquals("block_1.odt", root.getChildren().get(0).getName());
+        assertNull(root.getChildren().get(0).getError());
+        assertEquals("bomb.odt", root.getChildren().get(1).getName());
+        assertTrue(root.getChildren().get(1).getError().contains("more than the limit"),
+                root.getChildren().get(1).getError());
+    }
+
+    @Test
+    public void testResourceLimitsApplyToReplace(@TempDir Path directory) throws Exception {
+        String block = "[import block_1.odt]";
+        String newBlock = "[import block_1_limited.odt]";
+        Files.copy(Paths.get(TEST_TEMPLATES_DIRECTORY, "template_bb02.odt"), directory.resolve("template.odt"));
+        Path bomb = OdtFixtures.createOdt(directory.resolve("bomb.odt"),
+                "<office:document xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\""
+                        + " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\"><text:p>"
+                        + "<text:text-input text:description=\"import\">" + block + "</text:text-input>"
+                        + " ".repeat(2 * 1024 * 1024) + "</text:p></office:document>");
+        ScanOptions options = new ScanOptions();
+        options.setMaxEntrySize(1);
+
+        for (boolean streaming : new boolean[] { false, true }) {
+            options.setStreaming(streaming);
+            FileUtil.replaceBlocks(directory.toString(), block, newBlock, options);
+
+            assertTrue(FileUtil.getImportBlocks(directory.resolve("template.odt")).contains(newBlock));
+            try (ZipFile zip = new ZipFile(bomb.toFile())) {
+                String content = new String(zip.getInputStream(zip.getEntry("content.xml")).readAllBytes(),
+                        StandardCharsets.UTF_8);
+                assertTrue(content.contains(block), "The file over the limit should not be rewritten");
+            }
+            FileUtil.replaceBlocks(directory.toString(), newBlock, block, options);
+        }
+    }
+
+    @Test
+    public void testSkippingFieldlessPartsOnlyChangesBrokenParts(@TempDir Path directory) throws Exception {
+        String header = "<office:document xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\""
+                + " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\">";
+        String content = header + "<text:p><text:text-input text:description=\"import\">[import block_1.odt]"
+                + "</text:text-input></text:p></office:document>";
+        Map<String, String> styles = Map.of(
+                "intact.odt", header + "<text:p/></office:document>",
+                "malformed.odt", header + "<text:p></text:span></office:document>",
+                "deep.odt", header + "<text:span>".repeat(1500) + "</text:span>".repeat(1500) + "</office:document>",
+                "truncated.odt", header + "<text:p/>");
+        for (Map.Entry<String, String> entry : styles.entrySet()) {
+            Map<String, String> entries = new LinkedHashMap<>();
+            entries.put("content.xml", content);
+            entries.put("styles.xml", entry.getValue());
+            OdtFixtures.createOdt(directory.resolve(entry.getKey()), entries);
+        }
+        ScanOptions skipping = new ScanOptions();
+        skipping.setSkipFieldlessParts(true);
+        Map<String, JsonItem> byDefault = scanFiles(directory, new ScanOptions());
+        Map<String, JsonItem> skipped = scanFiles(directory, skipping);
+
+        // Broken parts without fields fail the file by default and are not looked at when skipped
+        for (String name : List.of("malformed.odt", "deep.odt")) {
+            assertNotNull(byDefault.get(name).getError(), name);
+            assertNull(byDefault.get(name).getImportBlocks(), name);
+            assertNull(skipped.get(name).getError(), name);
+            assertEquals(List.of("[import block_1.odt]"), skipped.get(name).getImportBlocks(), name);
+        }
+        assertNull(byDefault.get("intact.odt").getError());
+        assertEquals(byDefault.get("intact.odt").getImportBlocks(), skipped.get("intact.odt").getImportBlocks());
+        assertNotNull(byDefault.get("truncated.odt").getError());
+        assertEquals(byDefault.get("truncated.odt").getError(), skipped.get("truncated.odt").getError());
+    }
+
+    private static Map<String, JsonItem> scanFiles(Path directory, ScanOptions options) throws Exception {
+        Path jsonFile = Files.createTempFile("skip-fieldless-", ".json");
+        try {
+            FileUtil.createJsonFile(directory.toString(), jsonFile.toString(), options);
+            Map<String, JsonItem> files = new HashMap<>();
+            for (JsonItem file : new Gson().fromJson(Files.readString(jsonFile), JsonItem.class).getChildren()) {
+                files.put(file.getName(), file);
+            }
+            return files;
+        } finally {
+            Files.deleteIfExists(jsonFile);
+        }
+    }
+
+    @Test
+    public void testExtractionRulesAddSectionsToJson(@TempDir Path outputDirectory) throws Exception {
+        Path treeFile = outputDirectory.resolve("tree.json");
+        Path extractFile = outputDirectory.resolve("extract.json");
+        Path rulesFile = Files.writeString(outputDirectory.resolve("extract.rules"),
+                "styles = style:style[@style:family='paragraph']/@style:name\n");
+        FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, treeFile.toString());
+        ScanOptions options = new ScanOptions();
+        options.setExtractRulesPath(rulesFile.toString());
+        FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, extractFile.toString(), options);
+
+        // The import blocks are unchanged, every template has a paragraph style
+        JsonItem tree = new Gson().fromJson(Files.readString(treeFile), JsonItem.class);
+        JsonItem extract = new Gson().fromJson(Files.readString(extractFile), JsonItem.class);
+        List<JsonItem> files = new ArrayList<>();
+        collectFiles(extract, files);
+        for (JsonItem file : files) {
+            if (file.getError() == null) {
+                assertTrue(file.getExtracted().get("styles").contains("Standard"), file.getName());
+                file.setExtracted(null);
+            }
+        }
+        assertEquals(tree, extract);
+    }
+
+    @Test
+    public void testVerifyReportsInvalidTemplate(@TempDir Path outputDirectory) throws Exception {
+        Path reportFile = outputDirectory.resolve("verify.json");
+        VerifyReport report = FileUtil.createVerifyFile(TEST_TEMPLATES_DIRECTORY, reportFile.toString(),
+                new ScanOptions());
+
+        assertEquals(report, new Gson().fromJson(Files.readString(reportFile), VerifyReport.class));
+        assertEquals(21, report.getTemplates());
+        assertEquals(20, report.getValidTemplates());
+        assertEquals(1, report.getInvalidTemplates());
+        assertEquals("subdirectory2/invalid_odt_file.odt", report.getFailures().get(0).getPath());
+        assertEquals(OdtVerifier.ZIP_CHECK, report.getFailures().get(0).getProblems().get(0).getCheck());
+    }
+
+    /**
+     * Adds the blocks of every file item to the counts and counts the files,
+     * files without blocks and failed files.
+     */
+    private static void countBlocks(JsonItem item, Map<String, Long> counts, long[] templates) {
+        if (item.isFileType()) {
+            templates[0]++;
+            if (item.getError() != null) {
+                templates[2]++;
+            } else if (item.getImportBlocks() == null) {
+                templates[1]++;
+            } else {
+                item.getImportBlocks().forEach(block -> counts.merge(block, 1L, Long::sum));
+            }
+        } else if (item.getChildren() != null) {
+            item.getChildren().forEach(child -> countBlocks(child, counts, templates));
+        }
+    }
+
+    private static void collectFiles(JsonItem item, List<JsonItem> files) {
+        if (item.isFileType()) {
+            files.add(item);
+        } else if (item.getChildren() != null) {
+            item.getChildren().forEach(child -> collectFiles(child, files));
+        }
+    }
+
+    @Test
+    public void testDeduplicatedScanMatchesPlainScan(@TempDir Path directory) throws Exception {
+        // Two customer folders with copies of every template
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), directory.resolve("customer_a"));
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), directory.resolve("customer_b"));
+        long templateCount = FileUtil.listOdtFiles(directory.resolve("customer_a").toString()).size();
+        Path plainJson = directory.resolve("plain.json");
+        Path dedupJson = directory.resolve("dedup.json");
+        ScanOptions options = new ScanOptions();
+        options.setDedup(true);
+        options.setAdaptive(true);
+
+        FileUtil.createJsonFile(directory.toString(), plainJson.toString());
+        FileUtil.createJsonFile(directory.toString(), dedupJson.toString(), options);
+
+        assertEquals(Files.readString(plainJson), Files.readString(dedupJson));
+
+        ScanContext context = new ScanContext();
+        context.setDeduplicator(new ContentDeduplicator());
+        FileUtil.generateData(directory.toFile(), context);
+        RunSummary summary = context.getSummary();
+        // Every copy in the second folder is taken from the first, except invalid files
+        assertTrue(summary.get(RunSummary.DEDUPLICATED) >= templateCount - summary.get(RunSummary.FAILED) / 2,
+                "Copies should not be read again: " + summary.get(RunSummary.DEDUPLICATED));
+        assertEquals(2 * templateCount, summary.getTotal());
+    }
+
+    @Test
+    public void testJsonOfSeveralInputsReadsEachFileOnce(@TempDir Path directory) throws Exception {
+        Path templates = directory.resolve("templates");
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), templates);
+        // A customer view links to the shared templates and back to itself
+        Path views = directory.resolve("views");
+        Files.createDirectories(views.resolve("customer_a"));
+        Files.createSymbolicLink(views.resolve("customer_a/templates"), templates);
+        Files.createSymbolicLink(views.resolve("customer_a/loop"), views);
+        Path singleJson = directory.resolve("single.json");
+        Path multiJson = directory.resolve("multi.json");
+        ScanOptions options = new ScanOptions();
+        options.setFollowLinks(true);
+
+        FileUtil.createJsonFile(templates.toString(), singleJson.toString());
+        FileUtil.createJsonFile(List.of(templates.toString(), views.toString()), multiJson.toString(), options,
+                ImportBlockCache.disabled());
+
+        Gson gson = new Gson();
+        JsonItem single = gson.fromJson(Files.readString(singleJson), JsonItem.class);
+        JsonItem multi = gson.fromJson(Files.readString(multiJson), JsonItem.class);
+        assertEquals(2, multi.getChildren().size());
+        assertEquals(templates.toString(), multi.getChildren().get(0).getName());
+        assertEquals(views.toString(), multi.getChildren().get(1).getName());
+        assertEquals(gson.toJson(single.getChildren()), gson.toJson(multi.getChildren().get(0).getChildren()));
+        JsonItem customer = multi.getChildren().get(1).getChildren().get(0);
+        assertEquals(1, customer.getChildren().size(), "The loop should not be walked");
+        assertEquals(gson.toJson(single.getChildren()), gson.toJson(customer.getChildren().get(0).getChildren()));
+
+        // Files reached through the link are copied from the first read
+        ScanContext plain = new ScanContext();
+        FileUtil.generateData(templates.toFile(), plain);
+        ScanContext linked = new ScanContext();
+        linked.setWalkFilter(WalkFilter.of(options));
+        linked.setDeduplicator(ContentDeduplicator.byFileKey());
+        FileUtil.generateData(templates.toFile(), linked);
+        FileUtil.generateData(views.toFile(), linked);
+        long read = plain.getSummary().get(RunSummary.READ);
+        assertEquals(read, linked.getSummary().get(RunSummary.READ));
+        assertEquals(read, linked.getSummary().get(RunSummary.DEDUPLICATED));
+    }
+
+    @Test
+    public void testCreateJsonFileResumesFromCheckpoint(@TempDir Path outputDirectory) throws Exception {
+        Path outputJson = outputDirectory.resolve("output.json");
+        Path checkpointFile = outputDirectory.resolve("output.json" + Checkpoint.FILE_EXTENSION);
+        ScanOptions options = new ScanOptions();
+        options.setResume(true);
+
+        // Record one file as read by an interrupted run
+        try (Checkpoint checkpoint = Checkpoint.forJson(checkpointFile, Paths.get(TEST_TEMPLATES_DIRECTORY),
+                options)) {
+            checkpoint.record("template_bb02.odt", List.of("[import from_checkpoint.odt]"), null);
+        }
+
+        FileUtil.createJsonFile(TEST_TEMPLATES_DIRECTORY, outputJson.toString(), options);
+
+        String json = Files.readString(outputJson);
+        assertTrue(json.contains("[import from_checkpoint.odt]"), "The checkpointed file should not be read again");
+        assertTrue(json.contains("[import header_1.odt]"), "The other files should be read");
+        assertFalse(Files.exists(checkpointFile), "The checkpoint should be deleted after a complete run");
+    }
+
+    @Test
+    public void testReplaceBlocksResumesFromCheckpoint(@TempDir Path outputDirectory) throws Exception {
+        Path checkpointFile = outputDirectory.resolve("replace" + Checkpoint.FILE_EXTENSION);
+        ScanOptions options = new ScanOptions();
+        options.setResume(true);
+        options.setCheckpointPath(checkpointFile.toString());
+        String blockToReplace = "[import block_1.odt]";
+        String newBlock = "[import block_1_resumed.odt]";
+
+        // Record one file as replaced by an interrupted run
+        try (Checkpoint checkpoint = Checkpoint.forRewrite(checkpointFile, Paths.get(TEST_TEMPLATES_DIRECTORY),
+                RewriteRuleSet.literal(blockToReplace, newBlock), options)) {
+            checkpoint.record("template_bb02.odt");
+        }
+
+        FileUtil.replaceBlocks(TEST_TEMPLATES_DIRECTORY, blockToReplace, newBlock, options);
+
+        assertTrue(FileUtil.getImportBlocks(Paths.get(TEST_TEMPLATES_DIRECTORY, "template_bb02.odt"))
+                .contains(blockToReplace), "The checkpointed file should be skipped");
+        assertFalse(FileUtil.listOdtFiles(TEST_TEMPLATES_DIRECTORY).stream()
+                .filter(path -> !path.endsWith("template_bb02.odt"))
+                .anyMatch(path -> FileUtil.getImportBlocks(path).contains(blockToReplace)),
+                "The other files should be replaced");
+        assertFalse(Files.exists(checkpointFile), "The checkpoint should be deleted after a complete run");
+    }
+
     @Test
     public void testThrowsExceptionForReplaceBlocksInNonExistentDirectory() {
         String nonExistentDirectoryPath = "NonExistentDirectory";
@@ -284,6 +835,33 @@ public class FileUtilTest {
         assertTrue(importBlocksAfterReplaceTemplate11.contains("[import header_1.odt]"));
     }
 
+    @Test
+    public void testReplaceImportBlockInDirectoryAdaptive() {
+        Path template09Path = Paths.get(TEST_TEMPLATES_DIRECTORY, "subdirectory", "subsubdirectory3",
+                "template_09.odt");
+        Path template10Path = Paths.get(TEST_TEMPLATES_DIRECTORY, "subdirectory", "subsubdirectory3",
+                "template_10.odt");
+
+        List<String> importBlocksBeforeReplaceTemplate10 = FileUtil.getImportBlocks(template10Path);
+
+        String blockToReplace = "[import block_1.odt]";
+        String newBlock = "[import block_1_test.odt]";
+        ScanOptions options = new ScanOptions();
+        options.setAdaptive(true);
+
+        assertDoesNotThrow(() -> {
+            FileUtil.replaceBlocks(Paths.get(TEST_TEMPLATES_DIRECTORY, "subdirectory", "subsubdirectory3").toString(),
+                    blockToReplace, newBlock, options);
+        });
+
+        List<String> importBlocksAfterReplaceTemplate09 = FileUtil.getImportBlocks(template09Path);
+        assertEquals(3, importBlocksAfterReplaceTemplate09.size());
+        assertTrue(importBlocksAfterReplaceTemplate09.contains(newBlock));
+
+        List<String> importBlocksAfterReplaceTemplate10 = FileUtil.getImportBlocks(template10Path);
+        assertEquals(importBlocksBeforeReplaceTemplate10, importBlocksAfterReplaceTemplate10);
+    }
+
     @Test
     public void testReplaceImportBlockInDirectory2() {
         Path template01Path = Paths.get(TEST_TEMPLATES_DIRECTORY, "subdirectory", "subsubdirectory1",
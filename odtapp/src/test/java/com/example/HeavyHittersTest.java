@@ -0,0 +1,71 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.stats.HeavyHitters;
+import com.example.stats.HyperLogLog;
+
+public class HeavyHittersTest {
+
+    @Test
+    public void testCountsAreExactWithinCapacity() {
+        HeavyHitters heavyHitters = new HeavyHitters(10);
+        for (String value : List.of("b", "a", "c", "a", "b", "a")) {
+            heavyHitters.add(value);
+        }
+        assertTrue(heavyHitters.isExact());
+        assertEquals(3, heavyHitters.size());
+        List<HeavyHitters.Counter> top = heavyHitters.top(2);
+        assertEquals("a", top.get(0).getValue());
+        assertEquals(3, top.get(0).getCount());
+        assertEquals("b", top.get(1).getValue());
+        assertEquals(2, top.get(1).getCount());
+        assertEquals(0, top.get(1).getError());
+    }
+
+    @Test
+    public void testFrequentValuesSurviveEviction() {
+        // Skewed stream: a few heavy values among many rare ones
+        HeavyHitters heavyHitters = new HeavyHitters(50);
+        Map<String, Long> trueCounts = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            String value = random.nextInt(4) == 0 ? "heavy" + random.nextInt(5) : "rare" + random.nextInt(5000);
+            heavyHitters.add(value);
+            trueCounts.merge(value, 1L, Long::sum);
+        }
+        assertFalse(heavyHitters.isExact());
+        List<HeavyHitters.Counter> top = heavyHitters.top(5);
+        for (HeavyHitters.Counter counter : top) {
+            assertTrue(counter.getValue().startsWith("heavy"), counter.getValue());
+            long trueCount = trueCounts.get(counter.getValue());
+            assertTrue(counter.getCount() >= trueCount && counter.getCount() - counter.getError() <= trueCount);
+        }
+    }
+
+    @Test
+    public void testHyperLogLogEstimatesDistinctCount() {
+        HyperLogLog hyperLogLog = new HyperLogLog();
+        for (int i = 0; i < 100_000; i++) {
+            // Every value twice, duplicates must not count
+            hyperLogLog.add("[import block" + i + ".odt]");
+            hyperLogLog.add("[import block" + i + ".odt]");
+        }
+        assertEquals(100_000, hyperLogLog.estimate(), 3_000);
+
+        HyperLogLog small = new HyperLogLog();
+        for (int i = 0; i < 100; i++) {
+            small.add("value" + (i % 10));
+        }
+        assertEquals(10, small.estimate());
+    }
+}
@@ -0,0 +1,66 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.odt.OdtParts;
+import com.example.util.ImportBlockCache;
+
+public class ImportBlockCacheTest {
+
+    private static final List<String> BLOCKS = List.of("[import a.odt]");
+
+    @Test
+    public void testUnchangedFileHits(@TempDir Path directory) throws Exception {
+        Path file = Files.writeString(directory.resolve("a.odt"), "content");
+        ImportBlockCache cache = new ImportBlockCache();
+        cache.put(file, attributes(file), OdtParts.DEFAULT, BLOCKS);
+
+        assertEquals(BLOCKS, cache.get(file, OdtParts.DEFAULT).get().getImportBlocks());
+        assertEquals(BLOCKS, cache.get(file.resolveSibling("./a.odt"), attributes(file), OdtParts.DEFAULT).get()
+                .getImportBlocks());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testChangedFileOrOtherPartsMiss(@TempDir Path directory) throws Exception {
+        Path file = Files.writeString(directory.resolve("a.odt"), "content");
+        ImportBlockCache cache = new ImportBlockCache();
+        cache.put(file, attributes(file), OdtParts.DEFAULT, null);
+
+        assertNull(cache.get(file, OdtParts.DEFAULT).get().getImportBlocks());
+        assertFalse(cache.get(file, new OdtParts(List.of("content.xml"), false)).isPresent());
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 10_000));
+        assertFalse(cache.get(file, OdtParts.DEFAULT).isPresent());
+
+        cache.put(file, attributes(file), OdtParts.DEFAULT, BLOCKS);
+        cache.invalidate(file);
+        assertFalse(cache.get(file, OdtParts.DEFAULT).isPresent());
+    }
+
+    @Test
+    public void testDisabledCacheKeepsNothing(@TempDir Path directory) throws Exception {
+        Path file = Files.writeString(directory.resolve("a.odt"), "content");
+        ImportBlockCache cache = ImportBlockCache.disabled();
+        cache.put(file, attributes(file), OdtParts.DEFAULT, BLOCKS);
+
+        assertFalse(cache.get(file, OdtParts.DEFAULT).isPresent());
+        assertTrue(cache.getHits() == 0 && cache.getMisses() == 0);
+    }
+
+    private static BasicFileAttributes attributes(Path file) throws Exception {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+}
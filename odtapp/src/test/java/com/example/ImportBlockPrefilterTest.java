@@ -0,0 +1,82 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.xml.sax.SAXException;
+
+import com.example.odt.ImportBlockPrefilter;
+import com.example.odt.OdtFile;
+
+public class ImportBlockPrefilterTest {
+
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+    private static final String NAMESPACES = " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\""
+            + " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\"";
+
+    @Test
+    public void testPartsWithoutFieldsAreNotParsed() {
+        assertFalse(needsParse(DECLARATION + "<office:document-styles" + NAMESPACES
+                + "><office:styles/></office:document-styles>"));
+        // Text-input fields that are not import fields, and the names in text only
+        assertFalse(needsParse(DECLARATION + "<office:document-content" + NAMESPACES
+                + "><text:p><text:text-input>note</text:text-input></text:p></office:document-content>"));
+        assertFalse(needsParse(DECLARATION + "<!-- text:text-input --><office:document-content" + NAMESPACES
+                + "><text:p>text:description</text:p></office:document-content>"));
+
+        assertTrue(needsParse(DECLARATION + "<office:document-content" + NAMESPACES
+                + "><text:p><text:text-input text:description=\"import\">[import block_1.odt]</text:text-input>"
+                + "</text:p></office:document-content>"));
+    }
+
+    @Test
+    public void testIncompletePartsAreParsed() {
+        String styles = DECLARATION + "<office:document-styles" + NAMESPACES + "><office:styles/>";
+        assertTrue(needsParse(styles));
+        assertTrue(needsParse(styles + "</office:document-style>"));
+        assertTrue(needsParse(styles + "</office:document-styles"));
+        assertTrue(needsParse(styles + "</office:document-styles><!-- end -->"));
+        assertTrue(needsParse("<broken>" + "x".repeat(1000)));
+        assertTrue(needsParse(""));
+        assertFalse(needsParse(styles + "</office:document-styles >\r\n"));
+
+        // A truncated part without fields still fails to parse
+        assertThrows(SAXException.class,
+                () -> OdtFile.parseImportBlocks(List.of(styles.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testUnusualPartsAreParsed() throws Exception {
+        // The markup of a field may come from an entity
+        String doctype = DECLARATION + "<!-- Header --><!DOCTYPE office:document-content ["
+                + "<!ENTITY field \"&#60;&#116;ext:text-input &#116;ext:description='import'>[import block_1.odt]"
+                + "&#60;/&#116;ext:text-input>\">]><office:document-content" + NAMESPACES
+                + "><text:p>&field;</text:p></office:document-content>";
+        assertTrue(needsParse(doctype));
+        assertEquals(List.of("[import block_1.odt]"),
+                OdtFile.parseImportBlocks(List.of(doctype.getBytes(StandardCharsets.UTF_8))).get());
+
+        // Names are found in any ASCII-compatible encoding, other encodings are parsed
+        String content = "<office:document-content" + NAMESPACES + "><text:p><text:text-input"
+                + " text:description=\"&#105;mport\">[import block_1.odt]</text:text-input></text:p>"
+                + "</office:document-content>";
+        assertTrue(needsParse(content));
+        assertEquals(List.of("[import block_1.odt]"),
+                OdtFile.parseImportBlocks(List.of(content.getBytes(StandardCharsets.UTF_8))).get());
+        assertTrue(ImportBlockPrefilter.needsParse(
+                ("<?xml version=\"1.0\" encoding=\"UTF-16\"?><office:document-content" + NAMESPACES + "/>")
+                        .getBytes(StandardCharsets.UTF_16)));
+        assertTrue(ImportBlockPrefilter.needsParse(
+                ("<office:document-content" + NAMESPACES + "/>").getBytes(StandardCharsets.UTF_16LE)));
+    }
+
+    private static boolean needsParse(String content) {
+        return ImportBlockPrefilter.needsParse(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
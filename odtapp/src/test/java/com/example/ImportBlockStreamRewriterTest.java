@@ -0,0 +1,80 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.odt.ImportBlockStreamRewriter;
+import com.example.rewrite.RewriteRule;
+import com.example.rewrite.RewriteRuleSet;
+
+public class ImportBlockStreamRewriterTest {
+
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<office:document xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\""
+            + " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\">";
+    private static final String FOOTER = "</office:document>";
+
+    @Test
+    public void testRewritesOnlyImportElements() throws Exception {
+        String xml = HEADER
+                + "<text:p>[import block_1.odt]</text:p>"
+                + "<text:p><text:text-input text:description=\"import\">[import block_1.odt]</text:text-input></text:p>"
+                + "<text:p><text:text-input text:description=\"other\">[import block_1.odt]</text:text-input></text:p>"
+                + FOOTER;
+
+        StringBuilder output = new StringBuilder();
+        assertTrue(rewrite(xml, RewriteRuleSet.literal("[import block_1.odt]", "[import block_2.odt]"), output));
+        assertEquals(xml.replace("\"import\">[import block_1.odt]", "\"import\">[import block_2.odt]"),
+                output.toString().replace('\'', '"'));
+    }
+
+    @Test
+    public void testNestedContentIsReplacedAsAWhole() throws Exception {
+        String xml = HEADER
+                + "<text:p><text:text-input text:description=\"import\">[import hdr_<text:span>1</text:span>.odt]"
+                + "</text:text-input></text:p>"
+                + FOOTER;
+        RewriteRuleSet rules = RewriteRuleSet.of(List.of(RewriteRule.of("[import hdr_*.odt]", "[import header/*.odt]")));
+
+        StringBuilder output = new StringBuilder();
+        assertTrue(rewrite(xml, rules, output));
+        assertTrue(output.toString().contains("\"import\">[import header/1.odt]</text:text-input>"));
+    }
+
+    @Test
+    public void testUnmatchedDocumentIsCopied() throws Exception {
+        String xml = HEADER
+                + "<text:p><text:text-input text:description=\"import\">[import a &amp; b.odt]<text:s/>"
+                + "</text:text-input></text:p>"
+                + FOOTER;
+
+        StringBuilder output = new StringBuilder();
+        assertFalse(rewrite(xml, RewriteRuleSet.literal("[import block_1.odt]", "[import block_2.odt]"), output));
+        assertTrue(output.toString().contains("[import a &amp; b.odt]<text:s></text:s></text:text-input>"));
+    }
+
+    @Test
+    public void testMalformedXml() {
+        assertThrows(XMLStreamException.class, () -> rewrite(HEADER + "<text:p>",
+                RewriteRuleSet.literal("[import block_1.odt]", "[import block_2.odt]"), new StringBuilder()));
+    }
+
+    private static boolean rewrite(String xml, RewriteRuleSet rules, StringBuilder output) throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean found = ImportBlockStreamRewriter.rewrite(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), out, rules);
+        output.append(out.toString(StandardCharsets.UTF_8));
+        return found;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.odt.OdtDocument;
+import com.example.odt.OdtFile;
+import com.example.odt.OdtVerifier;
+import com.example.util.FileUtil;
+
+public class OdtDocumentTest {
+
+    private static final String TEST_TEMPLATES_ZIP = "src/test/resources/test_templates.zip";
+    private static final String TEMPLATE = "template_bb02.odt";
+    private static final String FOOTER = "[import footer_1.odt]";
+    private static final String NEW_FOOTER = "[import footer_1_document.odt]";
+    private static final String BLOCK = "[import block_1.odt]";
+    private static final String NEW_BLOCK = "[import block_1_document.odt]";
+
+    @Test
+    public void testReplacementsAreCommittedInOneWrite(@TempDir Path directory) throws Exception {
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), directory);
+        Path template = directory.resolve(TEMPLATE);
+        List<String> before = new OdtFile(template.toString()).getImportBlocks().get();
+        Files.setLastModifiedTime(template, FileTime.fromMillis(0));
+
+        try (OdtDocument document = OdtDocument.open(template)) {
+            assertEquals(before, document.getImportBlocks().get());
+            assertTrue(document.containsImportBlock(FOOTER));
+
+            // Replacements are seen by the session at once and by the file only after the commit
+            assertTrue(document.replaceImportBlocks(FOOTER, NEW_FOOTER));
+            assertTrue(document.replaceImportBlocks(BLOCK, NEW_BLOCK));
+            assertFalse(document.replaceImportBlocks("[import missing.odt]", NEW_BLOCK));
+            assertTrue(document.isModified());
+            assertTrue(document.containsImportBlock(NEW_FOOTER));
+            assertFalse(document.containsImportBlock(FOOTER));
+            assertEquals(before, new OdtFile(template.toString()).getImportBlocks().get());
+            assertEquals(0, Files.getLastModifiedTime(template).toMillis());
+
+            assertTrue(document.commit());
+            assertFalse(document.isModified());
+            assertFalse(document.commit());
+            assertTrue(document.containsImportBlock(NEW_BLOCK));
+        }
+
+        List<String> after = new OdtFile(template.toString()).getImportBlocks().get();
+        assertEquals(before.size(), after.size());
+        assertTrue(after.containsAll(List.of(NEW_FOOTER, NEW_BLOCK, "[import header_1.odt]")), after.toString());
+        assertTrue(OdtVerifier.verify(template).isEmpty());
+        try (ZipFile zipFile = new ZipFile(template.toFile())) {
+            ZipEntry mimetype = zipFile.entries().nextElement();
+            assertEquals("mimetype", mimetype.getName());
+            assertEquals(ZipEntry.STORED, mimetype.getMethod());
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().endsWith(".odtapp-tmp")));
+        }
+    }
+
+    @Test
+    public void testUncommittedChangesAreDiscarded(@TempDir Path directory) throws Exception {
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), directory);
+        Path template = directory.resolve(TEMPLATE);
+        byte[] original = Files.readAllBytes(template);
+
+        OdtDocument document = OdtDocument.open(template);
+        assertTrue(document.replaceImportBlocks(FOOTER, NEW_FOOTER));
+        document.close();
+
+        assertArrayEquals(original, Files.readAllBytes(template));
+        assertThrows(IllegalStateException.class, () -> document.getImportBlocks());
+    }
+}
@@ -26,6 +26,8 @@ import java.util.List;
 import javax.xml.parsers.ParserConfigurationException;
 
 import com.example.odt.OdtFile;
+import com.example.rewrite.RewriteRule;
+import com.example.rewrite.RewriteRuleSet;
 import com.example.util.FileUtil;
 
 public class OdtFileTest {
@@ -118,6 +120,47 @@ public class OdtFileTest {
         assertTrue(importBlocksAfterReplace.contains("[import footer_1.odt]"));
     }
 
+    @Test
+    public void testReplaceImportBlocksWithRules() {
+
+        assertDoesNotThrow(() -> {
+            RewriteRuleSet rules = RewriteRuleSet.of(List.of(
+                    RewriteRule.of("[import header_*.odt]", "[import common/header_*.odt]"),
+                    RewriteRule.of("[import *_1.odt]", "[import *_one.odt]")));
+            OdtFile file = new OdtFile(Paths.get(TEST_TEMPLATES_DIRECTORY, "template_bb02.odt").toString());
+            file.replaceImportBlocks(rules);
+        });
+
+        // Verify that every block has been rewritten by its first matching rule
+        List<String> importBlocksAfterReplace = FileUtil
+                .getImportBlocks(Paths.get(TEST_TEMPLATES_DIRECTORY, "template_bb02.odt"));
+        assertEquals(3, importBlocksAfterReplace.size());
+        assertTrue(importBlocksAfterReplace.contains("[import common/header_1.odt]"));
+        assertTrue(importBlocksAfterReplace.contains("[import block_one.odt]"));
+        assertTrue(importBlocksAfterReplace.contains("[import footer_one.odt]"));
+    }
+
+    @Test
+    public void testStreamingReplaceImportBlock() {
+
+        String blockToReplace = "[import block_1.odt]";
+        String newBlock = "[import block_1_test.odt]";
+
+        assertDoesNotThrow(() -> {
+            OdtFile file = new OdtFile(Paths.get(TEST_TEMPLATES_DIRECTORY, "template_bb02.odt").toString());
+            file.replaceImportBlocks(RewriteRuleSet.literal(blockToReplace, newBlock), true);
+        });
+
+        // Verify that the block has been replaced and the other blocks are untouched
+        List<String> importBlocksAfterReplace = FileUtil
+                .getImportBlocks(Paths.get(TEST_TEMPLATES_DIRECTORY, "template_bb02.odt"));
+        assertEquals(3, importBlocksAfterReplace.size());
+        assertTrue(importBlocksAfterReplace.contains(newBlock),
+                "The new block should be present in the file");
+        assertTrue(importBlocksAfterReplace.contains("[import header_1.odt]"));
+        assertTrue(importBlocksAfterReplace.contains("[import footer_1.odt]"));
+    }
+
     @Test
     public void testDoNotReplaceNonExistentImportBlock() {
 
@@ -0,0 +1,77 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes small ODT archives for tests.
+ */
+final class OdtFixtures {
+
+    private OdtFixtures() {
+    }
+
+    /**
+     * Writes an archive with a single content.xml entry.
+     *
+     * @param odt     The archive to write.
+     * @param content The content of content.xml.
+     * @return The archive.
+     * @throws IOException if the archive cannot be written.
+     */
+    static Path createOdt(Path odt, String content) throws IOException {
+        return createOdt(odt, Map.of("content.xml", content));
+    }
+
+    /**
+     * Writes the entries in iteration order, storing the named ones
+     * uncompressed.
+     *
+     * @param odt           The archive to write.
+     * @param entries       The entry names and contents.
+     * @param storedEntries The names of the entries to store.
+     * @return The archive.
+     * @throws IOException if the archive cannot be written.
+     */
+    static Path createOdt(Path odt, Map<String, String> entries, String... storedEntries) throws IOException {
+        List<String> stored = List.of(storedEntries);
+        try (OutputStream out = Files.newOutputStream(odt); ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                putEntry(zip, entry.getKey(), entry.getValue(), stored.contains(entry.getKey()));
+            }
+        }
+        return odt;
+    }
+
+    /**
+     * Writes one entry, for archives that need more than entries.
+     *
+     * @param zip     The archive being written.
+     * @param name    The entry name.
+     * @param content The entry content.
+     * @param stored  true to store the entry uncompressed.
+     * @throws IOException if the entry cannot be written.
+     */
+    static void putEntry(ZipOutputStream zip, String name, String content, boolean stored) throws IOException {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,99 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xml.sax.SAXException;
+
+import com.example.exception.InvalidArgumentException;
+import com.example.model.ScanOptions;
+import com.example.odt.OdtFile;
+import com.example.odt.OdtParts;
+import com.example.validation.ArgumentValidator;
+
+public class OdtPartsTest {
+
+    private static final String MANIFEST = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<manifest:manifest xmlns:manifest=\"urn:oasis:names:tc:opendocument:xmlns:manifest:1.0\">"
+            + "<manifest:file-entry manifest:media-type=\"application/vnd.oasis.opendocument.text\""
+            + " manifest:full-path=\"/\"/>"
+            + "<manifest:file-entry manifest:media-type=\"text/xml\" manifest:full-path=\"content.xml\"/>"
+            + "<manifest:file-entry manifest:media-type=\"application/vnd.oasis.opendocument.chart\""
+            + " manifest:full-path=\"Object 1/\"/>"
+            + "<manifest:file-entry manifest:media-type=\"text/xml\" manifest:full-path=\"Object 1/content.xml\"/>"
+            + "<manifest:file-entry manifest:media-type=\"\" manifest:full-path=\"Thumbnails/\"/>"
+            + "</manifest:manifest>";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testEmbeddedObjectsAreOnlyReadWhenSelected() throws Exception {
+        Path odt = OdtFixtures.createOdt(tempDir.resolve("document.odt"), Map.of(
+                "content.xml", part("[import block_1.odt]", 0),
+                "Object 1/content.xml", part("[import chart_1.odt]", 0),
+                "META-INF/manifest.xml", MANIFEST));
+
+        assertEquals(Optional.of(List.of("[import block_1.odt]")),
+                new OdtFile(odt.toString()).getImportBlocks());
+        assertEquals(Optional.of(List.of("[import block_1.odt]", "[import chart_1.odt]")),
+                new OdtFile(odt.toString(), new OdtParts(OdtParts.DEFAULT_PART_NAMES, true)).getImportBlocks());
+    }
+
+    @Test
+    public void testLargePartsAreParsedInParallelInPartOrder() throws Exception {
+        Path odt = OdtFixtures.createOdt(tempDir.resolve("document.odt"), Map.of(
+                "content.xml", part("[import block_1.odt]", 300_000),
+                "styles.xml", part("[import header_1.odt]", 300_000),
+                "Object 1/content.xml", part("[import chart_1.odt]", 300_000),
+                "META-INF/manifest.xml", MANIFEST));
+
+        OdtFile file = new OdtFile(odt.toString(), new OdtParts(OdtParts.DEFAULT_PART_NAMES, true));
+        assertEquals(Optional.of(List.of("[import block_1.odt]", "[import header_1.odt]", "[import chart_1.odt]")),
+                file.getImportBlocks());
+    }
+
+    @Test
+    public void testInvalidLargePartFailsWithParseError() throws Exception {
+        Path odt = OdtFixtures.createOdt(tempDir.resolve("document.odt"), Map.of(
+                "content.xml", part("[import block_1.odt]", 300_000),
+                "styles.xml", "<broken>" + "x".repeat(300_000)));
+        assertThrows(SAXException.class, () -> new OdtFile(odt.toString()).getImportBlocks());
+    }
+
+    @Test
+    public void testConfiguredParts() throws Exception {
+        ScanOptions options = ArgumentValidator.parseOptions(new String[] {
+                ArgumentValidator.PARTS_OPTION + "=content.xml,meta.xml", ArgumentValidator.EMBEDDED_OBJECTS_OPTION });
+        OdtParts parts = OdtParts.of(options);
+        assertEquals(List.of("content.xml", "meta.xml"), parts.getPartNames());
+        assertEquals(List.of("content.xml", "meta.xml", "Object 1/content.xml", "Object 1/meta.xml"),
+                parts.resolve(() -> new ByteArrayInputStream(MANIFEST.getBytes(StandardCharsets.UTF_8))));
+        assertTrue(OdtParts.of(new ScanOptions()) == OdtParts.DEFAULT);
+    }
+
+    @Test
+    public void testInvalidPartsOption() {
+        assertThrows(InvalidArgumentException.class, () -> ArgumentValidator
+                .parseOptions(new String[] { ArgumentValidator.PARTS_OPTION + "=content.xml,mimetype" }));
+    }
+
+    private static String part(String importBlock, int padding) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<office:document xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\""
+                + " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\">"
+                + "<text:p>" + "x".repeat(padding) + "</text:p>"
+                + "<text:p><text:text-input text:description=\"import\">" + importBlock + "</text:text-input></text:p>"
+                + "</office:document>";
+    }
+}
@@ -0,0 +1,170 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.exception.InvalidFileException;
+import com.example.model.JsonItem;
+import com.example.model.ReplaceResult;
+import com.example.odt.ResourceLimits;
+import com.example.service.OdtTemplateService;
+import com.example.stats.BlockIndex;
+import com.example.util.FileUtil;
+import com.example.util.ImportBlockCache;
+import com.google.gson.Gson;
+
+public class OdtTemplateServiceTest {
+
+    private static final String TEST_TEMPLATES_ZIP = "src/test/resources/test_templates.zip";
+    private static final String BLOCK = "[import block_1.odt]";
+    private static final String NEW_BLOCK = "[import block_1_service.odt]";
+
+    @Test
+    public void testScanMatchesJsonAction(@TempDir Path directory) throws Exception {
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), directory);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            OdtTemplateService service = OdtTemplateService.builder().executor(executor).build();
+
+            JsonItem scanned = service.scan(directory).get();
+
+            Gson gson = new Gson();
+            assertEquals(gson.toJson(FileUtil.generateData(directory.toFile())), gson.toJson(scanned));
+            // A second scan is served from the cache and gives the same tree
+            assertEquals(gson.toJson(scanned), gson.toJson(service.scan(directory).get()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testIndexMatchesImportBlocksOfEachFile(@TempDir Path directory) throws Exception {
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), directory);
+        try (OdtTemplateService service = OdtTemplateService.builder().maxConcurrency(4).build()) {
+            BlockIndex index = service.index(directory);
+
+            List<String> expected = new ArrayList<>();
+            for (Path file : FileUtil.listOdtFiles(directory.toString())) {
+                if (FileUtil.getImportBlocks(file).contains(BLOCK)) {
+                    expected.add(FileUtil.relativePath(directory, file));
+                }
+            }
+            Collections.sort(expected);
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, index.query(BLOCK));
+            assertEquals(index.size() - expected.size(), index.query("NOT " + BLOCK).size());
+        }
+    }
+
+    @Test
+    public void testConcurrentReplacesRewriteEachFileOnce(@TempDir Path directory) throws Exception {
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), directory);
+        long filesWithBlock = FileUtil.listOdtFiles(directory.toString()).stream()
+                .filter(path -> FileUtil.getImportBlocks(path).contains(BLOCK)).count();
+        assertTrue(filesWithBlock > 0);
+
+        try (OdtTemplateService service = OdtTemplateService.builder().maxConcurrency(4)
+                .xmlEngine(OdtTemplateService.XmlEngine.STREAMING).build()) {
+            ExecutorService callers = Executors.newFixedThreadPool(4);
+            List<Future<ReplaceResult>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(callers.submit(() -> service.replace(directory, BLOCK, NEW_BLOCK)));
+            }
+            int replaced = 0;
+            for (Future<ReplaceResult> result : results) {
+                replaced += result.get().getReplacedFiles().size();
+            }
+            callers.shutdown();
+
+            assertEquals(filesWithBlock, replaced, "Every file should be rewritten by exactly one call");
+            JsonItem scanned = service.scan(directory).get();
+            String json = new Gson().toJson(scanned);
+            assertFalse(json.contains(BLOCK));
+            assertTrue(json.contains(NEW_BLOCK));
+        }
+    }
+
+    @Test
+    public void testImportBlocksAreCachedUntilReplaced(@TempDir Path directory) throws Exception {
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), directory);
+        Path template = FileUtil.listOdtFiles(directory.toString()).stream()
+                .filter(path -> FileUtil.getImportBlocks(path).contains(BLOCK)).findFirst().get();
+        ImportBlockCache cache = new ImportBlockCache();
+        OdtTemplateService service = OdtTemplateService.builder().cache(cache).build();
+
+        assertTrue(service.getImportBlocks(template).get().contains(BLOCK));
+        assertTrue(service.getImportBlocks(template).get().contains(BLOCK));
+        assertEquals(1, cache.getHits());
+
+        ReplaceResult result = service.replace(template, BLOCK, NEW_BLOCK);
+        assertEquals(List.of(template), result.getReplacedFiles());
+        assertTrue(result.getFailedFiles().isEmpty());
+        assertTrue(service.getImportBlocks(template).get().contains(NEW_BLOCK));
+    }
+
+    @Test
+    public void testLimitsApplyToEveryRead(@TempDir Path tempDir) throws Exception {
+        FileUtil.unzip(Paths.get(TEST_TEMPLATES_ZIP), tempDir.resolve("templates"));
+        Path template = FileUtil.listOdtFiles(tempDir.resolve("templates").toString()).stream()
+                .filter(path -> FileUtil.getImportBlocks(path).contains(BLOCK)).findFirst().get();
+        Path directory = Files.createDirectory(tempDir.resolve("scan"));
+        Files.copy(template, directory.resolve("block.odt"));
+        Path large = OdtFixtures.createOdt(directory.resolve("large.odt"),
+                "<content>" + " ".repeat(2 * 1024 * 1024) + "</content>");
+        ResourceLimits limits = new ResourceLimits(1024 * 1024, 10_000, 1000, 1000, 0);
+        OdtTemplateService service = OdtTemplateService.builder().limits(limits)
+                .cache(ImportBlockCache.disabled()).build();
+
+        InvalidFileException e = assertThrows(InvalidFileException.class, () -> service.getImportBlocks(large));
+        assertTrue(e.getMessage().contains("more than the limit"), e.getMessage());
+        JsonItem root = service.scan(directory).get();
+        assertNull(root.getChildren().get(0).getError());
+        assertTrue(root.getChildren().get(1).getError().contains("more than the limit"),
+                root.getChildren().get(1).getError());
+        assertEquals(1, service.index(directory).getFailedTemplates());
+
+        // Both engines read the parts they rewrite within the limits
+        for (OdtTemplateService.XmlEngine engine : OdtTemplateService.XmlEngine.values()) {
+            Map<Path, String> failed = OdtTemplateService.builder().limits(limits).xmlEngine(engine)
+                    .cache(ImportBlockCache.disabled()).build().replace(large, BLOCK, NEW_BLOCK).getFailedFiles();
+            assertEquals(Set.of(large), failed.keySet());
+            assertTrue(failed.get(large).contains("more than the limit"), failed.get(large));
+        }
+
+        // A higher ceiling lets the same file through
+        ResourceLimits generous = new ResourceLimits(16 * 1024 * 1024, 10_000, 1000, 1000, 0);
+        assertFalse(OdtTemplateService.builder().limits(generous).build().getImportBlocks(large).isPresent());
+    }
+
+    @Test
+    public void testInvalidArguments(@TempDir Path directory) {
+        OdtTemplateService service = OdtTemplateService.builder().build();
+
+        assertThrows(FileNotFoundException.class, () -> service.scan(directory.resolve("missing")));
+        assertThrows(FileNotFoundException.class, () -> service.getImportBlocks(directory.resolve("a.odt")));
+        assertFalse(assertDoesNotThrow(() -> service.scan(directory)).isPresent());
+        assertThrows(IllegalArgumentException.class, () -> OdtTemplateService.builder().maxConcurrency(0));
+        assertThrows(IllegalArgumentException.class, () -> OdtTemplateService.builder().cache(null));
+        assertThrows(IllegalArgumentException.class, () -> OdtTemplateService.builder().limits(null));
+    }
+}
@@ -0,0 +1,113 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.model.VerifyReport;
+import com.example.odt.OdtVerifier;
+
+public class OdtVerifierTest {
+
+    private static final String MIMETYPE = "application/vnd.oasis.opendocument.text";
+    private static final String CONTENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<office:document xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\">"
+            + "<office:body>XXXX</office:body></office:document>";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testIntactFileHasNoProblems() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("mimetype", MIMETYPE);
+        entries.put("content.xml", CONTENT);
+        entries.put("Configurations2/accelerator/current.xml", "");
+        Path odt = OdtFixtures.createOdt(odtPath(), entries, "mimetype");
+
+        assertEquals(List.of(), OdtVerifier.verify(odt));
+    }
+
+    @Test
+    public void testMimetypeMustBeFirstAndStored() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("content.xml", CONTENT);
+        entries.put("mimetype", MIMETYPE);
+        List<VerifyReport.Problem> problems = OdtVerifier
+                .verify(OdtFixtures.createOdt(odtPath(), entries, "mimetype"));
+        assertEquals(1, problems.size());
+        assertEquals(OdtVerifier.MIMETYPE_CHECK, problems.get(0).getCheck());
+        assertEquals("content.xml", problems.get(0).getEntry());
+
+        entries.clear();
+        entries.put("mimetype", MIMETYPE);
+        entries.put("content.xml", CONTENT);
+        problems = OdtVerifier.verify(OdtFixtures.createOdt(odtPath(), entries));
+        assertEquals(1, problems.size());
+        assertEquals(OdtVerifier.MIMETYPE_CHECK, problems.get(0).getCheck());
+        assertEquals("The mimetype entry is compressed.", problems.get(0).getMessage());
+    }
+
+    @Test
+    public void testMalformedXmlIsReported() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("mimetype", MIMETYPE);
+        entries.put("content.xml", CONTENT.replace("</office:body>", ""));
+        entries.put("styles.xml", CONTENT);
+        List<VerifyReport.Problem> problems = OdtVerifier
+                .verify(OdtFixtures.createOdt(odtPath(), entries, "mimetype"));
+
+        assertEquals(1, problems.size());
+        assertEquals(OdtVerifier.XML_CHECK, problems.get(0).getCheck());
+        assertEquals("content.xml", problems.get(0).getEntry());
+    }
+
+    @Test
+    public void testCorruptedEntryFailsCrc() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("mimetype", MIMETYPE);
+        entries.put("content.xml", CONTENT);
+        Path odt = OdtFixtures.createOdt(odtPath(), entries, "mimetype", "content.xml");
+
+        // Flip bytes of the stored content, the XML stays well-formed
+        byte[] bytes = Files.readAllBytes(odt);
+        int offset = new String(bytes, StandardCharsets.ISO_8859_1).indexOf("XXXX");
+        bytes[offset] = 'Y';
+        Files.write(odt, bytes);
+        List<VerifyReport.Problem> problems = OdtVerifier.verify(odt);
+
+        assertEquals(1, problems.size());
+        assertEquals(OdtVerifier.CRC_CHECK, problems.get(0).getCheck());
+        assertEquals("content.xml", problems.get(0).getEntry());
+    }
+
+    @Test
+    public void testTruncatedFileFailsZipCheck() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("mimetype", MIMETYPE);
+        entries.put("content.xml", CONTENT);
+        Path odt = OdtFixtures.createOdt(odtPath(), entries, "mimetype");
+        byte[] bytes = Files.readAllBytes(odt);
+        Files.write(odt, Arrays.copyOf(bytes, bytes.length / 2));
+        List<VerifyReport.Problem> problems = OdtVerifier.verify(odt);
+
+        assertEquals(1, problems.size());
+        assertEquals(OdtVerifier.ZIP_CHECK, problems.get(0).getCheck());
+        assertNull(problems.get(0).getEntry());
+    }
+
+    private Path odtPath() {
+        return tempDir.resolve("document.odt");
+    }
+}
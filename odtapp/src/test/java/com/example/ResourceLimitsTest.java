@@ -0,0 +1,123 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xml.sax.SAXException;
+
+import com.example.concurrent.Deadline;
+import com.example.concurrent.Watchdog;
+import com.example.odt.AsyncPartReader;
+import com.example.odt.ExtractionRuleSet;
+import com.example.odt.OdtFile;
+import com.example.odt.OdtParts;
+import com.example.odt.ResourceLimits;
+
+public class ResourceLimitsTest {
+
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<office:document-content xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\""
+            + " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\"><office:body><office:text>";
+    private static final String FOOTER = "</office:text></office:body></office:document-content>";
+    private static final String IMPORT_BLOCK = "<text:p><text:text-input text:description=\"import\">"
+            + "[import block_1.odt]</text:text-input></text:p>";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testFileTimeoutEndsByDeadline() {
+        ResourceLimits limits = new ResourceLimits(1024 * 1024, 100, 1000, 1000, 50);
+        assertSame(limits, limits.within(Deadline.none()));
+        assertEquals(50, limits.within(Deadline.after(60_000)).getFileTimeoutMillis());
+
+        // Without a file timeout the deadline is the limit, past it the watch expires at once
+        ResourceLimits unlimited = new ResourceLimits(1024 * 1024, 100, 1000, 1000, 0);
+        long timeoutMillis = unlimited.within(Deadline.after(60_000)).getFileTimeoutMillis();
+        assertTrue(timeoutMillis > 0 && timeoutMillis <= 60_000, String.valueOf(timeoutMillis));
+        assertEquals(1, unlimited.within(Deadline.after(0)).getFileTimeoutMillis());
+        assertEquals(1024 * 1024, unlimited.within(Deadline.after(0)).getMaxEntrySize());
+    }
+
+    @Test
+    public void testCompressionRatioStopsZipBomb() throws Exception {
+        // Two megabytes of spaces deflate to a few kilobytes
+        Path bomb = OdtFixtures.createOdt(tempDir.resolve("bomb.odt"),
+                HEADER + IMPORT_BLOCK + " ".repeat(2 * 1024 * 1024) + FOOTER);
+
+        IOException e = assertThrows(IOException.class, () -> new OdtFile(bomb.toString()).getImportBlocks());
+        assertTrue(e.getMessage().contains("compression ratio"), e.getMessage());
+        assertThrows(IOException.class, () -> new OdtFile(bomb.toString()).readParts());
+        CompletionException async = assertThrows(CompletionException.class,
+                () -> AsyncPartReader.read(bomb, OdtParts.DEFAULT, ResourceLimits.DEFAULT).join());
+        assertTrue(async.getCause().getMessage().contains("compression ratio"), async.getMessage());
+
+        // A higher ceiling lets the same file through
+        ResourceLimits generous = new ResourceLimits(16 * 1024 * 1024, 10_000, 1000, 1000, 0);
+        assertEquals(List.of("[import block_1.odt]"),
+                new OdtFile(bomb.toString(), OdtParts.DEFAULT, generous).getImportBlocks().get());
+
+        // The entry size is a ceiling on its own
+        ResourceLimits small = new ResourceLimits(1024 * 1024, 10_000, 1000, 1000, 0);
+        e = assertThrows(IOException.class,
+                () -> new OdtFile(bomb.toString(), OdtParts.DEFAULT, small).getImportBlocks());
+        assertTrue(e.getMessage().contains("more than the limit"), e.getMessage());
+    }
+
+    @Test
+    public void testXmlLimits() throws Exception {
+        List<byte[]> manyElements = List.of(
+                (HEADER + IMPORT_BLOCK.repeat(30) + FOOTER).getBytes(StandardCharsets.UTF_8));
+        ResourceLimits limits = new ResourceLimits(1024 * 1024, 100, 1000, 50, 0);
+        assertEquals(List.of("[import block_1.odt]"),
+                OdtFile.parseImportBlocks(manyElements, ResourceLimits.DEFAULT).get());
+        SAXException e = assertThrows(SAXException.class, () -> OdtFile.parseImportBlocks(manyElements, limits));
+        assertTrue(e.getMessage().contains("more than 50 elements"), e.getMessage());
+        assertThrows(IOException.class, () -> ExtractionRuleSet.NONE.extract(manyElements, limits));
+
+        List<byte[]> deep = List.of(
+                (HEADER + "<text:span>".repeat(1500) + "</text:span>".repeat(1500) + FOOTER)
+                        .getBytes(StandardCharsets.UTF_8));
+        assertThrows(SAXException.class, () -> OdtFile.parseImportBlocks(deep));
+        assertThrows(IOException.class, () -> ExtractionRuleSet.NONE.extract(deep));
+
+        // Entity expansion stops long before the document is built
+        String lol = "<!DOCTYPE lolz [<!ENTITY lol \"lol\">"
+                + "<!ENTITY lol1 \"&lol;&lol;&lol;&lol;&lol;&lol;&lol;&lol;&lol;&lol;\">"
+                + "<!ENTITY lol2 \"&lol1;&lol1;&lol1;&lol1;&lol1;&lol1;&lol1;&lol1;&lol1;&lol1;\">"
+                + "<!ENTITY lol3 \"&lol2;&lol2;&lol2;&lol2;&lol2;&lol2;&lol2;&lol2;&lol2;&lol2;\">"
+                + "<!ENTITY lol4 \"&lol3;&lol3;&lol3;&lol3;&lol3;&lol3;&lol3;&lol3;&lol3;&lol3;\">"
+                + "<!ENTITY lol5 \"&lol4;&lol4;&lol4;&lol4;&lol4;&lol4;&lol4;&lol4;&lol4;&lol4;\">]>"
+                + "<lolz>&lol5;</lolz>";
+        assertThrows(SAXException.class,
+                () -> OdtFile.parseImportBlocks(List.of(lol.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testFileTimeout() throws Exception {
+        try (Watchdog.Watch unlimited = Watchdog.watch(0)) {
+            assertFalse(unlimited.isExpired());
+        }
+        try (Watchdog.Watch watch = Watchdog.watch(1)) {
+            Thread.sleep(100);
+            assertTrue(watch.isExpired());
+        }
+
+        List<byte[]> large = List.of(
+                (HEADER + IMPORT_BLOCK.repeat(200_000) + FOOTER).getBytes(StandardCharsets.UTF_8));
+        ResourceLimits limits = new ResourceLimits(64 * 1024 * 1024, 100, 1000, 10_000_000, 1);
+        SAXException e = assertThrows(SAXException.class, () -> OdtFile.parseImportBlocks(large, limits));
+        assertTrue(e.getMessage().startsWith("Processing timed out"), e.getMessage());
+    }
+}
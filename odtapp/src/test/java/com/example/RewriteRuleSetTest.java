@@ -0,0 +1,114 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.exception.InvalidArgumentException;
+import com.example.rewrite.RewriteRule;
+import com.example.rewrite.RewriteRuleSet;
+
+public class RewriteRuleSetTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testWildcardRuleCarriesMatchedPart() throws Exception {
+        RewriteRuleSet rules = RewriteRuleSet.of(List.of(RewriteRule.of("[import hdr_*.odt]", "[import header/*.odt]")));
+        assertEquals(Optional.of("[import header/1.odt]"), rules.rewrite("[import hdr_1.odt]"));
+        assertEquals(Optional.of("[import header/.odt]"), rules.rewrite("[import hdr_.odt]"));
+        assertEquals(Optional.empty(), rules.rewrite("[import footer_1.odt]"));
+        assertEquals(Optional.empty(), rules.rewrite("[import hdr_1.odt] "));
+    }
+
+    @Test
+    public void testFirstMatchingRuleWins() throws Exception {
+        RewriteRuleSet rules = RewriteRuleSet.of(List.of(
+                RewriteRule.of("[import block_1.odt]", "[import block_one.odt]"),
+                RewriteRule.of("[import block_*.odt]", "[import blocks/*.odt]"),
+                RewriteRule.of("[import *_*.odt]", "[import *-*.odt]")));
+        assertEquals(Optional.of("[import block_one.odt]"), rules.rewrite("[import block_1.odt]"));
+        assertEquals(Optional.of("[import blocks/2.odt]"), rules.rewrite("[import block_2.odt]"));
+        assertEquals(Optional.of("[import footer-1.odt]"), rules.rewrite("[import footer_1.odt]"));
+        assertEquals(Optional.empty(), rules.rewrite("[import header.odt]"));
+    }
+
+    @Test
+    public void testLiteralRuleDoesNotTreatAsteriskAsWildcard() {
+        RewriteRuleSet rules = RewriteRuleSet.literal("[import a*.odt]", "[import b.odt]");
+        assertEquals(Optional.of("[import b.odt]"), rules.rewrite("[import a*.odt]"));
+        assertEquals(Optional.empty(), rules.rewrite("[import abc.odt]"));
+    }
+
+    @Test
+    public void testLargeRuleListMatchesEveryRule() throws Exception {
+        List<RewriteRule> ruleList = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            ruleList.add(RewriteRule.of(String.format("[import block_%d.odt]", i),
+                    String.format("[import renamed_%d.odt]", i)));
+        }
+        RewriteRuleSet rules = RewriteRuleSet.of(ruleList);
+        for (int i = 0; i < 2000; i += 97) {
+            assertEquals(Optional.of(String.format("[import renamed_%d.odt]", i)),
+                    rules.rewrite(String.format("[import block_%d.odt]", i)));
+        }
+        assertEquals(Optional.empty(), rules.rewrite("[import block_2000.odt]"));
+    }
+
+    @Test
+    public void testRulesBeyondTheStateCacheStillMatch() throws Exception {
+        // Names that differ from their first characters need a state per character, far more
+        // than the automaton caches
+        List<RewriteRule> ruleList = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String name = new StringBuilder(String.format("%04d", i)).reverse().toString();
+            ruleList.add(RewriteRule.of(String.format("[import %s_customer_letter_*.odt]", name),
+                    String.format("[import letters/%s_*.odt]", name)));
+        }
+        RewriteRuleSet rules = RewriteRuleSet.of(ruleList);
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < 1000; i++) {
+                String name = new StringBuilder(String.format("%04d", i)).reverse().toString();
+                assertEquals(Optional.of(String.format("[import letters/%s_v%d.odt]", name, pass)),
+                        rules.rewrite(String.format("[import %s_customer_letter_v%d.odt]", name, pass)));
+            }
+        }
+        assertEquals(Optional.empty(), rules.rewrite("[import 0000_customer_letter.odt]"));
+    }
+
+    @Test
+    public void testInvalidRules() {
+        assertThrows(InvalidArgumentException.class, () -> RewriteRule.of("hdr_*", "[import header/*.odt]"));
+        assertThrows(InvalidArgumentException.class, () -> RewriteRule.of("[import hdr_*.odt]", "header"));
+        assertThrows(InvalidArgumentException.class,
+                () -> RewriteRule.of("[import hdr_*.odt]", "[import */*.odt]"));
+    }
+
+    @Test
+    public void testParseRulesFile() throws Exception {
+        Path rulesFile = tempDir.resolve("rules.txt");
+        Files.write(rulesFile, List.of("# rename headers", "", "[import hdr_*.odt] => [import header/*.odt]",
+                "[import ftr.odt]=>[import footer.odt]"));
+        RewriteRuleSet rules = RewriteRuleSet.parse(rulesFile);
+        assertEquals(2, rules.getRules().size());
+        assertEquals(Optional.of("[import footer.odt]"), rules.rewrite("[import ftr.odt]"));
+    }
+
+    @Test
+    public void testParseRulesFileWithInvalidLine() throws Exception {
+        Path rulesFile = tempDir.resolve("rules.txt");
+        Files.write(rulesFile, List.of("[import hdr_*.odt] => [import header/*.odt]", "[import a.odt]"));
+        Exception exception = assertThrows(InvalidArgumentException.class, () -> RewriteRuleSet.parse(rulesFile));
+        assertTrue(exception.getMessage().contains("line 2"), "Expected the line number in the error");
+    }
+}
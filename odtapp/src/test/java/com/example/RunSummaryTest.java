@@ -0,0 +1,77 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.logging.RunSummary;
+
+public class RunSummaryTest {
+
+    @Test
+    public void testCountsOutcomesFromManyThreads() throws Exception {
+        RunSummary summary = new RunSummary("Replace");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 1000; i++) {
+            String outcome = i % 10 == 0 ? RunSummary.FAILED : RunSummary.REPLACED;
+            executor.execute(() -> summary.increment(outcome));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(900, summary.get(RunSummary.REPLACED));
+        assertEquals(100, summary.get(RunSummary.FAILED));
+        assertEquals(0, summary.get(RunSummary.SKIPPED));
+        assertEquals(1000, summary.getTotal());
+    }
+
+    @Test
+    public void testLogsOneLineWithWarningOnFailure() {
+        Logger logger = Logger.getLogger(RunSummaryTest.class.getName());
+        List<LogRecord> records = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        logger.addHandler(handler);
+        try {
+            RunSummary summary = new RunSummary("Json scan");
+            summary.increment(RunSummary.READ);
+            summary.increment(RunSummary.READ);
+            summary.log(logger);
+            summary.increment(RunSummary.FAILED);
+            summary.log(logger);
+        } finally {
+            logger.removeHandler(handler);
+        }
+
+        assertEquals(2, records.size());
+        assertEquals(Level.INFO, records.get(0).getLevel());
+        assertTrue(records.get(0).getMessage().startsWith("Json scan finished: files=2 read=2 elapsedMs="),
+                records.get(0).getMessage());
+        assertEquals(Level.WARNING, records.get(1).getLevel());
+        assertTrue(records.get(1).getMessage().startsWith("Json scan finished: files=3 failed=1 read=2 "),
+                records.get(1).getMessage());
+    }
+}
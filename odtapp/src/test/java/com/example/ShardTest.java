@@ -0,0 +1,58 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.model.ScanOptions;
+import com.example.util.Shard;
+
+public class ShardTest {
+
+    private static final Path START = Paths.get("templates");
+
+    @Test
+    public void testEveryPathBelongsToExactlyOneShard() {
+        for (int i = 0; i < 100; i++) {
+            Path path = START.resolve("dir" + (i % 7)).resolve("template_" + i + ".odt");
+            int owners = 0;
+            for (int index = 0; index < 4; index++) {
+                if (new Shard(index, 4).contains(START, path)) {
+                    owners++;
+                }
+            }
+            assertEquals(1, owners, "Expected a single shard for " + path);
+        }
+    }
+
+    @Test
+    public void testShardDependsOnlyOnRelativePath() {
+        Path other = Paths.get("/mnt", "share", "templates");
+        for (int index = 0; index < 5; index++) {
+            Shard shard = new Shard(index, 5);
+            assertEquals(shard.contains(START, START.resolve("a").resolve("b.odt")),
+                    shard.contains(other, other.resolve("a").resolve("b.odt")));
+        }
+        // The assignment must not change between releases, partial reports of
+        // different versions are merged together
+        assertEquals(0, Shard.indexOf("a/b.odt", 5));
+        assertEquals(4, Shard.indexOf("x.odt", 7));
+    }
+
+    @Test
+    public void testSingleShardContainsEverything() {
+        assertTrue(Shard.of(new ScanOptions()).contains(START, START.resolve("a.odt")));
+        assertEquals(Shard.ALL, Shard.of(new ScanOptions()));
+    }
+
+    @Test
+    public void testInvalidShard() {
+        assertThrows(IllegalArgumentException.class, () -> new Shard(3, 3));
+        assertThrows(IllegalArgumentException.class, () -> new Shard(0, 0));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.logging.StructuredFormatter;
+
+public class StructuredFormatterTest {
+
+    private static final Instant TIME = Instant.parse("2024-05-01T10:15:30.120Z");
+
+    @Test
+    public void testFormatsRecordAsKeyValuePairs() {
+        LogRecord record = new LogRecord(Level.INFO, "Loaded {0} rewrite rules");
+        record.setParameters(new Object[] { 3 });
+        record.setLoggerName("com.example.util.FileUtil");
+        record.setInstant(TIME);
+
+        assertEquals("time=2024-05-01T10:15:30.120Z level=INFO logger=com.example.util.FileUtil"
+                + " msg=\"Loaded 3 rewrite rules\"" + System.lineSeparator(),
+                new StructuredFormatter().format(record));
+    }
+
+    @Test
+    public void testEscapesQuotesAndLineBreaks() {
+        LogRecord record = new LogRecord(Level.SEVERE, "Failed \"a.odt\"\nsee c:\\tmp");
+        record.setLoggerName("test");
+        record.setInstant(TIME);
+        record.setThrown(new IOException("disk full"));
+
+        String line = new StructuredFormatter().format(record);
+
+        assertTrue(line.contains(" msg=\"Failed \\\"a.odt\\\"\\nsee c:\\\\tmp\" "), line);
+        assertTrue(line.endsWith(" error=\"java.io.IOException: disk full\"" + System.lineSeparator()), line);
+        assertEquals(1, line.split("\n", -1).length - 1);
+    }
+
+    @Test
+    public void testUnquotedValueWithoutSpecialCharacters() {
+        LogRecord record = new LogRecord(Level.WARNING, "done");
+        record.setInstant(TIME);
+
+        assertEquals("time=2024-05-01T10:15:30.120Z level=WARNING logger=\"\" msg=done" + System.lineSeparator(),
+                new StructuredFormatter().format(record));
+    }
+}
@@ -0,0 +1,99 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.concurrent.TemplateLockManager;
+import com.example.exception.FileLockedException;
+
+public class TemplateLockManagerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRewriteWithFileLocksMovesWorkingCopyIntoPlace() throws Exception {
+        Path file = tempDir.resolve("template.odt");
+        Files.writeString(file, "old");
+        TemplateLockManager locks = new TemplateLockManager(true, false, 0);
+
+        assertEquals(TemplateLockManager.Outcome.REWRITTEN, locks.rewrite(file, workingCopy -> {
+            assertEquals("old", Files.readString(workingCopy));
+            Files.writeString(workingCopy, "new");
+            return true;
+        }));
+        assertEquals(TemplateLockManager.Outcome.UNCHANGED, locks.rewrite(file, workingCopy -> false));
+        assertEquals("new", Files.readString(file));
+        try (Stream<Path> entries = Files.list(tempDir)) {
+            assertEquals(List.of(file), entries.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testEditorLockFileSkipsOrFailsAfterRetries() throws Exception {
+        Path file = tempDir.resolve("template.odt");
+        Files.writeString(file, "old");
+        Files.writeString(tempDir.resolve(".~lock.template.odt#"), "user");
+
+        assertEquals(TemplateLockManager.Outcome.LOCKED,
+                new TemplateLockManager(true, true, 3).rewrite(file, workingCopy -> true));
+        assertThrows(FileLockedException.class,
+                () -> new TemplateLockManager(true, false, 1).rewrite(file, workingCopy -> true));
+        assertEquals("old", Files.readString(file));
+    }
+
+    @Test
+    public void testConcurrentModificationIsNotOverwritten() throws Exception {
+        Path file = tempDir.resolve("template.odt");
+        Files.writeString(file, "old");
+        TemplateLockManager locks = new TemplateLockManager(true, true, 0);
+
+        // A program that ignores the lock saves while the rewrite runs
+        assertEquals(TemplateLockManager.Outcome.LOCKED, locks.rewrite(file, workingCopy -> {
+            Files.writeString(file, "saved by an editor");
+            Files.writeString(workingCopy, "new");
+            return true;
+        }));
+        assertEquals("saved by an editor", Files.readString(file));
+        assertFalse(Files.exists(tempDir.resolve(".template.odt.odtapp-tmp")));
+    }
+
+    @Test
+    public void testRewritesOfSameFileAreSerialized() throws Exception {
+        Path file = tempDir.resolve("counter.odt");
+        Files.writeString(file, "0");
+        TemplateLockManager locks = new TemplateLockManager(true, false, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<TemplateLockManager.Outcome>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(executor.submit(() -> locks.rewrite(file, workingCopy -> {
+                    int value = Integer.parseInt(Files.readString(workingCopy, StandardCharsets.UTF_8));
+                    Files.writeString(workingCopy, Integer.toString(value + 1));
+                    return true;
+                })));
+            }
+            for (Future<TemplateLockManager.Outcome> result : results) {
+                assertEquals(TemplateLockManager.Outcome.REWRITTEN, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals("20", Files.readString(file));
+    }
+}